@@ -0,0 +1,122 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.benchmarks;
+
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.server.core.api.CoreSession;
+import org.apache.directory.server.core.api.DirectoryService;
+import org.apache.directory.server.core.api.interceptor.context.LookupOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.OperationContextPool;
+import org.apache.directory.server.core.factory.DefaultDirectoryServiceFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Measures the cost of a lookup done through the core API, with a new operation context for
+ * each call, and with a context taken from the {@link OperationContextPool}. Run it with the
+ * GC profiler to get the bytes allocated per operation :
+ * <pre>
+ * java -jar target/benchmarks.jar OperationContextBenchmark -prof gc
+ * </pre>
+ * and compare the <i>gc.alloc.rate.norm</i> of both benchmarks.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class OperationContextBenchmark
+{
+    /** The server */
+    private DirectoryService directoryService;
+
+    /** The session used to do the lookups */
+    private CoreSession session;
+
+    /** The entry to lookup */
+    private Dn dn;
+
+
+    @Setup(Level.Trial)
+    public void startServer() throws Exception
+    {
+        DefaultDirectoryServiceFactory factory = new DefaultDirectoryServiceFactory();
+        factory.init( "OperationContextBenchmark" );
+        directoryService = factory.getDirectoryService();
+        session = directoryService.getAdminSession();
+        dn = new Dn( directoryService.getSchemaManager(), "ou=system" );
+    }
+
+
+    @TearDown(Level.Trial)
+    public void stopServer() throws Exception
+    {
+        directoryService.shutdown();
+    }
+
+
+    /**
+     * A lookup with a new context, the way it was done before the contexts were pooled
+     */
+    @Benchmark
+    public Entry lookupWithNewContext() throws Exception
+    {
+        LookupOperationContext lookupContext = new LookupOperationContext( session, dn );
+
+        return directoryService.getOperationManager().lookup( lookupContext );
+    }
+
+
+    /**
+     * A lookup with a pooled context, the way {@link CoreSession#lookup(Dn, String...)} does it
+     */
+    @Benchmark
+    public Entry lookupWithPooledContext() throws Exception
+    {
+        LookupOperationContext lookupContext = OperationContextPool.acquireLookupContext( session, dn );
+
+        try
+        {
+            return directoryService.getOperationManager().lookup( lookupContext );
+        }
+        finally
+        {
+            OperationContextPool.release( lookupContext );
+        }
+    }
+}
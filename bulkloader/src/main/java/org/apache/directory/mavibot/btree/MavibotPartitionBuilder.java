@@ -811,7 +811,7 @@ public class MavibotPartitionBuilder
             JarLdifSchemaLoader loader = new JarLdifSchemaLoader();
             schemaManager = new DefaultSchemaManager( loader );
             schemaManager.loadAllEnabled();
-            dnFactory = new DefaultDnFactory( schemaManager, null );
+            dnFactory = new DefaultDnFactory( schemaManager, 0 );
             cacheService = new CacheService();
             InstanceLayout instanceLayout = new InstanceLayout( outputDir );
             cacheService.initialize( instanceLayout );
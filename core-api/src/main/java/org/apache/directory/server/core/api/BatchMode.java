@@ -0,0 +1,44 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.api;
+
+
+/**
+ * Tells how a batch of write operations handles the operations which fail.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public enum BatchMode
+{
+    /**
+     * The first failing operation cancels the whole batch : the partition write transaction is
+     * aborted, none of the operations is stored, and the following ones are not attempted.
+     * The side effects of the interceptors already run for the previous operations, like the
+     * events sent to the listeners, are not undone.
+     */
+    ALL_OR_NOTHING,
+
+    /**
+     * The failing operations are skipped, and reported, the other ones are stored. Each
+     * operation is committed in its own partition write transaction, so a failing operation
+     * leaves no trace, whatever it had already written when it failed.
+     */
+    BEST_EFFORT
+}
@@ -0,0 +1,445 @@
+/*
+ *   Licensed to the Apache Software Foundation (ASF) under one
+ *   or more contributor license agreements.  See the NOTICE file
+ *   distributed with this work for additional information
+ *   regarding copyright ownership.  The ASF licenses this file
+ *   to you under the Apache License, Version 2.0 (the
+ *   "License"); you may not use this file except in compliance
+ *   with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ *
+ */
+package org.apache.directory.server.core.api;
+
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Status;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.statistics.StatisticsGateway;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Shares a single heap budget between all the bounded caches of a {@link CacheManager} : the
+ * partitions entry, alias, piar and entryDn caches, the group cache... The caches which are not
+ * ehcache caches, like the {@link TinyLfuCache} of the Dn factory, are not managed : their
+ * fixed capacity comes on top of the budget.
+ * <br>
+ * The caches sizes are expressed as a number of entries, so each cache is associated with an
+ * estimated entry size, in bytes. Each time {@link #rebalance()} is called, the capacities are
+ * moved toward the caches with the best expected hit gain per byte :
+ * <ul>
+ *   <li>a cache which is not full is shrunk to its current size plus some headroom</li>
+ *   <li>the misses of a full cache since the previous rebalance, divided by its size in bytes,
+ *   estimate the hits it would gain per added byte</li>
+ *   <li>the free bytes go to the caches with the highest gain, and when the budget is
+ *   exhausted, some bytes are moved from the full cache with the lowest gain to the one with
+ *   the highest gain, if it's significantly higher</li>
+ * </ul>
+ * At most {@link #MAX_MOVE_RATIO} of the budget is moved at each rebalance, so that the
+ * capacities converge smoothly. A cache never goes below a minimum number of entries.
+ * <br>
+ * The caches with an unlimited capacity are not managed.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class CacheMemoryGovernor
+{
+    /** The associated logger */
+    private static final Logger LOG = LoggerFactory.getLogger( CacheMemoryGovernor.class );
+
+    /** The estimated size of an entry of a cache with no configured size, in bytes */
+    public static final long DEFAULT_ENTRY_SIZE = 1024L;
+
+    /** The default minimal number of entries of a cache */
+    public static final long DEFAULT_MIN_ENTRIES = 100L;
+
+    /** The maximum part of the budget moved at each rebalance */
+    public static final double MAX_MOVE_RATIO = 0.1d;
+
+    /** A cache is full when its size reaches this part of its capacity */
+    private static final double FULL_RATIO = 0.9d;
+
+    /** The headroom kept above the size of a cache which is not full */
+    private static final double HEADROOM_RATIO = 1.25d;
+
+    /** The gain ratio needed to move some bytes from a full cache to another */
+    private static final double HYSTERESIS = 1.5d;
+
+    /** The managed caches */
+    private final CacheManager cacheManager;
+
+    /** The memory budget, in bytes */
+    private final long budget;
+
+    /** The estimated entry size of each cache */
+    private final Map<String, Long> entrySizes = new ConcurrentHashMap<>();
+
+    /** The statistics read at the previous rebalance, for each cache */
+    private final Map<String, long[]> previousStats = new HashMap<>();
+
+    /** The minimal number of entries of a cache */
+    private long minEntries = DEFAULT_MIN_ENTRIES;
+
+
+    /**
+     * The state of a cache during a rebalance
+     */
+    private static final class CacheState
+    {
+        /** The cache configuration, to update the capacity */
+        private CacheConfiguration configuration;
+
+        /** The cache name */
+        private String name;
+
+        /** The estimated entry size */
+        private long entrySize;
+
+        /** The current capacity, in entries */
+        private long capacity;
+
+        /** The current number of entries */
+        private long size;
+
+        /** The new capacity, in entries */
+        private long newCapacity;
+
+        /** The expected hits per added byte */
+        private double gain;
+
+        /** Tells if the cache is full */
+        private boolean full;
+
+
+        private long bytes()
+        {
+            return newCapacity * entrySize;
+        }
+    }
+
+
+    /**
+     * Creates a new instance of CacheMemoryGovernor.
+     *
+     * @param cacheManager The caches to manage
+     * @param budget The memory budget shared by the caches, in bytes
+     */
+    public CacheMemoryGovernor( CacheManager cacheManager, long budget )
+    {
+        this.cacheManager = cacheManager;
+        this.budget = budget;
+
+        // The estimated sizes of the server caches
+        entrySizes.put( "entryDn", 512L );
+        entrySizes.put( "piar", 256L );
+        entrySizes.put( "alias", 256L );
+        entrySizes.put( "groupCache", 2048L );
+    }
+
+
+    /**
+     * Sets the estimated entry size of a cache.
+     *
+     * @param cacheName The cache name
+     * @param entrySize The entry size, in bytes
+     */
+    public void setEntrySize( String cacheName, long entrySize )
+    {
+        entrySizes.put( cacheName, entrySize );
+    }
+
+
+    /**
+     * @param cacheName The cache name
+     * @return The estimated entry size of the cache, in bytes
+     */
+    public long getEntrySize( String cacheName )
+    {
+        Long entrySize = entrySizes.get( cacheName );
+
+        return entrySize == null ? DEFAULT_ENTRY_SIZE : entrySize;
+    }
+
+
+    /**
+     * @param minEntries The minimal number of entries of a cache
+     */
+    public void setMinEntries( long minEntries )
+    {
+        this.minEntries = minEntries;
+    }
+
+
+    /**
+     * @return The memory budget, in bytes
+     */
+    public long getBudget()
+    {
+        return budget;
+    }
+
+
+    /**
+     * @return The bytes currently allocated to the managed caches
+     */
+    public long getAllocatedBytes()
+    {
+        long allocated = 0L;
+
+        for ( CacheState state : collect( false ) )
+        {
+            allocated += state.capacity * state.entrySize;
+        }
+
+        return allocated;
+    }
+
+
+    /**
+     * Moves the capacities between the caches according to their hits and misses since the
+     * previous call.
+     */
+    public synchronized void rebalance()
+    {
+        List<CacheState> states = collect( true );
+
+        if ( states.isEmpty() )
+        {
+            return;
+        }
+
+        long maxMove = ( long ) ( budget * MAX_MOVE_RATIO );
+
+        // Only keep some headroom above the size of the caches which are not full
+        for ( CacheState state : states )
+        {
+            if ( state.full )
+            {
+                state.newCapacity = state.capacity;
+            }
+            else
+            {
+                state.newCapacity = Math.max( minCapacity( state ),
+                    Math.min( state.capacity, ( long ) ( state.size * HEADROOM_RATIO ) ) );
+            }
+        }
+
+        long total = total( states );
+
+        if ( total > budget )
+        {
+            // Over the budget : scale everything down
+            double ratio = ( double ) budget / total;
+
+            for ( CacheState state : states )
+            {
+                state.newCapacity = Math.max( minCapacity( state ), ( long ) ( state.newCapacity * ratio ) );
+            }
+        }
+        else if ( total < budget )
+        {
+            // Give the free bytes to the caches with some gain, proportionally
+            distribute( states, Math.min( budget - total, maxMove ) );
+        }
+
+        moveFromColdest( states, maxMove );
+
+        for ( CacheState state : states )
+        {
+            if ( state.newCapacity != state.capacity )
+            {
+                LOG.debug( "Resizing the cache {} from {} to {} entries", state.name, state.capacity,
+                    state.newCapacity );
+                state.configuration.setMaxEntriesLocalHeap( state.newCapacity );
+            }
+        }
+    }
+
+
+    /**
+     * Reads the state of the managed caches.
+     *
+     * @param updateStats Tells if the statistics must be consumed
+     */
+    private List<CacheState> collect( boolean updateStats )
+    {
+        List<CacheState> states = new ArrayList<>();
+
+        if ( cacheManager.getStatus() != Status.STATUS_ALIVE )
+        {
+            return states;
+        }
+
+        for ( String name : cacheManager.getCacheNames() )
+        {
+            Cache cache = cacheManager.getCache( name );
+
+            if ( ( cache == null ) || ( cache.getStatus() != Status.STATUS_ALIVE ) )
+            {
+                continue;
+            }
+
+            CacheConfiguration configuration = cache.getCacheConfiguration();
+            long capacity = configuration.getMaxEntriesLocalHeap();
+
+            if ( capacity <= 0L )
+            {
+                // Unlimited
+                continue;
+            }
+
+            CacheState state = new CacheState();
+            state.configuration = configuration;
+            state.name = name;
+            state.entrySize = getEntrySize( name );
+            state.capacity = capacity;
+
+            if ( updateStats )
+            {
+                StatisticsGateway statistics = cache.getStatistics();
+                long misses = statistics.cacheMissCount();
+                long size = statistics.getLocalHeapSize();
+                long[] previous = previousStats.get( name );
+                long newMisses = previous == null ? 0L : Math.max( 0L, misses - previous[0] );
+
+                previousStats.put( name, new long[]
+                    { misses } );
+
+                state.size = size;
+                state.full = size >= capacity * FULL_RATIO;
+
+                if ( state.full )
+                {
+                    state.gain = ( double ) newMisses / ( capacity * state.entrySize );
+                }
+            }
+
+            states.add( state );
+        }
+
+        if ( updateStats )
+        {
+            // Forget the removed caches
+            previousStats.keySet().retainAll( Arrays.asList( cacheManager.getCacheNames() ) );
+        }
+
+        return states;
+    }
+
+
+    /**
+     * @return The capacity a cache can't be shrunk under : the minimal number of entries, unless
+     * it has been configured with less
+     */
+    private long minCapacity( CacheState state )
+    {
+        return Math.min( minEntries, state.capacity );
+    }
+
+
+    private static long total( List<CacheState> states )
+    {
+        long total = 0L;
+
+        for ( CacheState state : states )
+        {
+            total += state.bytes();
+        }
+
+        return total;
+    }
+
+
+    /**
+     * Distributes some bytes to the caches with a gain, proportionally to their gain.
+     */
+    private void distribute( List<CacheState> states, long bytes )
+    {
+        double totalGain = 0d;
+
+        for ( CacheState state : states )
+        {
+            totalGain += state.gain;
+        }
+
+        if ( totalGain <= 0d )
+        {
+            return;
+        }
+
+        for ( CacheState state : states )
+        {
+            if ( state.gain > 0d )
+            {
+                long share = ( long ) ( bytes * ( state.gain / totalGain ) );
+                state.newCapacity += share / state.entrySize;
+            }
+        }
+    }
+
+
+    /**
+     * Moves some bytes from the full cache with the lowest gain to the one with the highest
+     * gain, when the difference is large enough.
+     */
+    private void moveFromColdest( List<CacheState> states, long maxMove )
+    {
+        CacheState hottest = null;
+        CacheState coldest = null;
+
+        for ( CacheState state : states )
+        {
+            if ( !state.full )
+            {
+                continue;
+            }
+
+            if ( ( hottest == null ) || ( state.gain > hottest.gain ) )
+            {
+                hottest = state;
+            }
+
+            if ( ( state.newCapacity > minEntries ) && ( ( coldest == null ) || ( state.gain < coldest.gain ) ) )
+            {
+                coldest = state;
+            }
+        }
+
+        if ( ( hottest == null ) || ( coldest == null ) || ( hottest == coldest ) || ( hottest.gain <= 0d )
+            || ( hottest.gain < coldest.gain * HYSTERESIS ) )
+        {
+            return;
+        }
+
+        // Move at most a tenth of the coldest cache at once
+        long available = ( coldest.newCapacity - minEntries ) * coldest.entrySize;
+        long moved = Math.min( maxMove, Math.min( available, coldest.bytes() / 10L ) );
+
+        if ( moved < hottest.entrySize )
+        {
+            return;
+        }
+
+        coldest.newCapacity -= ( moved + coldest.entrySize - 1 ) / coldest.entrySize;
+        hottest.newCapacity += moved / hottest.entrySize;
+    }
+}
@@ -22,11 +22,18 @@ package org.apache.directory.server.core.api;
 
 
 import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import net.sf.ehcache.Cache;
 import net.sf.ehcache.CacheManager;
 import net.sf.ehcache.Status;
+import net.sf.ehcache.config.CacheConfiguration;
 import net.sf.ehcache.config.Configuration;
 import net.sf.ehcache.config.ConfigurationFactory;
 
@@ -42,6 +49,9 @@ import org.slf4j.LoggerFactory;
  * the "workdirectory" of the DirectoryService then that file will be used for configuring 
  * the {@link CacheManager}, if not a default cache configuration file bundled along with 
  * this class is used
+ * <br>
+ * When a memory budget is set, a {@link CacheMemoryGovernor} periodically moves the
+ * capacities between the caches, toward the ones which benefit the most from them.
  *
  * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
  */
@@ -50,6 +60,16 @@ public class CacheService
     /** The cache configuration file */
     private static final String DIRECTORY_CACHESERVICE_XML = "directory-cacheservice.xml";
 
+    /** The name of the Dn factory cache configuration */
+    public static final String DN_CACHE = "dnCache";
+
+    /**
+     * The caches the server implements itself : they are only configured in the cache
+     * configuration file, no ehcache cache is created for them
+     */
+    private static final String[] SERVER_CACHES =
+        { DN_CACHE };
+
     /** The associated logger */
     private static final Logger LOG = LoggerFactory.getLogger( CacheService.class );
 
@@ -59,6 +79,24 @@ public class CacheService
     /** A flag telling if the cache Service has been intialized */
     private boolean initialized;
 
+    /** The configurations of the caches the server implements itself */
+    private final Map<String, CacheConfiguration> serverCacheConfigurations = new HashMap<>();
+
+    /** The default delay between two rebalances of the caches capacities : 1 minute */
+    public static final long DEFAULT_REBALANCE_PERIOD = 60000L;
+
+    /** The memory budget shared by the caches, in bytes. 0 if the caches are not governed */
+    private long memoryBudget;
+
+    /** The delay between two rebalances of the caches capacities, in milliseconds */
+    private long rebalancePeriod = DEFAULT_REBALANCE_PERIOD;
+
+    /** The governor, when a memory budget is set */
+    private CacheMemoryGovernor governor;
+
+    /** The executor running the rebalances */
+    private ScheduledExecutorService rebalancer;
+
 
     /**
      * Creates a new instance of CacheService.
@@ -161,9 +199,22 @@ public class CacheService
         cachePath += File.separator + confName;
         cc.getDiskStoreConfiguration().setPath( cachePath );
 
+        // The server caches are not ehcache caches
+        for ( String name : SERVER_CACHES )
+        {
+            CacheConfiguration configuration = cc.getCacheConfigurations().remove( name );
+
+            if ( configuration != null )
+            {
+                serverCacheConfigurations.put( name, configuration );
+            }
+        }
+
         cacheManager = new CacheManager( cc );
 
         initialized = true;
+
+        startGovernor();
     }
 
 
@@ -181,6 +232,8 @@ public class CacheService
 
         initialized = false;
 
+        stopGovernor();
+
         cacheManager.clearAll();
         cacheManager.shutdown();
     }
@@ -215,6 +268,39 @@ public class CacheService
     }
 
 
+    /**
+     * Gets the maximum number of entries configured for a cache, without creating the cache :
+     * the caches the server implements itself only take their capacity from the cache
+     * configuration file.
+     *
+     * @param name The cache name
+     * @return The configured capacity, 0 if the cache has no limit, or -1 if it's not configured
+     */
+    public long getConfiguredCapacity( String name )
+    {
+        if ( !initialized )
+        {
+            LOG.error( "Cannot read the configuration of the cache named {}, the CacheServcie is not initialized",
+                name );
+            throw new IllegalStateException( "CacheService was not initialized" );
+        }
+
+        CacheConfiguration configuration = serverCacheConfigurations.get( name );
+
+        if ( configuration == null )
+        {
+            configuration = cacheManager.getConfiguration().getCacheConfigurations().get( name );
+        }
+
+        if ( configuration == null )
+        {
+            return -1L;
+        }
+
+        return configuration.getMaxEntriesLocalHeap();
+    }
+
+
     /**
      * Remove a cache if it exists.
      * 
@@ -233,4 +319,114 @@ public class CacheService
             LOG.info( "Cannot removing the cache named {}, it does not exist", name );
         }
     }
+
+
+    /**
+     * Sets the memory budget shared by all the bounded caches. The caches capacities are then
+     * periodically rebalanced, according to their hits and misses.
+     *
+     * @param memoryBudget The budget in bytes, or 0 to keep the configured capacities
+     */
+    public synchronized void setMemoryBudget( long memoryBudget )
+    {
+        this.memoryBudget = memoryBudget;
+
+        if ( initialized )
+        {
+            stopGovernor();
+            startGovernor();
+        }
+    }
+
+
+    /**
+     * @return The memory budget shared by the caches, in bytes, or 0 if there is none
+     */
+    public long getMemoryBudget()
+    {
+        return memoryBudget;
+    }
+
+
+    /**
+     * Sets the delay between two rebalances of the caches capacities. It's taken into account
+     * when the memory budget is set, or when the service is initialized.
+     *
+     * @param rebalancePeriod The delay, in milliseconds
+     */
+    public void setRebalancePeriod( long rebalancePeriod )
+    {
+        this.rebalancePeriod = rebalancePeriod;
+    }
+
+
+    /**
+     * @return The delay between two rebalances of the caches capacities, in milliseconds
+     */
+    public long getRebalancePeriod()
+    {
+        return rebalancePeriod;
+    }
+
+
+    /**
+     * @return The governor sharing the memory budget between the caches, or null if there is
+     * no budget
+     */
+    public CacheMemoryGovernor getMemoryGovernor()
+    {
+        return governor;
+    }
+
+
+    private synchronized void startGovernor()
+    {
+        if ( ( memoryBudget <= 0L ) || ( governor != null ) )
+        {
+            return;
+        }
+
+        LOG.info( "Sharing {} bytes between the caches", memoryBudget );
+
+        governor = new CacheMemoryGovernor( cacheManager, memoryBudget );
+        final CacheMemoryGovernor rebalanced = governor;
+
+        rebalancer = Executors.newSingleThreadScheduledExecutor( new ThreadFactory()
+        {
+            public Thread newThread( Runnable runnable )
+            {
+                Thread thread = new Thread( runnable, "ApacheDS cache rebalancer" );
+                thread.setDaemon( true );
+
+                return thread;
+            }
+        } );
+
+        rebalancer.scheduleWithFixedDelay( new Runnable()
+        {
+            public void run()
+            {
+                try
+                {
+                    rebalanced.rebalance();
+                }
+                catch ( Exception e )
+                {
+                    LOG.warn( "Failed to rebalance the caches", e );
+                }
+            }
+        }, rebalancePeriod, rebalancePeriod, TimeUnit.MILLISECONDS );
+    }
+
+
+    private synchronized void stopGovernor()
+    {
+        if ( rebalancer != null )
+        {
+            rebalancer.shutdownNow();
+            rebalancer = null;
+        }
+
+        governor = null;
+    }
 }
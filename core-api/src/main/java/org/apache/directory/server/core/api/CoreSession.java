@@ -30,6 +30,7 @@ import org.apache.directory.api.ldap.model.entry.Entry;
 import org.apache.directory.api.ldap.model.entry.Modification;
 import org.apache.directory.api.ldap.model.exception.LdapException;
 import org.apache.directory.api.ldap.model.filter.ExprNode;
+import org.apache.directory.api.ldap.model.ldif.LdifEntry;
 import org.apache.directory.api.ldap.model.message.AddRequest;
 import org.apache.directory.api.ldap.model.message.AliasDerefMode;
 import org.apache.directory.api.ldap.model.message.CompareRequest;
@@ -270,6 +271,22 @@ public interface CoreSession
     void add( AddRequest addRequest, LogChange log ) throws LdapException;
 
 
+    /**
+     * Applies a batch of changes to the entries of a partition. The changes are stored in a
+     * single partition write transaction, the written entries being locked once for the whole
+     * batch.
+     *
+     * @param changes The change records, all in the same partition, applied in this order
+     * @param mode Tells if a failing change cancels the whole batch, or is only skipped
+     * @return The error of each change, in the same order, null for the applied ones. In
+     * {@link BatchMode#ALL_OR_NOTHING} mode, the list stops at the first failing change, if any,
+     * and none of the changes has been stored
+     * @throws LdapException If the batch can't be applied, for instance if it spans more than
+     * one partition
+     */
+    List<LdapException> batch( List<LdifEntry> changes, BatchMode mode ) throws LdapException;
+
+
     /**
      * Checks to see if an attribute in an entry contains a value.
      *
@@ -23,6 +23,7 @@ package org.apache.directory.server.core.api;
 import java.io.IOException;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
 
 import org.apache.directory.api.ldap.codec.api.LdapApiService;
 import org.apache.directory.api.ldap.model.csn.Csn;
@@ -46,6 +47,7 @@ import org.apache.directory.server.core.api.partition.PartitionNexus;
 import org.apache.directory.server.core.api.schema.SchemaPartition;
 import org.apache.directory.server.core.api.subtree.SubentryCache;
 import org.apache.directory.server.core.api.subtree.SubtreeEvaluator;
+import org.apache.directory.server.core.api.wal.WriteAheadLog;
 
 
 /**
@@ -335,6 +337,17 @@ public interface DirectoryService extends ServerEntryFactory
     List<String> getInterceptors( OperationEnum operation );
 
 
+    /**
+     * Returns the precompiled chain of interceptors to call for a given operation. The returned
+     * array is shared by all the operations and must not be modified : it is replaced by a new
+     * one when the interceptors are reconfigured.
+     *
+     * @param operation The operation
+     * @return the interceptors to call for the given operation, in order
+     */
+    Interceptor[] getInterceptorChain( OperationEnum operation );
+
+
     /**
      * Sets the interceptors in the server.
      *
@@ -558,6 +571,35 @@ public interface DirectoryService extends ServerEntryFactory
     long getSyncPeriodMillis();
 
 
+    /**
+     * Enables or disables the server wide write-ahead log. When enabled, the write operations
+     * return once their changes are on disk in the log, and the partitions are synchronized
+     * every syncPeriodMillis. Must be set before the service is started.
+     *
+     * @param writeAheadLogEnabled true to enable the write-ahead log
+     */
+    void setWriteAheadLogEnabled( boolean writeAheadLogEnabled );
+
+
+    /**
+     * @return true if the write-ahead log is enabled
+     */
+    boolean isWriteAheadLogEnabled();
+
+
+    /**
+     * @return The write-ahead log, or null if it is disabled or the service is not started
+     */
+    WriteAheadLog getWriteAheadLog();
+
+
+    /**
+     * @return The executor running the operations of the asynchronous sessions, created when
+     * first needed and shut down with the service
+     */
+    ExecutorService getCoreExecutor();
+
+
     /**
      * @return the cache service
      */
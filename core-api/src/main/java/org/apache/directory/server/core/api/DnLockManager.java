@@ -0,0 +1,468 @@
+/*
+ *   Licensed to the Apache Software Foundation (ASF) under one
+ *   or more contributor license agreements.  See the NOTICE file
+ *   distributed with this work for additional information
+ *   regarding copyright ownership.  The ASF licenses this file
+ *   to you under the Apache License, Version 2.0 (the
+ *   "License"); you may not use this file except in compliance
+ *   with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ *
+ */
+package org.apache.directory.server.core.api;
+
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.directory.api.ldap.model.name.Dn;
+
+
+/**
+ * A hierarchical lock manager, locking entries and subtrees of the DIT by their Dn. Writers
+ * working on unrelated parts of the DIT don't block each other.
+ * <br>
+ * Three kinds of claims are taken on the Dns :
+ * <ul>
+ *   <li><b>entry</b> : the entry itself is exclusively locked, its descendants are not</li>
+ *   <li><b>subtree</b> : the entry and all its descendants are exclusively locked</li>
+ *   <li><b>intent</b> : taken on each ancestor of a locked Dn, it prevents an ancestor's subtree
+ *   from being locked while one of its descendants is locked</li>
+ * </ul>
+ * An entry claim is compatible with intent claims : an entry can be modified while one of
+ * its descendants is. A subtree claim is not compatible with any other claim.
+ * <br>
+ * All the claims of a lock are granted atomically, so that two locks can't deadlock. The locks
+ * are granted in their arrival order : a lock is not granted while an older conflicting lock is
+ * still waiting, so that a subtree lock can't be starved by a stream of entry locks taken below
+ * it.
+ * <br>
+ * The claims held by a thread never conflict with the claims it requests : a thread can lock
+ * again a Dn it has already locked, or a Dn below a subtree it has locked. Such a thread is not
+ * queued behind the older waiting locks, as they may be waiting for it.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class DnLockManager
+{
+    /** An intent claim, on the ancestors of a locked Dn */
+    private static final int INTENT = 0;
+
+    /** An entry claim */
+    private static final int ENTRY = 1;
+
+    /** A subtree claim */
+    private static final int SUBTREE = 2;
+
+    /** The lock protecting the claims and the waiting locks */
+    private final ReentrantLock mutex = new ReentrantLock();
+
+    /** The granted locks claiming each Dn, by normalized name. Only the claimed Dns are present */
+    private final Map<String, List<DnLock>> claims = new HashMap<>();
+
+    /** The locks waiting to be granted, in their arrival order */
+    private final LinkedList<DnLock> waiting = new LinkedList<>();
+
+    /** The number of locks held by each thread */
+    private final Map<Thread, Integer> owners = new HashMap<>();
+
+    /** The number of locks currently held */
+    private int lockCount;
+
+
+    /**
+     * A lock held on some Dns, to be released by calling {@link #unlock()}.
+     */
+    public final class DnLock
+    {
+        /** The thread which has requested the lock */
+        private final Thread owner;
+
+        /** The claim taken on each Dn, by normalized name */
+        private final Map<String, Integer> requested;
+
+        /** Set when the lock can be granted before the older waiting locks */
+        private boolean barging;
+
+        /** Signaled when the lock is granted, if it has to wait */
+        private Condition grant;
+
+        /** Set once the lock has been granted */
+        private boolean held;
+
+        /** Set when the lock has been released */
+        private boolean released;
+
+
+        private DnLock( Map<String, Integer> requested )
+        {
+            this.owner = Thread.currentThread();
+            this.requested = requested;
+        }
+
+
+        /**
+         * Releases all the claims of this lock. Calling this method more than once has no effect.
+         */
+        public void unlock()
+        {
+            release( this );
+        }
+    }
+
+
+    /**
+     * Creates a new instance of DnLockManager.
+     */
+    public DnLockManager()
+    {
+    }
+
+
+    /**
+     * Locks some entries, waiting until no other thread holds a conflicting lock. The entries'
+     * descendants can still be locked by other threads.
+     *
+     * @param dns The entries Dns
+     * @return The acquired lock
+     */
+    public DnLock lockEntries( Dn... dns )
+    {
+        return lock( ENTRY, true, dns );
+    }
+
+
+    /**
+     * Locks some subtrees, waiting until no other thread holds a conflicting lock. The
+     * subtrees are locked all at once.
+     *
+     * @param dns The Dns of the subtrees roots
+     * @return The acquired lock
+     */
+    public DnLock lockSubtrees( Dn... dns )
+    {
+        return lock( SUBTREE, true, dns );
+    }
+
+
+    /**
+     * Locks some entries if no other thread holds a conflicting lock. The lock is granted
+     * even if some older conflicting locks are waiting.
+     *
+     * @param dns The entries Dns
+     * @return The acquired lock, or null if it can't be granted right now
+     */
+    public DnLock tryLockEntries( Dn... dns )
+    {
+        return lock( ENTRY, false, dns );
+    }
+
+
+    /**
+     * Locks some subtrees if no other thread holds a conflicting lock. The lock is granted
+     * even if some older conflicting locks are waiting.
+     *
+     * @param dns The Dns of the subtrees roots
+     * @return The acquired lock, or null if it can't be granted right now
+     */
+    public DnLock tryLockSubtrees( Dn... dns )
+    {
+        return lock( SUBTREE, false, dns );
+    }
+
+
+    /**
+     * @return The number of locks currently held
+     */
+    public int getLockCount()
+    {
+        mutex.lock();
+
+        try
+        {
+            return lockCount;
+        }
+        finally
+        {
+            mutex.unlock();
+        }
+    }
+
+
+    /**
+     * @return The number of locks waiting to be granted
+     */
+    public int getQueueLength()
+    {
+        mutex.lock();
+
+        try
+        {
+            return waiting.size();
+        }
+        finally
+        {
+            mutex.unlock();
+        }
+    }
+
+
+    /**
+     * Computes the claims needed to lock some entries or subtrees : the given claim on each
+     * Dn, and an intent on each of their ancestors.
+     */
+    private static Map<String, Integer> claim( int claim, Dn... dns )
+    {
+        Map<String, Integer> requested = new HashMap<>();
+
+        for ( Dn dn : dns )
+        {
+            claim( requested, dn.getNormName(), claim );
+
+            Dn ancestor = dn;
+
+            while ( !ancestor.isEmpty() )
+            {
+                ancestor = ancestor.getParent();
+                claim( requested, ancestor.getNormName(), INTENT );
+            }
+        }
+
+        return requested;
+    }
+
+
+    /**
+     * Adds a claim on a Dn. A subtree claim covers an entry claim, which covers an intent claim.
+     */
+    private static void claim( Map<String, Integer> requested, String normName, int claim )
+    {
+        Integer current = requested.get( normName );
+
+        if ( ( current == null ) || ( current < claim ) )
+        {
+            requested.put( normName, claim );
+        }
+    }
+
+
+    /**
+     * Tells if two claims on the same Dn conflict.
+     */
+    private static boolean conflicts( int claim1, int claim2 )
+    {
+        return ( claim1 == SUBTREE ) || ( claim2 == SUBTREE ) || ( ( claim1 == ENTRY ) && ( claim2 == ENTRY ) );
+    }
+
+
+    /**
+     * Tells if two locks requested by different threads conflict.
+     */
+    private static boolean conflicts( DnLock lock1, DnLock lock2 )
+    {
+        if ( lock1.owner == lock2.owner )
+        {
+            return false;
+        }
+
+        for ( Map.Entry<String, Integer> claim : lock1.requested.entrySet() )
+        {
+            Integer other = lock2.requested.get( claim.getKey() );
+
+            if ( ( other != null ) && conflicts( claim.getValue(), other ) )
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+
+    private DnLock lock( int claim, boolean wait, Dn... dns )
+    {
+        DnLock lock = new DnLock( claim( claim, dns ) );
+
+        mutex.lock();
+
+        try
+        {
+            lock.barging = !wait || owners.containsKey( lock.owner );
+
+            if ( isGrantable( lock ) && ( lock.barging || !conflicts( lock, waiting ) ) )
+            {
+                grant( lock );
+
+                return lock;
+            }
+
+            if ( !wait )
+            {
+                return null;
+            }
+
+            lock.grant = mutex.newCondition();
+            waiting.add( lock );
+
+            // Like Lock.lock(), the wait can't be interrupted : the waiting locks are granted in order
+            while ( !lock.held )
+            {
+                lock.grant.awaitUninterruptibly();
+            }
+
+            return lock;
+        }
+        finally
+        {
+            mutex.unlock();
+        }
+    }
+
+
+    /**
+     * Tells if all the claims of a lock are compatible with the claims granted to the other
+     * threads. Must be called while holding the mutex.
+     */
+    private boolean isGrantable( DnLock lock )
+    {
+        for ( Map.Entry<String, Integer> claim : lock.requested.entrySet() )
+        {
+            List<DnLock> granted = claims.get( claim.getKey() );
+
+            if ( granted == null )
+            {
+                continue;
+            }
+
+            for ( DnLock other : granted )
+            {
+                if ( ( other.owner != lock.owner ) && conflicts( claim.getValue(), other.requested.get( claim.getKey() ) ) )
+                {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+
+    /**
+     * Tells if a lock conflicts with some of the given waiting locks.
+     */
+    private static boolean conflicts( DnLock lock, List<DnLock> locks )
+    {
+        for ( DnLock other : locks )
+        {
+            if ( conflicts( lock, other ) )
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+
+    /**
+     * Records the claims of a lock. Must be called while holding the mutex.
+     */
+    private void grant( DnLock lock )
+    {
+        for ( String normName : lock.requested.keySet() )
+        {
+            List<DnLock> granted = claims.get( normName );
+
+            if ( granted == null )
+            {
+                granted = new ArrayList<>( 2 );
+                claims.put( normName, granted );
+            }
+
+            granted.add( lock );
+        }
+
+        Integer count = owners.get( lock.owner );
+        owners.put( lock.owner, ( count == null ) ? 1 : count + 1 );
+        lockCount++;
+        lock.held = true;
+    }
+
+
+    private void release( DnLock lock )
+    {
+        mutex.lock();
+
+        try
+        {
+            if ( !lock.held || lock.released )
+            {
+                return;
+            }
+
+            lock.released = true;
+
+            for ( String normName : lock.requested.keySet() )
+            {
+                List<DnLock> granted = claims.get( normName );
+                granted.remove( lock );
+
+                if ( granted.isEmpty() )
+                {
+                    claims.remove( normName );
+                }
+            }
+
+            int count = owners.get( lock.owner );
+
+            if ( count == 1 )
+            {
+                owners.remove( lock.owner );
+            }
+            else
+            {
+                owners.put( lock.owner, count - 1 );
+            }
+
+            lockCount--;
+
+            // Grant the waiting locks in order, skipping those conflicting with an older waiting lock
+            List<DnLock> older = new ArrayList<>();
+            Iterator<DnLock> waitingLocks = waiting.iterator();
+
+            while ( waitingLocks.hasNext() )
+            {
+                DnLock waitingLock = waitingLocks.next();
+
+                if ( isGrantable( waitingLock ) && ( waitingLock.barging || !conflicts( waitingLock, older ) ) )
+                {
+                    waitingLocks.remove();
+                    grant( waitingLock );
+                    waitingLock.grant.signal();
+                }
+                else
+                {
+                    older.add( waitingLock );
+                }
+            }
+        }
+        finally
+        {
+            mutex.unlock();
+        }
+    }
+}
@@ -20,6 +20,7 @@
 package org.apache.directory.server.core.api;
 
 
+import java.util.List;
 import java.util.concurrent.locks.ReadWriteLock;
 
 import org.apache.directory.api.ldap.model.entry.Entry;
@@ -35,9 +36,11 @@ import org.apache.directory.server.core.api.interceptor.context.LookupOperationC
 import org.apache.directory.server.core.api.interceptor.context.ModifyOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.MoveAndRenameOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.MoveOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.OperationContext;
 import org.apache.directory.server.core.api.interceptor.context.RenameOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.SearchOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.UnbindOperationContext;
+import org.apache.directory.server.core.api.partition.Partition;
 
 
 /**
@@ -85,6 +88,25 @@ public interface OperationManager
     void modify( ModifyOperationContext modifyContext ) throws LdapException;
 
 
+    /**
+     * Applies a batch of write operations to a single partition. Each operation goes through
+     * the interceptor chain, but the locks are taken once for the whole batch. In
+     * {@link BatchMode#ALL_OR_NOTHING} mode, the operations are stored in a single partition
+     * write transaction, committed once, in {@link BatchMode#BEST_EFFORT} mode each operation
+     * is committed in its own transaction.
+     *
+     * @param contexts The contexts of the Add, Modify, Delete and ModifyDn operations, applied
+     * in this order
+     * @param mode Tells if a failing operation cancels the whole batch, or is only skipped
+     * @return The error of each operation, in the same order, null for the applied ones. In
+     * {@link BatchMode#ALL_OR_NOTHING} mode, the list stops at the first failing operation, if any,
+     * and none of the operations has been stored
+     * @throws LdapException If the batch can't be applied, for instance if it spans more than
+     * one partition
+     */
+    List<LdapException> batch( List<? extends OperationContext> contexts, BatchMode mode ) throws LdapException;
+
+
     /**
      * TODO document after determining if this method should be here.
      */
@@ -161,4 +183,14 @@ public interface OperationManager
      * @return the OperationManager R/W lock
      */
     ReadWriteLock getRWLock();
+
+
+    /**
+     * Returns the R/W lock protecting a partition : the writers hold it exclusively during
+     * the whole operation, the partition holds it in shared mode while reading its tables.
+     *
+     * @param partition The partition
+     * @return the partition R/W lock
+     */
+    ReadWriteLock getRWLock( Partition partition );
 }
@@ -0,0 +1,486 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.api;
+
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+
+/**
+ * A bounded in-memory cache, for the small objects the server computes over and over on the
+ * hot paths, like the parsed DNs. The reads don't take any lock : a hit is a lookup in a
+ * concurrent map, plus the recording of the access in a frequency sketch.
+ * <br>
+ * The eviction follows the W-TinyLFU policy : the new entries go in a small window, in FIFO
+ * order. When the window is full, its oldest entry becomes a candidate for the main region,
+ * and is only admitted if it has been used more often than the main region victim, chosen
+ * with the CLOCK algorithm. The frequencies are estimated by a count-min sketch of 4 bits
+ * counters, halved periodically so that old accesses are forgotten. So a burst of values used
+ * once, like a large search, does not flush the values used all the time.
+ * <br>
+ * The eviction is done by the thread adding an entry, if no other thread is already doing it,
+ * so the cache may briefly hold a few more entries than its capacity.
+ *
+ * @param <K> The key type
+ * @param <V> The value type
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class TinyLfuCache<K, V>
+{
+    /** The cached entries */
+    private final ConcurrentHashMap<K, Node<K, V>> map;
+
+    /** The estimated access frequencies of the keys */
+    private final FrequencySketch sketch;
+
+    /** The entries added to the map, not yet put in the window */
+    private final ConcurrentLinkedQueue<Node<K, V>> additions = new ConcurrentLinkedQueue<>();
+
+    /** The window, from the oldest to the newest entry. Guarded by the eviction lock */
+    private final ArrayDeque<Node<K, V>> window = new ArrayDeque<>();
+
+    /** The main region, in CLOCK order. Guarded by the eviction lock */
+    private final ArrayDeque<Node<K, V>> main = new ArrayDeque<>();
+
+    /** The lock taken to move the entries between the regions */
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    /** The maximum number of entries */
+    private final int capacity;
+
+    /** The maximum number of entries in the window : 1% of the capacity */
+    private final int windowCapacity;
+
+    /** The maximum number of entries in the main region */
+    private final int mainCapacity;
+
+    /** The number of reads which have found the key */
+    private final AtomicLong hitCount = new AtomicLong();
+
+    /** The number of reads which have not found the key */
+    private final AtomicLong missCount = new AtomicLong();
+
+    /** A cached entry */
+    private static final class Node<K, V>
+    {
+        private final K key;
+        private final V value;
+
+        /** Set when the entry is read, cleared when the CLOCK hand passes over it */
+        private volatile boolean referenced;
+
+        /** Set when the entry has been removed from the map */
+        private volatile boolean removed;
+
+
+        private Node( K key, V value )
+        {
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+
+    /**
+     * Creates a new cache.
+     *
+     * @param capacity The maximum number of entries, at least 2
+     */
+    public TinyLfuCache( int capacity )
+    {
+        if ( capacity < 2 )
+        {
+            throw new IllegalArgumentException( "The capacity must be at least 2 : " + capacity );
+        }
+
+        this.capacity = capacity;
+        windowCapacity = Math.max( 1, capacity / 100 );
+        mainCapacity = capacity - windowCapacity;
+        map = new ConcurrentHashMap<>( Math.min( capacity, 1024 ) );
+        sketch = new FrequencySketch( capacity );
+    }
+
+
+    /**
+     * Gets a value from the cache.
+     *
+     * @param key The key
+     * @return The cached value, or null if the key is not cached
+     */
+    public V get( K key )
+    {
+        sketch.increment( key.hashCode() );
+        Node<K, V> node = map.get( key );
+
+        if ( node == null )
+        {
+            missCount.incrementAndGet();
+
+            return null;
+        }
+
+        hitCount.incrementAndGet();
+
+        if ( !node.referenced )
+        {
+            node.referenced = true;
+        }
+
+        return node.value;
+    }
+
+
+    /**
+     * Adds a value in the cache, unless the key is already cached.
+     *
+     * @param key The key
+     * @param value The value
+     * @return The cached value : the given value, or the one already cached
+     */
+    public V putIfAbsent( K key, V value )
+    {
+        Node<K, V> node = new Node<>( key, value );
+        Node<K, V> existing = map.putIfAbsent( key, node );
+
+        if ( existing != null )
+        {
+            return existing.value;
+        }
+
+        additions.add( node );
+        evict();
+
+        return value;
+    }
+
+
+    /**
+     * Removes a key from the cache.
+     *
+     * @param key The key
+     */
+    public void remove( K key )
+    {
+        Node<K, V> node = map.remove( key );
+
+        if ( node != null )
+        {
+            node.removed = true;
+        }
+    }
+
+
+    /**
+     * Removes all the entries.
+     */
+    public void clear()
+    {
+        evictionLock.lock();
+
+        try
+        {
+            for ( Node<K, V> node : map.values() )
+            {
+                node.removed = true;
+            }
+
+            map.clear();
+            additions.clear();
+            window.clear();
+            main.clear();
+        }
+        finally
+        {
+            evictionLock.unlock();
+        }
+    }
+
+
+    /**
+     * @return The number of cached entries
+     */
+    public int size()
+    {
+        return map.size();
+    }
+
+
+    /**
+     * @return The maximum number of entries
+     */
+    public int getCapacity()
+    {
+        return capacity;
+    }
+
+
+    /**
+     * @return The number of reads which have found the key
+     */
+    public long getHitCount()
+    {
+        return hitCount.get();
+    }
+
+
+    /**
+     * @return The number of reads which have not found the key
+     */
+    public long getMissCount()
+    {
+        return missCount.get();
+    }
+
+
+    /**
+     * Puts the new entries in the window, and moves the oldest entries of the window to the
+     * main region, or drops them, until the window is back to its capacity.
+     */
+    private void evict()
+    {
+        // The additions done while the lock is held by another thread are processed by this
+        // thread, which checks them again after releasing the lock
+        do
+        {
+            if ( !evictionLock.tryLock() )
+            {
+                return;
+            }
+
+            try
+            {
+                Node<K, V> node;
+
+                while ( ( node = additions.poll() ) != null )
+                {
+                    if ( !node.removed )
+                    {
+                        window.addLast( node );
+                    }
+                }
+
+                while ( window.size() > windowCapacity )
+                {
+                    Node<K, V> candidate = window.pollFirst();
+
+                    if ( !candidate.removed )
+                    {
+                        admit( candidate );
+                    }
+                }
+            }
+            finally
+            {
+                evictionLock.unlock();
+            }
+        }
+        while ( !additions.isEmpty() );
+    }
+
+
+    /**
+     * Adds an entry leaving the window to the main region, if it's used more often than the
+     * entry it would replace.
+     */
+    private void admit( Node<K, V> candidate )
+    {
+        if ( main.size() < mainCapacity )
+        {
+            main.addLast( candidate );
+
+            return;
+        }
+
+        Node<K, V> victim = selectVictim();
+
+        if ( ( victim == null ) || victim.removed )
+        {
+            main.addLast( candidate );
+        }
+        else if ( sketch.frequency( candidate.key.hashCode() ) > sketch.frequency( victim.key.hashCode() ) )
+        {
+            drop( victim );
+            main.addLast( candidate );
+        }
+        else
+        {
+            main.addFirst( victim );
+            drop( candidate );
+        }
+    }
+
+
+    /**
+     * Takes the main region victim : the first entry not referenced since the CLOCK hand last
+     * passed over it. The referenced entries get a second chance.
+     */
+    private Node<K, V> selectVictim()
+    {
+        for ( int i = main.size(); i > 0; i-- )
+        {
+            Node<K, V> node = main.pollFirst();
+
+            if ( node.removed || !node.referenced )
+            {
+                return node;
+            }
+
+            node.referenced = false;
+            main.addLast( node );
+        }
+
+        return main.pollFirst();
+    }
+
+
+    private void drop( Node<K, V> node )
+    {
+        node.removed = true;
+        map.remove( node.key, node );
+    }
+
+
+    /**
+     * A count-min sketch with 4 bits counters : each key is counted in 4 counters, and its
+     * frequency is the smallest of them. 16 counters are packed in each long. When the number
+     * of increments reaches 10 times the number of counters per row, all the counters are halved.
+     */
+    private static final class FrequencySketch
+    {
+        private static final long[] SEEDS =
+            { 0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+
+        /** The mask keeping the 3 low bits of each counter, after a shift */
+        private static final long RESET_MASK = 0x7777777777777777L;
+
+        private final AtomicLongArray table;
+        private final int tableMask;
+        private final int sampleSize;
+        private final AtomicInteger size = new AtomicInteger();
+
+
+        private FrequencySketch( int capacity )
+        {
+            int length = Integer.highestOneBit( Math.max( capacity, 16 ) - 1 ) << 1;
+            table = new AtomicLongArray( length );
+            tableMask = length - 1;
+            sampleSize = 10 * length;
+        }
+
+
+        private int frequency( int hashCode )
+        {
+            int hash = spread( hashCode );
+            int start = ( hash & 3 ) << 2;
+            int frequency = 15;
+
+            for ( int i = 0; i < 4; i++ )
+            {
+                int index = indexOf( hash, i );
+                int count = ( int ) ( ( table.get( index ) >>> ( ( start + i ) << 2 ) ) & 0xFL );
+                frequency = Math.min( frequency, count );
+            }
+
+            return frequency;
+        }
+
+
+        private void increment( int hashCode )
+        {
+            int hash = spread( hashCode );
+            int start = ( hash & 3 ) << 2;
+            boolean added = false;
+
+            for ( int i = 0; i < 4; i++ )
+            {
+                added |= incrementAt( indexOf( hash, i ), start + i );
+            }
+
+            if ( added && ( size.incrementAndGet() == sampleSize ) )
+            {
+                reset();
+            }
+        }
+
+
+        private boolean incrementAt( int index, int counter )
+        {
+            int offset = counter << 2;
+            long mask = 0xFL << offset;
+
+            while ( true )
+            {
+                long value = table.get( index );
+
+                if ( ( value & mask ) == mask )
+                {
+                    // Saturated
+                    return false;
+                }
+
+                if ( table.compareAndSet( index, value, value + ( 1L << offset ) ) )
+                {
+                    return true;
+                }
+            }
+        }
+
+
+        private void reset()
+        {
+            for ( int i = 0; i < table.length(); i++ )
+            {
+                long value;
+
+                do
+                {
+                    value = table.get( i );
+                }
+                while ( !table.compareAndSet( i, value, ( value >>> 1 ) & RESET_MASK ) );
+            }
+
+            size.addAndGet( -sampleSize / 2 );
+        }
+
+
+        private int indexOf( int hash, int i )
+        {
+            long h = ( hash + SEEDS[i] ) * SEEDS[i];
+            h += h >>> 32;
+
+            return ( ( int ) h ) & tableMask;
+        }
+
+
+        private static int spread( int hashCode )
+        {
+            int x = ( ( hashCode >>> 16 ) ^ hashCode ) * 0x45d9f3b;
+            x = ( ( x >>> 16 ) ^ x ) * 0x45d9f3b;
+
+            return ( x >>> 16 ) ^ x;
+        }
+    }
+}
@@ -0,0 +1,242 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.api.async;
+
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.entry.Modification;
+import org.apache.directory.api.ldap.model.message.SearchRequest;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.server.core.api.CoreSession;
+import org.apache.directory.server.core.api.DirectoryService;
+
+
+/**
+ * An asynchronous view of a {@link CoreSession}, for embedded users which can't afford to block
+ * a thread for each operation. The operations are run by an executor, the core executor of the
+ * {@link DirectoryService} by default, and return an {@link OperationFuture}, which listeners are
+ * called once the operation is done. The searches send their entries to an
+ * {@link EntrySubscriber} as it requests them.
+ * <pre>
+ * AsyncCoreSession session = new AsyncCoreSession( directoryService.getAdminSession() );
+ *
+ * session.add( entry ).addListener( new OperationListener&lt;Void&gt;()
+ * {
+ *     public void operationComplete( OperationFuture&lt;Void&gt; future )
+ *     {
+ *         ...
+ *     }
+ * } );
+ * </pre>
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class AsyncCoreSession
+{
+    /** The wrapped session */
+    private final CoreSession session;
+
+    /** The executor running the operations */
+    private final Executor executor;
+
+
+    /**
+     * Creates an asynchronous session running its operations with the core executor.
+     *
+     * @param session The wrapped session
+     */
+    public AsyncCoreSession( CoreSession session )
+    {
+        this( session, session.getDirectoryService().getCoreExecutor() );
+    }
+
+
+    /**
+     * Creates an asynchronous session running its operations with the given executor.
+     *
+     * @param session The wrapped session
+     * @param executor The executor
+     */
+    public AsyncCoreSession( CoreSession session, Executor executor )
+    {
+        this.session = session;
+        this.executor = executor;
+    }
+
+
+    /**
+     * Authenticates a user, and creates an asynchronous session for this user, running its operations
+     * with the core executor.
+     *
+     * @param directoryService The directory service
+     * @param principalDn The user Dn
+     * @param credentials The user password
+     * @return The future session
+     */
+    public static OperationFuture<AsyncCoreSession> bind( final DirectoryService directoryService,
+        final Dn principalDn, final byte[] credentials )
+    {
+        OperationFuture<AsyncCoreSession> future = new OperationFuture<>( new Callable<AsyncCoreSession>()
+        {
+            public AsyncCoreSession call() throws Exception
+            {
+                return new AsyncCoreSession( directoryService.getSession( principalDn, credentials ) );
+            }
+        } );
+
+        directoryService.getCoreExecutor().execute( future );
+
+        return future;
+    }
+
+
+    /**
+     * @return The wrapped session
+     */
+    public CoreSession getSession()
+    {
+        return session;
+    }
+
+
+    /**
+     * Adds an entry.
+     *
+     * @param entry The entry to add
+     * @return The future result
+     */
+    public OperationFuture<Void> add( final Entry entry )
+    {
+        return submit( new Callable<Void>()
+        {
+            public Void call() throws Exception
+            {
+                session.add( entry );
+
+                return null;
+            }
+        } );
+    }
+
+
+    /**
+     * Modifies an entry.
+     *
+     * @param dn The entry Dn
+     * @param mods The modifications
+     * @return The future result
+     */
+    public OperationFuture<Void> modify( final Dn dn, final Modification... mods )
+    {
+        return submit( new Callable<Void>()
+        {
+            public Void call() throws Exception
+            {
+                session.modify( dn, mods );
+
+                return null;
+            }
+        } );
+    }
+
+
+    /**
+     * Deletes an entry.
+     *
+     * @param dn The entry Dn
+     * @return The future result
+     */
+    public OperationFuture<Void> delete( final Dn dn )
+    {
+        return submit( new Callable<Void>()
+        {
+            public Void call() throws Exception
+            {
+                session.delete( dn );
+
+                return null;
+            }
+        } );
+    }
+
+
+    /**
+     * Reads an entry.
+     *
+     * @param dn The entry Dn
+     * @param attrIds The attributes to return
+     * @return The future entry
+     */
+    public OperationFuture<Entry> lookup( final Dn dn, final String... attrIds )
+    {
+        return submit( new Callable<Entry>()
+        {
+            public Entry call() throws Exception
+            {
+                return session.lookup( dn, attrIds );
+            }
+        } );
+    }
+
+
+    /**
+     * Searches for entries. The subscriber is given a subscription, through which it requests
+     * the entries : the search cursor is only read as far as the subscriber has asked for, and
+     * is closed once the search is done or cancelled.
+     *
+     * @param searchRequest The search request
+     * @param subscriber The subscriber receiving the entries
+     */
+    public void search( SearchRequest searchRequest, EntrySubscriber subscriber )
+    {
+        new SearchSubscription( session, searchRequest, subscriber, executor ).start();
+    }
+
+
+    /**
+     * Closes the session.
+     *
+     * @return The future result
+     */
+    public OperationFuture<Void> unbind()
+    {
+        return submit( new Callable<Void>()
+        {
+            public Void call() throws Exception
+            {
+                session.unbind();
+
+                return null;
+            }
+        } );
+    }
+
+
+    private <V> OperationFuture<V> submit( Callable<V> operation )
+    {
+        OperationFuture<V> future = new OperationFuture<>( operation );
+        executor.execute( future );
+
+        return future;
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.api.async;
+
+
+import org.apache.directory.api.ldap.model.entry.Entry;
+
+
+/**
+ * Receives the entries returned by an asynchronous search. The entries are only sent when
+ * the subscriber asks for them, through the {@link EntrySubscription} it's given, so a slow
+ * subscriber never gets more entries than it can handle.
+ * <br>
+ * The methods are called by the core executor, one at a time, in this order :
+ * onSubscribe, then onNext for each requested entry, then either onComplete or onError,
+ * unless the subscription is cancelled.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public interface EntrySubscriber
+{
+    /**
+     * Called when the search is started, before any other method.
+     *
+     * @param subscription The subscription used to request entries, or to cancel the search
+     */
+    void onSubscribe( EntrySubscription subscription );
+
+
+    /**
+     * Called for each entry, never more than the requested number of entries.
+     *
+     * @param entry The next entry
+     */
+    void onNext( Entry entry );
+
+
+    /**
+     * Called when the search has failed. Nothing is sent afterward.
+     *
+     * @param error The error
+     */
+    void onError( Throwable error );
+
+
+    /**
+     * Called once all the entries have been sent. Nothing is sent afterward.
+     */
+    void onComplete();
+}
@@ -0,0 +1,131 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.api.async;
+
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * The future result of an asynchronous operation. Beside waiting for the result, listeners
+ * can be added, which are called once the operation is done, by the thread which has run it,
+ * or immediately by the thread adding them if the operation is already done.
+ *
+ * @param <V> The result type of the operation
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class OperationFuture<V> extends FutureTask<V>
+{
+    /** A logger for this class */
+    private static final Logger LOG = LoggerFactory.getLogger( OperationFuture.class );
+
+    /** The listeners to call once the operation is done, null once they have been called */
+    private List<OperationListener<V>> listeners = new ArrayList<>( 1 );
+
+
+    /**
+     * Creates a future running the given operation.
+     *
+     * @param operation The operation
+     */
+    public OperationFuture( Callable<V> operation )
+    {
+        super( operation );
+    }
+
+
+    /**
+     * Adds a listener called once the operation is done.
+     *
+     * @param listener The listener
+     * @return This future
+     */
+    public OperationFuture<V> addListener( OperationListener<V> listener )
+    {
+        synchronized ( this )
+        {
+            if ( listeners != null )
+            {
+                listeners.add( listener );
+
+                return this;
+            }
+        }
+
+        // Already done
+        notifyListener( listener );
+
+        return this;
+    }
+
+
+    /**
+     * Completes the operation with an error, if it has not been run yet : the threads waiting
+     * for the result get the error, wrapped in an ExecutionException, and the listeners are
+     * called.
+     *
+     * @param cause The error
+     */
+    public void fail( Throwable cause )
+    {
+        setException( cause );
+    }
+
+
+    /**
+     * Calls the listeners once the operation is done, successfully, with an error or because
+     * it has been cancelled.
+     */
+    @Override
+    protected void done()
+    {
+        List<OperationListener<V>> doneListeners;
+
+        synchronized ( this )
+        {
+            doneListeners = listeners;
+            listeners = null;
+        }
+
+        for ( OperationListener<V> listener : doneListeners )
+        {
+            notifyListener( listener );
+        }
+    }
+
+
+    private void notifyListener( OperationListener<V> listener )
+    {
+        try
+        {
+            listener.operationComplete( this );
+        }
+        catch ( RuntimeException re )
+        {
+            LOG.warn( "The listener {} has failed", listener, re );
+        }
+    }
+}
@@ -0,0 +1,300 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.api.async;
+
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.directory.api.ldap.model.cursor.Cursor;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.message.SearchRequest;
+import org.apache.directory.server.core.api.CoreSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * An asynchronous search. The cursor is only read when the subscriber has requested some
+ * entries : each time the subscriber requests entries or cancels the search, a task is
+ * submitted to the executor, unless one is already running, which sends the entries until
+ * there is no more demand. So there is never more than one thread using the cursor, or
+ * calling the subscriber, at a given time.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+class SearchSubscription implements EntrySubscription, Runnable
+{
+    /** A logger for this class */
+    private static final Logger LOG = LoggerFactory.getLogger( SearchSubscription.class );
+
+    /** The session doing the search */
+    private final CoreSession session;
+
+    /** The search request */
+    private final SearchRequest searchRequest;
+
+    /** The subscriber receiving the entries */
+    private final EntrySubscriber subscriber;
+
+    /** The executor running the search */
+    private final Executor executor;
+
+    /** The number of entries requested and not yet sent */
+    private final AtomicLong demand = new AtomicLong();
+
+    /** The number of signals (start, requests, cancellation) not yet processed */
+    private final AtomicInteger pending = new AtomicInteger();
+
+    /** Set when the subscriber cancels the search */
+    private volatile boolean cancelled;
+
+    /** Set when the subscriber does an invalid request */
+    private volatile IllegalArgumentException invalidRequest;
+
+    /** The search cursor, opened when the first entry is requested */
+    private Cursor<Entry> cursor;
+
+    /** Tells if the subscriber has been given its subscription */
+    private boolean subscribed;
+
+    /** Set once the search is over, the subscriber is not called anymore */
+    private boolean done;
+
+
+    SearchSubscription( CoreSession session, SearchRequest searchRequest, EntrySubscriber subscriber,
+        Executor executor )
+    {
+        this.session = session;
+        this.searchRequest = searchRequest;
+        this.subscriber = subscriber;
+        this.executor = executor;
+    }
+
+
+    /**
+     * Starts the search : the subscriber is given its subscription by the executor.
+     */
+    void start()
+    {
+        pending.incrementAndGet();
+        executor.execute( this );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public void request( long n )
+    {
+        if ( n <= 0 )
+        {
+            invalidRequest = new IllegalArgumentException( "The number of requested entries must be positive : "
+                + n );
+        }
+        else
+        {
+            long current;
+            long next;
+
+            do
+            {
+                current = demand.get();
+                next = current + n;
+
+                if ( next < 0 )
+                {
+                    // No limit
+                    next = Long.MAX_VALUE;
+                }
+            }
+            while ( !demand.compareAndSet( current, next ) );
+        }
+
+        signal();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public void cancel()
+    {
+        cancelled = true;
+        signal();
+    }
+
+
+    /**
+     * Processes a request or a cancellation, in the executor, unless the search is already
+     * being run by a thread, which will see it.
+     */
+    private void signal()
+    {
+        if ( pending.getAndIncrement() != 0 )
+        {
+            return;
+        }
+
+        try
+        {
+            executor.execute( this );
+        }
+        catch ( RejectedExecutionException ree )
+        {
+            // The executor is shut down, nobody else can run the search
+            fail( ree );
+        }
+    }
+
+
+    /**
+     * Sends the requested entries, until there is no more demand and no more signal to process.
+     */
+    public void run()
+    {
+        int missed = 1;
+
+        do
+        {
+            drain();
+            missed = pending.addAndGet( -missed );
+        }
+        while ( missed != 0 );
+    }
+
+
+    private void drain()
+    {
+        if ( !subscribed )
+        {
+            subscribed = true;
+
+            try
+            {
+                subscriber.onSubscribe( this );
+            }
+            catch ( RuntimeException re )
+            {
+                LOG.warn( "The subscriber {} has failed, the search is cancelled", subscriber, re );
+                cancelled = true;
+            }
+        }
+
+        while ( !done )
+        {
+            if ( cancelled )
+            {
+                done = true;
+                close();
+
+                return;
+            }
+
+            if ( invalidRequest != null )
+            {
+                fail( invalidRequest );
+
+                return;
+            }
+
+            if ( demand.get() == 0L )
+            {
+                return;
+            }
+
+            Entry entry;
+
+            try
+            {
+                if ( cursor == null )
+                {
+                    cursor = session.search( searchRequest );
+                    cursor.beforeFirst();
+                }
+
+                if ( !cursor.next() )
+                {
+                    done = true;
+                    close();
+                    subscriber.onComplete();
+
+                    return;
+                }
+
+                entry = cursor.get();
+            }
+            catch ( Exception e )
+            {
+                fail( e );
+
+                return;
+            }
+
+            demand.decrementAndGet();
+
+            try
+            {
+                subscriber.onNext( entry );
+            }
+            catch ( RuntimeException re )
+            {
+                LOG.warn( "The subscriber {} has failed, the search is cancelled", subscriber, re );
+                cancelled = true;
+            }
+        }
+    }
+
+
+    private void fail( Throwable error )
+    {
+        done = true;
+        close();
+
+        try
+        {
+            subscriber.onError( error );
+        }
+        catch ( RuntimeException re )
+        {
+            LOG.warn( "The subscriber {} has failed", subscriber, re );
+        }
+    }
+
+
+    private void close()
+    {
+        if ( cursor != null )
+        {
+            try
+            {
+                cursor.close();
+            }
+            catch ( Exception e )
+            {
+                LOG.warn( "Failed to close the search cursor", e );
+            }
+
+            cursor = null;
+        }
+    }
+}
@@ -23,6 +23,7 @@ package org.apache.directory.server.core.api.entry;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
@@ -41,6 +42,17 @@ import org.apache.directory.server.i18n.I18n;
 /**
  * A ServerEntry refers to the original entry before being modified by
  * EntryFilters or operations.
+ * <br>
+ * The original entry can either be cloned at once, or shared in copy-on-write mode : the
+ * entry then starts with the original attributes, and an attribute is copied the first time
+ * it's modified through this entry, or fetched with one of the <code>get</code> methods, as
+ * the caller may modify the returned attribute. The attributes given by the iterator and by
+ * {@link #getAttributes()} are still the shared ones, and must not be modified.
+ * <br>
+ * In safety mode, enabled with the {@link #SAFETY_MODE_PROPERTY} system property, a
+ * copy-on-write entry keeps a snapshot of the original entry, and an
+ * {@link IllegalStateException} is thrown when it's used after one of its shared attributes
+ * has been modified. It's meant to be used by the tests.
  *
  * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
  */
@@ -52,6 +64,18 @@ public class ClonedServerEntry implements Entry
     /** The copied entry */
     protected Entry clonedEntry;
 
+    /** The system property enabling the copy-on-write safety mode */
+    public static final String SAFETY_MODE_PROPERTY = "apacheds.entry.cowSafetyMode";
+
+    /** Tells if the shared attributes modifications are checked */
+    private static volatile boolean safetyMode = Boolean.getBoolean( SAFETY_MODE_PROPERTY );
+
+    /** Tells if some attributes are still shared with the original entry */
+    private boolean copyOnWrite;
+
+    /** A copy of the original entry, kept in safety mode to check the shared attributes */
+    private Entry snapshot;
+
 
     /**
      * Creates a new instance of ClonedServerEntry.
@@ -75,6 +99,56 @@ public class ClonedServerEntry implements Entry
     }
 
 
+    /**
+     * Creates a new instance of ClonedServerEntry.
+     * 
+     * In copy-on-write mode, the original entry attributes are shared, and only copied
+     * when they are modified.
+     *
+     * @param originalEntry The original entry
+     * @param copyOnWrite Tells if the original attributes are shared instead of being cloned
+     */
+    public ClonedServerEntry( Entry originalEntry, boolean copyOnWrite )
+    {
+        this.originalEntry = originalEntry;
+
+        if ( copyOnWrite )
+        {
+            this.clonedEntry = originalEntry.shallowClone();
+            this.copyOnWrite = true;
+
+            if ( safetyMode )
+            {
+                snapshot = originalEntry.clone();
+            }
+        }
+        else
+        {
+            this.clonedEntry = originalEntry.clone();
+        }
+    }
+
+
+    /**
+     * @return true if the shared attributes modifications are checked
+     */
+    public static boolean isSafetyMode()
+    {
+        return safetyMode;
+    }
+
+
+    /**
+     * Enables or disables the safety mode for the copy-on-write entries created afterward.
+     *
+     * @param safetyMode true to check the shared attributes modifications
+     */
+    public static void setSafetyMode( boolean safetyMode )
+    {
+        ClonedServerEntry.safetyMode = safetyMode;
+    }
+
+
     /**
      * @return the originalEntry
      */
@@ -85,46 +159,191 @@ public class ClonedServerEntry implements Entry
 
 
     /**
-     * @return the cloned Entry
+     * @return the cloned Entry. In copy-on-write mode, the attributes still shared with the
+     * original entry are copied first, as the caller may modify them.
      */
     public Entry getClonedEntry()
     {
+        copyAll();
+
         return clonedEntry;
     }
 
 
+    /**
+     * @return true if some attributes are still shared with the original entry
+     */
+    public boolean isCopyOnWrite()
+    {
+        return copyOnWrite;
+    }
+
+
+    /**
+     * Tells if an attribute of the cloned entry is the original entry's one.
+     */
+    private boolean isShared( Attribute attribute )
+    {
+        AttributeType attributeType = attribute.getAttributeType();
+
+        if ( attributeType != null )
+        {
+            return originalEntry.get( attributeType ) == attribute;
+        }
+        else
+        {
+            return originalEntry.get( attribute.getId() ) == attribute;
+        }
+    }
+
+
+    /**
+     * Replaces a shared attribute by a copy, so that it can be modified.
+     *
+     * @param attribute The cloned entry attribute, may be null
+     * @return The attribute, or its copy if it was shared
+     */
+    private Attribute copyIfShared( Attribute attribute )
+    {
+        if ( !copyOnWrite || ( attribute == null ) )
+        {
+            return attribute;
+        }
+
+        checkSharedState();
+
+        if ( !isShared( attribute ) )
+        {
+            return attribute;
+        }
+
+        Attribute copy = attribute.clone();
+
+        try
+        {
+            clonedEntry.put( copy );
+        }
+        catch ( LdapException le )
+        {
+            // Can't happen, the attribute is already in the entry
+            throw new IllegalStateException( le.getMessage(), le );
+        }
+
+        return copy;
+    }
+
+
+    private void copyIfShared( AttributeType attributeType )
+    {
+        if ( copyOnWrite )
+        {
+            copyIfShared( clonedEntry.get( attributeType ) );
+        }
+    }
+
+
+    private void copyIfShared( String upId )
+    {
+        if ( copyOnWrite )
+        {
+            copyIfShared( clonedEntry.get( upId ) );
+        }
+    }
+
+
+    /**
+     * Copies all the attributes still shared with the original entry.
+     */
+    private void copyAll()
+    {
+        if ( !copyOnWrite )
+        {
+            return;
+        }
+
+        for ( Attribute attribute : new ArrayList<>( clonedEntry.getAttributes() ) )
+        {
+            copyIfShared( attribute );
+        }
+
+        copyOnWrite = false;
+        snapshot = null;
+    }
+
+
+    /**
+     * In safety mode, checks that the attributes shared with the original entry have not been
+     * modified in place.
+     *
+     * @throws IllegalStateException If a shared attribute has been modified
+     */
+    private void checkSharedState()
+    {
+        if ( snapshot == null )
+        {
+            return;
+        }
+
+        for ( Attribute attribute : clonedEntry )
+        {
+            if ( isShared( attribute ) )
+            {
+                Attribute expected = snapshot.get( attribute.getId() );
+
+                if ( !attribute.equals( expected ) )
+                {
+                    throw new IllegalStateException( "The shared attribute " + attribute.getUpId()
+                        + " of the entry " + clonedEntry.getDn() + " has been modified in place" );
+                }
+            }
+        }
+    }
+
+
     public Entry add( AttributeType attributeType, byte[]... values ) throws LdapException
     {
+        copyIfShared( attributeType );
+
         return clonedEntry.add( attributeType, values );
     }
 
 
     public Entry add( AttributeType attributeType, String... values ) throws LdapException
     {
+        copyIfShared( attributeType );
+
         return clonedEntry.add( attributeType, values );
     }
 
 
     public Entry add( AttributeType attributeType, Value... values ) throws LdapException
     {
+        copyIfShared( attributeType );
+
         return clonedEntry.add( attributeType, values );
     }
 
 
     public Entry add( String upId, AttributeType attributeType, byte[]... values ) throws LdapException
     {
+        copyIfShared( attributeType );
+
         return clonedEntry.add( attributeType, values );
     }
 
 
     public Entry add( String upId, AttributeType attributeType, String... values ) throws LdapException
     {
+        copyIfShared( attributeType );
+
         return clonedEntry.add( attributeType, values );
     }
 
 
     public Entry add( String upId, AttributeType attributeType, Value... values ) throws LdapException
     {
+        copyIfShared( attributeType );
+
         return clonedEntry.add( attributeType, values );
     }
 
@@ -155,7 +374,7 @@ public class ClonedServerEntry implements Entry
 
     public Attribute get( AttributeType attributeType )
     {
-        return clonedEntry.get( attributeType );
+        return copyIfShared( clonedEntry.get( attributeType ) );
     }
 
 
@@ -164,6 +383,8 @@ public class ClonedServerEntry implements Entry
      */
     public Collection<Attribute> getAttributes()
     {
+        checkSharedState();
+
         return clonedEntry.getAttributes();
     }
 
@@ -212,18 +433,24 @@ public class ClonedServerEntry implements Entry
 
     public boolean remove( AttributeType attributeType, byte[]... values ) throws LdapException
     {
+        copyIfShared( attributeType );
+
         return clonedEntry.remove( attributeType, values );
     }
 
 
     public boolean remove( AttributeType attributeType, String... values ) throws LdapException
     {
+        copyIfShared( attributeType );
+
         return clonedEntry.remove( attributeType, values );
     }
 
 
     public boolean remove( AttributeType attributeType, Value... values ) throws LdapException
     {
+        copyIfShared( attributeType );
+
         return clonedEntry.remove( attributeType, values );
     }
 
@@ -242,24 +469,45 @@ public class ClonedServerEntry implements Entry
 
     public Entry add( Attribute... attributes ) throws LdapException
     {
+        if ( copyOnWrite )
+        {
+            for ( Attribute attribute : attributes )
+            {
+                if ( attribute.getAttributeType() != null )
+                {
+                    copyIfShared( attribute.getAttributeType() );
+                }
+                else
+                {
+                    copyIfShared( attribute.getUpId() );
+                }
+            }
+        }
+
         return clonedEntry.add( attributes );
     }
 
 
     public Entry add( String upId, String... values ) throws LdapException
     {
+        copyIfShared( upId );
+
         return clonedEntry.add( upId, values );
     }
 
 
     public Entry add( String upId, byte[]... values ) throws LdapException
     {
+        copyIfShared( upId );
+
         return clonedEntry.add( upId, values );
     }
 
 
     public Entry add( String upId, Value... values ) throws LdapException
     {
+        copyIfShared( upId );
+
         return clonedEntry.add( upId, values );
     }
 
@@ -302,7 +550,7 @@ public class ClonedServerEntry implements Entry
 
     public Attribute get( String alias )
     {
-        return clonedEntry.get( alias );
+        return copyIfShared( clonedEntry.get( alias ) );
     }
 
 
@@ -329,6 +577,8 @@ public class ClonedServerEntry implements Entry
 
     public Iterator<Attribute> iterator()
     {
+        checkSharedState();
+
         return clonedEntry.iterator();
     }
 
@@ -359,18 +609,24 @@ public class ClonedServerEntry implements Entry
 
     public boolean remove( String upId, byte[]... values ) throws LdapException
     {
+        copyIfShared( upId );
+
         return clonedEntry.remove( upId, values );
     }
 
 
     public boolean remove( String upId, String... values ) throws LdapException
     {
+        copyIfShared( upId );
+
         return clonedEntry.remove( upId, values );
     }
 
 
     public boolean remove( String upId, Value... values ) throws LdapException
     {
+        copyIfShared( upId );
+
         return clonedEntry.remove( upId, values );
     }
 
@@ -439,12 +695,16 @@ public class ClonedServerEntry implements Entry
 
     public Entry clone()
     {
+        checkSharedState();
+
         return clonedEntry.clone();
     }
 
 
     public Entry shallowClone()
     {
+        copyAll();
+
         return clonedEntry.shallowClone();
     }
 
@@ -475,7 +735,7 @@ public class ClonedServerEntry implements Entry
 
         if ( obj instanceof ClonedServerEntry )
         {
-            other = ( ( ClonedServerEntry ) obj ).getClonedEntry();
+            other = ( ( ClonedServerEntry ) obj ).clonedEntry;
         }
         else if ( obj instanceof Entry )
         {
@@ -0,0 +1,874 @@
+/*
+ *   Licensed to the Apache Software Foundation (ASF) under one
+ *   or more contributor license agreements.  See the NOTICE file
+ *   distributed with this work for additional information
+ *   regarding copyright ownership.  The ASF licenses this file
+ *   to you under the Apache License, Version 2.0 (the
+ *   "License"); you may not use this file except in compliance
+ *   with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ *
+ */
+package org.apache.directory.server.core.api.entry;
+
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.directory.api.ldap.model.constants.SchemaConstants;
+import org.apache.directory.api.ldap.model.entry.Attribute;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.entry.Value;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.exception.LdapInvalidDnException;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.schema.AttributeType;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.api.util.Strings;
+import org.apache.directory.server.i18n.I18n;
+
+
+/**
+ * An Entry which attributes are decoded on demand. The backend gives the list of the
+ * stored AttributeTypes, and an attribute is only decoded when it is accessed by its
+ * AttributeType or its name. Any operation needing the whole entry (iterating over the
+ * attributes, comparing entries, etc) decodes all the remaining attributes.
+ * <br>
+ * The decoded attributes are stored in a {@link DefaultEntry}, to which all the operations
+ * are delegated. Cloning a LazyEntry does not decode anything : the clone shares the stored
+ * data with the original entry, and decodes its own copy of the attributes.
+ * <br>
+ * As the entries are shared through the partition caches, the decoding is synchronized.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public abstract class LazyEntry implements Entry, Cloneable
+{
+    /** The schemaManager reference */
+    protected final transient SchemaManager schemaManager;
+
+    /** The AttributeTypes of the stored attributes */
+    private final AttributeType[] attributeTypes;
+
+    /** Tells if a stored attribute has been decoded, or discarded */
+    private boolean[] resolved;
+
+    /** The number of stored attributes not yet decoded nor discarded */
+    private int pending;
+
+    /** The decoded attributes, and the ones added since the entry has been read */
+    private Entry entry;
+
+
+    /**
+     * Creates a new instance of LazyEntry.
+     *
+     * @param schemaManager The reference to the global schemaManager
+     * @param dn The entry's Dn
+     * @param attributeTypes The AttributeTypes of the stored attributes
+     */
+    protected LazyEntry( SchemaManager schemaManager, Dn dn, AttributeType[] attributeTypes )
+    {
+        this.schemaManager = schemaManager;
+        this.attributeTypes = attributeTypes;
+        resolved = new boolean[attributeTypes.length];
+        pending = attributeTypes.length;
+        entry = new DefaultEntry( schemaManager, dn );
+    }
+
+
+    /**
+     * Decodes one of the stored attributes.
+     *
+     * @param index The position of the attribute in the AttributeTypes array
+     * @param attributeType The attribute's AttributeType
+     * @return The decoded attribute
+     * @throws LdapException If the attribute cannot be decoded
+     */
+    protected abstract Attribute decode( int index, AttributeType attributeType ) throws LdapException;
+
+
+    /**
+     * @return The number of stored attributes which have not been decoded yet
+     */
+    public synchronized int getPendingCount()
+    {
+        return pending;
+    }
+
+
+    /**
+     * Gives the AttributeTypes present in this entry, without decoding any attribute.
+     *
+     * @return The list of AttributeTypes
+     */
+    public synchronized List<AttributeType> getAttributeTypes()
+    {
+        List<AttributeType> types = new ArrayList<>( pending + entry.size() );
+
+        for ( int i = 0; i < attributeTypes.length; i++ )
+        {
+            if ( !resolved[i] )
+            {
+                types.add( attributeTypes[i] );
+            }
+        }
+
+        for ( Attribute attribute : entry )
+        {
+            types.add( attribute.getAttributeType() );
+        }
+
+        return types;
+    }
+
+
+    /**
+     * Decodes the stored attribute with the given AttributeType, if it has not been done yet.
+     */
+    private synchronized void resolve( AttributeType attributeType )
+    {
+        if ( attributeType == null )
+        {
+            resolveAll();
+
+            return;
+        }
+
+        int index = indexOf( attributeType );
+
+        if ( index >= 0 )
+        {
+            load( index );
+        }
+    }
+
+
+    /**
+     * Decodes all the stored attributes which have not been decoded yet.
+     */
+    private synchronized void resolveAll()
+    {
+        if ( pending == 0 )
+        {
+            return;
+        }
+
+        for ( int i = 0; i < attributeTypes.length; i++ )
+        {
+            if ( !resolved[i] )
+            {
+                load( i );
+            }
+        }
+    }
+
+
+    /**
+     * Forgets about a stored attribute, without decoding it. Used when the attribute is
+     * going to be removed or replaced.
+     */
+    private synchronized void discard( AttributeType attributeType )
+    {
+        if ( attributeType == null )
+        {
+            resolveAll();
+
+            return;
+        }
+
+        int index = indexOf( attributeType );
+
+        if ( index >= 0 )
+        {
+            resolved[index] = true;
+            pending--;
+        }
+    }
+
+
+    private void load( int index )
+    {
+        try
+        {
+            entry.put( decode( index, attributeTypes[index] ) );
+        }
+        catch ( LdapException le )
+        {
+            throw new IllegalStateException( le.getMessage(), le );
+        }
+
+        resolved[index] = true;
+        pending--;
+    }
+
+
+    /**
+     * @return The position of an AttributeType not yet resolved, or -1
+     */
+    private int indexOf( AttributeType attributeType )
+    {
+        if ( pending == 0 )
+        {
+            return -1;
+        }
+
+        String oid = attributeType.getOid();
+
+        for ( int i = 0; i < attributeTypes.length; i++ )
+        {
+            if ( !resolved[i] && attributeTypes[i].getOid().equals( oid ) )
+            {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+
+    /**
+     * @return The AttributeType for an attribute ID, or null if unknown
+     */
+    private AttributeType lookup( String upId )
+    {
+        String id = Strings.trim( upId );
+
+        if ( Strings.isEmpty( id ) || ( schemaManager == null ) )
+        {
+            return null;
+        }
+
+        return schemaManager.getAttributeType( id );
+    }
+
+
+    private void resolve( String upId )
+    {
+        resolve( lookup( upId ) );
+    }
+
+
+    private void resolve( Attribute... attributes )
+    {
+        if ( attributes == null )
+        {
+            return;
+        }
+
+        for ( Attribute attribute : attributes )
+        {
+            if ( attribute != null )
+            {
+                resolve( attribute.getAttributeType() );
+            }
+        }
+    }
+
+
+    private void resolveObjectClass()
+    {
+        resolve( lookup( SchemaConstants.OBJECT_CLASS_AT_OID ) );
+    }
+
+
+    /**
+     * @return The decoded entry, after having decoded all the stored attributes
+     */
+    private synchronized Entry materialize()
+    {
+        resolveAll();
+
+        return entry;
+    }
+
+
+    public synchronized Entry add( AttributeType attributeType, byte[]... values ) throws LdapException
+    {
+        resolve( attributeType );
+
+        return entry.add( attributeType, values );
+    }
+
+
+    public synchronized Entry add( AttributeType attributeType, String... values ) throws LdapException
+    {
+        resolve( attributeType );
+
+        return entry.add( attributeType, values );
+    }
+
+
+    public synchronized Entry add( AttributeType attributeType, Value... values ) throws LdapException
+    {
+        resolve( attributeType );
+
+        return entry.add( attributeType, values );
+    }
+
+
+    public synchronized Entry add( String upId, AttributeType attributeType, byte[]... values ) throws LdapException
+    {
+        resolve( attributeType );
+
+        return entry.add( upId, attributeType, values );
+    }
+
+
+    public synchronized Entry add( String upId, AttributeType attributeType, String... values ) throws LdapException
+    {
+        resolve( attributeType );
+
+        return entry.add( upId, attributeType, values );
+    }
+
+
+    public synchronized Entry add( String upId, AttributeType attributeType, Value... values ) throws LdapException
+    {
+        resolve( attributeType );
+
+        return entry.add( upId, attributeType, values );
+    }
+
+
+    public synchronized boolean contains( AttributeType attributeType, byte[]... values )
+    {
+        resolve( attributeType );
+
+        return entry.contains( attributeType, values );
+    }
+
+
+    public synchronized boolean contains( AttributeType attributeType, String... values )
+    {
+        resolve( attributeType );
+
+        return entry.contains( attributeType, values );
+    }
+
+
+    public synchronized boolean contains( AttributeType attributeType, Value... values )
+    {
+        resolve( attributeType );
+
+        return entry.contains( attributeType, values );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * The attribute is not decoded.
+     */
+    public synchronized boolean containsAttribute( AttributeType attributeType )
+    {
+        if ( ( attributeType != null ) && ( indexOf( attributeType ) >= 0 ) )
+        {
+            return true;
+        }
+
+        return entry.containsAttribute( attributeType );
+    }
+
+
+    public synchronized Attribute get( AttributeType attributeType )
+    {
+        resolve( attributeType );
+
+        return entry.get( attributeType );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public synchronized Collection<Attribute> getAttributes()
+    {
+        return materialize().getAttributes();
+    }
+
+
+    public synchronized boolean hasObjectClass( Attribute... objectClasses )
+    {
+        resolveObjectClass();
+
+        return entry.hasObjectClass( objectClasses );
+    }
+
+
+    public synchronized Attribute put( AttributeType attributeType, byte[]... values ) throws LdapException
+    {
+        discard( attributeType );
+
+        return entry.put( attributeType, values );
+    }
+
+
+    public synchronized Attribute put( AttributeType attributeType, String... values ) throws LdapException
+    {
+        discard( attributeType );
+
+        return entry.put( attributeType, values );
+    }
+
+
+    public synchronized Attribute put( AttributeType attributeType, Value... values ) throws LdapException
+    {
+        discard( attributeType );
+
+        return entry.put( attributeType, values );
+    }
+
+
+    public synchronized Attribute put( String upId, AttributeType attributeType, byte[]... values )
+        throws LdapException
+    {
+        discard( attributeType );
+
+        return entry.put( upId, attributeType, values );
+    }
+
+
+    public synchronized Attribute put( String upId, AttributeType attributeType, String... values )
+        throws LdapException
+    {
+        discard( attributeType );
+
+        return entry.put( upId, attributeType, values );
+    }
+
+
+    public synchronized Attribute put( String upId, AttributeType attributeType, Value... values )
+        throws LdapException
+    {
+        discard( attributeType );
+
+        return entry.put( upId, attributeType, values );
+    }
+
+
+    public synchronized boolean remove( AttributeType attributeType, byte[]... values ) throws LdapException
+    {
+        resolve( attributeType );
+
+        return entry.remove( attributeType, values );
+    }
+
+
+    public synchronized boolean remove( AttributeType attributeType, String... values ) throws LdapException
+    {
+        resolve( attributeType );
+
+        return entry.remove( attributeType, values );
+    }
+
+
+    public synchronized boolean remove( AttributeType attributeType, Value... values ) throws LdapException
+    {
+        resolve( attributeType );
+
+        return entry.remove( attributeType, values );
+    }
+
+
+    public synchronized List<Attribute> remove( Attribute... attributes ) throws LdapException
+    {
+        resolve( attributes );
+
+        return entry.remove( attributes );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * The removed attributes are not decoded.
+     */
+    public synchronized void removeAttributes( AttributeType... attributes )
+    {
+        if ( attributes != null )
+        {
+            for ( AttributeType attributeType : attributes )
+            {
+                if ( attributeType != null )
+                {
+                    discard( attributeType );
+                }
+            }
+        }
+
+        entry.removeAttributes( attributes );
+    }
+
+
+    public synchronized Entry add( Attribute... attributes ) throws LdapException
+    {
+        resolve( attributes );
+
+        return entry.add( attributes );
+    }
+
+
+    public synchronized Entry add( String upId, String... values ) throws LdapException
+    {
+        resolve( upId );
+
+        return entry.add( upId, values );
+    }
+
+
+    public synchronized Entry add( String upId, byte[]... values ) throws LdapException
+    {
+        resolve( upId );
+
+        return entry.add( upId, values );
+    }
+
+
+    public synchronized Entry add( String upId, Value... values ) throws LdapException
+    {
+        resolve( upId );
+
+        return entry.add( upId, values );
+    }
+
+
+    public synchronized void clear()
+    {
+        for ( int i = 0; i < attributeTypes.length; i++ )
+        {
+            resolved[i] = true;
+        }
+
+        pending = 0;
+        entry.clear();
+    }
+
+
+    public synchronized boolean contains( Attribute... attributes )
+    {
+        resolve( attributes );
+
+        return entry.contains( attributes );
+    }
+
+
+    public synchronized boolean contains( String upId, byte[]... values )
+    {
+        resolve( upId );
+
+        return entry.contains( upId, values );
+    }
+
+
+    public synchronized boolean contains( String upId, String... values )
+    {
+        resolve( upId );
+
+        return entry.contains( upId, values );
+    }
+
+
+    public synchronized boolean contains( String upId, Value... values )
+    {
+        resolve( upId );
+
+        return entry.contains( upId, values );
+    }
+
+
+    public synchronized boolean containsAttribute( String... attributes )
+    {
+        if ( attributes == null )
+        {
+            return entry.containsAttribute( attributes );
+        }
+
+        for ( String attribute : attributes )
+        {
+            AttributeType attributeType = lookup( attribute );
+
+            if ( attributeType == null )
+            {
+                resolveAll();
+            }
+            else if ( indexOf( attributeType ) >= 0 )
+            {
+                continue;
+            }
+
+            if ( !entry.containsAttribute( attribute ) )
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+
+    public synchronized Attribute get( String alias )
+    {
+        resolve( alias );
+
+        return entry.get( alias );
+    }
+
+
+    public synchronized Dn getDn()
+    {
+        return entry.getDn();
+    }
+
+
+    public synchronized boolean hasObjectClass( String... objectClasses )
+    {
+        resolveObjectClass();
+
+        return entry.hasObjectClass( objectClasses );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean isSchemaAware()
+    {
+        return entry.isSchemaAware();
+    }
+
+
+    public synchronized Iterator<Attribute> iterator()
+    {
+        return materialize().iterator();
+    }
+
+
+    public synchronized List<Attribute> put( Attribute... attributes ) throws LdapException
+    {
+        if ( attributes != null )
+        {
+            for ( Attribute attribute : attributes )
+            {
+                if ( attribute != null )
+                {
+                    discard( attribute.getAttributeType() );
+                }
+            }
+        }
+
+        return entry.put( attributes );
+    }
+
+
+    public synchronized Attribute put( String upId, byte[]... values )
+    {
+        discard( lookup( upId ) );
+
+        return entry.put( upId, values );
+    }
+
+
+    public synchronized Attribute put( String upId, String... values )
+    {
+        discard( lookup( upId ) );
+
+        return entry.put( upId, values );
+    }
+
+
+    public synchronized Attribute put( String upId, Value... values )
+    {
+        discard( lookup( upId ) );
+
+        return entry.put( upId, values );
+    }
+
+
+    public synchronized boolean remove( String upId, byte[]... values ) throws LdapException
+    {
+        resolve( upId );
+
+        return entry.remove( upId, values );
+    }
+
+
+    public synchronized boolean remove( String upId, String... values ) throws LdapException
+    {
+        resolve( upId );
+
+        return entry.remove( upId, values );
+    }
+
+
+    public synchronized boolean remove( String upId, Value... values ) throws LdapException
+    {
+        resolve( upId );
+
+        return entry.remove( upId, values );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * The removed attributes are not decoded.
+     */
+    public synchronized void removeAttributes( String... attributes )
+    {
+        if ( attributes != null )
+        {
+            for ( String attribute : attributes )
+            {
+                discard( lookup( attribute ) );
+            }
+        }
+
+        entry.removeAttributes( attributes );
+    }
+
+
+    public synchronized void setDn( Dn dn )
+    {
+        entry.setDn( dn );
+    }
+
+
+    public synchronized void setDn( String dn ) throws LdapInvalidDnException
+    {
+        entry.setDn( dn );
+    }
+
+
+    public synchronized int size()
+    {
+        return pending + entry.size();
+    }
+
+
+    /**
+     * @see java.io.Externalizable#readExternal(ObjectInput)
+     *
+     * We can't use this method for a LazyEntry
+     */
+    public void readExternal( ObjectInput in ) throws IOException, ClassNotFoundException
+    {
+        throw new IllegalStateException( I18n.err( I18n.ERR_455 ) );
+    }
+
+
+    /**
+     * @see java.io.Externalizable#writeExternal(ObjectOutput)
+     */
+    public void writeExternal( ObjectOutput out ) throws IOException
+    {
+        materialize().writeExternal( out );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * The stored attributes are not decoded : the clone will decode them when needed.
+     */
+    public synchronized Entry clone()
+    {
+        LazyEntry clone = copy();
+        clone.entry = entry.clone();
+
+        return clone;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public synchronized Entry shallowClone()
+    {
+        LazyEntry clone = copy();
+        clone.entry = entry.shallowClone();
+
+        return clone;
+    }
+
+
+    private LazyEntry copy()
+    {
+        try
+        {
+            LazyEntry clone = ( LazyEntry ) super.clone();
+            clone.resolved = resolved.clone();
+
+            return clone;
+        }
+        catch ( CloneNotSupportedException cnse )
+        {
+            // Can't happen, we are Cloneable
+            throw new IllegalStateException( cnse.getMessage(), cnse );
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode()
+    {
+        return materialize().hashCode();
+    }
+
+
+    /**
+     * @see Object#equals(Object);
+     */
+    @Override
+    public boolean equals( Object obj )
+    {
+        // Short circuit
+        if ( this == obj )
+        {
+            return true;
+        }
+
+        if ( !( obj instanceof Entry ) )
+        {
+            return false;
+        }
+
+        return materialize().equals( obj );
+    }
+
+
+    /**
+     * @see Object#toString()
+     */
+    @Override
+    public String toString()
+    {
+        return toString( "" );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public String toString( String tabs )
+    {
+        return materialize().toString( tabs );
+    }
+}
@@ -34,6 +34,7 @@ import org.apache.directory.api.ldap.model.name.Dn;
 import org.apache.directory.api.ldap.model.schema.AttributeType;
 import org.apache.directory.api.ldap.model.schema.MatchingRule;
 import org.apache.directory.api.ldap.model.schema.Normalizer;
+import org.apache.directory.server.core.api.normalization.NormalizationCache;
 import org.apache.directory.server.i18n.I18n;
 
 
@@ -99,7 +100,7 @@ public class SubstringEvaluator implements Evaluator
 
         for ( Value value : attr )
         {
-            String normValue = normalizer.normalize( value.getValue() );
+            String normValue = NormalizationCache.normalize( normalizer, value.getValue() );
 
             // Once match is found cleanup and return true
 
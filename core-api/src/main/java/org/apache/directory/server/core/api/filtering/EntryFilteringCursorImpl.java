@@ -416,7 +416,7 @@ public class EntryFilteringCursorImpl extends AbstractCursor<Entry> implements E
             }
             else
             {
-                tempResult = new ClonedServerEntry( tempEntry );
+                tempResult = new ClonedServerEntry( tempEntry, true );
             }
 
             /*
@@ -503,7 +503,7 @@ public class EntryFilteringCursorImpl extends AbstractCursor<Entry> implements E
                 continue;
             }
 
-            tempResult = new ClonedServerEntry/*Search*/( entry );
+            tempResult = new ClonedServerEntry( entry, true );
 
             /*
              * O P T I M I Z A T I O N
@@ -21,8 +21,8 @@ package org.apache.directory.server.core.api.interceptor.context;
 
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
 import org.apache.directory.api.ldap.model.entry.Entry;
@@ -31,6 +31,7 @@ import org.apache.directory.api.ldap.model.message.Control;
 import org.apache.directory.api.ldap.model.name.Dn;
 import org.apache.directory.server.core.api.CoreSession;
 import org.apache.directory.server.core.api.LdapPrincipal;
+import org.apache.directory.server.core.api.interceptor.Interceptor;
 import org.apache.directory.server.core.api.partition.Partition;
 import org.apache.directory.server.core.api.partition.PartitionTxn;
 
@@ -54,17 +55,17 @@ public abstract class AbstractOperationContext implements OperationContext
     /** The original Entry */
     protected Entry originalEntry;
 
-    /** The associated request's controls */
-    protected Map<String, Control> requestControls = new HashMap<>( 4 );
+    /** The associated request's controls. A shared empty map until a control is added */
+    protected Map<String, Control> requestControls = Collections.emptyMap();
 
-    /** The associated response's controls */
-    protected Map<String, Control> responseControls = new HashMap<>( 4 );
+    /** The associated response's controls. A shared empty map until a control is added */
+    protected Map<String, Control> responseControls = Collections.emptyMap();
 
     /** the Interceptors bypassed by this operation */
     protected Collection<String> byPassed;
 
     /** The interceptors to call for this operation */
-    protected List<String> interceptors;
+    protected Interceptor[] interceptors;
 
     /** The current interceptor position */
     protected int currentInterceptor;
@@ -166,7 +167,21 @@ public abstract class AbstractOperationContext implements OperationContext
     @Override
     public void addRequestControl( Control requestControl )
     {
-        requestControls.put( requestControl.getOid(), requestControl );
+        writableRequestControls().put( requestControl.getOid(), requestControl );
+    }
+
+
+    /**
+     * @return The request controls, the map being created when the first control is added
+     */
+    private Map<String, Control> writableRequestControls()
+    {
+        if ( requestControls == Collections.<String, Control>emptyMap() )
+        {
+            requestControls = new HashMap<>( 4 );
+        }
+
+        return requestControls;
     }
 
 
@@ -206,6 +221,11 @@ public abstract class AbstractOperationContext implements OperationContext
     @Override
     public void addResponseControl( Control responseControl )
     {
+        if ( responseControls == Collections.<String, Control>emptyMap() )
+        {
+            responseControls = new HashMap<>( 4 );
+        }
+
         responseControls.put( responseControl.getOid(), responseControl );
     }
 
@@ -273,7 +293,7 @@ public abstract class AbstractOperationContext implements OperationContext
     {
         for ( Control c : requestControls )
         {
-            this.requestControls.put( c.getOid(), c );
+            writableRequestControls().put( c.getOid(), c );
         }
     }
 
@@ -316,7 +336,7 @@ public abstract class AbstractOperationContext implements OperationContext
      * {@inheritDoc}
      */
     @Override
-    public final void setInterceptors( List<String> interceptors )
+    public final void setInterceptors( Interceptor[] interceptors )
     {
         this.interceptors = interceptors;
     }
@@ -326,17 +346,14 @@ public abstract class AbstractOperationContext implements OperationContext
      * {@inheritDoc}
      */
     @Override
-    public final String getNextInterceptor()
+    public final Interceptor getNextInterceptor()
     {
-        if ( currentInterceptor == interceptors.size() )
+        if ( currentInterceptor == interceptors.length )
         {
-            return "FINAL";
+            return null;
         }
 
-        String interceptor = interceptors.get( currentInterceptor );
-        currentInterceptor++;
-
-        return interceptor;
+        return interceptors[currentInterceptor++];
     }
 
 
@@ -362,6 +379,28 @@ public abstract class AbstractOperationContext implements OperationContext
     }
 
 
+    /**
+     * Clears the state of this context, so that it can be used again for another operation of
+     * the same kind. The subclasses holding more state must clear it too.
+     */
+    protected void reset()
+    {
+        dn = null;
+        entry = null;
+        originalEntry = null;
+        requestControls = Collections.emptyMap();
+        responseControls = Collections.emptyMap();
+        byPassed = null;
+        interceptors = null;
+        currentInterceptor = 0;
+        authorizedPrincipal = null;
+        session = null;
+        throwReferral = false;
+        transaction = null;
+        partition = null;
+    }
+
+
     private void setup( AbstractOperationContext opContext )
     {
         opContext.setAuthorizedPrincipal( authorizedPrincipal );
@@ -73,7 +73,7 @@ public class BindOperationContext extends AbstractOperationContext
 
         if ( session != null )
         {
-            setInterceptors( session.getDirectoryService().getInterceptors( OperationEnum.BIND ) );
+            setInterceptors( session.getDirectoryService().getInterceptorChain( OperationEnum.BIND ) );
         }
     }
 
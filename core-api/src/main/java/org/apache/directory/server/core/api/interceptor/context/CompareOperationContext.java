@@ -60,7 +60,7 @@ public class CompareOperationContext extends AbstractOperationContext
 
         if ( session != null )
         {
-            setInterceptors( session.getDirectoryService().getInterceptors( OperationEnum.COMPARE ) );
+            setInterceptors( session.getDirectoryService().getInterceptorChain( OperationEnum.COMPARE ) );
         }
     }
 
@@ -76,7 +76,7 @@ public class CompareOperationContext extends AbstractOperationContext
 
         if ( session != null )
         {
-            setInterceptors( session.getDirectoryService().getInterceptors( OperationEnum.COMPARE ) );
+            setInterceptors( session.getDirectoryService().getInterceptorChain( OperationEnum.COMPARE ) );
         }
     }
 
@@ -93,7 +93,7 @@ public class CompareOperationContext extends AbstractOperationContext
 
         if ( session != null )
         {
-            setInterceptors( session.getDirectoryService().getInterceptors( OperationEnum.COMPARE ) );
+            setInterceptors( session.getDirectoryService().getInterceptorChain( OperationEnum.COMPARE ) );
         }
     }
 
@@ -110,7 +110,7 @@ public class CompareOperationContext extends AbstractOperationContext
 
         if ( session != null )
         {
-            setInterceptors( session.getDirectoryService().getInterceptors( OperationEnum.COMPARE ) );
+            setInterceptors( session.getDirectoryService().getInterceptorChain( OperationEnum.COMPARE ) );
         }
     }
 
@@ -128,7 +128,7 @@ public class CompareOperationContext extends AbstractOperationContext
 
         if ( session != null )
         {
-            setInterceptors( session.getDirectoryService().getInterceptors( OperationEnum.COMPARE ) );
+            setInterceptors( session.getDirectoryService().getInterceptorChain( OperationEnum.COMPARE ) );
         }
     }
 
@@ -142,7 +142,7 @@ public class CompareOperationContext extends AbstractOperationContext
 
         if ( session != null )
         {
-            setInterceptors( session.getDirectoryService().getInterceptors( OperationEnum.COMPARE ) );
+            setInterceptors( session.getDirectoryService().getInterceptorChain( OperationEnum.COMPARE ) );
         }
 
         if ( requestControls.containsKey( ManageDsaIT.OID ) )
@@ -20,6 +20,7 @@
 package org.apache.directory.server.core.api.interceptor.context;
 
 
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -163,6 +164,22 @@ public abstract class FilteringOperationContext extends AbstractOperationContext
     }
 
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void reset()
+    {
+        super.reset();
+        returningAttributes = null;
+        returningAttributesString = null;
+        allOperationalAttributes = false;
+        allUserAttributes = false;
+        noAttributes = false;
+        typesOnly = false;
+    }
+
+
     /**
      * @return the returningAttributes as a Set of AttributeTypeOptions
      */
@@ -255,9 +272,10 @@ public abstract class FilteringOperationContext extends AbstractOperationContext
         {
             // We have something in the list
             // first, ignore all the unkown AT and convert the strings to 
-            // AttributeTypeOptions
-            returningAttributes = new HashSet<AttributeTypeOptions>();
-            Set<String> attributesString = new HashSet<String>();
+            // AttributeTypeOptions. The sets are only created when some attribute
+            // is collected, which is not the case for '*', '+' or '1.1'
+            returningAttributes = Collections.emptySet();
+            Set<String> attributesString = null;
 
             Set<AttributeTypeOptions> collectedAttributes = collectAttributeTypes( attributeIds );
 
@@ -272,6 +290,9 @@ public abstract class FilteringOperationContext extends AbstractOperationContext
             // have the '+' attribute
             if ( collectedAttributes.size() > 0 )
             {
+                returningAttributes = new HashSet<AttributeTypeOptions>();
+                attributesString = new HashSet<String>();
+
                 for ( AttributeTypeOptions attributeTypeOption : collectedAttributes )
                 {
                     if ( attributeTypeOption.getAttributeType().isUser() && !allUserAttributes )
@@ -290,7 +311,7 @@ public abstract class FilteringOperationContext extends AbstractOperationContext
                 }
             }
 
-            if ( attributesString.size() > 0 )
+            if ( ( attributesString != null ) && ( attributesString.size() > 0 ) )
             {
                 // We have some valid attributes, lt's convert it to String
                 returningAttributesString = attributesString.toArray( ArrayUtils.EMPTY_STRING_ARRAY );
@@ -312,7 +333,7 @@ public abstract class FilteringOperationContext extends AbstractOperationContext
 
     private Set<AttributeTypeOptions> collectAttributeTypes( String... attributesIds )
     {
-        Set<AttributeTypeOptions> collectedAttributes = new HashSet<AttributeTypeOptions>();
+        Set<AttributeTypeOptions> collectedAttributes = null;
 
         if ( ( attributesIds != null ) && ( attributesIds.length != 0 ) )
         {
@@ -350,6 +371,11 @@ public abstract class FilteringOperationContext extends AbstractOperationContext
                         .getSchemaManager().lookupAttributeTypeRegistry( id );
                     AttributeTypeOptions attrOptions = new AttributeTypeOptions( attributeType, options );
 
+                    if ( collectedAttributes == null )
+                    {
+                        collectedAttributes = new HashSet<AttributeTypeOptions>();
+                    }
+
                     collectedAttributes.add( attrOptions );
                 }
                 catch ( LdapNoSuchAttributeException nsae )
@@ -367,6 +393,11 @@ public abstract class FilteringOperationContext extends AbstractOperationContext
             }
         }
 
+        if ( collectedAttributes == null )
+        {
+            return Collections.emptySet();
+        }
+
         return collectedAttributes;
     }
 
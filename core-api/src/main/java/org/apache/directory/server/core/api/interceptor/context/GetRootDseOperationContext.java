@@ -42,7 +42,7 @@ public class GetRootDseOperationContext extends AbstractOperationContext
 
         if ( session != null )
         {
-            setInterceptors( session.getDirectoryService().getInterceptors( OperationEnum.GET_ROOT_DSE ) );
+            setInterceptors( session.getDirectoryService().getInterceptorChain( OperationEnum.GET_ROOT_DSE ) );
         }
     }
 
@@ -58,7 +58,7 @@ public class GetRootDseOperationContext extends AbstractOperationContext
 
         if ( session != null )
         {
-            setInterceptors( session.getDirectoryService().getInterceptors( OperationEnum.GET_ROOT_DSE ) );
+            setInterceptors( session.getDirectoryService().getInterceptorChain( OperationEnum.GET_ROOT_DSE ) );
         }
     }
 
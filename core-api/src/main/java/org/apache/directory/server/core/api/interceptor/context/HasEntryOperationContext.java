@@ -43,7 +43,7 @@ public class HasEntryOperationContext extends AbstractOperationContext
 
         if ( session != null )
         {
-            setInterceptors( session.getDirectoryService().getInterceptors( OperationEnum.HAS_ENTRY ) );
+            setInterceptors( session.getDirectoryService().getInterceptorChain( OperationEnum.HAS_ENTRY ) );
         }
     }
 
@@ -59,11 +59,23 @@ public class HasEntryOperationContext extends AbstractOperationContext
 
         if ( session != null )
         {
-            setInterceptors( session.getDirectoryService().getInterceptors( OperationEnum.HAS_ENTRY ) );
+            setInterceptors( session.getDirectoryService().getInterceptorChain( OperationEnum.HAS_ENTRY ) );
         }
     }
 
 
+    /**
+     * Initializes a context taken from the {@link OperationContextPool}, the way the
+     * constructor does.
+     */
+    void init( CoreSession session, Dn entryDn )
+    {
+        this.session = session;
+        this.dn = entryDn;
+        setInterceptors( session.getDirectoryService().getInterceptorChain( OperationEnum.HAS_ENTRY ) );
+    }
+
+
     /**
      * @return the operation name
      */
@@ -47,7 +47,7 @@ public class LookupOperationContext extends FilteringOperationContext
 
         if ( session != null )
         {
-            setInterceptors( session.getDirectoryService().getInterceptors( OperationEnum.LOOKUP ) );
+            setInterceptors( session.getDirectoryService().getInterceptorChain( OperationEnum.LOOKUP ) );
         }
     }
 
@@ -63,7 +63,7 @@ public class LookupOperationContext extends FilteringOperationContext
 
         if ( session != null )
         {
-            setInterceptors( session.getDirectoryService().getInterceptors( OperationEnum.LOOKUP ) );
+            setInterceptors( session.getDirectoryService().getInterceptorChain( OperationEnum.LOOKUP ) );
         }
     }
 
@@ -79,7 +79,7 @@ public class LookupOperationContext extends FilteringOperationContext
         
         if ( session != null )
         {
-            setInterceptors( session.getDirectoryService().getInterceptors( OperationEnum.LOOKUP ) );
+            setInterceptors( session.getDirectoryService().getInterceptorChain( OperationEnum.LOOKUP ) );
         }
     }
 
@@ -95,11 +95,35 @@ public class LookupOperationContext extends FilteringOperationContext
         
         if ( session != null )
         {
-            setInterceptors( session.getDirectoryService().getInterceptors( OperationEnum.LOOKUP ) );
+            setInterceptors( session.getDirectoryService().getInterceptorChain( OperationEnum.LOOKUP ) );
         }
     }
 
 
+    /**
+     * Initializes a context taken from the {@link OperationContextPool}, the way the
+     * constructor does.
+     */
+    void init( CoreSession session, Dn dn, String... returningAttributes )
+    {
+        this.session = session;
+        this.dn = dn;
+        setReturningAttributes( returningAttributes );
+        setInterceptors( session.getDirectoryService().getInterceptorChain( OperationEnum.LOOKUP ) );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void reset()
+    {
+        super.reset();
+        syncreplLookup = false;
+    }
+
+
     /**
      * @return the operation name
      */
@@ -56,7 +56,7 @@ public class MoveAndRenameOperationContext extends RenameOperationContext
 
         if ( session != null )
         {
-            setInterceptors( session.getDirectoryService().getInterceptors( OperationEnum.MOVE_AND_RENAME ) );
+            setInterceptors( session.getDirectoryService().getInterceptorChain( OperationEnum.MOVE_AND_RENAME ) );
         }
     }
 
@@ -76,7 +76,7 @@ public class MoveAndRenameOperationContext extends RenameOperationContext
 
         if ( session != null )
         {
-            setInterceptors( session.getDirectoryService().getInterceptors( OperationEnum.MOVE_AND_RENAME ) );
+            setInterceptors( session.getDirectoryService().getInterceptorChain( OperationEnum.MOVE_AND_RENAME ) );
         }
 
         try
@@ -110,7 +110,7 @@ public class MoveAndRenameOperationContext extends RenameOperationContext
 
         if ( session != null )
         {
-            setInterceptors( session.getDirectoryService().getInterceptors( OperationEnum.MOVE_AND_RENAME ) );
+            setInterceptors( session.getDirectoryService().getInterceptorChain( OperationEnum.MOVE_AND_RENAME ) );
         }
 
         if ( newSuperiorDn == null )
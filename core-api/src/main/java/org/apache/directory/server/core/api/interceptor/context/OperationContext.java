@@ -20,14 +20,13 @@
 package org.apache.directory.server.core.api.interceptor.context;
 
 
-import java.util.List;
-
 import org.apache.directory.api.ldap.model.entry.Entry;
 import org.apache.directory.api.ldap.model.exception.LdapException;
 import org.apache.directory.api.ldap.model.message.Control;
 import org.apache.directory.api.ldap.model.name.Dn;
 import org.apache.directory.server.core.api.CoreSession;
 import org.apache.directory.server.core.api.LdapPrincipal;
+import org.apache.directory.server.core.api.interceptor.Interceptor;
 import org.apache.directory.server.core.api.partition.Partition;
 import org.apache.directory.server.core.api.partition.PartitionTxn;
 
@@ -216,20 +215,22 @@ public interface OperationContext
 
 
     /**
-     * Gets the next interceptor in the list of interceptors. The
-     * position in the list will be incremented.
+     * Gets the next interceptor in the chain of interceptors. The
+     * position in the chain will be incremented.
      * 
-     * @return The next interceptor from the list of interceptors
+     * @return The next interceptor from the chain of interceptors, or null if
+     * they have all been called
      */
-    String getNextInterceptor();
+    Interceptor getNextInterceptor();
 
 
     /**
-     * Sets the list of interceptors to go through for an operation
+     * Sets the chain of interceptors to go through for an operation. The array
+     * is shared and is never modified.
      * 
-     * @param interceptors The list of interceptors
+     * @param interceptors The chain of interceptors
      */
-    void setInterceptors( List<String> interceptors );
+    void setInterceptors( Interceptor[] interceptors );
 
 
     /**
@@ -0,0 +1,221 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.api.interceptor.context;
+
+
+import java.lang.reflect.Method;
+
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.server.core.api.CoreSession;
+
+
+/**
+ * A per-thread pool of the operation contexts used on the read path : the lookup and hasEntry
+ * operations are done many times for each request, by the client and by the interceptors, and
+ * their contexts never outlive the call. Each thread keeps a few of them, which are reset when
+ * they are released and initialized again when they are acquired.
+ * <br>
+ * A context must be released by the thread which acquired it, once the operation is done, and
+ * must not be used afterward. The nested operations acquire distinct contexts.
+ * <br>
+ * A virtual thread processes a single request and is not reused, so its pool would be created
+ * for a few operations and then dropped : the virtual threads don't pool their contexts.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public final class OperationContextPool
+{
+    /** The maximum number of contexts of each kind kept by a thread */
+    public static final int MAX_POOLED = 8;
+
+    /** The pooled contexts of the current thread */
+    private static final ThreadLocal<OperationContextPool> POOLS = new ThreadLocal<OperationContextPool>()
+    {
+        @Override
+        protected OperationContextPool initialValue()
+        {
+            return new OperationContextPool();
+        }
+    };
+
+    /** The Thread.isVirtual() method, null if the JDK does not support the virtual threads */
+    private static final Method IS_VIRTUAL;
+
+    static
+    {
+        Method isVirtual = null;
+
+        try
+        {
+            isVirtual = Thread.class.getMethod( "isVirtual" );
+        }
+        catch ( NoSuchMethodException nsme )
+        {
+            // Not supported before Java 21
+        }
+
+        IS_VIRTUAL = isVirtual;
+    }
+
+    /** The free lookup contexts */
+    private final LookupOperationContext[] lookupContexts = new LookupOperationContext[MAX_POOLED];
+
+    /** The number of free lookup contexts */
+    private int nbLookupContexts;
+
+    /** The free hasEntry contexts */
+    private final HasEntryOperationContext[] hasEntryContexts = new HasEntryOperationContext[MAX_POOLED];
+
+    /** The number of free hasEntry contexts */
+    private int nbHasEntryContexts;
+
+
+    /**
+     * Private constructor, the pools are only accessed through the static methods
+     */
+    private OperationContextPool()
+    {
+    }
+
+
+    /**
+     * @return The pool of the current thread, or null if it's a virtual thread
+     */
+    private static OperationContextPool getPool()
+    {
+        if ( IS_VIRTUAL != null )
+        {
+            try
+            {
+                if ( ( Boolean ) IS_VIRTUAL.invoke( Thread.currentThread() ) )
+                {
+                    return null;
+                }
+            }
+            catch ( ReflectiveOperationException roe )
+            {
+                // Can't happen, the method is public
+            }
+        }
+
+        return POOLS.get();
+    }
+
+
+    /**
+     * Gets a lookup context, initialized the same way the
+     * {@link LookupOperationContext#LookupOperationContext(CoreSession, Dn, String...)}
+     * constructor does.
+     *
+     * @param session The session
+     * @param dn The Dn of the entry to lookup
+     * @param returningAttributes The attributes to return
+     * @return A lookup context, to be released with {@link #release(LookupOperationContext)}
+     */
+    public static LookupOperationContext acquireLookupContext( CoreSession session, Dn dn,
+        String... returningAttributes )
+    {
+        OperationContextPool pool = getPool();
+
+        if ( ( pool == null ) || ( pool.nbLookupContexts == 0 ) )
+        {
+            return new LookupOperationContext( session, dn, returningAttributes );
+        }
+
+        pool.nbLookupContexts--;
+        LookupOperationContext lookupContext = pool.lookupContexts[pool.nbLookupContexts];
+        pool.lookupContexts[pool.nbLookupContexts] = null;
+        lookupContext.init( session, dn, returningAttributes );
+
+        return lookupContext;
+    }
+
+
+    /**
+     * Gives back a lookup context. It's reset, and kept if the pool is not full.
+     *
+     * @param lookupContext The context to release
+     */
+    public static void release( LookupOperationContext lookupContext )
+    {
+        if ( lookupContext == null )
+        {
+            return;
+        }
+
+        lookupContext.reset();
+
+        OperationContextPool pool = getPool();
+
+        if ( ( pool != null ) && ( pool.nbLookupContexts < MAX_POOLED ) )
+        {
+            pool.lookupContexts[pool.nbLookupContexts++] = lookupContext;
+        }
+    }
+
+
+    /**
+     * Gets a hasEntry context, initialized the same way the
+     * {@link HasEntryOperationContext#HasEntryOperationContext(CoreSession, Dn)} constructor does.
+     *
+     * @param session The session
+     * @param dn The Dn of the entry to check
+     * @return A hasEntry context, to be released with {@link #release(HasEntryOperationContext)}
+     */
+    public static HasEntryOperationContext acquireHasEntryContext( CoreSession session, Dn dn )
+    {
+        OperationContextPool pool = getPool();
+
+        if ( ( pool == null ) || ( pool.nbHasEntryContexts == 0 ) )
+        {
+            return new HasEntryOperationContext( session, dn );
+        }
+
+        pool.nbHasEntryContexts--;
+        HasEntryOperationContext hasEntryContext = pool.hasEntryContexts[pool.nbHasEntryContexts];
+        pool.hasEntryContexts[pool.nbHasEntryContexts] = null;
+        hasEntryContext.init( session, dn );
+
+        return hasEntryContext;
+    }
+
+
+    /**
+     * Gives back a hasEntry context. It's reset, and kept if the pool is not full.
+     *
+     * @param hasEntryContext The context to release
+     */
+    public static void release( HasEntryOperationContext hasEntryContext )
+    {
+        if ( hasEntryContext == null )
+        {
+            return;
+        }
+
+        hasEntryContext.reset();
+
+        OperationContextPool pool = getPool();
+
+        if ( ( pool != null ) && ( pool.nbHasEntryContexts < MAX_POOLED ) )
+        {
+            pool.hasEntryContexts[pool.nbHasEntryContexts++] = hasEntryContext;
+        }
+    }
+}
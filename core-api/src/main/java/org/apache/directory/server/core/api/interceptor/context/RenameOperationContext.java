@@ -59,7 +59,7 @@ public class RenameOperationContext extends AbstractChangeOperationContext
 
         if ( session != null )
         {
-            setInterceptors( session.getDirectoryService().getInterceptors( OperationEnum.RENAME ) );
+            setInterceptors( session.getDirectoryService().getInterceptorChain( OperationEnum.RENAME ) );
         }
     }
 
@@ -79,7 +79,7 @@ public class RenameOperationContext extends AbstractChangeOperationContext
 
         if ( session != null )
         {
-            setInterceptors( session.getDirectoryService().getInterceptors( OperationEnum.RENAME ) );
+            setInterceptors( session.getDirectoryService().getInterceptorChain( OperationEnum.RENAME ) );
         }
     }
 
@@ -91,7 +91,7 @@ public class RenameOperationContext extends AbstractChangeOperationContext
 
         if ( session != null )
         {
-            setInterceptors( session.getDirectoryService().getInterceptors( OperationEnum.RENAME ) );
+            setInterceptors( session.getDirectoryService().getInterceptorChain( OperationEnum.RENAME ) );
         }
 
         if ( newRdn == null )
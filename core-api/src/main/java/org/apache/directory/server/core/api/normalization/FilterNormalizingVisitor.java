@@ -142,7 +142,7 @@ public class FilterNormalizingVisitor implements FilterVisitor
 
             if ( attributeType.getSyntax().isHumanReadable() )
             {
-                normalized = new Value( attributeType, value.getValue() );
+                normalized = NormalizationCache.normalize( attributeType, value.getValue() );
             }
             else
             {
@@ -245,7 +245,8 @@ public class FilterNormalizingVisitor implements FilterVisitor
 
         if ( node.getInitial() != null )
         {
-            String normalizedInitial = normalizer.normalize( node.getInitial(), AssertionType.SUBSTRING_INITIAL );
+            String normalizedInitial = NormalizationCache.normalize( normalizer, node.getInitial(),
+                AssertionType.SUBSTRING_INITIAL );
 
             node.setInitial( normalizedInitial );
         }
@@ -258,7 +259,8 @@ public class FilterNormalizingVisitor implements FilterVisitor
 
             for ( String any : node.getAny() )
             {
-                String normalizedAny = normalizer.normalize( any, AssertionType.SUBSTRING_ANY );
+                String normalizedAny = NormalizationCache.normalize( normalizer, any,
+                    AssertionType.SUBSTRING_ANY );
 
                 if ( normalizedAny != null )
                 {
@@ -274,7 +276,8 @@ public class FilterNormalizingVisitor implements FilterVisitor
 
         if ( node.getFinal() != null )
         {
-            String normalizedFinal = normalizer.normalize( node.getFinal(), AssertionType.SUBSTRING_FINAL );
+            String normalizedFinal = NormalizationCache.normalize( normalizer, node.getFinal(),
+                AssertionType.SUBSTRING_FINAL );
 
             if ( normalizedFinal != null )
             {
@@ -0,0 +1,283 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.api.normalization;
+
+
+import org.apache.directory.api.ldap.model.entry.Value;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.schema.AttributeType;
+import org.apache.directory.api.ldap.model.schema.Normalizer;
+import org.apache.directory.api.ldap.model.schema.PrepareString.AssertionType;
+import org.apache.directory.server.core.api.TinyLfuCache;
+
+
+/**
+ * A server wide cache of the normalized forms of the values used over and over, like the
+ * objectClass values, the common group DNs or the status flags. The schema normalizers, and
+ * PrepareString, are costly, and the same values are normalized by each filter, each index
+ * lookup and each update using them.
+ * <br>
+ * The normalized forms are keyed by the normalizer, or by the attribute type for the
+ * normalized {@link Value}s, and by the user provided value. The normalizers and the attribute
+ * types are compared by identity : when the schema is modified, the entries computed with
+ * the former schema objects are just not used anymore, and are evicted. The values longer
+ * than {@link #MAX_VALUE_LENGTH} are not cached, and the normalizations which fail are not
+ * either.
+ * <br>
+ * The capacity is given by the {@link #CAPACITY_PROPERTY} system property, the cache is
+ * disabled if it's lower than 2.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public final class NormalizationCache
+{
+    /** The system property giving the maximum number of cached values */
+    public static final String CAPACITY_PROPERTY = "apacheds.normalization.cacheSize";
+
+    /** The default maximum number of cached values */
+    public static final int DEFAULT_CAPACITY = 10000;
+
+    /** The maximum length of a cached value */
+    public static final int MAX_VALUE_LENGTH = 256;
+
+    /** The cache, null if disabled */
+    private static volatile TinyLfuCache<Key, Object> cache;
+
+    static
+    {
+        setCapacity( Integer.getInteger( CAPACITY_PROPERTY, DEFAULT_CAPACITY ) );
+    }
+
+    /** A cache key */
+    private static final class Key
+    {
+        /** The normalizer, or the attribute type */
+        private final Object normalizer;
+
+        /** The user provided value */
+        private final String value;
+
+        /** The kind of assertion, for the substring normalizations */
+        private final AssertionType assertionType;
+
+        private final int hashCode;
+
+
+        private Key( Object normalizer, String value, AssertionType assertionType )
+        {
+            this.normalizer = normalizer;
+            this.value = value;
+            this.assertionType = assertionType;
+
+            int h = System.identityHashCode( normalizer ) * 31 + value.hashCode();
+
+            if ( assertionType != null )
+            {
+                h = h * 31 + assertionType.ordinal();
+            }
+
+            hashCode = h;
+        }
+
+
+        @Override
+        public int hashCode()
+        {
+            return hashCode;
+        }
+
+
+        @Override
+        public boolean equals( Object o )
+        {
+            if ( this == o )
+            {
+                return true;
+            }
+
+            if ( !( o instanceof Key ) )
+            {
+                return false;
+            }
+
+            Key that = ( Key ) o;
+
+            return ( normalizer == that.normalizer ) && ( assertionType == that.assertionType )
+                && value.equals( that.value );
+        }
+    }
+
+
+    private NormalizationCache()
+    {
+    }
+
+
+    /**
+     * Normalizes a value, or gets its normalized form from the cache.
+     *
+     * @param normalizer The normalizer
+     * @param value The value to normalize
+     * @return The normalized value
+     * @throws LdapException If the value is not valid
+     */
+    public static String normalize( Normalizer normalizer, String value ) throws LdapException
+    {
+        return normalize( normalizer, value, null );
+    }
+
+
+    /**
+     * Normalizes a substring assertion value, or gets its normalized form from the cache.
+     *
+     * @param normalizer The normalizer
+     * @param value The value to normalize
+     * @param assertionType The part of the substring filter, or null for a whole value
+     * @return The normalized value
+     * @throws LdapException If the value is not valid
+     */
+    public static String normalize( Normalizer normalizer, String value, AssertionType assertionType )
+        throws LdapException
+    {
+        TinyLfuCache<Key, Object> currentCache = cache;
+
+        if ( ( currentCache == null ) || ( value == null ) || ( value.length() > MAX_VALUE_LENGTH ) )
+        {
+            return ( assertionType == null ) ? normalizer.normalize( value ) : normalizer.normalize( value,
+                assertionType );
+        }
+
+        Key key = new Key( normalizer, value, assertionType );
+        String normalized = ( String ) currentCache.get( key );
+
+        if ( normalized == null )
+        {
+            normalized = ( assertionType == null ) ? normalizer.normalize( value ) : normalizer.normalize( value,
+                assertionType );
+
+            if ( normalized != null )
+            {
+                currentCache.putIfAbsent( key, normalized );
+            }
+        }
+
+        return normalized;
+    }
+
+
+    /**
+     * Creates the schema aware form of a value, or gets it from the cache. The values are
+     * immutable, so the cached instance can be shared.
+     *
+     * @param attributeType The attribute type
+     * @param value The user provided value
+     * @return The schema aware value
+     * @throws LdapException If the value is not valid
+     */
+    public static Value normalize( AttributeType attributeType, String value ) throws LdapException
+    {
+        TinyLfuCache<Key, Object> currentCache = cache;
+
+        if ( ( currentCache == null ) || ( value == null ) || ( value.length() > MAX_VALUE_LENGTH ) )
+        {
+            return new Value( attributeType, value );
+        }
+
+        Key key = new Key( attributeType, value, null );
+        Value normalized = ( Value ) currentCache.get( key );
+
+        if ( normalized == null )
+        {
+            normalized = ( Value ) currentCache.putIfAbsent( key, new Value( attributeType, value ) );
+        }
+
+        return normalized;
+    }
+
+
+    /**
+     * Changes the capacity of the cache. The cached values are dropped.
+     *
+     * @param capacity The maximum number of cached values, the cache is disabled if it's lower than 2
+     */
+    public static void setCapacity( int capacity )
+    {
+        cache = ( capacity >= 2 ) ? new TinyLfuCache<Key, Object>( capacity ) : null;
+    }
+
+
+    /**
+     * @return The maximum number of cached values, 0 if the cache is disabled
+     */
+    public static int getCapacity()
+    {
+        TinyLfuCache<Key, Object> currentCache = cache;
+
+        return ( currentCache == null ) ? 0 : currentCache.getCapacity();
+    }
+
+
+    /**
+     * @return The number of cached values
+     */
+    public static int size()
+    {
+        TinyLfuCache<Key, Object> currentCache = cache;
+
+        return ( currentCache == null ) ? 0 : currentCache.size();
+    }
+
+
+    /**
+     * @return The number of normalizations found in the cache since its creation
+     */
+    public static long getHitCount()
+    {
+        TinyLfuCache<Key, Object> currentCache = cache;
+
+        return ( currentCache == null ) ? 0L : currentCache.getHitCount();
+    }
+
+
+    /**
+     * @return The number of normalizations not found in the cache, and computed, since its
+     * creation. The values which can't be cached are not counted.
+     */
+    public static long getMissCount()
+    {
+        TinyLfuCache<Key, Object> currentCache = cache;
+
+        return ( currentCache == null ) ? 0L : currentCache.getMissCount();
+    }
+
+
+    /**
+     * Drops all the cached values, the counters are kept.
+     */
+    public static void clear()
+    {
+        TinyLfuCache<Key, Object> currentCache = cache;
+
+        if ( currentCache != null )
+        {
+            currentCache.clear();
+        }
+    }
+}
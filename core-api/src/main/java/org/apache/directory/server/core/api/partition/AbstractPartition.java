@@ -68,7 +68,7 @@ public abstract class AbstractPartition implements Partition
     protected CacheService cacheService;
 
     /** the value of last successful add/update operation's CSN */
-    private String contextCsn;
+    private volatile String contextCsn;
     
     /** a flag to detect the change in context CSN */
     protected volatile boolean ctxCsnChanged = false;
@@ -111,6 +111,16 @@ public abstract class AbstractPartition implements Partition
     }
 
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isRollbackSupported()
+    {
+        return false;
+    }
+
+
     /**
      * {@inheritDoc}
      */
@@ -304,14 +314,15 @@ public abstract class AbstractPartition implements Partition
 
     
     /**
-     * Replaces the current context CSN with the given CSN value if they are not same and
-     * sets the ctxCsnChanged flag to true.
+     * Replaces the current context CSN with the given CSN value if it's more recent and
+     * sets the ctxCsnChanged flag to true. The writers of a partition may run concurrently,
+     * the last one to set its CSN is not always the most recent one.
      * 
      * @param csn the CSN value
      */
-    protected void setContextCsn( String csn )
+    protected synchronized void setContextCsn( String csn )
     {
-        if ( !csn.equals( contextCsn ) )
+        if ( ( contextCsn == null ) || ( csn.compareTo( contextCsn ) > 0 ) )
         {
             contextCsn = csn;
             ctxCsnChanged = true;
@@ -68,6 +68,15 @@ public interface Partition
      * Start a write transaction
      */
     PartitionWriteTxn beginWriteTransaction();
+
+
+    /**
+     * Tells if aborting a write transaction rolls back the changes done in this transaction.
+     * Otherwise, the changes are stored as soon as they are done, and an abort does nothing.
+     *
+     * @return true if the write transactions of this partition can be rolled back
+     */
+    boolean isRollbackSupported();
     
 
     // -----------------------------------------------------------------------
@@ -46,6 +46,31 @@ public class PartitionWriteTxn implements PartitionTxn
     }
 
 
+    /**
+     * Waits until the changes committed by this transaction are on disk. A partition may
+     * defer the flush of its log after the commit, in order to share it with other
+     * transactions : this method is called once the operation locks have been released.
+     *
+     * @throws IOException If the changes could not be flushed
+     */
+    public void awaitDurability() throws IOException
+    {
+    }
+
+
+    /**
+     * Tells if committing this transaction stores its changes on disk, so that the partition
+     * doesn't have to be synced after each operation done in it. Otherwise, the changes are
+     * written by the operations themselves, and the partition is synced as usual.
+     *
+     * @return true if the commit stores the changes
+     */
+    public boolean isFlushedOnCommit()
+    {
+        return false;
+    }
+
+
     /**
      * {@inheritDoc}
      */
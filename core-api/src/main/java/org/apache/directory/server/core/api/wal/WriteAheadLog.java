@@ -0,0 +1,479 @@
+/*
+ *   Licensed to the Apache Software Foundation (ASF) under one
+ *   or more contributor license agreements.  See the NOTICE file
+ *   distributed with this work for additional information
+ *   regarding copyright ownership.  The ASF licenses this file
+ *   to you under the Apache License, Version 2.0 (the
+ *   "License"); you may not use this file except in compliance
+ *   with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ *
+ */
+package org.apache.directory.server.core.api.wal;
+
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.ldif.LdifEntry;
+import org.apache.directory.api.ldap.model.ldif.LdifReader;
+import org.apache.directory.api.ldap.model.ldif.LdifUtils;
+import org.apache.directory.api.util.Strings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * A server wide write-ahead log. Each committed write operation appends its changes, as LDIF
+ * change records, to a single file, and waits for them to be on disk before returning. The
+ * partitions don't have to flush their own files after each operation anymore : they are
+ * synchronized from time to time by a checkpoint, which then empties the log. On startup,
+ * the changes still in the log are replayed into the partitions.
+ * <br>
+ * The log is made of records, one per operation :
+ * <pre>
+ * [length (int)][CRC32 of the data (int)][data : the LDIF change records, in UTF-8]
+ * </pre>
+ * A record partially written when the server crashed is detected by its length or its CRC, and
+ * dropped when the log is opened : the operation did not return, so it was never acknowledged.
+ * <br>
+ * The disk flushes are grouped : a thread waiting for its changes to be on disk flushes all
+ * the changes appended so far, and the threads which appended theirs meanwhile wait for the
+ * next flush, done once for all of them.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class WriteAheadLog
+{
+    /** A logger for this class */
+    private static final Logger LOG = LoggerFactory.getLogger( WriteAheadLog.class );
+
+    /** The log file name, in the instance run directory */
+    public static final String WAL_FILE_NAME = "wal.log";
+
+    /** The default size above which a checkpoint is requested : 64 MB */
+    public static final long DEFAULT_MAX_SIZE = 64L * 1024L * 1024L;
+
+    /** The size of a record header : the data length and its CRC */
+    private static final int HEADER_SIZE = 8;
+
+    /** The log file */
+    private final File file;
+
+    /** The channel used to read and write the log */
+    private FileChannel channel;
+
+    /** The current size of the log file */
+    private long size;
+
+    /** The size above which a checkpoint is requested */
+    private long maxSize = DEFAULT_MAX_SIZE;
+
+    /**
+     * The position of the end of the last appended record. This position is counted from the
+     * log opening, and is not reset by the checkpoints
+     */
+    private long appendedPosition;
+
+    /** The position up to which the appended records are on disk */
+    private long durablePosition;
+
+    /** Set while a thread is flushing the log */
+    private boolean flushing;
+
+    /** Set when a checkpoint has been requested */
+    private boolean checkpointRequested;
+
+    /** The lock protecting the log state */
+    private final Object lock = new Object();
+
+
+    /**
+     * Creates a new instance of WriteAheadLog. The log has to be opened before being used.
+     *
+     * @param file The log file
+     */
+    public WriteAheadLog( File file )
+    {
+        this.file = file;
+    }
+
+
+    /**
+     * Opens the log, creating the file if needed. A record partially written is dropped.
+     *
+     * @throws IOException If the log can't be opened
+     */
+    public void open() throws IOException
+    {
+        synchronized ( lock )
+        {
+            channel = new RandomAccessFile( file, "rw" ).getChannel();
+
+            long validSize = 0L;
+            byte[] data;
+
+            while ( ( data = readRecord( validSize ) ) != null )
+            {
+                validSize += HEADER_SIZE + data.length;
+            }
+
+            if ( validSize < channel.size() )
+            {
+                LOG.warn( "Dropping the {} last bytes of the write-ahead log {}, they are not a complete record",
+                    channel.size() - validSize, file );
+                channel.truncate( validSize );
+                channel.force( true );
+            }
+
+            channel.position( validSize );
+            size = validSize;
+        }
+    }
+
+
+    /**
+     * Reads all the changes stored in the log, in the order they have been appended.
+     *
+     * @return The changes
+     * @throws IOException If the log can't be read
+     * @throws LdapException If a record can't be parsed
+     */
+    public List<LdifEntry> readChanges() throws IOException, LdapException
+    {
+        List<LdifEntry> changes = new ArrayList<>();
+
+        synchronized ( lock )
+        {
+            long position = 0L;
+            byte[] data;
+
+            while ( ( position < size ) && ( ( data = readRecord( position ) ) != null ) )
+            {
+                try ( LdifReader reader = new LdifReader() )
+                {
+                    changes.addAll( reader.parseLdif( Strings.utf8ToString( data ) ) );
+                }
+
+                position += HEADER_SIZE + data.length;
+            }
+        }
+
+        return changes;
+    }
+
+
+    /**
+     * Appends the changes done by an operation. They are written at once, in a single record :
+     * they are all replayed, or none is.
+     *
+     * @param changes The operation changes
+     * @return The position to give to {@link #awaitDurability(long)}
+     * @throws IOException If the changes can't be written
+     * @throws LdapException If the changes can't be converted to LDIF
+     */
+    public long append( LdifEntry... changes ) throws IOException, LdapException
+    {
+        StringBuilder sb = new StringBuilder();
+
+        for ( LdifEntry change : changes )
+        {
+            sb.append( LdifUtils.convertToLdif( change ) ).append( '\n' );
+        }
+
+        byte[] data = Strings.getBytesUtf8( sb.toString() );
+        CRC32 crc = new CRC32();
+        crc.update( data, 0, data.length );
+
+        ByteBuffer buffer = ByteBuffer.allocate( HEADER_SIZE + data.length );
+        buffer.putInt( data.length );
+        buffer.putInt( ( int ) crc.getValue() );
+        buffer.put( data );
+        buffer.flip();
+
+        boolean full;
+        long position;
+
+        synchronized ( lock )
+        {
+            while ( buffer.hasRemaining() )
+            {
+                channel.write( buffer );
+            }
+
+            size += buffer.limit();
+            appendedPosition += buffer.limit();
+            position = appendedPosition;
+            full = size >= maxSize;
+        }
+
+        if ( full )
+        {
+            requestCheckpoint();
+        }
+
+        return position;
+    }
+
+
+    /**
+     * Waits until the changes appended up to a position are on disk. If no other thread is
+     * flushing the log, the current thread flushes everything appended so far, otherwise it
+     * waits for the current flush to complete, and starts another one if needed.
+     *
+     * @param position The position returned by {@link #append(LdifEntry...)}
+     * @throws IOException If the log can't be flushed
+     */
+    public void awaitDurability( long position ) throws IOException
+    {
+        boolean interrupted = false;
+
+        try
+        {
+            while ( true )
+            {
+                long target;
+
+                synchronized ( lock )
+                {
+                    while ( ( durablePosition < position ) && flushing )
+                    {
+                        try
+                        {
+                            lock.wait();
+                        }
+                        catch ( InterruptedException ie )
+                        {
+                            // Keep waiting, the interrupt status is restored afterward
+                            interrupted = true;
+                        }
+                    }
+
+                    if ( durablePosition >= position )
+                    {
+                        return;
+                    }
+
+                    flushing = true;
+                    target = appendedPosition;
+                }
+
+                boolean flushed = false;
+
+                try
+                {
+                    channel.force( false );
+                    flushed = true;
+                }
+                finally
+                {
+                    synchronized ( lock )
+                    {
+                        flushing = false;
+
+                        if ( flushed && ( target > durablePosition ) )
+                        {
+                            durablePosition = target;
+                        }
+
+                        lock.notifyAll();
+                    }
+                }
+            }
+        }
+        finally
+        {
+            if ( interrupted )
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+
+    /**
+     * Empties the log. This must be called once all the partitions have been synchronized, while
+     * no operation can append changes : everything in the log is then on disk in the partitions.
+     *
+     * @throws IOException If the log can't be truncated
+     */
+    public void checkpoint() throws IOException
+    {
+        synchronized ( lock )
+        {
+            channel.truncate( 0L );
+            channel.position( 0L );
+            channel.force( true );
+            size = 0L;
+
+            // The pending changes are in the partitions, no need to flush them anymore
+            durablePosition = appendedPosition;
+            lock.notifyAll();
+        }
+    }
+
+
+    /**
+     * Waits until a checkpoint is requested, either because the log is too big, or by a call
+     * to {@link #requestCheckpoint()}, or until a delay has elapsed.
+     *
+     * @param timeout The maximum time to wait, in milliseconds
+     * @throws InterruptedException If the thread is interrupted while waiting
+     */
+    public void awaitCheckpoint( long timeout ) throws InterruptedException
+    {
+        long deadline = System.currentTimeMillis() + timeout;
+
+        synchronized ( lock )
+        {
+            long remaining = timeout;
+
+            while ( !checkpointRequested && ( size < maxSize ) && ( remaining > 0L ) )
+            {
+                lock.wait( remaining );
+                remaining = deadline - System.currentTimeMillis();
+            }
+
+            checkpointRequested = false;
+        }
+    }
+
+
+    /**
+     * Wakes up the thread waiting in {@link #awaitCheckpoint(long)}.
+     */
+    public void requestCheckpoint()
+    {
+        synchronized ( lock )
+        {
+            checkpointRequested = true;
+            lock.notifyAll();
+        }
+    }
+
+
+    /**
+     * Flushes and closes the log.
+     *
+     * @throws IOException If the log can't be closed
+     */
+    public void close() throws IOException
+    {
+        synchronized ( lock )
+        {
+            if ( channel != null )
+            {
+                channel.force( true );
+                channel.close();
+                channel = null;
+            }
+        }
+    }
+
+
+    /**
+     * @return The current size of the log file
+     */
+    public long getSize()
+    {
+        synchronized ( lock )
+        {
+            return size;
+        }
+    }
+
+
+    /**
+     * @return The size above which a checkpoint is requested
+     */
+    public long getMaxSize()
+    {
+        return maxSize;
+    }
+
+
+    /**
+     * @param maxSize The size above which a checkpoint is requested
+     */
+    public void setMaxSize( long maxSize )
+    {
+        this.maxSize = maxSize;
+    }
+
+
+    /**
+     * @return The log file
+     */
+    public File getFile()
+    {
+        return file;
+    }
+
+
+    /**
+     * Reads the data of a record, checking it is complete.
+     *
+     * @return The record data, or null if there is no complete record at this position
+     */
+    private byte[] readRecord( long position ) throws IOException
+    {
+        long available = channel.size() - position;
+
+        if ( available < HEADER_SIZE )
+        {
+            return null;
+        }
+
+        ByteBuffer header = ByteBuffer.allocate( HEADER_SIZE );
+        readFully( header, position );
+        header.flip();
+
+        int length = header.getInt();
+        int expectedCrc = header.getInt();
+
+        if ( ( length < 0 ) || ( length > available - HEADER_SIZE ) )
+        {
+            return null;
+        }
+
+        ByteBuffer data = ByteBuffer.allocate( length );
+        readFully( data, position + HEADER_SIZE );
+
+        CRC32 crc = new CRC32();
+        crc.update( data.array(), 0, length );
+
+        if ( ( int ) crc.getValue() != expectedCrc )
+        {
+            return null;
+        }
+
+        return data.array();
+    }
+
+
+    private void readFully( ByteBuffer buffer, long position ) throws IOException
+    {
+        while ( buffer.hasRemaining() )
+        {
+            if ( channel.read( buffer, position + buffer.position() ) < 0 )
+            {
+                throw new IOException( "Unexpected end of the write-ahead log " + file );
+            }
+        }
+    }
+}
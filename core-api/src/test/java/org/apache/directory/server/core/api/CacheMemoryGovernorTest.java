@@ -0,0 +1,165 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.api;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.UUID;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.Configuration;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * Tests the {@link CacheMemoryGovernor} class.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class CacheMemoryGovernorTest
+{
+    private CacheManager cacheManager;
+
+
+    @Before
+    public void init()
+    {
+        Configuration configuration = new Configuration();
+        configuration.setName( UUID.randomUUID().toString() );
+        cacheManager = new CacheManager( configuration );
+    }
+
+
+    @After
+    public void shutdown()
+    {
+        cacheManager.shutdown();
+    }
+
+
+    private Cache createCache( String name, int capacity, int entries )
+    {
+        Cache cache = new Cache( new CacheConfiguration( name, capacity ) );
+        cacheManager.addCache( cache );
+
+        for ( int i = 0; i < entries; i++ )
+        {
+            cache.put( new Element( i, "value" + i ) );
+        }
+
+        return cache;
+    }
+
+
+    private CacheMemoryGovernor createGovernor( long budget )
+    {
+        CacheMemoryGovernor governor = new CacheMemoryGovernor( cacheManager, budget );
+        governor.setMinEntries( 10L );
+
+        for ( String name : cacheManager.getCacheNames() )
+        {
+            governor.setEntrySize( name, 100L );
+        }
+
+        return governor;
+    }
+
+
+    private long capacity( Cache cache )
+    {
+        return cache.getCacheConfiguration().getMaxEntriesLocalHeap();
+    }
+
+
+    @Test
+    public void testCapacityMovesToTheMissingCache()
+    {
+        Cache hot = createCache( "hot", 200, 200 );
+        Cache cold = createCache( "cold", 800, 800 );
+        CacheMemoryGovernor governor = createGovernor( 100000L );
+
+        // The first rebalance only reads the statistics
+        governor.rebalance();
+        assertEquals( 200L, capacity( hot ) );
+        assertEquals( 800L, capacity( cold ) );
+
+        for ( int i = 0; i < 1000; i++ )
+        {
+            hot.get( "missing" + i );
+            cold.get( i % 800 );
+        }
+
+        governor.rebalance();
+
+        // A tenth of the cold cache goes to the hot one
+        assertEquals( 280L, capacity( hot ) );
+        assertEquals( 720L, capacity( cold ) );
+        assertTrue( governor.getAllocatedBytes() <= governor.getBudget() );
+    }
+
+
+    @Test
+    public void testUnusedCapacityIsReclaimed()
+    {
+        Cache hot = createCache( "hot", 200, 200 );
+        Cache idle = createCache( "idle", 800, 100 );
+        CacheMemoryGovernor governor = createGovernor( 100000L );
+
+        governor.rebalance();
+
+        // Only some headroom is kept above the idle cache size
+        assertEquals( 125L, capacity( idle ) );
+        assertEquals( 200L, capacity( hot ) );
+
+        for ( int i = 0; i < 1000; i++ )
+        {
+            hot.get( "missing" + i );
+        }
+
+        governor.rebalance();
+
+        // The free bytes go to the hot cache, a tenth of the budget at once
+        assertEquals( 125L, capacity( idle ) );
+        assertEquals( 300L, capacity( hot ) );
+    }
+
+
+    @Test
+    public void testOverBudgetCachesAreScaledDown()
+    {
+        Cache cache1 = createCache( "cache1", 1000, 1000 );
+        Cache cache2 = createCache( "cache2", 1000, 1000 );
+        CacheMemoryGovernor governor = createGovernor( 100000L );
+
+        governor.rebalance();
+
+        assertEquals( 500L, capacity( cache1 ) );
+        assertEquals( 500L, capacity( cache2 ) );
+        assertEquals( 100000L, governor.getAllocatedBytes() );
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.api;
+
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * Tests the {@link CacheService} class.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class CacheServiceTest
+{
+    private CacheService cacheService;
+
+
+    @Before
+    public void init()
+    {
+        cacheService = new CacheService();
+        cacheService.initialize( null );
+    }
+
+
+    @After
+    public void shutdown()
+    {
+        cacheService.destroy();
+    }
+
+
+    @Test
+    public void testConfiguredCapacity()
+    {
+        // The Dn factory cache, which is not an ehcache cache
+        assertEquals( 10000L, cacheService.getConfiguredCapacity( CacheService.DN_CACHE ) );
+
+        // An ehcache cache
+        assertEquals( 10000L, cacheService.getConfiguredCapacity( "groupCache" ) );
+
+        assertEquals( -1L, cacheService.getConfiguredCapacity( "unknown" ) );
+    }
+}
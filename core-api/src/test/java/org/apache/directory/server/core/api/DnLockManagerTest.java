@@ -0,0 +1,259 @@
+/*
+ *   Licensed to the Apache Software Foundation (ASF) under one
+ *   or more contributor license agreements.  See the NOTICE file
+ *   distributed with this work for additional information
+ *   regarding copyright ownership.  The ASF licenses this file
+ *   to you under the Apache License, Version 2.0 (the
+ *   "License"); you may not use this file except in compliance
+ *   with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ *
+ */
+package org.apache.directory.server.core.api;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.server.core.api.DnLockManager.DnLock;
+import org.junit.Test;
+
+
+/**
+ * Tests the {@link DnLockManager} class.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class DnLockManagerTest
+{
+    /**
+     * Starts a thread taking a lock, and releasing it once the given latch is released.
+     *
+     * @return A latch released when the lock has been acquired
+     */
+    private CountDownLatch lockInThread( final DnLockManager manager, final Dn dn, final boolean subtree,
+        final CountDownLatch release )
+    {
+        final CountDownLatch acquired = new CountDownLatch( 1 );
+
+        Thread thread = new Thread( new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                DnLock lock = subtree ? manager.lockSubtrees( dn ) : manager.lockEntries( dn );
+                acquired.countDown();
+
+                try
+                {
+                    release.await();
+                }
+                catch ( InterruptedException ie )
+                {
+                    Thread.currentThread().interrupt();
+                }
+                finally
+                {
+                    lock.unlock();
+                }
+            }
+        } );
+
+        thread.setDaemon( true );
+        thread.start();
+
+        return acquired;
+    }
+
+
+    /**
+     * Waits until the given number of locks are queued.
+     */
+    private void awaitQueueLength( DnLockManager manager, int length ) throws InterruptedException
+    {
+        long deadline = System.currentTimeMillis() + 10000L;
+
+        while ( ( manager.getQueueLength() < length ) && ( System.currentTimeMillis() < deadline ) )
+        {
+            Thread.sleep( 10 );
+        }
+
+        assertEquals( length, manager.getQueueLength() );
+    }
+
+
+    @Test
+    public void testUnrelatedEntriesAreLockedConcurrently() throws Exception
+    {
+        DnLockManager manager = new DnLockManager();
+        CountDownLatch release = new CountDownLatch( 1 );
+
+        // Each lock is taken by its own thread
+        assertTrue( lockInThread( manager, new Dn( "cn=a,ou=people,dc=example,dc=com" ), false, release )
+            .await( 10, TimeUnit.SECONDS ) );
+        assertTrue( lockInThread( manager, new Dn( "cn=b,ou=people,dc=example,dc=com" ), false, release )
+            .await( 10, TimeUnit.SECONDS ) );
+
+        // An entry can be modified while one of its descendants is
+        assertTrue( lockInThread( manager, new Dn( "ou=people,dc=example,dc=com" ), false, release )
+            .await( 10, TimeUnit.SECONDS ) );
+
+        // As can be an unrelated subtree
+        assertTrue( lockInThread( manager, new Dn( "ou=groups,dc=example,dc=com" ), true, release )
+            .await( 10, TimeUnit.SECONDS ) );
+
+        assertEquals( 4, manager.getLockCount() );
+
+        release.countDown();
+        long deadline = System.currentTimeMillis() + 10000L;
+
+        while ( ( manager.getLockCount() > 0 ) && ( System.currentTimeMillis() < deadline ) )
+        {
+            Thread.sleep( 10 );
+        }
+
+        assertEquals( 0, manager.getLockCount() );
+    }
+
+
+    @Test
+    public void testSubtreeLockBlocksDescendants() throws Exception
+    {
+        DnLockManager manager = new DnLockManager();
+
+        DnLock subtree = manager.lockSubtrees( new Dn( "ou=people,dc=example,dc=com" ) );
+        CountDownLatch acquired = lockInThread( manager, new Dn( "cn=a,ou=people,dc=example,dc=com" ), false,
+            new CountDownLatch( 0 ) );
+
+        assertFalse( acquired.await( 100, TimeUnit.MILLISECONDS ) );
+
+        subtree.unlock();
+
+        assertTrue( acquired.await( 10, TimeUnit.SECONDS ) );
+    }
+
+
+    @Test
+    public void testSubtreeLockWaitsForDescendants() throws Exception
+    {
+        DnLockManager manager = new DnLockManager();
+
+        DnLock entry = manager.lockEntries( new Dn( "cn=a,ou=people,dc=example,dc=com" ) );
+        CountDownLatch acquired = lockInThread( manager, new Dn( "dc=example,dc=com" ), true,
+            new CountDownLatch( 0 ) );
+
+        assertFalse( acquired.await( 100, TimeUnit.MILLISECONDS ) );
+
+        entry.unlock();
+
+        assertTrue( acquired.await( 10, TimeUnit.SECONDS ) );
+    }
+
+
+    @Test
+    public void testSameEntryIsLockedExclusively() throws Exception
+    {
+        DnLockManager manager = new DnLockManager();
+        Dn dn = new Dn( "cn=a,ou=people,dc=example,dc=com" );
+
+        DnLock entry = manager.lockEntries( dn );
+        CountDownLatch acquired = lockInThread( manager, dn, false, new CountDownLatch( 0 ) );
+
+        assertFalse( acquired.await( 100, TimeUnit.MILLISECONDS ) );
+
+        // Releasing twice has no effect
+        entry.unlock();
+        entry.unlock();
+
+        assertTrue( acquired.await( 10, TimeUnit.SECONDS ) );
+    }
+
+
+    @Test
+    public void testLocksAreReentrant() throws Exception
+    {
+        DnLockManager manager = new DnLockManager();
+
+        DnLock subtree = manager.lockSubtrees( new Dn( "ou=people,dc=example,dc=com" ) );
+
+        // The thread holding the subtree can lock it again, and lock an entry inside it
+        DnLock again = manager.lockSubtrees( new Dn( "ou=people,dc=example,dc=com" ) );
+        DnLock entry = manager.lockEntries( new Dn( "cn=a,ou=people,dc=example,dc=com" ) );
+
+        assertEquals( 3, manager.getLockCount() );
+
+        entry.unlock();
+        again.unlock();
+        subtree.unlock();
+
+        assertEquals( 0, manager.getLockCount() );
+    }
+
+
+    @Test
+    public void testTryLock() throws Exception
+    {
+        DnLockManager manager = new DnLockManager();
+        CountDownLatch release = new CountDownLatch( 1 );
+
+        assertTrue( lockInThread( manager, new Dn( "cn=a,ou=people,dc=example,dc=com" ), false, release )
+            .await( 10, TimeUnit.SECONDS ) );
+
+        // The entry and its ancestors' subtrees are locked by another thread
+        assertNull( manager.tryLockEntries( new Dn( "cn=a,ou=people,dc=example,dc=com" ) ) );
+        assertNull( manager.tryLockSubtrees( new Dn( "ou=people,dc=example,dc=com" ) ) );
+
+        DnLock sibling = manager.tryLockSubtrees( new Dn( "cn=b,ou=people,dc=example,dc=com" ) );
+        assertNotNull( sibling );
+        sibling.unlock();
+
+        release.countDown();
+    }
+
+
+    @Test
+    public void testSubtreeLockIsNotStarved() throws Exception
+    {
+        DnLockManager manager = new DnLockManager();
+        CountDownLatch release1 = new CountDownLatch( 1 );
+        CountDownLatch release2 = new CountDownLatch( 1 );
+
+        assertTrue( lockInThread( manager, new Dn( "cn=a,ou=people,dc=example,dc=com" ), false, release1 )
+            .await( 10, TimeUnit.SECONDS ) );
+
+        // The subtree lock waits for the entry lock
+        CountDownLatch subtree = lockInThread( manager, new Dn( "ou=people,dc=example,dc=com" ), true,
+            new CountDownLatch( 0 ) );
+        awaitQueueLength( manager, 1 );
+
+        // A newer entry lock, compatible with the granted ones, waits behind the subtree lock
+        CountDownLatch entry = lockInThread( manager, new Dn( "cn=b,ou=people,dc=example,dc=com" ), false, release2 );
+        awaitQueueLength( manager, 2 );
+
+        assertFalse( subtree.await( 100, TimeUnit.MILLISECONDS ) );
+        assertFalse( entry.await( 0, TimeUnit.MILLISECONDS ) );
+
+        // Once the first entry is released, the subtree is locked before the second entry
+        release1.countDown();
+
+        assertTrue( subtree.await( 10, TimeUnit.SECONDS ) );
+        assertTrue( entry.await( 10, TimeUnit.SECONDS ) );
+
+        release2.countDown();
+    }
+}
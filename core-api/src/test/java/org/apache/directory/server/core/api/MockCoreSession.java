@@ -39,6 +39,7 @@ import org.apache.directory.api.ldap.model.exception.LdapInvalidSearchFilterExce
 import org.apache.directory.api.ldap.model.filter.ExprNode;
 import org.apache.directory.api.ldap.model.filter.FilterParser;
 import org.apache.directory.api.ldap.model.filter.PresenceNode;
+import org.apache.directory.api.ldap.model.ldif.LdifEntry;
 import org.apache.directory.api.ldap.model.message.AddRequest;
 import org.apache.directory.api.ldap.model.message.AliasDerefMode;
 import org.apache.directory.api.ldap.model.message.CompareRequest;
@@ -198,6 +199,15 @@ public class MockCoreSession implements CoreSession
     }
 
 
+    /**
+     * {@inheritDoc}
+     */
+    public List<LdapException> batch( List<LdifEntry> changes, BatchMode mode ) throws LdapException
+    {
+        return new ArrayList<>();
+    }
+
+
     private Value convertToValue( String oid, Object value ) throws LdapException
     {
         Value val = null;
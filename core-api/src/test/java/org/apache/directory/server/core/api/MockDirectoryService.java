@@ -25,6 +25,7 @@ import java.util.Collections;
 import java.util.Hashtable;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
 
 import javax.naming.ldap.LdapContext;
 
@@ -49,6 +50,7 @@ import org.apache.directory.server.core.api.partition.PartitionNexus;
 import org.apache.directory.server.core.api.schema.SchemaPartition;
 import org.apache.directory.server.core.api.subtree.SubentryCache;
 import org.apache.directory.server.core.api.subtree.SubtreeEvaluator;
+import org.apache.directory.server.core.api.wal.WriteAheadLog;
 
 
 /**
@@ -476,6 +478,29 @@ public class MockDirectoryService implements DirectoryService
     }
 
 
+    public void setWriteAheadLogEnabled( boolean writeAheadLogEnabled )
+    {
+    }
+
+
+    public boolean isWriteAheadLogEnabled()
+    {
+        return false;
+    }
+
+
+    public WriteAheadLog getWriteAheadLog()
+    {
+        return null;
+    }
+
+
+    public ExecutorService getCoreExecutor()
+    {
+        return null;
+    }
+
+
     public CacheService getCacheService()
     {
         return null;
@@ -586,6 +611,13 @@ public class MockDirectoryService implements DirectoryService
     }
 
 
+    @Override
+    public Interceptor[] getInterceptorChain( OperationEnum operation )
+    {
+        return null;
+    }
+
+
     @Override
     public void addFirst( Interceptor interceptor ) throws LdapException
     {
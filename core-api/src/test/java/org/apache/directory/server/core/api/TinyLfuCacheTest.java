@@ -0,0 +1,125 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.api;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+
+/**
+ * Tests the {@link TinyLfuCache} class.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class TinyLfuCacheTest
+{
+    @Test
+    public void testGetAndPut()
+    {
+        TinyLfuCache<String, String> cache = new TinyLfuCache<>( 10 );
+
+        assertNull( cache.get( "a" ) );
+        assertEquals( "A", cache.putIfAbsent( "a", "A" ) );
+        assertEquals( "A", cache.get( "a" ) );
+
+        // The first value is kept
+        assertEquals( "A", cache.putIfAbsent( "a", "other" ) );
+
+        cache.remove( "a" );
+        assertNull( cache.get( "a" ) );
+
+        assertEquals( 1L, cache.getHitCount() );
+        assertEquals( 2L, cache.getMissCount() );
+    }
+
+
+    @Test
+    public void testCapacityIsBounded()
+    {
+        TinyLfuCache<Integer, Integer> cache = new TinyLfuCache<>( 100 );
+
+        for ( int i = 0; i < 10000; i++ )
+        {
+            if ( cache.get( i % 1000 ) == null )
+            {
+                cache.putIfAbsent( i % 1000, i );
+            }
+
+            assertTrue( cache.size() <= 100 );
+        }
+    }
+
+
+    @Test
+    public void testFrequentKeysSurviveAScan()
+    {
+        TinyLfuCache<Integer, Integer> cache = new TinyLfuCache<>( 100 );
+        Integer[] hotValues = new Integer[50];
+
+        for ( int i = 0; i < 50; i++ )
+        {
+            hotValues[i] = cache.putIfAbsent( i, Integer.valueOf( i ) );
+        }
+
+        // Each key is only read once, while the hot keys keep being used
+        for ( int i = 1000; i < 11000; i++ )
+        {
+            assertNotNull( cache.get( i % 50 ) );
+
+            if ( cache.get( i ) == null )
+            {
+                cache.putIfAbsent( i, i );
+            }
+        }
+
+        for ( int i = 0; i < 50; i++ )
+        {
+            assertSame( hotValues[i], cache.get( i ) );
+        }
+    }
+
+
+    @Test
+    public void testClear()
+    {
+        TinyLfuCache<Integer, Integer> cache = new TinyLfuCache<>( 10 );
+
+        for ( int i = 0; i < 20; i++ )
+        {
+            cache.putIfAbsent( i, i );
+        }
+
+        cache.clear();
+        assertEquals( 0, cache.size() );
+
+        for ( int i = 0; i < 20; i++ )
+        {
+            cache.putIfAbsent( i, i );
+        }
+
+        assertTrue( cache.size() <= 10 );
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.api.async;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+
+/**
+ * Tests the {@link OperationFuture} class.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class OperationFutureTest
+{
+    private static final Callable<String> OPERATION = new Callable<String>()
+    {
+        public String call() throws Exception
+        {
+            return "done";
+        }
+    };
+
+
+    private static OperationListener<String> counter( final AtomicInteger calls )
+    {
+        return new OperationListener<String>()
+        {
+            public void operationComplete( OperationFuture<String> future )
+            {
+                calls.incrementAndGet();
+            }
+        };
+    }
+
+
+    @Test
+    public void testListenerCalledOnRun() throws Exception
+    {
+        AtomicInteger calls = new AtomicInteger();
+        OperationFuture<String> future = new OperationFuture<>( OPERATION );
+        future.addListener( counter( calls ) );
+
+        future.run();
+
+        assertEquals( "done", future.get() );
+        assertEquals( 1, calls.get() );
+
+        // Called at once when the operation is already done
+        future.addListener( counter( calls ) );
+        assertEquals( 2, calls.get() );
+    }
+
+
+    @Test
+    public void testFailPendingOperation() throws Exception
+    {
+        AtomicInteger calls = new AtomicInteger();
+        OperationFuture<String> future = new OperationFuture<>( OPERATION );
+        future.addListener( counter( calls ) );
+        Exception cause = new Exception( "shut down" );
+
+        future.fail( cause );
+
+        assertTrue( future.isDone() );
+        assertEquals( 1, calls.get() );
+
+        try
+        {
+            future.get();
+            fail( "The operation should have failed" );
+        }
+        catch ( ExecutionException ee )
+        {
+            assertSame( cause, ee.getCause() );
+        }
+
+        // The failed operation is not run anymore
+        future.run();
+        assertEquals( 1, calls.get() );
+    }
+
+
+    @Test
+    public void testFailDoneOperation() throws Exception
+    {
+        OperationFuture<String> future = new OperationFuture<>( OPERATION );
+        future.run();
+
+        future.fail( new Exception( "shut down" ) );
+
+        assertEquals( "done", future.get() );
+    }
+}
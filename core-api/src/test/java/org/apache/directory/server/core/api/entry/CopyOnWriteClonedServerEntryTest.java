@@ -0,0 +1,172 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.api.entry;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.apache.directory.api.ldap.model.entry.Attribute;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.junit.Test;
+
+
+/**
+ * Tests the copy-on-write mode of the {@link ClonedServerEntry} class.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class CopyOnWriteClonedServerEntryTest
+{
+    private Entry createEntry() throws Exception
+    {
+        return new DefaultEntry( "cn=group,dc=example,dc=com",
+            "objectClass: top",
+            "objectClass: groupOfNames",
+            "cn: group",
+            "member: cn=a,dc=example,dc=com",
+            "member: cn=b,dc=example,dc=com" );
+    }
+
+
+    @Test
+    public void testAttributesAreShared() throws Exception
+    {
+        Entry original = createEntry();
+        ClonedServerEntry entry = new ClonedServerEntry( original, true );
+
+        assertTrue( entry.isCopyOnWrite() );
+        assertEquals( original.size(), entry.size() );
+
+        for ( Attribute attribute : entry )
+        {
+            assertSame( original.get( attribute.getId() ), attribute );
+        }
+    }
+
+
+    @Test
+    public void testGetCopiesTheAttribute() throws Exception
+    {
+        Entry original = createEntry();
+        ClonedServerEntry entry = new ClonedServerEntry( original, true );
+
+        Attribute member = entry.get( "member" );
+        member.add( "cn=c,dc=example,dc=com" );
+
+        assertNotSame( original.get( "member" ), member );
+        assertSame( member, entry.get( "member" ) );
+        assertEquals( 2, original.get( "member" ).size() );
+        assertEquals( 3, entry.get( "member" ).size() );
+
+        // The other attributes are still shared
+        for ( Attribute attribute : entry )
+        {
+            if ( !attribute.getId().equals( "member" ) )
+            {
+                assertSame( original.get( attribute.getId() ), attribute );
+            }
+        }
+    }
+
+
+    @Test
+    public void testModificationsDontReachTheOriginalEntry() throws Exception
+    {
+        Entry original = createEntry();
+        ClonedServerEntry entry = new ClonedServerEntry( original, true );
+
+        entry.add( "cn", "another" );
+        entry.remove( "member", "cn=a,dc=example,dc=com" );
+        entry.removeAttributes( "objectClass" );
+        entry.put( "description", "a group" );
+
+        assertEquals( 1, original.get( "cn" ).size() );
+        assertEquals( 2, original.get( "member" ).size() );
+        assertTrue( original.containsAttribute( "objectClass" ) );
+        assertFalse( original.containsAttribute( "description" ) );
+
+        assertEquals( 2, entry.get( "cn" ).size() );
+        assertEquals( 1, entry.get( "member" ).size() );
+        assertFalse( entry.containsAttribute( "objectClass" ) );
+        assertTrue( entry.containsAttribute( "description" ) );
+    }
+
+
+    @Test
+    public void testGetClonedEntryCopiesAllTheAttributes() throws Exception
+    {
+        Entry original = createEntry();
+        ClonedServerEntry entry = new ClonedServerEntry( original, true );
+
+        Entry clonedEntry = entry.getClonedEntry();
+
+        assertFalse( entry.isCopyOnWrite() );
+
+        for ( Attribute attribute : clonedEntry )
+        {
+            assertNotSame( original.get( attribute.getId() ), attribute );
+            attribute.clear();
+        }
+
+        assertEquals( 2, original.get( "member" ).size() );
+    }
+
+
+    @Test
+    public void testSafetyModeDetectsSharedAttributeModifications() throws Exception
+    {
+        boolean safetyMode = ClonedServerEntry.isSafetyMode();
+        ClonedServerEntry.setSafetyMode( true );
+
+        try
+        {
+            ClonedServerEntry entry = new ClonedServerEntry( createEntry(), true );
+
+            // Modifying an attribute given by the iterator is not allowed
+            for ( Attribute attribute : entry )
+            {
+                if ( attribute.getId().equals( "member" ) )
+                {
+                    attribute.add( "cn=c,dc=example,dc=com" );
+                }
+            }
+
+            try
+            {
+                entry.iterator();
+                fail( "The modification of a shared attribute should have been detected" );
+            }
+            catch ( IllegalStateException ise )
+            {
+                assertTrue( ise.getMessage().contains( "member" ) );
+            }
+        }
+        finally
+        {
+            ClonedServerEntry.setSafetyMode( safetyMode );
+        }
+    }
+}
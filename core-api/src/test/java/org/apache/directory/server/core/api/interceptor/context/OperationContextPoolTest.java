@@ -0,0 +1,130 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.api.interceptor.context;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.directory.api.ldap.model.constants.AuthenticationLevel;
+import org.apache.directory.api.ldap.model.constants.SchemaConstants;
+import org.apache.directory.api.ldap.model.message.controls.ManageDsaITImpl;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.api.ldap.schema.manager.impl.DefaultSchemaManager;
+import org.apache.directory.server.core.api.CoreSession;
+import org.apache.directory.server.core.api.LdapPrincipal;
+import org.apache.directory.server.core.api.MockCoreSession;
+import org.apache.directory.server.core.api.MockDirectoryService;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+
+/**
+ * Tests the {@link OperationContextPool} class.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class OperationContextPoolTest
+{
+    private static SchemaManager schemaManager;
+
+    private static CoreSession session;
+
+
+    @BeforeClass
+    public static void init() throws Exception
+    {
+        schemaManager = new DefaultSchemaManager();
+        MockDirectoryService directoryService = new MockDirectoryService();
+        directoryService.setSchemaManager( schemaManager );
+
+        session = new MockCoreSession( new LdapPrincipal( schemaManager, new Dn( schemaManager ),
+            AuthenticationLevel.STRONG ), directoryService );
+    }
+
+
+    @Test
+    public void testReleasedLookupContextIsReused() throws Exception
+    {
+        Dn dn = new Dn( schemaManager, "ou=system" );
+        LookupOperationContext lookupContext = OperationContextPool.acquireLookupContext( session, dn, "cn" );
+        lookupContext.addRequestControl( new ManageDsaITImpl() );
+        lookupContext.throwReferral();
+        lookupContext.setSyncreplLookup( true );
+        OperationContextPool.release( lookupContext );
+
+        LookupOperationContext reused = OperationContextPool.acquireLookupContext( session, dn );
+
+        assertSame( lookupContext, reused );
+
+        // Nothing is left from the previous operation
+        assertSame( session, reused.getSession() );
+        assertSame( dn, reused.getDn() );
+        assertFalse( reused.hasRequestControls() );
+        assertFalse( reused.isReferralThrown() );
+        assertFalse( reused.isSyncreplLookup() );
+        assertNull( reused.getEntry() );
+        assertNull( reused.getPartition() );
+        assertNull( reused.getTransaction() );
+        assertTrue( reused.isAllUserAttributes() );
+        assertEquals( 0, reused.getReturningAttributes().size() );
+
+        OperationContextPool.release( reused );
+    }
+
+
+    @Test
+    public void testNestedLookupsGetDistinctContexts() throws Exception
+    {
+        Dn dn = new Dn( schemaManager, "ou=system" );
+        LookupOperationContext outer = OperationContextPool.acquireLookupContext( session, dn,
+            SchemaConstants.ALL_ATTRIBUTES_ARRAY );
+        LookupOperationContext inner = OperationContextPool.acquireLookupContext( session, dn );
+
+        assertNotSame( outer, inner );
+        assertTrue( outer.isAllOperationalAttributes() );
+        assertFalse( inner.isAllOperationalAttributes() );
+
+        OperationContextPool.release( inner );
+        OperationContextPool.release( outer );
+    }
+
+
+    @Test
+    public void testReleasedHasEntryContextIsReused() throws Exception
+    {
+        Dn dn = new Dn( schemaManager, "ou=system" );
+        HasEntryOperationContext hasEntryContext = OperationContextPool.acquireHasEntryContext( session, dn );
+        OperationContextPool.release( hasEntryContext );
+
+        Dn otherDn = new Dn( schemaManager, "ou=schema" );
+        HasEntryOperationContext reused = OperationContextPool.acquireHasEntryContext( session, otherDn );
+
+        assertSame( hasEntryContext, reused );
+        assertSame( otherDn, reused.getDn() );
+
+        OperationContextPool.release( reused );
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.api.normalization;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.apache.directory.api.ldap.model.entry.Value;
+import org.apache.directory.api.ldap.model.schema.AttributeType;
+import org.apache.directory.api.ldap.model.schema.Normalizer;
+import org.apache.directory.api.ldap.model.schema.PrepareString.AssertionType;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.api.ldap.model.schema.normalizers.DeepTrimToLowerNormalizer;
+import org.apache.directory.api.ldap.schema.manager.impl.DefaultSchemaManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+
+/**
+ * Tests the {@link NormalizationCache} class.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class NormalizationCacheTest
+{
+    private static SchemaManager schemaManager;
+
+    private int capacity;
+
+
+    @BeforeClass
+    public static void init() throws Exception
+    {
+        schemaManager = new DefaultSchemaManager();
+    }
+
+
+    @Before
+    public void createCache()
+    {
+        capacity = NormalizationCache.getCapacity();
+        NormalizationCache.setCapacity( 100 );
+    }
+
+
+    @After
+    public void restoreCache()
+    {
+        NormalizationCache.setCapacity( capacity );
+    }
+
+
+    @Test
+    public void testNormalizedStringIsCached() throws Exception
+    {
+        Normalizer normalizer = new DeepTrimToLowerNormalizer();
+
+        String normalized = NormalizationCache.normalize( normalizer, "  Top  " );
+
+        assertEquals( "top", normalized );
+        assertEquals( 0L, NormalizationCache.getHitCount() );
+        assertEquals( 1L, NormalizationCache.getMissCount() );
+
+        assertSame( normalized, NormalizationCache.normalize( normalizer, "  Top  " ) );
+        assertEquals( 1L, NormalizationCache.getHitCount() );
+        assertEquals( 1, NormalizationCache.size() );
+    }
+
+
+    @Test
+    public void testKeysDependOnTheNormalizer() throws Exception
+    {
+        Normalizer normalizer1 = new DeepTrimToLowerNormalizer();
+        Normalizer normalizer2 = new DeepTrimToLowerNormalizer();
+
+        NormalizationCache.normalize( normalizer1, "Person" );
+        NormalizationCache.normalize( normalizer2, "Person" );
+
+        // A normalizer from a reloaded schema does not use the former entries
+        assertEquals( 0L, NormalizationCache.getHitCount() );
+        assertEquals( 2, NormalizationCache.size() );
+    }
+
+
+    @Test
+    public void testKeysDependOnTheAssertionType() throws Exception
+    {
+        Normalizer normalizer = new DeepTrimToLowerNormalizer();
+
+        NormalizationCache.normalize( normalizer, "Jo " );
+        NormalizationCache.normalize( normalizer, "Jo ", AssertionType.SUBSTRING_INITIAL );
+        NormalizationCache.normalize( normalizer, "Jo ", AssertionType.SUBSTRING_FINAL );
+
+        assertEquals( 0L, NormalizationCache.getHitCount() );
+        assertEquals( 3, NormalizationCache.size() );
+
+        NormalizationCache.normalize( normalizer, "Jo ", AssertionType.SUBSTRING_INITIAL );
+
+        assertEquals( 1L, NormalizationCache.getHitCount() );
+    }
+
+
+    @Test
+    public void testLongValuesAreNotCached() throws Exception
+    {
+        Normalizer normalizer = new DeepTrimToLowerNormalizer();
+        StringBuilder sb = new StringBuilder();
+
+        for ( int i = 0; i <= NormalizationCache.MAX_VALUE_LENGTH; i++ )
+        {
+            sb.append( 'A' );
+        }
+
+        String value = sb.toString();
+
+        assertEquals( value.toLowerCase(), NormalizationCache.normalize( normalizer, value ) );
+        assertEquals( value.toLowerCase(), NormalizationCache.normalize( normalizer, value ) );
+        assertEquals( 0L, NormalizationCache.getMissCount() );
+        assertEquals( 0, NormalizationCache.size() );
+    }
+
+
+    @Test
+    public void testSchemaAwareValueIsShared() throws Exception
+    {
+        AttributeType cn = schemaManager.getAttributeType( "cn" );
+
+        Value value = NormalizationCache.normalize( cn, "  John   DOE " );
+
+        assertEquals( "  John   DOE ", value.getValue() );
+        assertEquals( new Value( cn, "john doe" ), value );
+        assertSame( value, NormalizationCache.normalize( cn, "  John   DOE " ) );
+
+        // Another user provided form gives another value
+        assertNotSame( value, NormalizationCache.normalize( cn, "john doe" ) );
+        assertEquals( 1L, NormalizationCache.getHitCount() );
+    }
+
+
+    @Test
+    public void testDisabledCache() throws Exception
+    {
+        NormalizationCache.setCapacity( 0 );
+        Normalizer normalizer = new DeepTrimToLowerNormalizer();
+
+        assertEquals( "top", NormalizationCache.normalize( normalizer, "Top" ) );
+        assertEquals( 0, NormalizationCache.getCapacity() );
+        assertEquals( 0L, NormalizationCache.getMissCount() );
+    }
+}
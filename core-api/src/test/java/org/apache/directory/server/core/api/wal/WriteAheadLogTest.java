@@ -0,0 +1,212 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.api.wal;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import org.apache.directory.api.ldap.model.ldif.ChangeType;
+import org.apache.directory.api.ldap.model.ldif.LdifEntry;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+
+/**
+ * Tests the {@link WriteAheadLog} class.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class WriteAheadLogTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+
+    private LdifEntry addChange( String cn ) throws Exception
+    {
+        return new LdifEntry( "cn=" + cn + ",ou=system",
+            "changetype: add",
+            "objectClass: person",
+            "cn: " + cn,
+            "sn: " + cn );
+    }
+
+
+    @Test
+    public void testChangesAreReadAfterReopening() throws Exception
+    {
+        File file = new File( folder.getRoot(), WriteAheadLog.WAL_FILE_NAME );
+        WriteAheadLog wal = new WriteAheadLog( file );
+        wal.open();
+
+        wal.awaitDurability( wal.append( addChange( "a" ) ) );
+
+        LdifEntry delete = new LdifEntry();
+        delete.setChangeType( ChangeType.Delete );
+        delete.setDn( "cn=a,ou=system" );
+
+        wal.awaitDurability( wal.append( addChange( "b" ), delete ) );
+        wal.close();
+
+        wal = new WriteAheadLog( file );
+        wal.open();
+
+        List<LdifEntry> changes = wal.readChanges();
+
+        assertEquals( 3, changes.size() );
+        assertEquals( "cn=a,ou=system", changes.get( 0 ).getDn().getName() );
+        assertTrue( changes.get( 0 ).isChangeAdd() );
+        assertEquals( "cn=b,ou=system", changes.get( 1 ).getDn().getName() );
+        assertTrue( changes.get( 2 ).isChangeDelete() );
+
+        wal.close();
+    }
+
+
+    @Test
+    public void testTruncatedRecordIsDropped() throws Exception
+    {
+        File file = new File( folder.getRoot(), WriteAheadLog.WAL_FILE_NAME );
+        WriteAheadLog wal = new WriteAheadLog( file );
+        wal.open();
+
+        wal.append( addChange( "a" ) );
+        long size = wal.getSize();
+        wal.append( addChange( "b" ) );
+        wal.close();
+
+        // Simulate a crash while the second record was written
+        try ( RandomAccessFile raf = new RandomAccessFile( file, "rw" ) )
+        {
+            raf.setLength( raf.length() - 3 );
+        }
+
+        wal = new WriteAheadLog( file );
+        wal.open();
+
+        assertEquals( size, wal.getSize() );
+        assertEquals( size, file.length() );
+        assertEquals( 1, wal.readChanges().size() );
+
+        // The next records are appended after the last complete one
+        wal.append( addChange( "c" ) );
+        assertEquals( 2, wal.readChanges().size() );
+
+        wal.close();
+    }
+
+
+    @Test
+    public void testCheckpointEmptiesTheLog() throws Exception
+    {
+        File file = new File( folder.getRoot(), WriteAheadLog.WAL_FILE_NAME );
+        WriteAheadLog wal = new WriteAheadLog( file );
+        wal.open();
+
+        long position = wal.append( addChange( "a" ) );
+        wal.checkpoint();
+
+        assertEquals( 0L, wal.getSize() );
+        assertEquals( 0, wal.readChanges().size() );
+
+        // Nothing left to flush
+        wal.awaitDurability( position );
+
+        // The positions keep on growing after a checkpoint
+        assertTrue( wal.append( addChange( "b" ) ) > position );
+        assertEquals( 1, wal.readChanges().size() );
+
+        wal.close();
+    }
+
+
+    @Test
+    public void testConcurrentAppends() throws Exception
+    {
+        File file = new File( folder.getRoot(), WriteAheadLog.WAL_FILE_NAME );
+        final WriteAheadLog wal = new WriteAheadLog( file );
+        wal.open();
+
+        Thread[] threads = new Thread[8];
+        final Exception[] errors = new Exception[threads.length];
+
+        for ( int i = 0; i < threads.length; i++ )
+        {
+            final int index = i;
+
+            threads[i] = new Thread( new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        for ( int j = 0; j < 20; j++ )
+                        {
+                            wal.awaitDurability( wal.append( addChange( "t" + index + "-" + j ) ) );
+                        }
+                    }
+                    catch ( Exception e )
+                    {
+                        errors[index] = e;
+                    }
+                }
+            } );
+
+            threads[i].start();
+        }
+
+        for ( int i = 0; i < threads.length; i++ )
+        {
+            threads[i].join();
+            assertEquals( null, errors[i] );
+        }
+
+        assertEquals( threads.length * 20, wal.readChanges().size() );
+
+        wal.close();
+    }
+
+
+    @Test
+    public void testCheckpointRequestedWhenFull() throws Exception
+    {
+        File file = new File( folder.getRoot(), WriteAheadLog.WAL_FILE_NAME );
+        WriteAheadLog wal = new WriteAheadLog( file );
+        wal.setMaxSize( 1L );
+        wal.open();
+
+        wal.append( addChange( "a" ) );
+
+        // Does not wait, the log is already too big
+        long start = System.currentTimeMillis();
+        wal.awaitCheckpoint( 60000L );
+
+        assertTrue( System.currentTimeMillis() - start < 30000L );
+
+        wal.close();
+    }
+}
@@ -0,0 +1,262 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.operations.async;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.DefaultModification;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.entry.ModificationOperation;
+import org.apache.directory.api.ldap.model.exception.LdapEntryAlreadyExistsException;
+import org.apache.directory.api.ldap.model.message.SearchRequest;
+import org.apache.directory.api.ldap.model.message.SearchRequestImpl;
+import org.apache.directory.api.ldap.model.message.SearchScope;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.server.core.annotations.ApplyLdifs;
+import org.apache.directory.server.core.annotations.CreateDS;
+import org.apache.directory.server.core.api.async.AsyncCoreSession;
+import org.apache.directory.server.core.api.async.EntrySubscriber;
+import org.apache.directory.server.core.api.async.EntrySubscription;
+import org.apache.directory.server.core.api.async.OperationFuture;
+import org.apache.directory.server.core.api.async.OperationListener;
+import org.apache.directory.server.core.integ.AbstractLdapTestUnit;
+import org.apache.directory.server.core.integ.FrameworkRunner;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+
+/**
+ * Test the asynchronous session
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@RunWith(FrameworkRunner.class)
+@CreateDS(name = "AsyncCoreSessionIT")
+@ApplyLdifs(
+    {
+        "dn: cn=async1,ou=system",
+        "objectClass: person",
+        "cn: async1",
+        "sn: sn_async1",
+        "",
+        "dn: cn=async2,ou=system",
+        "objectClass: person",
+        "cn: async2",
+        "sn: sn_async2",
+        "",
+        "dn: cn=async3,ou=system",
+        "objectClass: person",
+        "cn: async3",
+        "sn: sn_async3",
+        "",
+        "dn: cn=async4,ou=system",
+        "objectClass: person",
+        "cn: async4",
+        "sn: sn_async4",
+        "",
+        "dn: cn=async5,ou=system",
+        "objectClass: person",
+        "cn: async5",
+        "sn: sn_async5"
+    })
+public class AsyncCoreSessionIT extends AbstractLdapTestUnit
+{
+    /** The admin session */
+    private AsyncCoreSession session;
+
+
+    @Before
+    public void setup() throws Exception
+    {
+        session = new AsyncCoreSession( getService().getAdminSession() );
+    }
+
+
+    /**
+     * A subscriber keeping the entries it receives
+     */
+    private static class TestSubscriber implements EntrySubscriber
+    {
+        private final List<Entry> entries = new CopyOnWriteArrayList<>();
+        private final CountDownLatch done = new CountDownLatch( 1 );
+        private volatile EntrySubscription subscription;
+        private volatile Throwable error;
+        private volatile boolean completed;
+        private final long initialRequest;
+
+
+        TestSubscriber( long initialRequest )
+        {
+            this.initialRequest = initialRequest;
+        }
+
+
+        public void onSubscribe( EntrySubscription subscription )
+        {
+            this.subscription = subscription;
+            subscription.request( initialRequest );
+        }
+
+
+        public void onNext( Entry entry )
+        {
+            entries.add( entry );
+        }
+
+
+        public void onError( Throwable error )
+        {
+            this.error = error;
+            done.countDown();
+        }
+
+
+        public void onComplete()
+        {
+            completed = true;
+            done.countDown();
+        }
+    }
+
+
+    private SearchRequest searchRequest() throws Exception
+    {
+        SearchRequest searchRequest = new SearchRequestImpl();
+        searchRequest.setBase( new Dn( getService().getSchemaManager(), "ou=system" ) );
+        searchRequest.setFilter( "(cn=async*)" );
+        searchRequest.setScope( SearchScope.ONELEVEL );
+
+        return searchRequest;
+    }
+
+
+    @Test
+    public void testUpdates() throws Exception
+    {
+        Dn dn = new Dn( getService().getSchemaManager(), "cn=async6,ou=system" );
+        Entry entry = new DefaultEntry( getService().getSchemaManager(), dn,
+            "objectClass: person",
+            "cn: async6",
+            "sn: sn_async6" );
+
+        final CountDownLatch listened = new CountDownLatch( 1 );
+
+        OperationFuture<Void> add = session.add( entry ).addListener( new OperationListener<Void>()
+        {
+            public void operationComplete( OperationFuture<Void> future )
+            {
+                listened.countDown();
+            }
+        } );
+
+        assertNull( add.get() );
+        assertTrue( listened.await( 10, TimeUnit.SECONDS ) );
+        assertNotNull( session.lookup( dn ).get() );
+
+        session.modify( dn, new DefaultModification( ModificationOperation.REPLACE_ATTRIBUTE, "sn", "modified" ) )
+            .get();
+        assertEquals( "modified", session.lookup( dn ).get().get( "sn" ).getString() );
+
+        session.delete( dn ).get();
+        assertFalse( session.getSession().exists( dn ) );
+    }
+
+
+    @Test
+    public void testErrorIsReported() throws Exception
+    {
+        Entry entry = new DefaultEntry( getService().getSchemaManager(), "cn=async1,ou=system",
+            "objectClass: person",
+            "cn: async1",
+            "sn: sn_async1" );
+
+        try
+        {
+            session.add( entry ).get();
+            fail();
+        }
+        catch ( ExecutionException ee )
+        {
+            assertTrue( ee.getCause() instanceof LdapEntryAlreadyExistsException );
+        }
+    }
+
+
+    @Test
+    public void testSearchOnlySendsTheRequestedEntries() throws Exception
+    {
+        TestSubscriber subscriber = new TestSubscriber( 2 );
+        session.search( searchRequest(), subscriber );
+
+        // Only two entries are sent, the search waits for more requests
+        assertFalse( subscriber.done.await( 500, TimeUnit.MILLISECONDS ) );
+        assertEquals( 2, subscriber.entries.size() );
+
+        subscriber.subscription.request( Long.MAX_VALUE );
+
+        assertTrue( subscriber.done.await( 10, TimeUnit.SECONDS ) );
+        assertTrue( subscriber.completed );
+        assertNull( subscriber.error );
+        assertEquals( 5, subscriber.entries.size() );
+    }
+
+
+    @Test
+    public void testSearchCancellation() throws Exception
+    {
+        TestSubscriber subscriber = new TestSubscriber( 1 );
+        session.search( searchRequest(), subscriber );
+
+        assertFalse( subscriber.done.await( 500, TimeUnit.MILLISECONDS ) );
+        subscriber.subscription.cancel();
+        subscriber.subscription.request( 10 );
+
+        // Nothing is sent once the search is cancelled
+        assertFalse( subscriber.done.await( 500, TimeUnit.MILLISECONDS ) );
+        assertEquals( 1, subscriber.entries.size() );
+        assertFalse( subscriber.completed );
+    }
+
+
+    @Test
+    public void testInvalidRequestFailsTheSearch() throws Exception
+    {
+        TestSubscriber subscriber = new TestSubscriber( 0 );
+        session.search( searchRequest(), subscriber );
+
+        assertTrue( subscriber.done.await( 10, TimeUnit.SECONDS ) );
+        assertTrue( subscriber.error instanceof IllegalArgumentException );
+        assertTrue( subscriber.entries.isEmpty() );
+    }
+}
@@ -0,0 +1,244 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.operations.batch;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.directory.api.ldap.model.entry.DefaultModification;
+import org.apache.directory.api.ldap.model.entry.ModificationOperation;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.exception.LdapUnwillingToPerformException;
+import org.apache.directory.api.ldap.model.ldif.ChangeType;
+import org.apache.directory.api.ldap.model.ldif.LdifEntry;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.server.core.annotations.ApplyLdifs;
+import org.apache.directory.server.core.annotations.CreateDS;
+import org.apache.directory.server.core.api.BatchMode;
+import org.apache.directory.server.core.api.CoreSession;
+import org.apache.directory.server.core.integ.AbstractLdapTestUnit;
+import org.apache.directory.server.core.integ.FrameworkRunner;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+
+/**
+ * Test the batch operation
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@RunWith(FrameworkRunner.class)
+@CreateDS(name = "BatchIT")
+@ApplyLdifs(
+    {
+        // Entry # 1
+        "dn: cn=test,ou=system",
+        "objectClass: person",
+        "cn: test",
+        "sn: sn_test",
+        "",
+        // Entry # 2
+        "dn: cn=test2,ou=system",
+        "objectClass: person",
+        "cn: test2",
+        "sn: sn_test2"
+    })
+public class BatchIT extends AbstractLdapTestUnit
+{
+    /** The admin session */
+    private CoreSession session;
+
+
+    @Before
+    public void setup() throws Exception
+    {
+        session = getService().getAdminSession();
+    }
+
+
+    private LdifEntry add( String cn ) throws Exception
+    {
+        LdifEntry ldif = new LdifEntry();
+        ldif.setChangeType( ChangeType.Add );
+        ldif.setDn( "cn=" + cn + ",ou=system" );
+        ldif.addAttribute( "objectClass", "person" );
+        ldif.addAttribute( "cn", cn );
+        ldif.addAttribute( "sn", "sn_" + cn );
+
+        return ldif;
+    }
+
+
+    private LdifEntry modify( String cn, String sn ) throws Exception
+    {
+        LdifEntry ldif = new LdifEntry();
+        ldif.setChangeType( ChangeType.Modify );
+        ldif.setDn( "cn=" + cn + ",ou=system" );
+        ldif.addModification( new DefaultModification( ModificationOperation.REPLACE_ATTRIBUTE, "sn", sn ) );
+
+        return ldif;
+    }
+
+
+    /**
+     * Test a batch of adds and modifies, a modify applying to an entry added by the same batch
+     */
+    @Test
+    public void testBatch() throws Exception
+    {
+        List<LdifEntry> changes = new ArrayList<>();
+        changes.add( add( "batch1" ) );
+        changes.add( add( "batch2" ) );
+        changes.add( modify( "batch1", "modified" ) );
+        changes.add( modify( "test", "modified" ) );
+
+        List<LdapException> results = session.batch( changes, BatchMode.ALL_OR_NOTHING );
+
+        assertEquals( 4, results.size() );
+
+        for ( LdapException result : results )
+        {
+            assertNull( result );
+        }
+
+        assertTrue( session.exists( "cn=batch2,ou=system" ) );
+        assertEquals( "modified", session.lookup( new Dn( "cn=batch1,ou=system" ) ).get( "sn" ).getString() );
+        assertEquals( "modified", session.lookup( new Dn( "cn=test,ou=system" ) ).get( "sn" ).getString() );
+    }
+
+
+    /**
+     * Test that a failing operation cancels the whole batch
+     */
+    @Test
+    public void testAllOrNothing() throws Exception
+    {
+        List<LdifEntry> changes = new ArrayList<>();
+        changes.add( add( "batch3" ) );
+        changes.add( add( "test" ) );
+        changes.add( add( "batch6" ) );
+
+        List<LdapException> results = session.batch( changes, BatchMode.ALL_OR_NOTHING );
+
+        // The batch stops at the failing operation, cn=test already exists
+        assertEquals( 2, results.size() );
+        assertNull( results.get( 0 ) );
+        assertNotNull( results.get( 1 ) );
+
+        assertFalse( session.exists( "cn=batch3,ou=system" ) );
+        assertFalse( session.exists( "cn=batch6,ou=system" ) );
+    }
+
+
+    /**
+     * Test a batch deleting and renaming entries
+     */
+    @Test
+    public void testBatchWithModDn() throws Exception
+    {
+        List<LdifEntry> changes = new ArrayList<>();
+        changes.add( add( "batch7" ) );
+
+        LdifEntry rename = new LdifEntry();
+        rename.setChangeType( ChangeType.ModRdn );
+        rename.setDn( "cn=batch7,ou=system" );
+        rename.setNewRdn( "cn=batch8" );
+        rename.setDeleteOldRdn( true );
+        changes.add( rename );
+
+        LdifEntry delete = new LdifEntry();
+        delete.setChangeType( ChangeType.Delete );
+        delete.setDn( "cn=missing,ou=system" );
+        changes.add( delete );
+
+        List<LdapException> results = session.batch( changes, BatchMode.ALL_OR_NOTHING );
+
+        // The delete of a missing entry cancels the add and the rename
+        assertEquals( 3, results.size() );
+        assertNotNull( results.get( 2 ) );
+        assertFalse( session.exists( "cn=batch7,ou=system" ) );
+        assertFalse( session.exists( "cn=batch8,ou=system" ) );
+
+        delete.setDn( "cn=test2,ou=system" );
+        results = session.batch( changes, BatchMode.ALL_OR_NOTHING );
+
+        for ( LdapException result : results )
+        {
+            assertNull( result );
+        }
+
+        assertFalse( session.exists( "cn=batch7,ou=system" ) );
+        assertTrue( session.exists( "cn=batch8,ou=system" ) );
+        assertFalse( session.exists( "cn=test2,ou=system" ) );
+    }
+
+
+    /**
+     * Test that the failing operations are skipped in the best effort mode
+     */
+    @Test
+    public void testBestEffort() throws Exception
+    {
+        List<LdifEntry> changes = new ArrayList<>();
+        changes.add( add( "batch4" ) );
+        changes.add( add( "test" ) );
+        changes.add( modify( "missing", "modified" ) );
+        changes.add( add( "batch5" ) );
+
+        List<LdapException> results = session.batch( changes, BatchMode.BEST_EFFORT );
+
+        assertEquals( 4, results.size() );
+        assertNull( results.get( 0 ) );
+        assertNotNull( results.get( 1 ) );
+        assertNotNull( results.get( 2 ) );
+        assertNull( results.get( 3 ) );
+
+        assertTrue( session.exists( "cn=batch4,ou=system" ) );
+        assertTrue( session.exists( "cn=batch5,ou=system" ) );
+    }
+
+
+    /**
+     * Test that a batch can't span more than one partition
+     */
+    @Test(expected = LdapUnwillingToPerformException.class)
+    public void testBatchInSeveralPartitions() throws Exception
+    {
+        LdifEntry other = new LdifEntry();
+        other.setChangeType( ChangeType.Modify );
+        other.setDn( "ou=schema" );
+        other.addModification( new DefaultModification( ModificationOperation.REPLACE_ATTRIBUTE, "description",
+            "batch" ) );
+
+        List<LdifEntry> changes = new ArrayList<>();
+        changes.add( modify( "test", "modified" ) );
+        changes.add( other );
+
+        session.batch( changes, BatchMode.BEST_EFFORT );
+    }
+}
@@ -37,15 +37,18 @@ import org.apache.directory.api.ldap.model.constants.SchemaConstants;
 import org.apache.directory.api.ldap.model.cursor.Cursor;
 import org.apache.directory.api.ldap.model.cursor.CursorException;
 import org.apache.directory.api.ldap.model.cursor.EmptyCursor;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
 import org.apache.directory.api.ldap.model.entry.DefaultModification;
 import org.apache.directory.api.ldap.model.entry.Entry;
 import org.apache.directory.api.ldap.model.entry.Modification;
 import org.apache.directory.api.ldap.model.entry.Value;
 import org.apache.directory.api.ldap.model.exception.LdapException;
 import org.apache.directory.api.ldap.model.exception.LdapInvalidSearchFilterException;
+import org.apache.directory.api.ldap.model.exception.LdapUnwillingToPerformException;
 import org.apache.directory.api.ldap.model.filter.ExprNode;
 import org.apache.directory.api.ldap.model.filter.FilterParser;
 import org.apache.directory.api.ldap.model.filter.PresenceNode;
+import org.apache.directory.api.ldap.model.ldif.LdifEntry;
 import org.apache.directory.api.ldap.model.message.AddRequest;
 import org.apache.directory.api.ldap.model.message.AliasDerefMode;
 import org.apache.directory.api.ldap.model.message.CompareRequest;
@@ -71,6 +74,7 @@ import org.apache.directory.api.ldap.model.schema.MatchingRule;
 import org.apache.directory.api.ldap.model.schema.SchemaManager;
 import org.apache.directory.api.util.Strings;
 import org.apache.directory.server.constants.ServerDNConstants;
+import org.apache.directory.server.core.api.BatchMode;
 import org.apache.directory.server.core.api.CoreSession;
 import org.apache.directory.server.core.api.DirectoryService;
 import org.apache.directory.server.core.api.LdapPrincipal;
@@ -86,6 +90,7 @@ import org.apache.directory.server.core.api.interceptor.context.ModifyOperationC
 import org.apache.directory.server.core.api.interceptor.context.MoveAndRenameOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.MoveOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.OperationContext;
+import org.apache.directory.server.core.api.interceptor.context.OperationContextPool;
 import org.apache.directory.server.core.api.interceptor.context.RenameOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.SearchOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.UnbindOperationContext;
@@ -270,6 +275,83 @@ public class DefaultCoreSession implements CoreSession
     }
 
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<LdapException> batch( List<LdifEntry> changes, BatchMode mode ) throws LdapException
+    {
+        List<OperationContext> contexts = new ArrayList<>( changes.size() );
+
+        for ( LdifEntry change : changes )
+        {
+            contexts.add( createContext( change ) );
+        }
+
+        OperationManager operationManager = directoryService.getOperationManager();
+
+        return operationManager.batch( contexts, mode );
+    }
+
+
+    /**
+     * Creates the context of the operation applying a change record.
+     */
+    private OperationContext createContext( LdifEntry change ) throws LdapException
+    {
+        SchemaManager schemaManager = directoryService.getSchemaManager();
+
+        switch ( change.getChangeType() )
+        {
+            case Add:
+                Entry entry = change.getEntry();
+
+                if ( !entry.isSchemaAware() )
+                {
+                    entry = new DefaultEntry( schemaManager, entry );
+                }
+
+                return new AddOperationContext( this, entry );
+
+            case Modify:
+                List<Modification> serverModifications = new ArrayList<>( change.getModifications().size() );
+
+                for ( Modification mod : change.getModifications() )
+                {
+                    serverModifications.add( new DefaultModification( schemaManager, mod ) );
+                }
+
+                return new ModifyOperationContext( this, change.getDn(), serverModifications );
+
+            case Delete:
+                return new DeleteOperationContext( this, change.getDn() );
+
+            case ModDn:
+            case ModRdn:
+                Dn dn = new Dn( schemaManager, change.getDn() );
+                Rdn newRdn = new Rdn( schemaManager, change.getNewRdn() );
+
+                if ( change.getNewSuperior() == null )
+                {
+                    return new RenameOperationContext( this, dn, newRdn, change.isDeleteOldRdn() );
+                }
+
+                Dn newSuperior = new Dn( schemaManager, change.getNewSuperior() );
+
+                if ( newRdn.equals( dn.getRdn() ) )
+                {
+                    return new MoveOperationContext( this, dn, newSuperior );
+                }
+
+                return new MoveAndRenameOperationContext( this, dn, newSuperior, newRdn, change.isDeleteOldRdn() );
+
+            default:
+                throw new LdapUnwillingToPerformException( ResultCodeEnum.UNWILLING_TO_PERFORM,
+                    "Unsupported change type : " + change.getChangeType() );
+        }
+    }
+
+
     private Value convertToValue( String oid, Object value ) throws LdapException
     {
         Value val;
@@ -587,9 +669,16 @@ public class DefaultCoreSession implements CoreSession
     public Entry lookup( Dn dn, String... attrIds ) throws LdapException
     {
         OperationManager operationManager = directoryService.getOperationManager();
-        LookupOperationContext lookupContext = new LookupOperationContext( this, dn, attrIds );
+        LookupOperationContext lookupContext = OperationContextPool.acquireLookupContext( this, dn, attrIds );
 
-        return operationManager.lookup( lookupContext );
+        try
+        {
+            return operationManager.lookup( lookupContext );
+        }
+        finally
+        {
+            OperationContextPool.release( lookupContext );
+        }
     }
 
 
@@ -600,14 +689,21 @@ public class DefaultCoreSession implements CoreSession
     public Entry lookup( Dn dn, Control[] controls, String... attrIds ) throws LdapException
     {
         OperationManager operationManager = directoryService.getOperationManager();
-        LookupOperationContext lookupContext = new LookupOperationContext( this, dn, attrIds );
+        LookupOperationContext lookupContext = OperationContextPool.acquireLookupContext( this, dn, attrIds );
 
-        if ( controls != null )
+        try
         {
-            lookupContext.addRequestControls( controls );
-        }
+            if ( controls != null )
+            {
+                lookupContext.addRequestControls( controls );
+            }
 
-        return operationManager.lookup( lookupContext );
+            return operationManager.lookup( lookupContext );
+        }
+        finally
+        {
+            OperationContextPool.release( lookupContext );
+        }
     }
 
 
@@ -1002,10 +1098,17 @@ public class DefaultCoreSession implements CoreSession
     @Override
     public boolean exists( Dn dn ) throws LdapException
     {
-        HasEntryOperationContext hasEntryContext = new HasEntryOperationContext( this, dn );
+        HasEntryOperationContext hasEntryContext = OperationContextPool.acquireHasEntryContext( this, dn );
         OperationManager operationManager = directoryService.getOperationManager();
 
-        return operationManager.hasEntry( hasEntryContext );
+        try
+        {
+            return operationManager.hasEntry( hasEntryContext );
+        }
+        finally
+        {
+            OperationContextPool.release( hasEntryContext );
+        }
     }
 
 
@@ -22,18 +22,26 @@ package org.apache.directory.server.core.shared;
 
 
 import net.sf.ehcache.Cache;
-import net.sf.ehcache.Element;
 
 import org.apache.directory.api.ldap.model.exception.LdapInvalidDnException;
 import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.name.Rdn;
 import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.server.core.api.CacheMemoryGovernor;
+import org.apache.directory.server.core.api.CacheService;
 import org.apache.directory.server.core.api.DnFactory;
+import org.apache.directory.server.core.api.TinyLfuCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 
 /**
- * The default Dn factory implementation.
+ * The default Dn factory implementation. The parsed DNs are kept in a {@link TinyLfuCache},
+ * keyed by their user provided form. Their Rdns are interned : a Rdn already used by a cached
+ * Dn, like the Rdns of the common parents, is shared by the new Dn instead of being kept twice.
+ * <br>
+ * The capacity of the cache is fixed : it's not managed by the {@link CacheMemoryGovernor}, and
+ * comes on top of the memory budget shared by the ehcache caches.
  *
  * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
  */
@@ -41,29 +49,92 @@ public class DefaultDnFactory implements DnFactory
 {
     private static final Logger LOG = LoggerFactory.getLogger( DefaultDnFactory.class );
 
+    /** The default number of cached DNs, when the configured cache has no limit */
+    public static final int DEFAULT_CAPACITY = 10000;
+
     /** The cache for DNs */
-    private Cache dnCache;
+    private TinyLfuCache<String, Dn> dnCache;
+
+    /** The interned Rdns, keyed by their user provided form */
+    private TinyLfuCache<String, Rdn> rdnCache;
 
     /** The schema manager */
     private SchemaManager schemaManager;
 
-    /** Flag to enable stats */
-    private boolean enableStats = false;
 
-    // stat counters
-    private int hitCount = 0;
-    private int missCount = 0;
+    /**
+     * Instantiates a new default Dn factory. Only the maximum number of elements of the given
+     * cache configuration is used.
+     *
+     * @param schemaManager The schema manager
+     * @param dnCache The configured DN cache, or null to disable the cache
+     * @deprecated The given cache is not used, and takes a share of the caches memory budget. Use
+     * {@link #DefaultDnFactory(SchemaManager, int)} with {@link #getConfiguredCapacity(CacheService)}
+     */
+    @Deprecated
+    public DefaultDnFactory( SchemaManager schemaManager, Cache dnCache )
+    {
+        this( schemaManager, getCapacity( dnCache ) );
+    }
 
 
     /**
      * Instantiates a new default Dn factory.
      *
-     * @param directoryService the directory service
+     * @param schemaManager The schema manager
+     * @param capacity The maximum number of cached DNs, and of interned Rdns. The cache is
+     * disabled if it's lower than 2
      */
-    public DefaultDnFactory( SchemaManager schemaManager, Cache dnCache )
+    public DefaultDnFactory( SchemaManager schemaManager, int capacity )
     {
         this.schemaManager = schemaManager;
-        this.dnCache = dnCache;
+
+        if ( capacity >= 2 )
+        {
+            dnCache = new TinyLfuCache<>( capacity );
+            rdnCache = new TinyLfuCache<>( capacity );
+        }
+    }
+
+
+    /**
+     * Gets the capacity configured for the {@link CacheService#DN_CACHE} cache, without
+     * creating the cache.
+     *
+     * @param cacheService The cache service holding the caches configuration, or null to
+     * disable the cache
+     * @return The number of DNs to cache, 0 if the cache is disabled
+     */
+    public static int getConfiguredCapacity( CacheService cacheService )
+    {
+        if ( cacheService == null )
+        {
+            return 0;
+        }
+
+        return getCapacity( cacheService.getConfiguredCapacity( CacheService.DN_CACHE ) );
+    }
+
+
+    private static int getCapacity( Cache dnCache )
+    {
+        if ( dnCache == null )
+        {
+            return 0;
+        }
+
+        return getCapacity( dnCache.getCacheConfiguration().getMaxEntriesLocalHeap() );
+    }
+
+
+    private static int getCapacity( long maxEntries )
+    {
+        if ( ( maxEntries <= 0L ) || ( maxEntries > Integer.MAX_VALUE ) )
+        {
+            return DEFAULT_CAPACITY;
+        }
+
+        return ( int ) maxEntries;
     }
 
 
@@ -83,52 +154,83 @@ public class DefaultDnFactory implements DnFactory
             return Dn.ROOT_DSE;
         }
 
-        Dn cachedDn = null;
-
-        // read the explanation at the above DN_CACHE variable declaration
-        // for the reason for performing this check
-        if ( dnCache != null )
+        if ( dnCache == null )
         {
-            Element dnCacheEntry = dnCache.get( dn );
-
-            if ( dnCacheEntry != null )
-            {
-                cachedDn = ( Dn ) dnCacheEntry.getObjectValue();
-            }
+            return new Dn( schemaManager, dn );
         }
 
+        Dn cachedDn = dnCache.get( dn );
+
         if ( cachedDn == null )
         {
             LOG.debug( "Dn {} not found in the cache, creating", dn );
 
-            cachedDn = new Dn( schemaManager, dn );
+            cachedDn = dnCache.putIfAbsent( dn, intern( new Dn( schemaManager, dn ) ) );
+        }
+        else
+        {
+            LOG.debug( "Dn {} found in the cache", dn );
+        }
 
-            if ( dnCache != null )
-            {
-                dnCache.put( new Element( dn, cachedDn ) );
-            }
+        return cachedDn;
+    }
+
+
+    /**
+     * Replaces the Rdns of a new Dn by the interned ones. The Dn is rebuilt only if some of
+     * its Rdns can be shared, and if it keeps the same user provided form.
+     */
+    private Dn intern( Dn dn ) throws LdapInvalidDnException
+    {
+        Rdn[] rdns = new Rdn[dn.size()];
+        boolean shared = false;
+        int pos = 0;
+
+        for ( Rdn rdn : dn.getRdns() )
+        {
+            Rdn interned = rdnCache.get( rdn.getName() );
 
-            if ( enableStats )
+            if ( interned == null )
             {
-                missCount++;
+                interned = rdnCache.putIfAbsent( rdn.getName(), rdn );
             }
+
+            shared |= interned != rdn;
+            rdns[pos++] = interned;
         }
-        else
+
+        if ( !shared )
         {
-            if ( enableStats )
-            {
-                hitCount++;
-            }
+            return dn;
         }
 
-        LOG.debug( "Dn {} found in the cache", dn );
+        Dn internedDn = new Dn( schemaManager, rdns );
 
-        if ( enableStats )
+        if ( !internedDn.getName().equals( dn.getName() ) )
         {
-            LOG.debug( "Dn cache hit - {} , miss - {} and is normalized = {}", hitCount, missCount, cachedDn.isSchemaAware() );
+            // The separators between the Rdns are not the usual ones
+            return dn;
         }
 
-        return cachedDn;
+        return internedDn;
+    }
+
+
+    /**
+     * @return The number of DNs found in the cache
+     */
+    public long getHitCount()
+    {
+        return ( dnCache == null ) ? 0L : dnCache.getHitCount();
+    }
+
+
+    /**
+     * @return The number of DNs not found in the cache, and parsed
+     */
+    public long getMissCount()
+    {
+        return ( dnCache == null ) ? 0L : dnCache.getMissCount();
     }
 
 
@@ -31,12 +31,19 @@ import java.nio.channels.FileLock;
 import java.nio.channels.OverlappingFileLockException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -50,11 +57,14 @@ import org.apache.directory.api.ldap.model.csn.CsnFactory;
 import org.apache.directory.api.ldap.model.cursor.Cursor;
 import org.apache.directory.api.ldap.model.entry.Attribute;
 import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.DefaultModification;
 import org.apache.directory.api.ldap.model.entry.Entry;
 import org.apache.directory.api.ldap.model.entry.Modification;
 import org.apache.directory.api.ldap.model.entry.Value;
+import org.apache.directory.api.ldap.model.exception.LdapEntryAlreadyExistsException;
 import org.apache.directory.api.ldap.model.exception.LdapException;
 import org.apache.directory.api.ldap.model.exception.LdapNoPermissionException;
+import org.apache.directory.api.ldap.model.exception.LdapNoSuchObjectException;
 import org.apache.directory.api.ldap.model.exception.LdapOperationException;
 import org.apache.directory.api.ldap.model.exception.LdapOtherException;
 import org.apache.directory.api.ldap.model.ldif.ChangeType;
@@ -63,6 +73,7 @@ import org.apache.directory.api.ldap.model.ldif.LdifReader;
 import org.apache.directory.api.ldap.model.name.Dn;
 import org.apache.directory.api.ldap.model.name.DnUtils;
 import org.apache.directory.api.ldap.model.name.Rdn;
+import org.apache.directory.api.ldap.model.schema.AttributeType;
 import org.apache.directory.api.ldap.model.schema.SchemaManager;
 import org.apache.directory.api.ldap.util.tree.DnNode;
 import org.apache.directory.api.util.DateUtils;
@@ -87,6 +98,7 @@ import org.apache.directory.server.core.api.administrative.AccessControlAdminist
 import org.apache.directory.server.core.api.administrative.CollectiveAttributeAdministrativePoint;
 import org.apache.directory.server.core.api.administrative.SubschemaAdministrativePoint;
 import org.apache.directory.server.core.api.administrative.TriggerExecutionAdministrativePoint;
+import org.apache.directory.server.core.api.async.OperationFuture;
 import org.apache.directory.server.core.api.changelog.ChangeLog;
 import org.apache.directory.server.core.api.changelog.ChangeLogEvent;
 import org.apache.directory.server.core.api.changelog.Tag;
@@ -96,9 +108,13 @@ import org.apache.directory.server.core.api.interceptor.BaseInterceptor;
 import org.apache.directory.server.core.api.interceptor.Interceptor;
 import org.apache.directory.server.core.api.interceptor.context.AddOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.BindOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.DeleteOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.HasEntryOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.LookupOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.ModifyOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.MoveOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.OperationContext;
+import org.apache.directory.server.core.api.interceptor.context.RenameOperationContext;
 import org.apache.directory.server.core.api.journal.Journal;
 import org.apache.directory.server.core.api.partition.Partition;
 import org.apache.directory.server.core.api.partition.PartitionNexus;
@@ -106,6 +122,7 @@ import org.apache.directory.server.core.api.partition.PartitionTxn;
 import org.apache.directory.server.core.api.schema.SchemaPartition;
 import org.apache.directory.server.core.api.subtree.SubentryCache;
 import org.apache.directory.server.core.api.subtree.SubtreeEvaluator;
+import org.apache.directory.server.core.api.wal.WriteAheadLog;
 import org.apache.directory.server.core.authn.AuthenticationInterceptor;
 import org.apache.directory.server.core.authn.ppolicy.PpolicyConfigContainer;
 import org.apache.directory.server.core.authz.AciAuthorizationInterceptor;
@@ -202,9 +219,24 @@ public class DefaultDirectoryService implements DirectoryService
     /** The default delay to wait between sync on disk : 15 seconds */
     private static final long DEFAULT_SYNC_PERIOD = 15000;
 
-    /** */
+    /** The thread synchronizing the partitions, when the write-ahead log is enabled */
     private Thread workerThread;
 
+    /** Set when the worker thread must stop */
+    private volatile boolean workerStopped;
+
+    /** Tells if the write-ahead log is enabled */
+    private boolean writeAheadLogEnabled;
+
+    /** The write-ahead log, when enabled */
+    private volatile WriteAheadLog writeAheadLog;
+
+    /** The executor running the operations of the asynchronous sessions */
+    private ExecutorService coreExecutor;
+
+    /** The number of threads of the core executor, the number of processors by default */
+    private int coreExecutorThreads = Runtime.getRuntime().availableProcessors();
+
     /** The default timeLimit : 100 entries */
     public static final int MAX_SIZE_LIMIT_DEFAULT = 100;
 
@@ -247,8 +279,12 @@ public class DefaultDirectoryService implements DirectoryService
     private Lock readLock = interceptorsLock.readLock();
     private Lock writeLock = interceptorsLock.writeLock();
 
-    /** A map associating a list of interceptor to each operation */
-    private Map<OperationEnum, List<String>> operationInterceptors;
+    /**
+     * The precompiled chain of interceptors to call for each operation. The map and the arrays
+     * are never modified once published : they are rebuilt and swapped when the interceptors
+     * are reconfigured, so the operations read them without any lock or copy.
+     */
+    private volatile Map<OperationEnum, Interceptor[]> interceptorChains = buildEmptyChains();
 
     /** The System partition */
     private Partition systemPartition;
@@ -455,21 +491,64 @@ public class DefaultDirectoryService implements DirectoryService
      */
     public List<String> getInterceptors( OperationEnum operation )
     {
-        List<String> cloned = new ArrayList<>();
-
-        readLock.lock();
+        Interceptor[] chain = interceptorChains.get( operation );
+        List<String> names = new ArrayList<>( chain.length );
 
-        try
+        for ( Interceptor interceptor : chain )
         {
-            cloned.addAll( operationInterceptors.get( operation ) );
+            names.add( interceptor.getName() );
+        }
 
-            return cloned;
+        return names;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public Interceptor[] getInterceptorChain( OperationEnum operation )
+    {
+        return interceptorChains.get( operation );
+    }
+
+
+    /**
+     * @return A map associating an empty chain to each operation
+     */
+    private static Map<OperationEnum, Interceptor[]> buildEmptyChains()
+    {
+        Map<OperationEnum, Interceptor[]> chains = new EnumMap<>( OperationEnum.class );
+
+        for ( OperationEnum operation : OperationEnum.getOperations() )
+        {
+            chains.put( operation, new Interceptor[0] );
         }
-        finally
+
+        return Collections.unmodifiableMap( chains );
+    }
+
+
+    /**
+     * Compute the chain of interceptors to call for each operation, and publish them at once.
+     * Must be called while holding the write lock.
+     */
+    private void buildInterceptorChains()
+    {
+        Map<OperationEnum, Interceptor[]> chains = new EnumMap<>( OperationEnum.class );
+
+        for ( OperationEnum operation : OperationEnum.getOperations() )
         {
-            readLock.unlock();
+            List<Interceptor> operationList = new ArrayList<>();
+
+            for ( Interceptor interceptor : interceptors )
+            {
+                gatherInterceptors( interceptor, interceptor.getClass(), operation, operationList );
+            }
+
+            chains.put( operation, operationList.toArray( new Interceptor[operationList.size()] ) );
         }
 
+        interceptorChains = Collections.unmodifiableMap( chains );
     }
 
 
@@ -482,19 +561,7 @@ public class DefaultDirectoryService implements DirectoryService
 
         try
         {
-            operationInterceptors = new ConcurrentHashMap<>();
-
-            for ( OperationEnum operation : OperationEnum.getOperations() )
-            {
-                List<String> operationList = new ArrayList<>();
-
-                for ( Interceptor interceptor : interceptors )
-                {
-                    gatherInterceptors( interceptor, interceptor.getClass(), operation, operationList );
-                }
-
-                operationInterceptors.put( operation, operationList );
-            }
+            buildInterceptorChains();
         }
         finally
         {
@@ -513,7 +580,7 @@ public class DefaultDirectoryService implements DirectoryService
      * @param selectedInterceptorList the list of selected interceptors
      */
     private void gatherInterceptors( Interceptor interceptor, Class<?> interceptorClz, OperationEnum operation,
-        List<String> selectedInterceptorList )
+        List<Interceptor> selectedInterceptorList )
     {
         // We stop recursing when we reach the Base class
         if ( ( interceptorClz == null ) || ( interceptorClz == BaseInterceptor.class ) )
@@ -547,9 +614,9 @@ public class DefaultDirectoryService implements DirectoryService
 
             if ( hasCorrestSig && method.getName().equals( operation.getMethodName() ) )
             {
-                if ( !selectedInterceptorList.contains( interceptor.getName() ) )
+                if ( !selectedInterceptorList.contains( interceptor ) )
                 {
-                    selectedInterceptorList.add( interceptor.getName() );
+                    selectedInterceptorList.add( interceptor );
                 }
 
                 break;
@@ -574,30 +641,6 @@ public class DefaultDirectoryService implements DirectoryService
 
         try
         {
-            for ( OperationEnum operation : OperationEnum.getOperations() )
-            {
-                List<String> operationList = operationInterceptors.get( operation );
-
-                Method[] methods = interceptor.getClass().getDeclaredMethods();
-
-                for ( Method method : methods )
-                {
-                    if ( method.getName().equals( operation.getMethodName() ) )
-                    {
-                        if ( position == -1 )
-                        {
-                            operationList.add( interceptor.getName() );
-                        }
-                        else
-                        {
-                            operationList.add( position, interceptor.getName() );
-                        }
-
-                        break;
-                    }
-                }
-            }
-
             interceptorNames.put( interceptor.getName(), interceptor );
 
             if ( position == -1 )
@@ -608,6 +651,8 @@ public class DefaultDirectoryService implements DirectoryService
             {
                 interceptors.add( position, interceptor );
             }
+
+            buildInterceptorChains();
         }
         finally
         {
@@ -627,25 +672,10 @@ public class DefaultDirectoryService implements DirectoryService
 
         try
         {
-            for ( OperationEnum operation : OperationEnum.getOperations() )
-            {
-                List<String> operationList = operationInterceptors.get( operation );
-
-                Method[] methods = interceptor.getClass().getDeclaredMethods();
-
-                for ( Method method : methods )
-                {
-                    if ( method.getName().equals( operation.getMethodName() ) )
-                    {
-                        operationList.remove( interceptor.getName() );
-
-                        break;
-                    }
-                }
-            }
-
             interceptorNames.remove( interceptorName );
             interceptors.remove( interceptor );
+
+            buildInterceptorChains();
         }
         finally
         {
@@ -1006,7 +1036,7 @@ public class DefaultDirectoryService implements DirectoryService
             bindContext.setDn( new Dn( schemaManager, principalDn ) );
         }
         
-        bindContext.setInterceptors( getInterceptors( OperationEnum.BIND ) );
+        bindContext.setInterceptors( getInterceptorChain( OperationEnum.BIND ) );
 
         operationManager.bind( bindContext );
 
@@ -1043,7 +1073,7 @@ public class DefaultDirectoryService implements DirectoryService
         }
 
         bindContext.setSaslMechanism( saslMechanism );
-        bindContext.setInterceptors( getInterceptors( OperationEnum.BIND ) );
+        bindContext.setInterceptors( getInterceptorChain( OperationEnum.BIND ) );
 
         operationManager.bind( bindContext );
 
@@ -1304,11 +1334,49 @@ public class DefaultDirectoryService implements DirectoryService
         // --------------------------------------------------------------------
         // Shutdown the sync thread
         // --------------------------------------------------------------------
+        stopWorkerThread();
+
+        // --------------------------------------------------------------------
+        // Shutdown the core executor, the pending asynchronous operations fail
+        // --------------------------------------------------------------------
+        if ( coreExecutor != null )
+        {
+            for ( Runnable pending : coreExecutor.shutdownNow() )
+            {
+                if ( pending instanceof OperationFuture<?> )
+                {
+                    ( ( OperationFuture<?> ) pending ).fail( new LdapOtherException(
+                        "The directory service has been shut down before the operation was run" ) );
+                }
+                else if ( pending instanceof Future<?> )
+                {
+                    ( ( Future<?> ) pending ).cancel( false );
+                }
+            }
+
+            coreExecutor = null;
+        }
+
         LOG.debug( "--- Syncing the nexus " );
         LOG.debug( "--- Flushing everything before quitting" );
         operationManager.lockWrite();
-        partitionNexus.sync();
-        operationManager.unlockWrite();
+
+        try
+        {
+            partitionNexus.sync();
+
+            // Everything is on disk in the partitions, the log can be emptied
+            if ( writeAheadLog != null )
+            {
+                writeAheadLog.checkpoint();
+                writeAheadLog.close();
+                writeAheadLog = null;
+            }
+        }
+        finally
+        {
+            operationManager.unlockWrite();
+        }
 
         // --------------------------------------------------------------------
         // Shutdown the changelog
@@ -2004,7 +2072,8 @@ public class DefaultDirectoryService implements DirectoryService
 
         if ( dnFactory == null )
         {
-            dnFactory = new DefaultDnFactory( schemaManager, cacheService.getCache( "dnCache" ) );
+            dnFactory = new DefaultDnFactory( schemaManager,
+                DefaultDnFactory.getConfiguredCapacity( cacheService ) );
         }
 
         // triggers partition to load schema fully from schema partition
@@ -2029,6 +2098,15 @@ public class DefaultDirectoryService implements DirectoryService
 
         initializeSystemPartition();
 
+        // --------------------------------------------------------------------
+        // Replay the changes logged since the last checkpoint, before
+        // anything else is written in the partitions
+        // --------------------------------------------------------------------
+        if ( writeAheadLogEnabled )
+        {
+            initWriteAheadLog();
+        }
+
         // --------------------------------------------------------------------
         // Create all the bootstrap entries before initializing chain
         // --------------------------------------------------------------------
@@ -2066,6 +2144,11 @@ public class DefaultDirectoryService implements DirectoryService
             journal.init( this );
         }
 
+        if ( writeAheadLog != null )
+        {
+            startWorkerThread();
+        }
+
         if ( LOG.isDebugEnabled() )
         {
             LOG.debug( "<--- DefaultDirectoryService initialized" );
@@ -2363,6 +2446,406 @@ public class DefaultDirectoryService implements DirectoryService
     }
 
 
+    /**
+     * {@inheritDoc}
+     */
+    public void setWriteAheadLogEnabled( boolean writeAheadLogEnabled )
+    {
+        this.writeAheadLogEnabled = writeAheadLogEnabled;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean isWriteAheadLogEnabled()
+    {
+        return writeAheadLogEnabled;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public WriteAheadLog getWriteAheadLog()
+    {
+        return writeAheadLog;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public synchronized ExecutorService getCoreExecutor()
+    {
+        if ( coreExecutor == null )
+        {
+            final AtomicInteger threadNumber = new AtomicInteger();
+
+            coreExecutor = Executors.newFixedThreadPool( coreExecutorThreads, new ThreadFactory()
+            {
+                public Thread newThread( Runnable runnable )
+                {
+                    Thread thread = new Thread( runnable, "ApacheDS core executor-" + threadNumber.incrementAndGet() );
+                    thread.setDaemon( true );
+
+                    return thread;
+                }
+            } );
+        }
+
+        return coreExecutor;
+    }
+
+
+    /**
+     * @return The number of threads of the executor running the asynchronous operations
+     */
+    public int getCoreExecutorThreads()
+    {
+        return coreExecutorThreads;
+    }
+
+
+    /**
+     * Sets the number of threads of the executor running the asynchronous operations. Must
+     * be set before the executor is first used.
+     *
+     * @param coreExecutorThreads The number of threads
+     */
+    public void setCoreExecutorThreads( int coreExecutorThreads )
+    {
+        this.coreExecutorThreads = coreExecutorThreads;
+    }
+
+
+    /**
+     * Opens the write-ahead log, and replays the changes it contains : they have been committed
+     * after the last checkpoint, so the partitions may have lost them. The replay is done at the
+     * partition level, without going through the interceptors : the logged changes already
+     * contain the operational attributes. Some of the changes may already be in the partitions,
+     * they are skipped. If a change can't be replayed, or if its partition is missing, the
+     * startup fails and the log is kept, so that the changes are not lost.
+     */
+    private void initWriteAheadLog() throws Exception
+    {
+        writeAheadLog = new WriteAheadLog( new File( instanceLayout.getRunDirectory(),
+            WriteAheadLog.WAL_FILE_NAME ) );
+        writeAheadLog.open();
+
+        List<LdifEntry> changes = writeAheadLog.readChanges();
+
+        if ( !changes.isEmpty() )
+        {
+            LOG.info( "Replaying {} changes from the write-ahead log", changes.size() );
+
+            for ( LdifEntry change : changes )
+            {
+                try
+                {
+                    // A missing partition must not be taken for an already applied change
+                    Partition partition = getReplayedPartition( change );
+
+                    try
+                    {
+                        replay( change, partition );
+                    }
+                    catch ( LdapNoSuchObjectException | LdapEntryAlreadyExistsException e )
+                    {
+                        // The change was already in the partition
+                        LOG.debug( "Skipping the already applied change {}", change );
+                    }
+                }
+                catch ( LdapException le )
+                {
+                    LOG.error( "Cannot replay the change {}, the write-ahead log {} is kept", change,
+                        writeAheadLog.getFile(), le );
+                    writeAheadLog.close();
+                    writeAheadLog = null;
+
+                    throw new LdapOtherException( "Cannot replay the write-ahead log : " + le.getMessage(), le );
+                }
+            }
+
+            partitionNexus.sync();
+        }
+
+        writeAheadLog.checkpoint();
+    }
+
+
+    /**
+     * Finds the partition a change read from the write-ahead log is replayed in.
+     *
+     * @throws LdapOtherException If the partition of the change is missing
+     */
+    private Partition getReplayedPartition( LdifEntry change ) throws LdapException
+    {
+        try
+        {
+            return partitionNexus.getPartition( new Dn( schemaManager, change.getDn() ) );
+        }
+        catch ( LdapNoSuchObjectException lnsoe )
+        {
+            throw new LdapOtherException( "There is no partition to replay the change on " + change.getDn()
+                + " in", lnsoe );
+        }
+    }
+
+
+    /**
+     * Applies a change read from the write-ahead log to its partition.
+     */
+    private void replay( LdifEntry change, Partition partition ) throws LdapException
+    {
+        Dn dn = new Dn( schemaManager, change.getDn() );
+        PartitionTxn partitionTxn = null;
+
+        try
+        {
+            partitionTxn = partition.beginWriteTransaction();
+
+            switch ( change.getChangeType().getChangeType() )
+            {
+                case ChangeType.ADD_ORDINAL:
+                    AddOperationContext addContext = new AddOperationContext( adminSession,
+                        new DefaultEntry( schemaManager, change.getEntry() ) );
+                    addContext.setTransaction( partitionTxn );
+                    addContext.setPartition( partition );
+                    partitionNexus.add( addContext );
+                    break;
+
+                case ChangeType.DELETE_ORDINAL:
+                    DeleteOperationContext deleteContext = new DeleteOperationContext( adminSession, dn );
+                    deleteContext.setTransaction( partitionTxn );
+                    deleteContext.setPartition( partition );
+                    partitionNexus.delete( deleteContext );
+                    break;
+
+                case ChangeType.MODIFY_ORDINAL:
+                    List<Modification> mods = new ArrayList<>();
+
+                    for ( Modification modification : change.getModifications() )
+                    {
+                        mods.add( new DefaultModification( schemaManager, modification ) );
+                    }
+
+                    if ( isApplied( partition, partitionTxn, dn, mods ) )
+                    {
+                        LOG.debug( "Skipping the already applied change {}", change );
+                        break;
+                    }
+
+                    ModifyOperationContext modifyContext = new ModifyOperationContext( adminSession, dn, mods );
+                    modifyContext.setTransaction( partitionTxn );
+                    modifyContext.setPartition( partition );
+                    partitionNexus.modify( modifyContext );
+                    break;
+
+                case ChangeType.MODDN_ORDINAL:
+                    // NO BREAK - both ModDN and ModRDN handling is the same
+
+                case ChangeType.MODRDN_ORDINAL:
+                    replayModDn( change, dn, partition, partitionTxn );
+                    break;
+
+                default:
+                    throw new NotImplementedException( I18n.err( I18n.ERR_76, change.getChangeType() ) );
+            }
+
+            partitionTxn.commit();
+        }
+        catch ( LdapException le )
+        {
+            abort( partitionTxn );
+
+            throw le;
+        }
+        catch ( IOException ioe )
+        {
+            abort( partitionTxn );
+
+            throw new LdapOtherException( ioe.getMessage(), ioe );
+        }
+    }
+
+
+    /**
+     * Aborts the transaction of a replayed change, if it has been started.
+     */
+    private void abort( PartitionTxn partitionTxn ) throws LdapException
+    {
+        if ( partitionTxn == null )
+        {
+            return;
+        }
+
+        try
+        {
+            partitionTxn.abort();
+        }
+        catch ( IOException ioe )
+        {
+            throw new LdapOtherException( ioe.getMessage(), ioe );
+        }
+    }
+
+
+    /**
+     * Tells if a logged modification has already been applied to an entry : the modifications
+     * set the entryCSN, which is compared to the entry's one. The modifications logged without
+     * an entryCSN are always applied.
+     */
+    private boolean isApplied( Partition partition, PartitionTxn partitionTxn, Dn dn, List<Modification> mods )
+        throws LdapException
+    {
+        String changeCsn = null;
+        AttributeType entryCsnAT = schemaManager.getAttributeType( SchemaConstants.ENTRY_CSN_AT );
+
+        for ( Modification mod : mods )
+        {
+            Attribute attribute = mod.getAttribute();
+
+            if ( ( attribute.getAttributeType() == entryCsnAT ) && ( attribute.size() > 0 ) )
+            {
+                changeCsn = attribute.getString();
+            }
+        }
+
+        if ( changeCsn == null )
+        {
+            return false;
+        }
+
+        LookupOperationContext lookupContext = new LookupOperationContext( adminSession, dn,
+            SchemaConstants.ALL_ATTRIBUTES_ARRAY );
+        lookupContext.setPartition( partition );
+        lookupContext.setTransaction( partitionTxn );
+        Entry entry = partition.lookup( lookupContext );
+
+        if ( ( entry == null ) || ( entry.get( entryCsnAT ) == null ) )
+        {
+            return false;
+        }
+
+        return new Csn( entry.get( entryCsnAT ).getString() ).compareTo( new Csn( changeCsn ) ) >= 0;
+    }
+
+
+    /**
+     * Replays a ModDN or a ModRDN change. A move and rename is replayed as a rename followed
+     * by a move, the partitions computing the modified entry themselves.
+     */
+    private void replayModDn( LdifEntry change, Dn dn, Partition partition, PartitionTxn partitionTxn )
+        throws LdapException
+    {
+        Rdn newRdn = new Rdn( schemaManager, change.getNewRdn() );
+        Dn parentDn = dn.getParent();
+        Dn renamedDn = dn;
+
+        if ( !newRdn.equals( dn.getRdn() ) )
+        {
+            RenameOperationContext renameContext = new RenameOperationContext( adminSession, dn, newRdn,
+                change.isDeleteOldRdn() );
+            renameContext.setTransaction( partitionTxn );
+            renameContext.setPartition( partition );
+            partitionNexus.rename( renameContext );
+            renamedDn = parentDn.add( newRdn );
+        }
+
+        if ( change.getNewSuperior() != null )
+        {
+            Dn newSuperior = new Dn( schemaManager, change.getNewSuperior() );
+
+            if ( !newSuperior.equals( parentDn ) )
+            {
+                MoveOperationContext moveContext = new MoveOperationContext( adminSession, renamedDn, newSuperior );
+                moveContext.setTransaction( partitionTxn );
+                moveContext.setPartition( partition );
+                partitionNexus.move( moveContext );
+            }
+        }
+    }
+
+
+    /**
+     * Starts the thread synchronizing the partitions : each time the write-ahead log is big
+     * enough, or every syncPeriodMillis if it's not empty, the partitions are synchronized and
+     * the log emptied.
+     */
+    private void startWorkerThread()
+    {
+        workerStopped = false;
+        workerThread = new Thread( new Runnable()
+        {
+            public void run()
+            {
+                while ( !workerStopped )
+                {
+                    try
+                    {
+                        writeAheadLog.awaitCheckpoint( syncPeriodMillis );
+
+                        if ( !workerStopped && ( writeAheadLog.getSize() > 0L ) )
+                        {
+                            checkpoint();
+                        }
+                    }
+                    catch ( InterruptedException ie )
+                    {
+                        return;
+                    }
+                    catch ( Exception e )
+                    {
+                        LOG.error( "Failed to checkpoint the write-ahead log", e );
+                    }
+                }
+            }
+        }, "ApacheDS Checkpointer (" + instanceId + ')' );
+
+        workerThread.setDaemon( true );
+        workerThread.start();
+    }
+
+
+    /**
+     * Stops the thread synchronizing the partitions, waiting for a running checkpoint to complete.
+     */
+    private void stopWorkerThread() throws InterruptedException
+    {
+        if ( workerThread == null )
+        {
+            return;
+        }
+
+        workerStopped = true;
+        writeAheadLog.requestCheckpoint();
+        workerThread.join();
+        workerThread = null;
+    }
+
+
+    /**
+     * Synchronizes all the partitions and empties the write-ahead log. The write operations are
+     * blocked meanwhile.
+     */
+    private void checkpoint() throws Exception
+    {
+        operationManager.lockWrite();
+
+        try
+        {
+            changeLog.sync();
+            partitionNexus.sync();
+            writeAheadLog.checkpoint();
+        }
+        finally
+        {
+            operationManager.unlockWrite();
+        }
+    }
+
+
     /**
      * checks if the working directory is already in use by some other directory service, if yes
      * then throws a runtime exception else will obtain the lock on the working directory
@@ -22,31 +22,47 @@ package org.apache.directory.server.core;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.apache.directory.api.ldap.model.constants.Loggers;
 import org.apache.directory.api.ldap.model.constants.SchemaConstants;
 import org.apache.directory.api.ldap.model.entry.Attribute;
+import org.apache.directory.api.ldap.model.entry.DefaultModification;
 import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.entry.Modification;
+import org.apache.directory.api.ldap.model.entry.ModificationOperation;
 import org.apache.directory.api.ldap.model.entry.Value;
 import org.apache.directory.api.ldap.model.exception.LdapAffectMultipleDsaException;
 import org.apache.directory.api.ldap.model.exception.LdapException;
 import org.apache.directory.api.ldap.model.exception.LdapNoSuchObjectException;
 import org.apache.directory.api.ldap.model.exception.LdapOperationErrorException;
+import org.apache.directory.api.ldap.model.exception.LdapOperationException;
 import org.apache.directory.api.ldap.model.exception.LdapOtherException;
 import org.apache.directory.api.ldap.model.exception.LdapPartialResultException;
 import org.apache.directory.api.ldap.model.exception.LdapReferralException;
 import org.apache.directory.api.ldap.model.exception.LdapServiceUnavailableException;
+import org.apache.directory.api.ldap.model.exception.LdapUnwillingToPerformException;
 import org.apache.directory.api.ldap.model.exception.LdapURLEncodingException;
+import org.apache.directory.api.ldap.model.ldif.ChangeType;
+import org.apache.directory.api.ldap.model.ldif.LdifEntry;
 import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
 import org.apache.directory.api.ldap.model.message.SearchScope;
 import org.apache.directory.api.ldap.model.name.Dn;
 import org.apache.directory.api.ldap.model.name.Rdn;
 import org.apache.directory.api.ldap.model.url.LdapUrl;
+import org.apache.directory.server.core.api.BatchMode;
 import org.apache.directory.server.core.api.CoreSession;
 import org.apache.directory.server.core.api.DirectoryService;
+import org.apache.directory.server.core.api.DnLockManager;
+import org.apache.directory.server.core.api.DnLockManager.DnLock;
 import org.apache.directory.server.core.api.OperationManager;
 import org.apache.directory.server.core.api.ReferralManager;
 import org.apache.directory.server.core.api.filtering.EntryFilteringCursor;
@@ -62,11 +78,14 @@ import org.apache.directory.server.core.api.interceptor.context.ModifyOperationC
 import org.apache.directory.server.core.api.interceptor.context.MoveAndRenameOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.MoveOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.OperationContext;
+import org.apache.directory.server.core.api.interceptor.context.OperationContextPool;
 import org.apache.directory.server.core.api.interceptor.context.RenameOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.SearchOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.UnbindOperationContext;
 import org.apache.directory.server.core.api.partition.Partition;
 import org.apache.directory.server.core.api.partition.PartitionTxn;
+import org.apache.directory.server.core.api.partition.PartitionWriteTxn;
+import org.apache.directory.server.core.api.wal.WriteAheadLog;
 import org.apache.directory.server.i18n.I18n;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -96,9 +115,106 @@ public class DefaultOperationManager implements OperationManager
     /** The directory service instance */
     private final DirectoryService directoryService;
 
-    /** A lock used to protect against concurrent operations */
+    /**
+     * The server wide lock. All the operations hold it in shared mode, it's held exclusively
+     * by the schema updates, the checkpoints and the shutdown
+     */
     private ReadWriteLock rwLock = new ReentrantReadWriteLock( true );
 
+    /** The locks on the written entries and subtrees, with intent locks on their ancestors */
+    private final DnLockManager dnLockManager = new DnLockManager();
+
+    /** The lock of each partition, by suffix. It's held exclusively by the partition writers */
+    private final ConcurrentMap<String, ReadWriteLock> partitionLocks = new ConcurrentHashMap<>();
+
+
+    /** The batch the current thread is applying, if any */
+    private final ThreadLocal<Batch> currentBatch = new ThreadLocal<>();
+
+
+    /**
+     * A batch of write operations, sharing a single write transaction : the operations done
+     * in the batch partition join it instead of committing their own transaction. The
+     * operations of a best effort batch commit their own transaction, but they wait for
+     * their changes to be on disk all at once, when the batch is done.
+     */
+    private static final class Batch
+    {
+        /** The partition the batch is applied to */
+        private final Partition partition;
+
+        /** The write transaction shared by the operations, null for a best effort batch */
+        private final PartitionTxn transaction;
+
+        /** The changes to log once the transaction is committed */
+        private final List<LdifEntry> changes = new ArrayList<>();
+
+        /** The transactions committed by the operations of a best effort batch */
+        private final List<PartitionTxn> committed = new ArrayList<>();
+
+        /** The greatest position of the changes logged by the operations of a best effort batch */
+        private long walPosition;
+
+
+        private Batch( Partition partition, PartitionTxn transaction )
+        {
+            this.partition = partition;
+            this.transaction = transaction;
+        }
+    }
+
+
+    /**
+     * The locks held by a write operation, released at once by {@link #unlock()}.
+     */
+    private final class WriteLocks
+    {
+        /** Set when the server wide lock is held exclusively */
+        private boolean global;
+
+        /** The lock on the written entries or subtrees, if any */
+        private DnLock dnLock;
+
+        /** The partitions locks, in the order they have been acquired */
+        private final List<Lock> partitionWriteLocks = new ArrayList<>( 2 );
+
+
+        /**
+         * Releases the locks, in the reverse order they have been acquired.
+         */
+        private void unlock()
+        {
+            try
+            {
+                for ( int i = partitionWriteLocks.size() - 1; i >= 0; i-- )
+                {
+                    partitionWriteLocks.get( i ).unlock();
+                }
+            }
+            finally
+            {
+                try
+                {
+                    if ( dnLock != null )
+                    {
+                        dnLock.unlock();
+                    }
+                }
+                finally
+                {
+                    if ( global )
+                    {
+                        rwLock.writeLock().unlock();
+                    }
+                    else
+                    {
+                        rwLock.readLock().unlock();
+                    }
+                }
+            }
+        }
+    }
+
 
     public DefaultOperationManager( DirectoryService directoryService )
     {
@@ -115,6 +231,203 @@ public class DefaultOperationManager implements OperationManager
     }
 
 
+    /**
+     * {@inheritDoc}
+     */
+    public ReadWriteLock getRWLock( Partition partition )
+    {
+        Dn suffixDn = partition.getSuffixDn();
+
+        if ( suffixDn == null )
+        {
+            // The root DSE and the subschema subentry are only updated under the server wide lock
+            return rwLock;
+        }
+
+        ReadWriteLock partitionLock = partitionLocks.get( suffixDn.getNormName() );
+
+        if ( partitionLock == null )
+        {
+            partitionLock = new ReentrantReadWriteLock( true );
+            ReadWriteLock existing = partitionLocks.putIfAbsent( suffixDn.getNormName(), partitionLock );
+
+            if ( existing != null )
+            {
+                partitionLock = existing;
+            }
+        }
+
+        return partitionLock;
+    }
+
+
+    /**
+     * Acquires the locks of a write operation. The locks needed by an operation done by a
+     * thread holding no lock are all computed up front, and taken in this order :
+     * <ul>
+     *   <li>the server wide lock, exclusively if the schema is updated or if the operation
+     *   writes in more than one partition, in shared mode otherwise</li>
+     *   <li>the entry or subtree locks on the written Dns, with intent locks on their
+     *   ancestors. All these claims are granted at once, so two moves can't deadlock</li>
+     *   <li>the lock of the partition containing the written Dns</li>
+     * </ul>
+     * Writers in different partitions don't block each other, and the readers only wait for
+     * the writers of the partitions they read. Each partition has a single write transaction,
+     * so its writers are serialized.
+     * <br>
+     * An operation nested in another one, done by an interceptor, already holds some locks :
+     * <ul>
+     *   <li>if the outer operation holds the server wide lock exclusively, it covers all the
+     *   nested operations</li>
+     *   <li>the server wide lock can't be upgraded : a nested schema update is refused</li>
+     *   <li>the Dns already locked by the current thread are reentered. The other ones are
+     *   only locked if no other writer holds them</li>
+     *   <li>a partition lock already held is reentered. A new partition lock is waited for if
+     *   its suffix is ordered after the ones already held, so that the locks are still taken
+     *   in the same order by all the threads. Otherwise, it's only taken if it's free</li>
+     * </ul>
+     * A nested operation never waits for a lock it could deadlock on : it fails with a
+     * <code>BUSY</code> error instead, so that the client can retry.
+     *
+     * @param subtree Tells if the whole subtrees of the written Dns are locked, or only the entries
+     * @param dns The Dns written by the operation
+     * @return The acquired locks
+     */
+    private WriteLocks lockWrite( boolean subtree, Dn... dns ) throws LdapException
+    {
+        WriteLocks locks = new WriteLocks();
+        Map<String, Partition> partitions = new TreeMap<>();
+        ReentrantReadWriteLock serverLock = ( ReentrantReadWriteLock ) rwLock;
+        boolean schemaUpdate = false;
+
+        for ( Dn dn : dns )
+        {
+            try
+            {
+                Partition partition = directoryService.getPartitionNexus().getPartition( dn );
+
+                if ( isSchemaUpdate( partition ) )
+                {
+                    schemaUpdate = true;
+                }
+                else
+                {
+                    partitions.put( partition.getSuffixDn().getNormName(), partition );
+                }
+            }
+            catch ( LdapNoSuchObjectException lnsoe )
+            {
+                // No partition to lock, the operation will fail later on
+            }
+        }
+
+        boolean nested = ( serverLock.getReadHoldCount() > 0 ) || serverLock.isWriteLockedByCurrentThread();
+
+        // The outer operation holds everything, or the operation can take everything at once
+        if ( serverLock.isWriteLockedByCurrentThread() || ( !nested && ( schemaUpdate || ( partitions.size() > 1 ) ) ) )
+        {
+            rwLock.writeLock().lock();
+            locks.global = true;
+
+            return locks;
+        }
+
+        if ( schemaUpdate )
+        {
+            throw new LdapUnwillingToPerformException( ResultCodeEnum.UNWILLING_TO_PERFORM,
+                "The schema can't be updated by an operation nested in a non schema operation" );
+        }
+
+        rwLock.readLock().lock();
+
+        try
+        {
+            if ( !nested )
+            {
+                locks.dnLock = subtree ? dnLockManager.lockSubtrees( dns ) : dnLockManager.lockEntries( dns );
+            }
+            else
+            {
+                locks.dnLock = subtree ? dnLockManager.tryLockSubtrees( dns ) : dnLockManager.tryLockEntries( dns );
+
+                if ( locks.dnLock == null )
+                {
+                    throw new LdapOperationException( ResultCodeEnum.BUSY, "Cannot lock " + dns[0]
+                        + " for a nested operation, it's locked by another writer" );
+                }
+            }
+
+            String lastHeld = nested ? getLastHeldPartitionLock() : null;
+
+            for ( Map.Entry<String, Partition> partition : partitions.entrySet() )
+            {
+                ReentrantReadWriteLock partitionLock = ( ReentrantReadWriteLock ) getRWLock( partition.getValue() );
+
+                if ( partitionLock.isWriteLockedByCurrentThread() || ( lastHeld == null )
+                    || ( partition.getKey().compareTo( lastHeld ) > 0 ) )
+                {
+                    partitionLock.writeLock().lock();
+                }
+                else if ( !partitionLock.writeLock().tryLock() )
+                {
+                    throw new LdapOperationException( ResultCodeEnum.BUSY, "Cannot lock the " + partition.getKey()
+                        + " partition for a nested operation, it's locked by another writer" );
+                }
+
+                locks.partitionWriteLocks.add( partitionLock.writeLock() );
+            }
+        }
+        catch ( LdapException | RuntimeException e )
+        {
+            locks.unlock();
+
+            throw e;
+        }
+
+        return locks;
+    }
+
+
+    /**
+     * @return The greatest suffix of the partitions the current thread holds the write lock
+     * of, null if it holds none
+     */
+    private String getLastHeldPartitionLock()
+    {
+        String lastHeld = null;
+
+        for ( Map.Entry<String, ReadWriteLock> partitionLock : partitionLocks.entrySet() )
+        {
+            if ( ( ( ReentrantReadWriteLock ) partitionLock.getValue() ).isWriteLockedByCurrentThread()
+                && ( ( lastHeld == null ) || ( partitionLock.getKey().compareTo( lastHeld ) > 0 ) ) )
+            {
+                lastHeld = partitionLock.getKey();
+            }
+        }
+
+        return lastHeld;
+    }
+
+
+    /**
+     * Tells if the writes into a partition update the schema, and have to exclude all the
+     * other operations : the schema partition, and the subschema subentry.
+     */
+    private boolean isSchemaUpdate( Partition partition )
+    {
+        Dn suffixDn = partition.getSuffixDn();
+
+        if ( suffixDn == null )
+        {
+            return true;
+        }
+
+        Partition schemaPartition = directoryService.getSchemaPartition();
+
+        return ( schemaPartition != null ) && suffixDn.equals( schemaPartition.getSuffixDn() );
+    }
+
+
     /**
      * Acquires a ReadLock
      */
@@ -142,6 +455,335 @@ public class DefaultOperationManager implements OperationManager
     }
 
 
+    /**
+     * Waits until the changes committed by an operation's write transaction are flushed
+     * on disk. The partitions may defer the flush, to share it with other transactions :
+     * this must be called after the operation locks have been released.
+     *
+     * @param opContext The operation context
+     * @param walPosition The position of the operation changes in the write-ahead log, 0 if
+     * they have not been logged
+     */
+    private void awaitDurability( OperationContext opContext, long walPosition ) throws LdapException
+    {
+        awaitDurability( opContext.getTransaction(), walPosition );
+    }
+
+
+    /**
+     * Waits until the changes committed by a write transaction are flushed on disk.
+     *
+     * @param transaction The write transaction
+     * @param walPosition The position of the changes in the write-ahead log, 0 if they have
+     * not been logged
+     */
+    private void awaitDurability( PartitionTxn transaction, long walPosition ) throws LdapException
+    {
+        // The batch waits once all its operations are committed
+        if ( isBatched( transaction ) )
+        {
+            return;
+        }
+
+        Batch batch = currentBatch.get();
+
+        // The best effort batch waits once it has released its locks
+        if ( ( batch != null ) && ( batch.transaction == null ) )
+        {
+            if ( transaction != null )
+            {
+                batch.committed.add( transaction );
+            }
+
+            batch.walPosition = Math.max( batch.walPosition, walPosition );
+
+            return;
+        }
+
+        // The log is closed after a final checkpoint when the service is stopped
+        WriteAheadLog writeAheadLog = directoryService.getWriteAheadLog();
+
+        try
+        {
+            if ( transaction instanceof PartitionWriteTxn )
+            {
+                ( ( PartitionWriteTxn ) transaction ).awaitDurability();
+            }
+
+            if ( ( walPosition > 0L ) && ( writeAheadLog != null ) )
+            {
+                writeAheadLog.awaitDurability( walPosition );
+            }
+        }
+        catch ( IOException ioe )
+        {
+            throw new LdapOtherException( ioe.getMessage(), ioe );
+        }
+    }
+
+
+    /**
+     * Appends the changes of an operation to the write-ahead log. Must be called once the
+     * operation has been committed, while holding the operation locks, so that the changes
+     * on the same entries are logged in the order they have been applied. The changes of an
+     * operation done in a batch are logged along with the whole batch.
+     *
+     * @param transaction The operation transaction
+     * @param changes The changes, as LDIF change records
+     * @return The position of the changes in the log, 0 if they will be logged with the batch
+     */
+    private long logChanges( PartitionTxn transaction, LdifEntry... changes ) throws LdapException
+    {
+        if ( isBatched( transaction ) )
+        {
+            Collections.addAll( currentBatch.get().changes, changes );
+
+            return 0L;
+        }
+
+        try
+        {
+            return directoryService.getWriteAheadLog().append( changes );
+        }
+        catch ( IOException ioe )
+        {
+            throw new LdapOtherException( ioe.getMessage(), ioe );
+        }
+    }
+
+
+    /**
+     * Starts the write transaction of an operation. An operation done in the partition of the
+     * batch the current thread is applying joins the batch transaction.
+     */
+    private PartitionTxn beginWriteTransaction( Partition partition ) throws LdapException
+    {
+        Batch batch = currentBatch.get();
+
+        if ( ( batch != null ) && ( batch.transaction != null ) && ( batch.partition == partition ) )
+        {
+            return batch.transaction;
+        }
+
+        return partition.beginWriteTransaction();
+    }
+
+
+    /**
+     * Commits the write transaction of an operation, unless it's the transaction of a batch,
+     * committed once all its operations are done.
+     */
+    private void commit( PartitionTxn transaction ) throws IOException
+    {
+        if ( !isBatched( transaction ) )
+        {
+            transaction.commit();
+        }
+    }
+
+
+    /**
+     * Aborts the write transaction of a failed operation, unless it's the transaction of a
+     * batch, which decides what to do with the failure.
+     */
+    private void abort( PartitionTxn transaction ) throws IOException
+    {
+        if ( !isBatched( transaction ) )
+        {
+            transaction.abort();
+        }
+    }
+
+
+    /**
+     * @return true if the transaction is the one of the batch the current thread is applying
+     */
+    private boolean isBatched( PartitionTxn transaction )
+    {
+        Batch batch = currentBatch.get();
+
+        return ( batch != null ) && ( transaction != null ) && ( batch.transaction == transaction );
+    }
+
+
+    /**
+     * @return true if the changes have to be logged in the write-ahead log
+     */
+    private boolean isLogged()
+    {
+        return directoryService.getWriteAheadLog() != null;
+    }
+
+
+    /**
+     * Creates the change record for the operational attributes updated by a ModDN operation
+     * on the modified entry : the partitions recompute everything else when the ModDN is
+     * replayed.
+     */
+    private LdifEntry operationalChanges( Dn newDn, Entry modifiedEntry ) throws LdapException
+    {
+        LdifEntry ldif = new LdifEntry();
+        ldif.setChangeType( ChangeType.Modify );
+        ldif.setDn( newDn );
+
+        if ( modifiedEntry != null )
+        {
+            for ( String attributeId : new String[]
+                { SchemaConstants.MODIFIERS_NAME_AT, SchemaConstants.MODIFY_TIMESTAMP_AT, SchemaConstants.ENTRY_CSN_AT } )
+            {
+                Attribute attribute = modifiedEntry.get( attributeId );
+
+                if ( attribute != null )
+                {
+                    ldif.addModification( new DefaultModification( ModificationOperation.REPLACE_ATTRIBUTE,
+                        attribute.clone() ) );
+                }
+            }
+        }
+
+        return ldif;
+    }
+
+
+    /**
+     * Checks that the added entry is not below a referral, throwing the exception expected
+     * by the client otherwise.
+     */
+    private void checkAddReferral( AddOperationContext addContext, Dn dn ) throws LdapException
+    {
+        directoryService.getReferralManager().lockRead();
+
+        try
+        {
+            if ( directoryService.getReferralManager().hasParentReferral( dn ) )
+            {
+                Entry parentEntry = directoryService.getReferralManager().getParentReferral( dn );
+                Dn childDn = dn.getDescendantOf( parentEntry.getDn() );
+
+                // Depending on the Context.REFERRAL property value, we will throw
+                // a different exception.
+                if ( addContext.isReferralIgnored() )
+                {
+                    LdapPartialResultException exception = buildLdapPartialResultException( childDn );
+                    throw exception;
+                }
+                else
+                {
+                    LdapReferralException exception = buildReferralException( parentEntry, childDn );
+                    throw exception;
+                }
+            }
+        }
+        finally
+        {
+            // Unlock the referral manager
+            directoryService.getReferralManager().unlock();
+        }
+    }
+
+
+    /**
+     * Checks that the modified entry is not a referral, or below a referral, throwing the
+     * exception expected by the client otherwise.
+     */
+    private void checkModifyReferral( ModifyOperationContext modifyContext, Dn dn ) throws LdapException
+    {
+        ReferralManager referralManager = directoryService.getReferralManager();
+        referralManager.lockRead();
+
+        try
+        {
+            // Check if we have an ancestor for this Dn
+            Entry parentEntry = referralManager.getParentReferral( dn );
+
+            if ( parentEntry != null )
+            {
+                if ( referralManager.isReferral( dn ) )
+                {
+                    // This is a referral. We can delete it if the ManageDsaIt flag is true
+                    // Otherwise, we just throw a LdapReferralException
+                    if ( !modifyContext.isReferralIgnored() )
+                    {
+                        // Throw a Referral Exception
+                        // We have found a parent referral for the current Dn
+                        Dn childDn = dn.getDescendantOf( parentEntry.getDn() );
+
+                        LdapReferralException exception = buildReferralException( parentEntry, childDn );
+                        throw exception;
+                    }
+                }
+                else if ( referralManager.hasParentReferral( dn ) )
+                {
+                    // We can't delete an entry which has an ancestor referral
+
+                    // Depending on the Context.REFERRAL property value, we will throw
+                    // a different exception.
+                    if ( modifyContext.isReferralIgnored() )
+                    {
+                        // We have found a parent referral for the current Dn
+                        Dn childDn = dn.getDescendantOf( parentEntry.getDn() );
+
+                        LdapPartialResultException exception = buildLdapPartialResultException( childDn );
+                        throw exception;
+                    }
+                    else
+                    {
+                        // We have found a parent referral for the current Dn
+                        Dn childDn = dn.getDescendantOf( parentEntry.getDn() );
+
+                        LdapReferralException exception = buildReferralException( parentEntry, childDn );
+                        throw exception;
+                    }
+                }
+            }
+        }
+        finally
+        {
+            // Unlock the ReferralManager
+            referralManager.unlock();
+        }
+    }
+
+
+    /**
+     * Creates the change record of an Add operation.
+     */
+    private LdifEntry addChanges( AddOperationContext addContext ) throws LdapException
+    {
+        LdifEntry ldif = new LdifEntry();
+        ldif.setChangeType( ChangeType.Add );
+        ldif.setDn( addContext.getDn() );
+
+        for ( Attribute attribute : addContext.getEntry().getAttributes() )
+        {
+            ldif.addAttribute( attribute.clone() );
+        }
+
+        return ldif;
+    }
+
+
+    /**
+     * Creates the change record of a Modify operation, containing its modifications, the
+     * ones added by the interceptors included. The entryCSN they set tells if the change has
+     * already been applied to the entry when it is replayed.
+     */
+    private LdifEntry modifyChanges( ModifyOperationContext modifyContext ) throws LdapException
+    {
+        LdifEntry ldif = new LdifEntry();
+        ldif.setChangeType( ChangeType.Modify );
+        ldif.setDn( modifyContext.getDn() );
+
+        for ( Modification modification : modifyContext.getModItems() )
+        {
+            ldif.addModification( new DefaultModification( modification.getOperation(),
+                modification.getAttribute().clone() ) );
+        }
+
+        return ldif;
+    }
+
+
     /**
      * Releases a ReadLock
      */
@@ -170,11 +812,20 @@ public class DefaultOperationManager implements OperationManager
             // trouble reading the entry due to insufficient access rights
             CoreSession adminSession = opContext.getSession().getDirectoryService().getAdminSession();
 
-            LookupOperationContext lookupContext = new LookupOperationContext( adminSession, opContext.getDn(),
-                SchemaConstants.ALL_ATTRIBUTES_ARRAY );
-            lookupContext.setPartition( opContext.getPartition() );
-            lookupContext.setTransaction( opContext.getTransaction() );
-            Entry foundEntry = opContext.getSession().getDirectoryService().getPartitionNexus().lookup( lookupContext );
+            LookupOperationContext lookupContext = OperationContextPool.acquireLookupContext( adminSession,
+                opContext.getDn(), SchemaConstants.ALL_ATTRIBUTES_ARRAY );
+            Entry foundEntry;
+
+            try
+            {
+                lookupContext.setPartition( opContext.getPartition() );
+                lookupContext.setTransaction( opContext.getTransaction() );
+                foundEntry = opContext.getSession().getDirectoryService().getPartitionNexus().lookup( lookupContext );
+            }
+            finally
+            {
+                OperationContextPool.release( lookupContext );
+            }
 
             if ( foundEntry != null )
             {
@@ -320,127 +971,330 @@ public class DefaultOperationManager implements OperationManager
             }
         }
 
-        // Return with an exception
-        LdapReferralException lre = new LdapReferralException( urls );
-        lre.setRemainingDn( childDn );
-        lre.setResolvedDn( parentEntry.getDn() );
-        lre.setResolvedObject( parentEntry );
-
-        return lre;
-    }
+        // Return with an exception
+        LdapReferralException lre = new LdapReferralException( urls );
+        lre.setRemainingDn( childDn );
+        lre.setResolvedDn( parentEntry.getDn() );
+        lre.setResolvedObject( parentEntry );
+
+        return lre;
+    }
+
+
+    private LdapPartialResultException buildLdapPartialResultException( Dn childDn )
+    {
+        LdapPartialResultException lpre = new LdapPartialResultException( I18n.err( I18n.ERR_315 ) );
+
+        lpre.setRemainingDn( childDn );
+        lpre.setResolvedDn( Dn.EMPTY_DN );
+
+        return lpre;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public void add( AddOperationContext addContext ) throws LdapException
+    {
+        if ( IS_DEBUG )
+        {
+            OPERATION_LOG.debug( ">> AddOperation : {}", addContext );
+        }
+
+        long addStart = 0L;
+
+        if ( IS_TIME )
+        {
+            addStart = System.nanoTime();
+        }
+
+        ensureStarted();
+
+        // Normalize the addContext Dn
+        Dn dn = addContext.getDn();
+        
+        if ( !dn.isSchemaAware() )
+        {
+            dn = new Dn( directoryService.getSchemaManager(), dn );
+            addContext.setDn( dn );
+        }
+        
+        // Find the working partition
+        Partition partition = directoryService.getPartitionNexus().getPartition( dn );
+        addContext.setPartition( partition );
+        
+        // We have to deal with the referral first
+        checkAddReferral( addContext, dn );
+
+        // Call the Add method
+        Interceptor head = addContext.getNextInterceptor();
+
+        WriteLocks locks = lockWrite( false, dn );
+
+        // Start a Write transaction right away
+        PartitionTxn transaction = null; 
+        long walPosition = 0L;
+        
+        try
+        {
+            transaction = beginWriteTransaction( partition );
+            addContext.setTransaction( transaction );
+
+            head.add( addContext );
+            commit( transaction );
+
+            if ( isLogged() )
+            {
+                walPosition = logChanges( transaction, addChanges( addContext ) );
+            }
+        }
+        catch ( LdapException le )
+        {
+            try
+            {
+                if ( transaction != null )
+                {
+                    abort( transaction );
+                }
+                
+                throw le;
+            }
+            catch ( IOException ioe )
+            {
+                throw new LdapOtherException( ioe.getMessage(), ioe );
+            }
+        }
+        catch ( IOException ioe )
+        {
+            try
+            {
+                abort( transaction );
+                
+                throw new LdapOtherException( ioe.getMessage(), ioe );
+            }
+            catch ( IOException ioe2 )
+            {
+                throw new LdapOtherException( ioe2.getMessage(), ioe2 );
+            }
+        }
+        finally
+        {
+            locks.unlock();
+        }
+
+        // Now that the other writers can proceed, wait for the changes to be on disk
+        awaitDurability( addContext, walPosition );
 
+        if ( IS_DEBUG )
+        {
+            OPERATION_LOG.debug( "<< AddOperation successful" );
+        }
 
-    private LdapPartialResultException buildLdapPartialResultException( Dn childDn )
-    {
-        LdapPartialResultException lpre = new LdapPartialResultException( I18n.err( I18n.ERR_315 ) );
-
-        lpre.setRemainingDn( childDn );
-        lpre.setResolvedDn( Dn.EMPTY_DN );
-
-        return lpre;
+        if ( IS_TIME )
+        {
+            OPERATION_TIME.debug( "Add operation took " + ( System.nanoTime() - addStart ) + " ns" );
+        }
     }
 
 
     /**
      * {@inheritDoc}
      */
-    public void add( AddOperationContext addContext ) throws LdapException
+    public List<LdapException> batch( List<? extends OperationContext> contexts, BatchMode mode ) throws LdapException
     {
         if ( IS_DEBUG )
         {
-            OPERATION_LOG.debug( ">> AddOperation : {}", addContext );
+            OPERATION_LOG.debug( ">> BatchOperation : {} operations, {}", contexts.size(), mode );
         }
 
-        long addStart = 0L;
+        long opStart = 0L;
 
         if ( IS_TIME )
         {
-            addStart = System.nanoTime();
+            opStart = System.nanoTime();
         }
 
         ensureStarted();
 
-        // Normalize the addContext Dn
-        Dn dn = addContext.getDn();
-        
-        if ( !dn.isSchemaAware() )
+        List<LdapException> results = new ArrayList<>( contexts.size() );
+
+        if ( contexts.isEmpty() )
         {
-            dn = new Dn( directoryService.getSchemaManager(), dn );
-            addContext.setDn( dn );
+            return results;
         }
-        
-        // Find the working partition
-        Partition partition = directoryService.getPartitionNexus().getPartition( dn );
-        addContext.setPartition( partition );
-        
-        // We have to deal with the referral first
-        directoryService.getReferralManager().lockRead();
 
-        try
+        // Collect the written Dns, and check that all the operations are done in the same partition
+        List<Dn> dns = new ArrayList<>( contexts.size() );
+        boolean subtree = false;
+
+        for ( OperationContext opContext : contexts )
         {
-            if ( directoryService.getReferralManager().hasParentReferral( dn ) )
+            Dn dn = opContext.getDn();
+            dns.add( dn );
+
+            // Only the modifications leave the entries' descendants unlocked
+            if ( !( opContext instanceof ModifyOperationContext ) )
             {
-                Entry parentEntry = directoryService.getReferralManager().getParentReferral( dn );
-                Dn childDn = dn.getDescendantOf( parentEntry.getDn() );
+                subtree = true;
+            }
 
-                // Depending on the Context.REFERRAL property value, we will throw
-                // a different exception.
-                if ( addContext.isReferralIgnored() )
-                {
-                    LdapPartialResultException exception = buildLdapPartialResultException( childDn );
-                    throw exception;
-                }
-                else
-                {
-                    LdapReferralException exception = buildReferralException( parentEntry, childDn );
-                    throw exception;
-                }
+            if ( opContext instanceof MoveOperationContext )
+            {
+                dns.add( ( ( MoveOperationContext ) opContext ).getNewSuperior().add( dn.getRdn() ) );
+            }
+            else if ( opContext instanceof MoveAndRenameOperationContext )
+            {
+                MoveAndRenameOperationContext moveAndRenameContext = ( MoveAndRenameOperationContext ) opContext;
+                dns.add( moveAndRenameContext.getNewSuperiorDn().add( moveAndRenameContext.getNewRdn() ) );
+            }
+            else if ( opContext instanceof RenameOperationContext )
+            {
+                dns.add( dn.getParent().add( ( ( RenameOperationContext ) opContext ).getNewRdn() ) );
+            }
+            else if ( !( opContext instanceof AddOperationContext ) && !( opContext instanceof ModifyOperationContext )
+                && !( opContext instanceof DeleteOperationContext ) )
+            {
+                throw new LdapUnwillingToPerformException( ResultCodeEnum.UNWILLING_TO_PERFORM,
+                    "Only the write operations can be batched : " + opContext.getName() );
             }
         }
-        finally
+
+        Partition partition = null;
+
+        for ( int i = 0; i < dns.size(); i++ )
         {
-            // Unlock the referral manager
-            directoryService.getReferralManager().unlock();
+            Dn dn = dns.get( i );
+
+            if ( !dn.isSchemaAware() )
+            {
+                dn = new Dn( directoryService.getSchemaManager(), dn );
+                dns.set( i, dn );
+            }
+
+            Partition dnPartition = directoryService.getPartitionNexus().getPartition( dn );
+
+            if ( partition == null )
+            {
+                partition = dnPartition;
+            }
+            else if ( dnPartition != partition )
+            {
+                throw new LdapUnwillingToPerformException( ResultCodeEnum.UNWILLING_TO_PERFORM,
+                    "The batched operations must all be done in the same partition : " + dn );
+            }
         }
 
-        // Call the Add method
-        Interceptor head = directoryService.getInterceptor( addContext.getNextInterceptor() );
+        // Aborting the transaction must undo the operations already applied
+        if ( ( mode == BatchMode.ALL_OR_NOTHING ) && !partition.isRollbackSupported() )
+        {
+            throw new LdapUnwillingToPerformException( ResultCodeEnum.UNWILLING_TO_PERFORM,
+                "The " + partition.getId() + " partition can't roll back an all-or-nothing batch" );
+        }
 
-        lockWrite();
+        PartitionTxn transaction = null;
+        Batch batch = null;
+        long walPosition = 0L;
+        boolean closed = false;
+
+        WriteLocks locks = lockWrite( subtree, dns.toArray( new Dn[dns.size()] ) );
 
-        // Start a Write transaction right away
-        PartitionTxn transaction = null; 
-        
         try
         {
-            transaction = partition.beginWriteTransaction();
-            addContext.setTransaction( transaction );
+            if ( mode == BatchMode.BEST_EFFORT )
+            {
+                // Each operation is committed in its own transaction, so that the writes done
+                // by a failing operation before it fails are rolled back with it
+                batch = new Batch( partition, null );
+                currentBatch.set( batch );
 
-            head.add( addContext );
-            transaction.commit();
+                for ( OperationContext opContext : contexts )
+                {
+                    try
+                    {
+                        apply( opContext );
+                        results.add( null );
+                    }
+                    catch ( LdapException le )
+                    {
+                        results.add( le );
+
+                        if ( IS_DEBUG )
+                        {
+                            OPERATION_LOG.debug( "Batched operation on {} skipped : {}", opContext.getDn(),
+                                le.getMessage() );
+                        }
+                    }
+                }
+            }
+            else
+            {
+                // All the operations join a single transaction
+                transaction = partition.beginWriteTransaction();
+                batch = new Batch( partition, transaction );
+                currentBatch.set( batch );
+
+                for ( OperationContext opContext : contexts )
+                {
+                    try
+                    {
+                        apply( opContext );
+                        results.add( null );
+                    }
+                    catch ( LdapException le )
+                    {
+                        results.add( le );
+                        break;
+                    }
+                }
+
+                currentBatch.remove();
+
+                if ( results.get( results.size() - 1 ) != null )
+                {
+                    transaction.abort();
+                    closed = true;
+                }
+                else
+                {
+                    transaction.commit();
+                    closed = true;
+
+                    // A single record, so that the batch is replayed as a whole
+                    if ( isLogged() && !batch.changes.isEmpty() )
+                    {
+                        walPosition = logChanges( transaction,
+                            batch.changes.toArray( new LdifEntry[batch.changes.size()] ) );
+                    }
+                }
+            }
         }
-        catch ( LdapException le )
+        catch ( LdapException | RuntimeException e )
         {
+            // Nothing half applied can be left in the transaction, the next commit would write it
             try
             {
-                if ( transaction != null )
+                if ( ( transaction != null ) && !closed )
                 {
                     transaction.abort();
                 }
-                
-                throw le;
             }
             catch ( IOException ioe )
             {
                 throw new LdapOtherException( ioe.getMessage(), ioe );
             }
+
+            throw e;
         }
         catch ( IOException ioe )
         {
             try
             {
-                transaction.abort();
-                
+                if ( ( transaction != null ) && !closed )
+                {
+                    transaction.abort();
+                }
+
                 throw new LdapOtherException( ioe.getMessage(), ioe );
             }
             catch ( IOException ioe2 )
@@ -450,17 +1304,67 @@ public class DefaultOperationManager implements OperationManager
         }
         finally
         {
-            unlockWrite();
+            currentBatch.remove();
+            locks.unlock();
+        }
+
+        // Now that the other writers can proceed, wait for the changes to be on disk
+        if ( mode == BatchMode.BEST_EFFORT )
+        {
+            for ( PartitionTxn committed : batch.committed )
+            {
+                awaitDurability( committed, 0L );
+            }
+
+            awaitDurability( null, batch.walPosition );
+        }
+        else
+        {
+            awaitDurability( transaction, walPosition );
         }
 
         if ( IS_DEBUG )
         {
-            OPERATION_LOG.debug( "<< AddOperation successful" );
+            OPERATION_LOG.debug( "<< BatchOperation done" );
         }
 
         if ( IS_TIME )
         {
-            OPERATION_TIME.debug( "Add operation took " + ( System.nanoTime() - addStart ) + " ns" );
+            OPERATION_TIME.debug( "Batch operation took " + ( System.nanoTime() - opStart ) + " ns" );
+        }
+
+        return results;
+    }
+
+
+    /**
+     * Applies one of the operations of a batch.
+     */
+    private void apply( OperationContext opContext ) throws LdapException
+    {
+        if ( opContext instanceof AddOperationContext )
+        {
+            add( ( AddOperationContext ) opContext );
+        }
+        else if ( opContext instanceof ModifyOperationContext )
+        {
+            modify( ( ModifyOperationContext ) opContext );
+        }
+        else if ( opContext instanceof DeleteOperationContext )
+        {
+            delete( ( DeleteOperationContext ) opContext );
+        }
+        else if ( opContext instanceof MoveOperationContext )
+        {
+            move( ( MoveOperationContext ) opContext );
+        }
+        else if ( opContext instanceof MoveAndRenameOperationContext )
+        {
+            moveAndRename( ( MoveAndRenameOperationContext ) opContext );
+        }
+        else
+        {
+            rename( ( RenameOperationContext ) opContext );
         }
     }
 
@@ -485,7 +1389,7 @@ public class DefaultOperationManager implements OperationManager
         ensureStarted();
 
         // Call the Delete method
-        Interceptor head = directoryService.getInterceptor( bindContext.getNextInterceptor() );
+        Interceptor head = bindContext.getNextInterceptor();
 
         // Normalize the addContext Dn
         Dn dn = bindContext.getDn();
@@ -610,7 +1514,7 @@ public class DefaultOperationManager implements OperationManager
         compareContext.setOriginalEntry( getOriginalEntry( compareContext ) );
 
         // Call the Compare method
-        Interceptor head = directoryService.getInterceptor( compareContext.getNextInterceptor() );
+        Interceptor head = compareContext.getNextInterceptor();
 
         boolean result = false;
 
@@ -730,24 +1634,34 @@ public class DefaultOperationManager implements OperationManager
         }
 
         // populate the context with the old entry
-        lockWrite();
+        WriteLocks locks = lockWrite( true, dn );
 
         // Start a Write transaction right away
         PartitionTxn transaction = null; 
+        long walPosition = 0L;
         
         try
         {
-            transaction = partition.beginWriteTransaction();
+            transaction = beginWriteTransaction( partition );
             deleteContext.setTransaction( transaction );
 
             eagerlyPopulateFields( deleteContext );
 
             // Call the Delete method
-            Interceptor head = directoryService.getInterceptor( deleteContext.getNextInterceptor() );
+            Interceptor head = deleteContext.getNextInterceptor();
 
             head.delete( deleteContext );
 
-            transaction.commit();
+            commit( transaction );
+
+            if ( isLogged() )
+            {
+                LdifEntry ldif = new LdifEntry();
+                ldif.setChangeType( ChangeType.Delete );
+                ldif.setDn( dn );
+
+                walPosition = logChanges( transaction, ldif );
+            }
         }
         catch ( LdapException le )
         {
@@ -755,7 +1669,7 @@ public class DefaultOperationManager implements OperationManager
             {
                 if ( transaction != null )
                 {
-                    transaction.abort();
+                    abort( transaction );
                 }
                 
                 throw le;
@@ -771,7 +1685,7 @@ public class DefaultOperationManager implements OperationManager
             {
                 if ( transaction != null )
                 {
-                    transaction.abort();
+                    abort( transaction );
                 }
                 
                 throw new LdapOtherException( ioe.getMessage(), ioe );
@@ -783,9 +1697,12 @@ public class DefaultOperationManager implements OperationManager
         }
         finally
         {
-            unlockWrite();
+            locks.unlock();
         }
 
+        // Now that the other writers can proceed, wait for the changes to be on disk
+        awaitDurability( deleteContext, walPosition );
+
         if ( IS_DEBUG )
         {
             OPERATION_LOG.debug( "<< DeleteOperation successful" );
@@ -817,7 +1734,7 @@ public class DefaultOperationManager implements OperationManager
 
         ensureStarted();
 
-        Interceptor head = directoryService.getInterceptor( getRootDseContext.getNextInterceptor() );
+        Interceptor head = getRootDseContext.getNextInterceptor();
         Entry root;
 
         try
@@ -876,7 +1793,7 @@ public class DefaultOperationManager implements OperationManager
 
         ensureStarted();
 
-        Interceptor head = directoryService.getInterceptor( hasEntryContext.getNextInterceptor() );
+        Interceptor head = hasEntryContext.getNextInterceptor();
 
         boolean result = false;
 
@@ -945,7 +1862,7 @@ public class DefaultOperationManager implements OperationManager
 
         ensureStarted();
 
-        Interceptor head = directoryService.getInterceptor( lookupContext.getNextInterceptor() );
+        Interceptor head = lookupContext.getNextInterceptor();
 
         Entry entry = null;
 
@@ -1024,82 +1941,34 @@ public class DefaultOperationManager implements OperationManager
             modifyContext.setDn( dn );
         }
 
-        ReferralManager referralManager = directoryService.getReferralManager();
-
         // We have to deal with the referral first
-        referralManager.lockRead();
-
-        try
-        {
-            // Check if we have an ancestor for this Dn
-            Entry parentEntry = referralManager.getParentReferral( dn );
-
-            if ( parentEntry != null )
-            {
-                if ( referralManager.isReferral( dn ) )
-                {
-                    // This is a referral. We can delete it if the ManageDsaIt flag is true
-                    // Otherwise, we just throw a LdapReferralException
-                    if ( !modifyContext.isReferralIgnored() )
-                    {
-                        // Throw a Referral Exception
-                        // We have found a parent referral for the current Dn
-                        Dn childDn = dn.getDescendantOf( parentEntry.getDn() );
-
-                        LdapReferralException exception = buildReferralException( parentEntry, childDn );
-                        throw exception;
-                    }
-                }
-                else if ( referralManager.hasParentReferral( dn ) )
-                {
-                    // We can't delete an entry which has an ancestor referral
-
-                    // Depending on the Context.REFERRAL property value, we will throw
-                    // a different exception.
-                    if ( modifyContext.isReferralIgnored() )
-                    {
-                        // We have found a parent referral for the current Dn
-                        Dn childDn = dn.getDescendantOf( parentEntry.getDn() );
-
-                        LdapPartialResultException exception = buildLdapPartialResultException( childDn );
-                        throw exception;
-                    }
-                    else
-                    {
-                        // We have found a parent referral for the current Dn
-                        Dn childDn = dn.getDescendantOf( parentEntry.getDn() );
+        checkModifyReferral( modifyContext, dn );
 
-                        LdapReferralException exception = buildReferralException( parentEntry, childDn );
-                        throw exception;
-                    }
-                }
-            }
-        }
-        finally
-        {
-            // Unlock the ReferralManager
-            referralManager.unlock();
-        }
-        
         Partition partition = directoryService.getPartitionNexus().getPartition( dn );
         modifyContext.setPartition( partition );
         PartitionTxn partitionTxn = null;
+        long walPosition = 0L;
         
-        lockWrite();
+        WriteLocks locks = lockWrite( false, dn );
 
         try
         {
-            partitionTxn = partition.beginWriteTransaction();
+            partitionTxn = beginWriteTransaction( partition );
             modifyContext.setTransaction( partitionTxn );
 
             // populate the context with the old entry
             eagerlyPopulateFields( modifyContext );
 
             // Call the Modify method
-            Interceptor head = directoryService.getInterceptor( modifyContext.getNextInterceptor() );
+            Interceptor head = modifyContext.getNextInterceptor();
 
             head.modify( modifyContext );
-            partitionTxn.commit();
+            commit( partitionTxn );
+
+            if ( isLogged() )
+            {
+                walPosition = logChanges( partitionTxn, modifyChanges( modifyContext ) );
+            }
         }
         catch ( LdapException le )
         {
@@ -1107,7 +1976,7 @@ public class DefaultOperationManager implements OperationManager
             {
                 if ( partitionTxn != null )
                 {
-                    partitionTxn.abort();
+                    abort( partitionTxn );
                 }
                 
                 throw le;
@@ -1121,7 +1990,7 @@ public class DefaultOperationManager implements OperationManager
         {
             try 
             {
-                partitionTxn.abort();
+                abort( partitionTxn );
                 
                 throw new LdapOtherException( ioe.getMessage(), ioe );
             }
@@ -1132,9 +2001,12 @@ public class DefaultOperationManager implements OperationManager
         }
         finally
         {
-            unlockWrite();
+            locks.unlock();
         }
 
+        // Now that the other writers can proceed, wait for the changes to be on disk
+        awaitDurability( modifyContext, walPosition );
+
         if ( IS_DEBUG )
         {
             OPERATION_LOG.debug( "<< ModifyOperation successful" );
@@ -1246,28 +2118,43 @@ public class DefaultOperationManager implements OperationManager
             directoryService.getReferralManager().unlock();
         }
 
-        lockWrite();
-        
         // Find the working partition
         Partition partition = directoryService.getPartitionNexus().getPartition( dn );
         moveContext.setPartition( partition );
 
+        // Lock the partitions of the moved entry and of its new location
+        WriteLocks locks = lockWrite( true, dn, newSuperiorDn.add( dn.getRdn() ) );
+
         // Start a Write transaction right away
         PartitionTxn transaction = null; 
+        long walPosition = 0L;
         
         try
         {
-            transaction = partition.beginWriteTransaction();
+            transaction = beginWriteTransaction( partition );
             moveContext.setTransaction( transaction );
             Entry originalEntry = getOriginalEntry( moveContext );
 
             moveContext.setOriginalEntry( originalEntry );
 
             // Call the Move method
-            Interceptor head = directoryService.getInterceptor( moveContext.getNextInterceptor() );
+            Interceptor head = moveContext.getNextInterceptor();
 
             head.move( moveContext );
-            transaction.commit();
+            commit( transaction );
+
+            if ( isLogged() )
+            {
+                LdifEntry ldif = new LdifEntry();
+                ldif.setChangeType( ChangeType.ModDn );
+                ldif.setDn( dn );
+                ldif.setNewRdn( dn.getRdn().getName() );
+                ldif.setDeleteOldRdn( false );
+                ldif.setNewSuperior( moveContext.getNewSuperior().getName() );
+
+                walPosition = logChanges( transaction, ldif,
+                    operationalChanges( moveContext.getNewDn(), moveContext.getModifiedEntry() ) );
+            }
         }
         catch ( LdapException le )
         {
@@ -1275,7 +2162,7 @@ public class DefaultOperationManager implements OperationManager
             {
                 if ( transaction != null )
                 {
-                    transaction.abort();
+                    abort( transaction );
                 }
                 
                 throw le;
@@ -1291,7 +2178,7 @@ public class DefaultOperationManager implements OperationManager
             {
                 if ( transaction != null )
                 {
-                    transaction.abort();
+                    abort( transaction );
                 }
                 
                 throw new LdapOtherException( ioe.getMessage(), ioe );
@@ -1303,9 +2190,12 @@ public class DefaultOperationManager implements OperationManager
         }
         finally
         {
-            unlockWrite();
+            locks.unlock();
         }
 
+        // Now that the other writers can proceed, wait for the changes to be on disk
+        awaitDurability( moveContext, walPosition );
+
         if ( IS_DEBUG )
         {
             OPERATION_LOG.debug( "<< MoveOperation successful" );
@@ -1423,22 +2313,38 @@ public class DefaultOperationManager implements OperationManager
         moveAndRenameContext.setPartition( partition );
 
         PartitionTxn transaction = null; 
+        long walPosition = 0L;
         
-        lockWrite();
+        // Lock the partitions of the moved entry and of its new location
+        WriteLocks locks = lockWrite( true, dn,
+            moveAndRenameContext.getNewSuperiorDn().add( moveAndRenameContext.getNewRdn() ) );
         
         try
         {
-            transaction = partition.beginWriteTransaction();
+            transaction = beginWriteTransaction( partition );
             moveAndRenameContext.setOriginalEntry( getOriginalEntry( moveAndRenameContext ) );
             moveAndRenameContext.setModifiedEntry( moveAndRenameContext.getOriginalEntry().clone() );
             moveAndRenameContext.setTransaction( transaction );
 
             // Call the MoveAndRename method
-            Interceptor head = directoryService.getInterceptor( moveAndRenameContext.getNextInterceptor() );
+            Interceptor head = moveAndRenameContext.getNextInterceptor();
 
             head.moveAndRename( moveAndRenameContext );
 
-            transaction.commit();
+            commit( transaction );
+
+            if ( isLogged() )
+            {
+                LdifEntry ldif = new LdifEntry();
+                ldif.setChangeType( ChangeType.ModDn );
+                ldif.setDn( dn );
+                ldif.setNewRdn( moveAndRenameContext.getNewRdn().getName() );
+                ldif.setDeleteOldRdn( moveAndRenameContext.getDeleteOldRdn() );
+                ldif.setNewSuperior( moveAndRenameContext.getNewSuperiorDn().getName() );
+
+                walPosition = logChanges( transaction, ldif, operationalChanges( moveAndRenameContext.getNewDn(),
+                    moveAndRenameContext.getModifiedEntry() ) );
+            }
         }
         catch ( LdapException le )
         {
@@ -1446,7 +2352,7 @@ public class DefaultOperationManager implements OperationManager
             {
                 if ( transaction != null )
                 {
-                    transaction.abort();
+                    abort( transaction );
                 }
                 
                 throw le;
@@ -1462,7 +2368,7 @@ public class DefaultOperationManager implements OperationManager
             {
                 if ( transaction != null )
                 {
-                    transaction.abort();
+                    abort( transaction );
                 }
                 
                 throw new LdapOtherException( ioe.getMessage(), ioe );
@@ -1474,9 +2380,12 @@ public class DefaultOperationManager implements OperationManager
         }
         finally
         {
-            unlockWrite();
+            locks.unlock();
         }
 
+        // Now that the other writers can proceed, wait for the changes to be on disk
+        awaitDurability( moveAndRenameContext, walPosition );
+
         if ( IS_DEBUG )
         {
             OPERATION_LOG.debug( "<< MoveAndRenameOperation successful" );
@@ -1583,7 +2492,10 @@ public class DefaultOperationManager implements OperationManager
             directoryService.getReferralManager().unlock();
         }
 
-        lockWrite();
+        long walPosition = 0L;
+
+        // Lock the partition of the renamed entry
+        WriteLocks locks = lockWrite( true, dn, renameContext.getNewDn() );
 
         // Call the rename method
         try
@@ -1625,15 +2537,27 @@ public class DefaultOperationManager implements OperationManager
 
             // Call the Rename method
             PartitionTxn transaction = null; 
-            Interceptor head = directoryService.getInterceptor( renameContext.getNextInterceptor() );
+            Interceptor head = renameContext.getNextInterceptor();
             
             try
             {
-                transaction = partition.beginWriteTransaction();
+                transaction = beginWriteTransaction( partition );
                 renameContext.setTransaction( transaction );
 
                 head.rename( renameContext );
-                transaction.commit();
+                commit( transaction );
+
+                if ( isLogged() )
+                {
+                    LdifEntry ldif = new LdifEntry();
+                    ldif.setChangeType( ChangeType.ModRdn );
+                    ldif.setDn( dn );
+                    ldif.setNewRdn( renameContext.getNewRdn().getName() );
+                    ldif.setDeleteOldRdn( renameContext.getDeleteOldRdn() );
+
+                    walPosition = logChanges( transaction, ldif,
+                        operationalChanges( renameContext.getNewDn(), renameContext.getModifiedEntry() ) );
+                }
             }
             catch ( LdapException le )
             {
@@ -1641,7 +2565,7 @@ public class DefaultOperationManager implements OperationManager
                 {
                     if ( transaction != null )
                     {
-                        transaction.abort();
+                        abort( transaction );
                     }
                     
                     throw le;
@@ -1657,7 +2581,7 @@ public class DefaultOperationManager implements OperationManager
                 {
                     if ( transaction != null )
                     {
-                        transaction.abort();
+                        abort( transaction );
                     }
                     
                     throw new LdapOtherException( ioe.getMessage(), ioe );
@@ -1670,9 +2594,12 @@ public class DefaultOperationManager implements OperationManager
         }
         finally
         {
-            unlockWrite();
+            locks.unlock();
         }
 
+        // Now that the other writers can proceed, wait for the changes to be on disk
+        awaitDurability( renameContext, walPosition );
+
         if ( IS_DEBUG )
         {
             OPERATION_LOG.debug( "<< RenameOperation successful" );
@@ -1765,7 +2692,7 @@ public class DefaultOperationManager implements OperationManager
         }
 
         // Call the Search method
-        Interceptor head = directoryService.getInterceptor( searchContext.getNextInterceptor() );
+        Interceptor head = searchContext.getNextInterceptor();
 
         EntryFilteringCursor cursor = null;
         Partition partition = directoryService.getPartitionNexus().getPartition( dn );
@@ -1824,7 +2751,7 @@ public class DefaultOperationManager implements OperationManager
         ensureStarted();
 
         // Call the Unbind method
-        Interceptor head = directoryService.getInterceptor( unbindContext.getNextInterceptor() );
+        Interceptor head = unbindContext.getNextInterceptor();
 
         head.unbind( unbindContext );
 
@@ -145,7 +145,11 @@ public long getCurrentRevision() throws LdapException
 
         try
         {
-            return store.log( principal, forward, reverse );
+            // The writers of different partitions log their changes concurrently
+            synchronized ( store )
+            {
+                return store.log( principal, forward, reverse );
+            }
         }
         catch ( Exception e )
         {
@@ -168,7 +172,11 @@ public long getCurrentRevision() throws LdapException
 
         try
         {
-            return store.log( principal, forward, reverses );
+            // The writers of different partitions log their changes concurrently
+            synchronized ( store )
+            {
+                return store.log( principal, forward, reverses );
+            }
         }
         catch ( Exception e )
         {
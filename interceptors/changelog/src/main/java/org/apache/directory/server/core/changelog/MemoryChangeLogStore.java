@@ -52,7 +52,9 @@ import org.apache.directory.server.i18n.I18n;
 
 
 /**
- * A change log store that keeps it's information in memory.
+ * A change log store that keeps it's information in memory. The writers of different
+ * partitions log their changes concurrently, so the store is synchronized, and the cursors
+ * read a copy of the events logged when they are created.
  *
  * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
  */
@@ -83,7 +85,7 @@ public class MemoryChangeLogStore implements TaggableChangeLogStore
      * {@inheritDoc}
      */
     @Override
-    public Tag tag( long revision ) throws Exception
+    public synchronized Tag tag( long revision ) throws Exception
     {
         if ( tags.containsKey( revision ) )
         {
@@ -100,7 +102,7 @@ public class MemoryChangeLogStore implements TaggableChangeLogStore
      * {@inheritDoc}
      */
     @Override
-    public Tag tag() throws Exception
+    public synchronized Tag tag() throws Exception
     {
         if ( ( latest != null ) && ( latest.getRevision() == currentRevision ) )
         {
@@ -114,7 +116,7 @@ public class MemoryChangeLogStore implements TaggableChangeLogStore
 
 
     @Override
-    public Tag tag( String description ) throws Exception
+    public synchronized Tag tag( String description ) throws Exception
     {
         if ( ( latest != null ) && ( latest.getRevision() == currentRevision ) )
         {
@@ -128,7 +130,7 @@ public class MemoryChangeLogStore implements TaggableChangeLogStore
 
 
     @Override
-    public void init( DirectoryService service ) throws Exception
+    public synchronized void init( DirectoryService service ) throws Exception
     {
         workingDirectory = service.getInstanceLayout().getLogDirectory();
         this.directoryService = service;
@@ -431,7 +433,7 @@ public class MemoryChangeLogStore implements TaggableChangeLogStore
 
 
     @Override
-    public void sync() throws Exception
+    public synchronized void sync() throws Exception
     {
         saveRevision();
         saveTags();
@@ -443,7 +445,7 @@ public class MemoryChangeLogStore implements TaggableChangeLogStore
      * Save logs, tags and revision on disk, and clean everything in memory
      */
     @Override
-    public void destroy() throws Exception
+    public synchronized void destroy() throws Exception
     {
         saveRevision();
         saveTags();
@@ -452,7 +454,7 @@ public class MemoryChangeLogStore implements TaggableChangeLogStore
 
 
     @Override
-    public long getCurrentRevision()
+    public synchronized long getCurrentRevision()
     {
         return currentRevision;
     }
@@ -462,7 +464,8 @@ public class MemoryChangeLogStore implements TaggableChangeLogStore
      * {@inheritDoc}
      */
     @Override
-    public ChangeLogEvent log( LdapPrincipal principal, LdifEntry forward, LdifEntry reverse ) throws Exception
+    public synchronized ChangeLogEvent log( LdapPrincipal principal, LdifEntry forward, LdifEntry reverse )
+        throws Exception
     {
         currentRevision++;
         ChangeLogEvent event = new ChangeLogEvent( currentRevision, DateUtils.getGeneralizedTime(),
@@ -476,7 +479,8 @@ public class MemoryChangeLogStore implements TaggableChangeLogStore
      * {@inheritDoc}
      */
     @Override
-    public ChangeLogEvent log( LdapPrincipal principal, LdifEntry forward, List<LdifEntry> reverses ) throws Exception
+    public synchronized ChangeLogEvent log( LdapPrincipal principal, LdifEntry forward, List<LdifEntry> reverses )
+        throws Exception
     {
         currentRevision++;
         ChangeLogEvent event = new ChangeLogEvent( currentRevision, DateUtils.getGeneralizedTime(),
@@ -487,7 +491,7 @@ public class MemoryChangeLogStore implements TaggableChangeLogStore
 
 
     @Override
-    public ChangeLogEvent lookup( long revision ) throws Exception
+    public synchronized ChangeLogEvent lookup( long revision ) throws Exception
     {
         if ( revision < 0 )
         {
@@ -504,35 +508,35 @@ public class MemoryChangeLogStore implements TaggableChangeLogStore
 
 
     @Override
-    public Cursor<ChangeLogEvent> find() throws Exception
+    public synchronized Cursor<ChangeLogEvent> find() throws Exception
     {
-        return new ListCursor<>( events );
+        return new ListCursor<>( new ArrayList<>( events ) );
     }
 
 
     @Override
-    public Cursor<ChangeLogEvent> findBefore( long revision ) throws Exception
+    public synchronized Cursor<ChangeLogEvent> findBefore( long revision ) throws Exception
     {
-        return new ListCursor<>( events, ( int ) revision );
+        return new ListCursor<>( new ArrayList<>( events ), ( int ) revision );
     }
 
 
     @Override
-    public Cursor<ChangeLogEvent> findAfter( long revision ) throws LdapException
+    public synchronized Cursor<ChangeLogEvent> findAfter( long revision ) throws LdapException
     {
-        return new ListCursor<>( ( int ) revision, events );
+        return new ListCursor<>( ( int ) revision, new ArrayList<>( events ) );
     }
 
 
     @Override
-    public Cursor<ChangeLogEvent> find( long startRevision, long endRevision ) throws Exception
+    public synchronized Cursor<ChangeLogEvent> find( long startRevision, long endRevision ) throws Exception
     {
-        return new ListCursor<>( ( int ) startRevision, events, ( int ) ( endRevision + 1 ) );
+        return new ListCursor<>( ( int ) startRevision, new ArrayList<>( events ), ( int ) ( endRevision + 1 ) );
     }
 
 
     @Override
-    public Tag getLatest() throws LdapException
+    public synchronized Tag getLatest() throws LdapException
     {
         return latest;
     }
@@ -542,7 +546,7 @@ public class MemoryChangeLogStore implements TaggableChangeLogStore
      * @see TaggableChangeLogStore#removeTag(long)
      */
     @Override
-    public Tag removeTag( long revision ) throws Exception
+    public synchronized Tag removeTag( long revision ) throws Exception
     {
         return tags.remove( revision );
     }
@@ -552,7 +556,7 @@ public class MemoryChangeLogStore implements TaggableChangeLogStore
      * @see TaggableChangeLogStore#tag(long, String)
      */
     @Override
-    public Tag tag( long revision, String descrition ) throws Exception
+    public synchronized Tag tag( long revision, String descrition ) throws Exception
     {
         if ( tags.containsKey( revision ) )
         {
@@ -569,7 +573,7 @@ public class MemoryChangeLogStore implements TaggableChangeLogStore
      * @see Object#toString()
      */
     @Override
-    public String toString()
+    public synchronized String toString()
     {
         StringBuilder sb = new StringBuilder();
 
@@ -179,9 +179,9 @@ public class SchemaSubentryManager
         Interceptor interceptor = null;
 
         List<Interceptor> allInterceptors = directoryService.getInterceptors();
-        List<String> operationInterceptors = directoryService.getInterceptors( operation );
+        Interceptor[] operationInterceptors = directoryService.getInterceptorChain( operation );
         int position = 0;
-        String addInterceptor = operationInterceptors.get( position );
+        Interceptor addInterceptor = operationInterceptors[position];
 
         for ( Interceptor inter : allInterceptors )
         {
@@ -192,18 +192,18 @@ public class SchemaSubentryManager
                 // Found, get out
                 position++;
 
-                if ( position < operationInterceptors.size() )
+                if ( position < operationInterceptors.length )
                 {
-                    interceptor = directoryService.getInterceptor( operationInterceptors.get( position ) );
+                    interceptor = operationInterceptors[position];
                 }
 
                 break;
             }
 
-            if ( interName.equals( addInterceptor ) )
+            if ( inter == addInterceptor )
             {
                 position++;
-                addInterceptor = operationInterceptors.get( position );
+                addInterceptor = operationInterceptors[position];
             }
         }
 
@@ -218,13 +218,11 @@ public class SchemaSubentryManager
     {
         int position = 1;
 
-        List<String> interceptors = directoryService.getInterceptors( operation );
+        Interceptor[] interceptors = directoryService.getInterceptorChain( operation );
 
-        String interceptorName = interceptor.getName();
-
-        for ( String name : interceptors )
+        for ( Interceptor inter : interceptors )
         {
-            if ( name.equals( interceptorName ) )
+            if ( inter == interceptor )
             {
                 break;
             }
@@ -0,0 +1,166 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.partition.impl.btree.jdbm;
+
+
+import java.io.IOException;
+
+import jdbm.helper.Serializer;
+
+import org.apache.directory.api.util.Strings;
+
+
+/**
+ * A String serializer for the index keys, encoding each char on one to three bytes the way
+ * the modified UTF-8 does, instead of the two bytes used by the {@link StringSerializer}.
+ * The normalized keys being mostly ASCII, they take half the space, so the B-tree pages
+ * are smaller and the index files shrink.
+ * <br>
+ * Each char is encoded on its own, so the unpaired surrogates are kept as is.
+ * <br>
+ * The JDBM B-trees store their key serializer : the indexes created with the
+ * {@link StringSerializer} keep on using it.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public final class CompactStringSerializer implements Serializer
+{
+    private static final long serialVersionUID = 4626843478652135763L;
+
+    /** A static instance of a CompactStringSerializer */
+    public static final CompactStringSerializer INSTANCE = new CompactStringSerializer();
+
+
+    /**
+     * Default private constructor
+     */
+    private CompactStringSerializer()
+    {
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public Object deserialize( byte[] bytes ) throws IOException
+    {
+        if ( bytes.length == 0 )
+        {
+            return "";
+        }
+
+        char[] chars = new char[bytes.length];
+        int pos = 0;
+        int i = 0;
+
+        try
+        {
+            while ( i < bytes.length )
+            {
+                int b = bytes[i++] & 0xFF;
+
+                if ( b < 0x80 )
+                {
+                    chars[pos++] = ( char ) b;
+                }
+                else if ( ( b & 0xE0 ) == 0xC0 )
+                {
+                    chars[pos++] = ( char ) ( ( ( b & 0x1F ) << 6 ) | ( bytes[i++] & 0x3F ) );
+                }
+                else if ( ( b & 0xF0 ) == 0xE0 )
+                {
+                    chars[pos++] = ( char ) ( ( ( b & 0x0F ) << 12 ) | ( ( bytes[i++] & 0x3F ) << 6 )
+                        | ( bytes[i++] & 0x3F ) );
+                }
+                else
+                {
+                    throw new IOException( "Invalid key encoding : " + Strings.dumpBytes( bytes ) );
+                }
+            }
+        }
+        catch ( ArrayIndexOutOfBoundsException aioobe )
+        {
+            throw new IOException( "Truncated key : " + Strings.dumpBytes( bytes ), aioobe );
+        }
+
+        return new String( chars, 0, pos );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public byte[] serialize( Object str ) throws IOException
+    {
+        String string = ( String ) str;
+        int length = string.length();
+
+        if ( length == 0 )
+        {
+            return Strings.EMPTY_BYTES;
+        }
+
+        int size = 0;
+
+        for ( int i = 0; i < length; i++ )
+        {
+            char c = string.charAt( i );
+
+            if ( c < 0x80 )
+            {
+                size++;
+            }
+            else if ( c < 0x800 )
+            {
+                size += 2;
+            }
+            else
+            {
+                size += 3;
+            }
+        }
+
+        byte[] bites = new byte[size];
+        int pos = 0;
+
+        for ( int i = 0; i < length; i++ )
+        {
+            char c = string.charAt( i );
+
+            if ( c < 0x80 )
+            {
+                bites[pos++] = ( byte ) c;
+            }
+            else if ( c < 0x800 )
+            {
+                bites[pos++] = ( byte ) ( 0xC0 | ( c >> 6 ) );
+                bites[pos++] = ( byte ) ( 0x80 | ( c & 0x3F ) );
+            }
+            else
+            {
+                bites[pos++] = ( byte ) ( 0xE0 | ( c >> 12 ) );
+                bites[pos++] = ( byte ) ( 0x80 | ( ( c >> 6 ) & 0x3F ) );
+                bites[pos++] = ( byte ) ( 0x80 | ( c & 0x3F ) );
+            }
+        }
+
+        return bites;
+    }
+}
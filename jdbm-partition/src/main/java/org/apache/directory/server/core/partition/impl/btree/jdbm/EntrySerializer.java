@@ -21,11 +21,8 @@ package org.apache.directory.server.core.partition.impl.btree.jdbm;
 
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutput;
-import java.io.ObjectOutputStream;
 
 import jdbm.helper.Serializer;
 
@@ -40,6 +37,9 @@ import org.apache.directory.api.ldap.model.name.Rdn;
 import org.apache.directory.api.ldap.model.schema.AttributeType;
 import org.apache.directory.api.ldap.model.schema.SchemaManager;
 import org.apache.directory.server.i18n.I18n;
+import org.apache.directory.server.xdbm.AttributeTypeDictionary;
+import org.apache.directory.server.xdbm.CompactEntryCodec;
+import org.apache.directory.server.xdbm.ValueCompression;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -48,6 +48,10 @@ import org.slf4j.LoggerFactory;
  * Serialize and deserialize a ServerEntry. There is a big difference with the standard
  * Entry serialization : we don't serialize the entry's Dn, we just serialize it's Rdn.
  * </br></br>
+ * The entries are written using the {@link CompactEntryCodec} format. Entries written with
+ * the previous, ObjectOutputStream based, format are still readable : they are converted
+ * the next time they are written.
+ * </br></br>
  * <b>This class must *not* be used outside of the server.</b>
  *  
  * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
@@ -68,87 +72,60 @@ public class EntrySerializer implements Serializer
     /** The schemaManager reference */
     private transient SchemaManager schemaManager;
 
+    /** The codec used to read and write the entries */
+    private transient CompactEntryCodec codec;
+
 
     /**
-     * Creates a new instance of ServerEntrySerializer.
+     * Creates a new instance of ServerEntrySerializer. The AttributeType OIDs
+     * will be stored in each entry.
      *
      * @param schemaManager The reference to the global schemaManager
      */
     public EntrySerializer( SchemaManager schemaManager )
     {
-        this.schemaManager = schemaManager;
+        this( schemaManager, null );
     }
 
 
     /**
-     * <p>
-     * 
-     * This is the place where we serialize entries, and all theirs
-     * elements. the reason why we don't call the underlying methods
-     * (<code>ServerAttribute.write(), Value.write()</code>) is that we need
-     * access to the registries to read back the values.
-     * <p>
-     * The structure used to store the entry is the following :
-     * <ul>
-     *   <li><b>[a byte]</b> : if the Dn is empty 0 will be written else 1</li>
-     *   <li><b>[Rdn]</b> : The entry's Rdn.</li>
-     *   <li><b>[numberAttr]</b> : the bumber of attributes. Can be 0</li>
-     *   <li>For each Attribute :
-     *     <ul>
-     *       <li><b>[attribute's oid]</b> : The attribute's OID to get back
-     *       the attributeType on deserialization</li>
-     *       <li><b>[Attribute]</b> The attribute</li>
-     *     </ul>
-     *   </li>
-     * </ul>
+     * Creates a new instance of ServerEntrySerializer, storing the AttributeTypes
+     * using their ordinal in the given dictionary.
+     *
+     * @param schemaManager The reference to the global schemaManager
+     * @param dictionary The partition's AttributeType dictionary
      */
-    public byte[] serialize( Object object ) throws IOException
+    public EntrySerializer( SchemaManager schemaManager, AttributeTypeDictionary dictionary )
     {
-        Entry entry = ( Entry ) object;
-
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        ObjectOutput out = new ObjectOutputStream( baos );
-
-        // First, the Dn
-        Dn dn = entry.getDn();
-
-        // Write the Rdn of the Dn
-        if ( dn.isEmpty() )
-        {
-            out.writeByte( 0 );
-        }
-        else
-        {
-            out.writeByte( 1 );
-            Rdn rdn = dn.getRdn();
-            rdn.writeExternal( out );
-        }
-
-        // Then the attributes.
-        out.writeInt( entry.getAttributes().size() );
-
-        // Iterate through the keys. We store the Attribute
-        // here, to be able to restore it in the readExternal :
-        // we need access to the registries, which are not available
-        // in the ServerAttribute class.
-        for ( Attribute attribute : entry.getAttributes() )
-        {
-            AttributeType attributeType = attribute.getAttributeType();
+        this( schemaManager, dictionary, null );
+    }
 
-            // Write the oid to be able to restore the AttributeType when deserializing
-            // the attribute
-            String oid = attributeType.getOid();
 
-            out.writeUTF( oid );
+    /**
+     * Creates a new instance of ServerEntrySerializer, storing the AttributeTypes
+     * using their ordinal in the given dictionary, and compressing the attributes
+     * accepted by the given compression policy.
+     *
+     * @param schemaManager The reference to the global schemaManager
+     * @param dictionary The partition's AttributeType dictionary
+     * @param compression The compression policy. If null, nothing is compressed
+     */
+    public EntrySerializer( SchemaManager schemaManager, AttributeTypeDictionary dictionary,
+        ValueCompression compression )
+    {
+        this.schemaManager = schemaManager;
+        codec = new CompactEntryCodec( schemaManager, dictionary, compression );
+    }
 
-            // Write the attribute
-            attribute.writeExternal( out );
-        }
 
-        out.flush();
+    /**
+     * Serializes an entry using the {@link CompactEntryCodec} format.
+     */
+    public byte[] serialize( Object object ) throws IOException
+    {
+        Entry entry = ( Entry ) object;
 
-        // Note : we don't store the ObjectClassAttribute. It has already
-        // been stored as an attribute.
+        byte[] bytes = codec.encode( entry );
 
         if ( IS_DEBUG )
         {
@@ -156,7 +133,7 @@ public class EntrySerializer implements Serializer
             LOG.debug( "Serialize " + entry );
         }
 
-        return baos.toByteArray();
+        return bytes;
     }
 
 
@@ -168,6 +145,34 @@ public class EntrySerializer implements Serializer
      *  @throws IOException if we can't deserialize the Entry
      */
     public Object deserialize( byte[] bytes ) throws IOException
+    {
+        if ( CompactEntryCodec.isLegacy( bytes, 0 ) )
+        {
+            return deserializeLegacy( bytes );
+        }
+
+        // The attributes will be decoded when accessed
+        return codec.decodeLazily( bytes, 0, bytes.length );
+    }
+
+
+    /**
+     * Deserialize an Entry written with the previous format :
+     * <ul>
+     *   <li><b>[a byte]</b> : if the Dn is empty 0 will be written else 1</li>
+     *   <li><b>[Rdn]</b> : The entry's Rdn.</li>
+     *   <li><b>[numberAttr]</b> : the bumber of attributes. Can be 0</li>
+     *   <li>For each Attribute :
+     *     <ul>
+     *       <li><b>[attribute's oid]</b> : The attribute's OID to get back
+     *       the attributeType on deserialization</li>
+     *       <li><b>[Attribute]</b> The attribute</li>
+     *     </ul>
+     *   </li>
+     * </ul>
+     * all of it being written by an ObjectOutputStream.
+     */
+    private Entry deserializeLegacy( byte[] bytes ) throws IOException
     {
         ObjectInputStream in = new ObjectInputStream( new ByteArrayInputStream( bytes ) );
 
@@ -0,0 +1,380 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.partition.impl.btree.jdbm;
+
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Groups the log synchronizations requested by concurrent write transactions. Each committed
+ * transaction registers itself in the current batch, and a single flusher thread synchronizes
+ * the log once for the whole batch, acknowledging all the waiting transactions together.
+ * <br>
+ * A batch is flushed when it contains {@link #getMaxBatchSize()} transactions, or when its
+ * first transaction has been waiting for {@link #getMaxDelay()} milliseconds. The transactions
+ * committed while a batch is being flushed are accumulated in the next one.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class GroupCommitter
+{
+    /** A logger for this class */
+    private static final Logger LOG = LoggerFactory.getLogger( GroupCommitter.class );
+
+    /** The default maximum delay, in milliseconds, before a batch is flushed */
+    public static final long DEFAULT_MAX_DELAY = 2L;
+
+    /** The default maximum number of transactions in a batch */
+    public static final int DEFAULT_MAX_BATCH_SIZE = 64;
+
+    /** The element flushing the log */
+    private final Flushable log;
+
+    /** The maximum delay before a batch is flushed, in milliseconds */
+    private final long maxDelay;
+
+    /** The maximum number of transactions in a batch */
+    private final int maxBatchSize;
+
+    /** The lock protecting the batches */
+    private final Object lock = new Object();
+
+    /** The batch accumulating the committed transactions */
+    private Batch current = new Batch();
+
+    /** The flusher thread */
+    private final Thread flusher;
+
+    /** Set when the committer is closed */
+    private boolean closed;
+
+    /** The number of flushes done so far */
+    private long flushCount;
+
+    /** The number of transactions acknowledged so far */
+    private long commitCount;
+
+
+    /**
+     * A group of transactions flushed together
+     */
+    public static final class Batch
+    {
+        /** The number of transactions in this batch */
+        private int size;
+
+        /** The time the first transaction has been added, in nanoseconds */
+        private long startTime;
+
+        /** Set when the batch has been flushed */
+        private boolean done;
+
+        /** The error thrown when flushing the batch, if any */
+        private IOException error;
+
+
+        private Batch()
+        {
+        }
+    }
+
+
+    /**
+     * Creates a new instance of GroupCommitter, and starts its flusher thread.
+     *
+     * @param name The name of the flusher thread
+     * @param log The element to flush
+     * @param maxDelay The maximum delay before a batch is flushed, in milliseconds
+     * @param maxBatchSize The maximum number of transactions in a batch
+     */
+    public GroupCommitter( String name, Flushable log, long maxDelay, int maxBatchSize )
+    {
+        if ( maxDelay < 0 )
+        {
+            throw new IllegalArgumentException( "The group commit delay must not be negative : " + maxDelay );
+        }
+
+        if ( maxBatchSize < 1 )
+        {
+            throw new IllegalArgumentException( "The group commit batch size must be at least 1 : "
+                + maxBatchSize );
+        }
+
+        this.log = log;
+        this.maxDelay = maxDelay;
+        this.maxBatchSize = maxBatchSize;
+
+        flusher = new Thread( new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                flushLoop();
+            }
+        }, name );
+
+        flusher.setDaemon( true );
+        flusher.start();
+    }
+
+
+    /**
+     * Registers a committed transaction in the current batch. This method does not wait for
+     * the log to be flushed, it can be called while holding a lock.
+     *
+     * @return The batch the transaction belongs to, to be passed to {@link #await(Batch)}
+     * @throws IOException If the committer has been closed
+     */
+    public Batch enqueue() throws IOException
+    {
+        synchronized ( lock )
+        {
+            if ( closed )
+            {
+                throw new IOException( "The group committer has been closed" );
+            }
+
+            Batch batch = current;
+
+            if ( batch.size == 0 )
+            {
+                batch.startTime = System.nanoTime();
+            }
+
+            batch.size++;
+            lock.notifyAll();
+
+            return batch;
+        }
+    }
+
+
+    /**
+     * Waits until a batch has been flushed.
+     *
+     * @param batch The batch returned by {@link #enqueue()}
+     * @throws IOException If the log could not be flushed
+     */
+    public void await( Batch batch ) throws IOException
+    {
+        synchronized ( lock )
+        {
+            while ( !batch.done )
+            {
+                try
+                {
+                    lock.wait();
+                }
+                catch ( InterruptedException ie )
+                {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException( "Interrupted while waiting for the log to be flushed" );
+                }
+            }
+
+            if ( batch.error != null )
+            {
+                throw batch.error;
+            }
+        }
+    }
+
+
+    /**
+     * Registers a committed transaction, and waits until its batch has been flushed.
+     *
+     * @throws IOException If the log could not be flushed
+     */
+    public void commit() throws IOException
+    {
+        await( enqueue() );
+    }
+
+
+    /**
+     * Flushes the pending batch, and stops the flusher thread.
+     */
+    public void close()
+    {
+        synchronized ( lock )
+        {
+            if ( closed )
+            {
+                return;
+            }
+
+            closed = true;
+            lock.notifyAll();
+        }
+
+        try
+        {
+            flusher.join();
+        }
+        catch ( InterruptedException ie )
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+
+    /**
+     * @return The maximum delay before a batch is flushed, in milliseconds
+     */
+    public long getMaxDelay()
+    {
+        return maxDelay;
+    }
+
+
+    /**
+     * @return The maximum number of transactions in a batch
+     */
+    public int getMaxBatchSize()
+    {
+        return maxBatchSize;
+    }
+
+
+    /**
+     * @return The number of log flushes done so far
+     */
+    public long getFlushCount()
+    {
+        synchronized ( lock )
+        {
+            return flushCount;
+        }
+    }
+
+
+    /**
+     * @return The number of transactions acknowledged so far
+     */
+    public long getCommitCount()
+    {
+        synchronized ( lock )
+        {
+            return commitCount;
+        }
+    }
+
+
+    /**
+     * The flusher thread loop : waits for a batch to be ready, swaps it with a new one, and
+     * flushes the log outside of the lock so that new transactions can be enqueued meanwhile.
+     */
+    private void flushLoop()
+    {
+        while ( true )
+        {
+            Batch batch;
+
+            synchronized ( lock )
+            {
+                try
+                {
+                    batch = nextBatch();
+                }
+                catch ( InterruptedException ie )
+                {
+                    // Stop here, but don't leave the waiters hanging
+                    closed = true;
+                    batch = current;
+                }
+
+                if ( batch == null )
+                {
+                    return;
+                }
+
+                current = new Batch();
+            }
+
+            IOException error = null;
+
+            try
+            {
+                log.flush();
+            }
+            catch ( IOException ioe )
+            {
+                LOG.error( "Failed to flush the log for a batch of {} transactions", batch.size, ioe );
+                error = ioe;
+            }
+            catch ( RuntimeException re )
+            {
+                LOG.error( "Failed to flush the log for a batch of {} transactions", batch.size, re );
+                error = new IOException( re.getMessage(), re );
+            }
+
+            synchronized ( lock )
+            {
+                batch.error = error;
+                batch.done = true;
+                flushCount++;
+                commitCount += batch.size;
+                lock.notifyAll();
+            }
+        }
+    }
+
+
+    /**
+     * Waits until the current batch is full or old enough. Must be called while holding the lock.
+     *
+     * @return The batch to flush, or null if the committer is closed and nothing is pending
+     */
+    private Batch nextBatch() throws InterruptedException
+    {
+        while ( current.size == 0 )
+        {
+            if ( closed )
+            {
+                return null;
+            }
+
+            lock.wait();
+        }
+
+        long deadline = current.startTime + TimeUnit.MILLISECONDS.toNanos( maxDelay );
+
+        while ( !closed && ( current.size < maxBatchSize ) )
+        {
+            long remaining = deadline - System.nanoTime();
+
+            if ( remaining <= 0L )
+            {
+                break;
+            }
+
+            TimeUnit.NANOSECONDS.timedWait( lock, remaining );
+        }
+
+        return current;
+    }
+}
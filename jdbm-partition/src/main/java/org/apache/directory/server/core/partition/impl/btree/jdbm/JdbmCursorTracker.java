@@ -0,0 +1,203 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.directory.server.core.partition.impl.btree.jdbm;
+
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.directory.api.ldap.model.cursor.ClosureMonitor;
+import org.apache.directory.api.ldap.model.cursor.Cursor;
+import org.apache.directory.api.ldap.model.cursor.CursorClosedException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Keeps track of the cursors browsing the B-trees of a record manager, so that the record
+ * manager is not closed under their feet when the partition file is replaced by a compacted
+ * copy. Closing the tracker waits for the open cursors to be closed, and invalidates the ones
+ * still open when the timeout expires : they then throw a {@link CursorClosedException}
+ * instead of reading a closed file.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+class JdbmCursorTracker
+{
+    /** A logger for this class */
+    private static final Logger LOG = LoggerFactory.getLogger( JdbmCursorTracker.class );
+
+    /** The monitors of the cursors which are still open */
+    private final Set<TrackingMonitor> openCursors = new HashSet<>();
+
+    /** Tells if the record manager is being closed */
+    private boolean closed;
+
+
+    /**
+     * The monitor set on a tracked cursor, which stops tracking it once it is closed
+     */
+    private final class TrackingMonitor implements ClosureMonitor
+    {
+        private volatile boolean closed;
+        private volatile Exception cause;
+
+
+        @Override
+        public void checkNotClosed() throws CursorClosedException
+        {
+            if ( closed )
+            {
+                throw new CursorClosedException( cause.getMessage(), cause );
+            }
+        }
+
+
+        @Override
+        public void close()
+        {
+            close( new CursorClosedException() );
+        }
+
+
+        @Override
+        public void close( String cause )
+        {
+            close( new CursorClosedException( cause ) );
+        }
+
+
+        @Override
+        public void close( Exception cause )
+        {
+            if ( !closed )
+            {
+                // The cause must be set before the closed flag
+                this.cause = cause;
+                closed = true;
+            }
+
+            closed( this );
+        }
+
+
+        @Override
+        public Exception getCause()
+        {
+            return cause;
+        }
+
+
+        @Override
+        public boolean isClosed()
+        {
+            return closed;
+        }
+    }
+
+
+    /**
+     * Starts tracking a cursor. A cursor created while the tracker is being closed is
+     * invalidated at once.
+     *
+     * @param cursor The cursor to track
+     * @return The cursor
+     */
+    <E> Cursor<E> track( Cursor<E> cursor )
+    {
+        TrackingMonitor monitor = new TrackingMonitor();
+        boolean invalid;
+
+        synchronized ( this )
+        {
+            invalid = closed;
+
+            if ( !invalid )
+            {
+                openCursors.add( monitor );
+            }
+        }
+
+        if ( invalid )
+        {
+            monitor.close( new CursorClosedException( "The partition file has been replaced" ) );
+        }
+
+        cursor.setClosureMonitor( monitor );
+
+        return cursor;
+    }
+
+
+    private synchronized void closed( TrackingMonitor monitor )
+    {
+        if ( openCursors.remove( monitor ) && openCursors.isEmpty() )
+        {
+            notifyAll();
+        }
+    }
+
+
+    /**
+     * Waits for the tracked cursors to be closed, and invalidates the ones which are still
+     * open after the given timeout. The cursors created afterward are invalidated as well.
+     *
+     * @param timeout The maximum time to wait, in milliseconds
+     */
+    void close( long timeout )
+    {
+        List<TrackingMonitor> remaining;
+
+        synchronized ( this )
+        {
+            closed = true;
+            long deadline = System.currentTimeMillis() + timeout;
+
+            try
+            {
+                for ( long wait = timeout; !openCursors.isEmpty() && ( wait > 0L ); wait = deadline
+                    - System.currentTimeMillis() )
+                {
+                    wait( wait );
+                }
+            }
+            catch ( InterruptedException ie )
+            {
+                Thread.currentThread().interrupt();
+            }
+
+            remaining = new ArrayList<>( openCursors );
+            openCursors.clear();
+        }
+
+        if ( !remaining.isEmpty() )
+        {
+            LOG.warn( "Invalidating {} cursors still open on the replaced partition file", remaining.size() );
+            CursorClosedException cause = new CursorClosedException( "The partition file has been replaced" );
+
+            for ( TrackingMonitor monitor : remaining )
+            {
+                monitor.close( cause );
+            }
+        }
+    }
+}
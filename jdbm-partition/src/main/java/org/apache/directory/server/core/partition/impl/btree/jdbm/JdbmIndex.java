@@ -94,6 +94,9 @@ public class JdbmIndex<K> extends AbstractIndex<K, String>
     /** a custom working directory path when specified in configuration */
     protected File wkDirPath;
 
+    /** The compactor to notify of the changes, while the partition is being compacted */
+    private volatile JdbmPartitionCompactor compactor;
+
 
     /*
      * NOTE: Duplicate Key Limit
@@ -203,7 +206,7 @@ public class JdbmIndex<K> extends AbstractIndex<K, String>
         {
             forward = new JdbmTable<>( schemaManager, attributeType.getOid() + FORWARD_BTREE, numDupLimit,
                 recMan,
-                comp, UuidComparator.INSTANCE, StringSerializer.INSTANCE, UuidSerializer.INSTANCE );
+                comp, UuidComparator.INSTANCE, CompactStringSerializer.INSTANCE, UuidSerializer.INSTANCE );
         }
         else
         {
@@ -263,6 +266,34 @@ public class JdbmIndex<K> extends AbstractIndex<K, String>
     }
 
 
+    /**
+     * Sets the compactor to notify of the changes made to this index, or null when the
+     * partition is not being compacted.
+     *
+     * @param compactor The compactor
+     */
+    void setCompactor( JdbmPartitionCompactor compactor )
+    {
+        this.compactor = compactor;
+    }
+
+
+    /**
+     * Sets the tracker of the cursors browsing the tables of this index.
+     *
+     * @param cursorTracker The cursor tracker
+     */
+    void setCursorTracker( JdbmCursorTracker cursorTracker )
+    {
+        forward.setCursorTracker( cursorTracker );
+
+        if ( reverse != null )
+        {
+            reverse.setCursorTracker( cursorTracker );
+        }
+    }
+
+
     /**
      * Sets the working directory path to something other than the default. Sometimes more
      * performance is gained by locating indices on separate disk spindles.
@@ -374,6 +405,13 @@ public class JdbmIndex<K> extends AbstractIndex<K, String>
         {
             reverse.put( partitionTxn, id, attrVal );
         }
+
+        JdbmPartitionCompactor currentCompactor = compactor;
+
+        if ( currentCompactor != null )
+        {
+            currentCompactor.indexChanged( this, attrVal, id, true );
+        }
     }
 
 
@@ -391,6 +429,13 @@ public class JdbmIndex<K> extends AbstractIndex<K, String>
             {
                 reverse.remove( partitionTxn, id, attrVal );
             }
+
+            JdbmPartitionCompactor currentCompactor = compactor;
+
+            if ( currentCompactor != null )
+            {
+                currentCompactor.indexChanged( this, attrVal, id, false );
+            }
         }
     }
 
@@ -432,6 +477,13 @@ public class JdbmIndex<K> extends AbstractIndex<K, String>
 
             // Remove the id -> key from the reverse index
             reverse.remove( partitionTxn, entryId );
+
+            JdbmPartitionCompactor currentCompactor = compactor;
+
+            if ( currentCompactor != null )
+            {
+                currentCompactor.indexChanged( this, null, entryId, false );
+            }
         }
     }
 
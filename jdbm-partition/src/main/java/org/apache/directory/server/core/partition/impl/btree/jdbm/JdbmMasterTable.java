@@ -21,15 +21,26 @@ package org.apache.directory.server.core.partition.impl.btree.jdbm;
 
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
 
 import jdbm.RecordManager;
 import jdbm.helper.Serializer;
 
+import org.apache.directory.api.ldap.model.cursor.Cursor;
+import org.apache.directory.api.ldap.model.cursor.CursorException;
+import org.apache.directory.api.ldap.model.cursor.Tuple;
 import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.exception.LdapOtherException;
 import org.apache.directory.api.ldap.model.schema.SchemaManager;
 import org.apache.directory.api.ldap.model.schema.comparators.UuidComparator;
+import org.apache.directory.server.core.api.partition.PartitionTxn;
+import org.apache.directory.server.xdbm.AttributeTypeDictionary;
 import org.apache.directory.server.xdbm.MasterTable;
+import org.apache.directory.server.xdbm.ValueCompression;
 
 
 /**
@@ -39,6 +50,25 @@ import org.apache.directory.server.xdbm.MasterTable;
  */
 public class JdbmMasterTable extends JdbmTable<String, Entry> implements MasterTable
 {
+    /** The name of the record storing the AttributeType dictionary */
+    private static final String DICTIONARY_NAME = DBF + "_attributeTypes";
+
+    /** The JDBM record manager */
+    private RecordManager recMan;
+
+    /** The AttributeType dictionary used by the entry serializer */
+    private AttributeTypeDictionary dictionary;
+
+    /** The record ID of the dictionary */
+    private long dictionaryRecId;
+
+    /** The number of entries written or removed since the table has been opened */
+    private final AtomicLong changeCount = new AtomicLong();
+
+    /** The compactor to notify of the changes, while the partition is being compacted */
+    private volatile JdbmPartitionCompactor compactor;
+
+
     /**
      * Creates the master table using JDBM B+Trees for the backing store.
      *
@@ -47,11 +77,47 @@ public class JdbmMasterTable extends JdbmTable<String, Entry> implements MasterT
      * @throws Exception if there is an error opening the Db file.
      */
     public JdbmMasterTable( RecordManager recMan, SchemaManager schemaManager ) throws IOException
+    {
+        this( recMan, schemaManager, null );
+    }
+
+
+    /**
+     * Creates the master table using JDBM B+Trees for the backing store, compressing
+     * the attributes accepted by the given compression policy.
+     *
+     * @param recMan the JDBM record manager
+     * @param schemaManager the schema manager
+     * @param compression the compression policy. If null, nothing is compressed
+     * @throws Exception if there is an error opening the Db file.
+     */
+    public JdbmMasterTable( RecordManager recMan, SchemaManager schemaManager, ValueCompression compression )
+        throws IOException
+    {
+        this( recMan, schemaManager, loadDictionary( recMan ), compression );
+    }
+
+
+    private JdbmMasterTable( RecordManager recMan, SchemaManager schemaManager, AttributeTypeDictionary dictionary,
+        ValueCompression compression ) throws IOException
     {
         super( schemaManager, DBF, recMan, UuidComparator.INSTANCE, UuidSerializer.INSTANCE,
-            new EntrySerializer( schemaManager ) );
+            new EntrySerializer( schemaManager, dictionary, compression ) );
 
         UuidComparator.INSTANCE.setSchemaManager( schemaManager );
+
+        this.recMan = recMan;
+        this.dictionary = dictionary;
+        dictionaryRecId = recMan.getNamedObject( DICTIONARY_NAME );
+
+        if ( dictionaryRecId == 0 )
+        {
+            dictionaryRecId = recMan.insert( dictionary.toBytes() );
+            recMan.setNamedObject( DICTIONARY_NAME, dictionaryRecId );
+
+            // The record must survive the rollback of the first write transaction
+            recMan.commit();
+        }
     }
 
 
@@ -62,6 +128,144 @@ public class JdbmMasterTable extends JdbmTable<String, Entry> implements MasterT
     }
 
 
+    /**
+     * Reads the AttributeType dictionary from the record manager, or creates an empty one.
+     */
+    private static AttributeTypeDictionary loadDictionary( RecordManager recMan ) throws IOException
+    {
+        long recId = recMan.getNamedObject( DICTIONARY_NAME );
+
+        if ( recId == 0 )
+        {
+            return new AttributeTypeDictionary();
+        }
+
+        return new AttributeTypeDictionary( ( byte[] ) recMan.fetch( recId ) );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * 
+     * The AttributeType dictionary is updated in the same transaction if the entry uses some
+     * new AttributeTypes, as the serialized entry will refer to them by their ordinal.
+     */
+    @Override
+    public synchronized void put( PartitionTxn transaction, String key, Entry value ) throws LdapException
+    {
+        // The dictionary is written first
+        JdbmPartitionWriteTxn.written( transaction );
+
+        if ( ( dictionary != null ) && ( value != null ) && ( dictionary.register( value ) || dictionary.isDirty() ) )
+        {
+            try
+            {
+                recMan.update( dictionaryRecId, dictionary.toBytes() );
+            }
+            catch ( IOException ioe )
+            {
+                throw new LdapOtherException( ioe.getMessage(), ioe );
+            }
+        }
+
+        super.put( transaction, key, value );
+        changed( key );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void remove( PartitionTxn transaction, String key ) throws LdapException
+    {
+        super.remove( transaction, key );
+        changed( key );
+    }
+
+
+    private void changed( String key )
+    {
+        changeCount.incrementAndGet();
+
+        JdbmPartitionCompactor currentCompactor = compactor;
+
+        if ( currentCompactor != null )
+        {
+            currentCompactor.entryChanged( key );
+        }
+    }
+
+
+    /**
+     * @return The number of entries written or removed since the table has been opened
+     */
+    public long getChangeCount()
+    {
+        return changeCount.get();
+    }
+
+
+    /**
+     * Sets the compactor to notify of the changes made to this table, or null when the
+     * partition is not being compacted.
+     *
+     * @param compactor The compactor
+     */
+    void setCompactor( JdbmPartitionCompactor compactor )
+    {
+        this.compactor = compactor;
+    }
+
+
+    /**
+     * @return The compactor notified of the changes made to this table, if any
+     */
+    JdbmPartitionCompactor getCompactor()
+    {
+        return compactor;
+    }
+
+
+    /**
+     * Rewrites all the entries of the table, so that the entries stored with an older format
+     * are converted to the current one.
+     *
+     * @param transaction The write transaction to use
+     * @return The number of rewritten entries
+     * @throws LdapException If the entries cannot be rewritten
+     */
+    public int migrateEntries( PartitionTxn transaction ) throws LdapException
+    {
+        List<String> ids = new ArrayList<>();
+
+        try ( Cursor<Tuple<String, Entry>> cursor = cursor() )
+        {
+            while ( cursor.next() )
+            {
+                ids.add( cursor.get().getKey() );
+            }
+        }
+        catch ( CursorException | IOException e )
+        {
+            throw new LdapOtherException( e.getMessage(), e );
+        }
+
+        // The entries are read and written back one by one, as we can't update the tree while browsing it
+        for ( String id : ids )
+        {
+            Entry entry = get( transaction, id );
+
+            if ( entry != null )
+            {
+                put( transaction, id, entry );
+            }
+        }
+
+        return ids.size();
+    }
+
+
     /**
      * Get's the next value from this SequenceBDb.  This has the side-effect of
      * changing the current sequence values permanently in memory and on disk.
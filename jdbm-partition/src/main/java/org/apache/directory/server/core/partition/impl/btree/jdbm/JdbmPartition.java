@@ -22,12 +22,19 @@ package org.apache.directory.server.core.partition.impl.btree.jdbm;
 
 import java.io.File;
 import java.io.FilenameFilter;
+import java.io.Flushable;
 import java.io.IOException;
 import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import jdbm.RecordManager;
 import jdbm.helper.MRU;
@@ -57,6 +64,7 @@ import org.apache.directory.api.util.exception.MultiException;
 import org.apache.directory.server.constants.ApacheSchemaConstants;
 import org.apache.directory.server.core.api.DnFactory;
 import org.apache.directory.server.core.api.entry.ClonedServerEntry;
+import org.apache.directory.server.core.api.interceptor.context.AbstractChangeOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.AddOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.DeleteOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.LookupOperationContext;
@@ -70,9 +78,12 @@ import org.apache.directory.server.core.api.partition.PartitionReadTxn;
 import org.apache.directory.server.core.api.partition.PartitionTxn;
 import org.apache.directory.server.core.api.partition.PartitionWriteTxn;
 import org.apache.directory.server.core.partition.impl.btree.AbstractBTreePartition;
+import org.apache.directory.server.core.partition.impl.btree.OffHeapEntryCache;
 import org.apache.directory.server.i18n.I18n;
 import org.apache.directory.server.xdbm.Index;
+import org.apache.directory.server.xdbm.MasterTable;
 import org.apache.directory.server.xdbm.ParentIdAndRdn;
+import org.apache.directory.server.xdbm.ValueCompression;
 import org.apache.directory.server.xdbm.search.impl.CursorBuilder;
 import org.apache.directory.server.xdbm.search.impl.DefaultOptimizer;
 import org.apache.directory.server.xdbm.search.impl.DefaultSearchEngine;
@@ -105,12 +116,51 @@ public class JdbmPartition extends AbstractBTreePartition
         }
     };
 
-    /** the JDBM record manager used by this database */
-    private RecordManager recMan;
+    /** the JDBM record manager used by this database, replaced when the partition is compacted */
+    private volatile RecordManager recMan;
 
     /** the entry cache */
     private Cache entryCache;
 
+    /** the off-heap entry cache, used instead of the entry cache when configured */
+    private OffHeapEntryCache offHeapEntryCache;
+
+    /** the serializer used to store the entries into the off-heap cache */
+    private EntrySerializer offHeapSerializer;
+
+    /** the compression policy of the master table, null if nothing is compressed */
+    private ValueCompression valueCompression;
+
+    /** Tells if the log synchronizations of concurrent write transactions are grouped */
+    private boolean groupCommitEnabled = false;
+
+    /** The maximum delay, in milliseconds, a write transaction waits for its log synchronization */
+    private long groupCommitMaxDelay = GroupCommitter.DEFAULT_MAX_DELAY;
+
+    /** The maximum number of write transactions sharing a log synchronization */
+    private int groupCommitMaxBatchSize = GroupCommitter.DEFAULT_MAX_BATCH_SIZE;
+
+    /** The group committer, when enabled */
+    private GroupCommitter groupCommitter;
+
+    /** The fragmentation ratio triggering a background compaction, 0 to disable it */
+    private double compactionThreshold = 0d;
+
+    /** Set while the partition is being compacted */
+    private final AtomicBoolean compacting = new AtomicBoolean( false );
+
+    /** The lock used to compact the partition when no operation has provided one */
+    private final ReadWriteLock compactionLock = new ReentrantReadWriteLock();
+
+    /** The running compactor, notified of the committed and rolled back changes */
+    private volatile JdbmPartitionCompactor compactor;
+
+    /** The tracker of the cursors opened on the current record manager */
+    private volatile JdbmCursorTracker cursorTracker = new JdbmCursorTracker();
+
+    /** The time to wait for the open cursors before replacing the partition file, in milliseconds */
+    private static final long CURSOR_DRAIN_TIMEOUT = 10000L;
+
 
     /**
      * Creates a store based on JDBM B+Trees.
@@ -395,8 +445,6 @@ public class JdbmPartition extends AbstractBTreePartition
     {
         if ( !initialized )
         {
-            BaseRecordManager base;
-
             // setup optimizer and registries for parent
             if ( !optimizerEnabled )
             {
@@ -421,29 +469,30 @@ public class JdbmPartition extends AbstractBTreePartition
             }
 
             // First, check if the file storing the data exists
-            String path = partitionDir.getPath() + File.separator + id;
-
             try
             {
-                base = new BaseRecordManager( path );
-                TransactionManager transactionManager = base.getTransactionManager();
-                transactionManager.setMaximumTransactionsInLog( 2000 );
-                
-                // prevent the OOM when more than 50k users are loaded at a stretch
-                // adding this system property to make it configurable till JDBM gets replaced by Mavibot
-                String cacheSizeVal = System.getProperty( "jdbm.recman.cache.size", "100" );
-                
-                int recCacheSize = Integer.parseInt( cacheSizeVal );
-                
-                LOG.info( "Setting CacheRecondManager's cache size to {}", recCacheSize );
-                
-                recMan = new CacheRecordManager( base, new MRU( recCacheSize ) );
+                openRecordManager();
             }
             catch ( IOException ioe )
             {
                 throw new LdapOtherException( ioe.getMessage(), ioe );
             }
 
+            if ( groupCommitEnabled && isSyncOnWrite() )
+            {
+                LOG.debug( "Grouping the log synchronizations of the {} partition, max delay {} ms, max batch size {}",
+                    id, groupCommitMaxDelay, groupCommitMaxBatchSize );
+
+                groupCommitter = new GroupCommitter( "jdbm-group-commit-" + id, new Flushable()
+                {
+                    @Override
+                    public void flush() throws IOException
+                    {
+                        synchronizeLog();
+                    }
+                }, groupCommitMaxDelay, groupCommitMaxBatchSize );
+            }
+
             // Iterate on the declared indexes
             List<String> allIndices = new ArrayList<>();
             List<Index<?, String>> indexToBuild = new ArrayList<>();
@@ -517,9 +566,12 @@ public class JdbmPartition extends AbstractBTreePartition
             }
 
             // Create the master table (the table containing all the entries)
+            valueCompression = getValueCompression();
+
             try
             {
-                master = new JdbmMasterTable( recMan, schemaManager );
+                master = new JdbmMasterTable( recMan, schemaManager, valueCompression );
+                getJdbmMasterTable().setCursorTracker( cursorTracker );
             }
             catch ( IOException ioe )
             {
@@ -533,7 +585,13 @@ public class JdbmPartition extends AbstractBTreePartition
 
             //deleteUnusedIndexFiles( allIndices, allIndexDbFiles );
 
-            if ( cacheService != null )
+            if ( offHeapCacheSize > 0 )
+            {
+                LOG.debug( "Using an off-heap entry cache of {} bytes for {} partition", offHeapCacheSize, id );
+                offHeapEntryCache = new OffHeapEntryCache( offHeapCacheSize );
+                offHeapSerializer = new EntrySerializer( schemaManager );
+            }
+            else if ( cacheService != null )
             {
                 entryCache = cacheService.getCache( getId() );
 
@@ -685,25 +743,144 @@ public class JdbmPartition extends AbstractBTreePartition
         {
             // Commit
             recMan.commit();
+            changesCommitted();
     
             // And flush the journal
-            BaseRecordManager baseRecordManager = null;
-    
-            if ( recMan instanceof CacheRecordManager )
+            synchronizeLog();
+        }
+        catch ( IOException ioe )
+        {
+            throw new LdapOtherException( ioe.getMessage(), ioe );
+        }
+
+        if ( ( compactionThreshold > 0d ) && ( getFragmentation() >= compactionThreshold ) )
+        {
+            compactInBackground();
+        }
+    }
+
+
+    /**
+     * Opens the record manager storing the partition data.
+     */
+    private void openRecordManager() throws IOException
+    {
+        BaseRecordManager base = new BaseRecordManager( getRecordManagerPath() );
+        TransactionManager transactionManager = base.getTransactionManager();
+        transactionManager.setMaximumTransactionsInLog( 2000 );
+        
+        // prevent the OOM when more than 50k users are loaded at a stretch
+        // adding this system property to make it configurable till JDBM gets replaced by Mavibot
+        String cacheSizeVal = System.getProperty( "jdbm.recman.cache.size", "100" );
+        
+        int recCacheSize = Integer.parseInt( cacheSizeVal );
+        
+        LOG.info( "Setting CacheRecondManager's cache size to {}", recCacheSize );
+        
+        recMan = new CacheRecordManager( base, new MRU( recCacheSize ) );
+    }
+
+
+    /**
+     * @return The path of the record manager files, without their extension
+     */
+    String getRecordManagerPath()
+    {
+        return new File( getPartitionPath() ).getPath() + File.separator + id;
+    }
+
+
+    /**
+     * Flushes the record manager journal on disk.
+     */
+    private void synchronizeLog() throws IOException
+    {
+        RecordManager current = recMan;
+        BaseRecordManager baseRecordManager = getBaseRecordManager( current );
+
+        // The group committer may be flushing the log too
+        synchronized ( baseRecordManager )
+        {
+            if ( current != recMan )
             {
-                baseRecordManager = ( ( BaseRecordManager ) ( ( CacheRecordManager ) recMan ).getRecordManager() );
+                // The record manager has been closed by a compaction, which has flushed its log
+                return;
             }
-            else
+
+            baseRecordManager.getTransactionManager().synchronizeLog();
+        }
+    }
+
+
+    /**
+     * @return The record manager writing in the partition file, without its cache
+     */
+    private static BaseRecordManager getBaseRecordManager( RecordManager recordManager )
+    {
+        if ( recordManager instanceof CacheRecordManager )
+        {
+            return ( BaseRecordManager ) ( ( CacheRecordManager ) recordManager ).getRecordManager();
+        }
+        else
+        {
+            return ( BaseRecordManager ) recordManager;
+        }
+    }
+
+
+    /**
+     * Rewrites, in place, all the entries stored in the master table using the current
+     * entry format. The entries stored with an older format are readable anyway, this
+     * is only needed to reclaim the space they use.
+     * 
+     * @return The number of rewritten entries
+     * @throws LdapException If the entries cannot be rewritten
+     */
+    public int migrateEntryFormat() throws LdapException
+    {
+        PartitionTxn partitionTxn = beginWriteTransaction();
+
+        try
+        {
+            int nbEntries = ( ( JdbmMasterTable ) master ).migrateEntries( partitionTxn );
+            partitionTxn.commit();
+
+            // The cached entries are still valid, but we flush them to free the memory
+            if ( entryCache != null )
             {
-                baseRecordManager = ( ( BaseRecordManager ) recMan );
+                entryCache.removeAll();
             }
-    
-            baseRecordManager.getTransactionManager().synchronizeLog();
+
+            LOG.info( "Migrated {} entries of the {} partition to the current entry format", nbEntries, id );
+
+            return nbEntries;
         }
         catch ( IOException ioe )
         {
+            try
+            {
+                partitionTxn.abort();
+            }
+            catch ( IOException ioe2 )
+            {
+                LOG.error( ioe2.getMessage(), ioe2 );
+            }
+
             throw new LdapOtherException( ioe.getMessage(), ioe );
         }
+        catch ( LdapException le )
+        {
+            try
+            {
+                partitionTxn.abort();
+            }
+            catch ( IOException ioe )
+            {
+                LOG.error( ioe.getMessage(), ioe );
+            }
+
+            throw le;
+        }
     }
 
 
@@ -837,6 +1014,7 @@ public class JdbmPartition extends AbstractBTreePartition
         try
         {
             jdbmIndex.init( recMan, schemaManager, schemaManager.lookupAttributeTypeRegistry( index.getAttributeId() ) );
+            jdbmIndex.setCursorTracker( cursorTracker );
         }
         catch ( IOException ioe )
         {
@@ -869,6 +1047,13 @@ public class JdbmPartition extends AbstractBTreePartition
             errors.addThrowable( e );
         }
 
+        // Flush the pending grouped commits
+        if ( groupCommitter != null )
+        {
+            groupCommitter.close();
+            groupCommitter = null;
+        }
+
         // This is specific to the JDBM store : close the record manager
         try
         {
@@ -886,6 +1071,11 @@ public class JdbmPartition extends AbstractBTreePartition
             {
                 entryCache.removeAll();
             }
+
+            if ( offHeapEntryCache != null )
+            {
+                offHeapEntryCache.clear();
+            }
         }
 
         if ( errors.size() > 0 )
@@ -932,6 +1122,13 @@ public class JdbmPartition extends AbstractBTreePartition
     @Override
     public void updateCache( OperationContext opCtx )
     {
+        if ( offHeapEntryCache != null )
+        {
+            updateOffHeapCache( opCtx );
+
+            return;
+        }
+
         if ( entryCache == null )
         {
             return;
@@ -977,6 +1174,28 @@ public class JdbmPartition extends AbstractBTreePartition
     @Override
     public Entry lookupCache( String id )
     {
+        if ( offHeapEntryCache != null )
+        {
+            byte[] bytes = offHeapEntryCache.get( id );
+
+            if ( bytes == null )
+            {
+                return null;
+            }
+
+            try
+            {
+                return ( Entry ) offHeapSerializer.deserialize( bytes );
+            }
+            catch ( IOException ioe )
+            {
+                LOG.warn( "Failed to deserialize the cached entry {}", id, ioe );
+                offHeapEntryCache.remove( id );
+
+                return null;
+            }
+        }
+
         if ( entryCache == null )
         {
             return null;
@@ -996,6 +1215,13 @@ public class JdbmPartition extends AbstractBTreePartition
     @Override
     public void addToCache( String id, Entry entry )
     {
+        if ( offHeapEntryCache != null )
+        {
+            putOffHeap( id, entry );
+
+            return;
+        }
+
         if ( entryCache == null )
         {
             return;
@@ -1012,6 +1238,503 @@ public class JdbmPartition extends AbstractBTreePartition
     }
 
 
+    /**
+     * Updates the off-heap cache based on the type of OperationContext
+     */
+    private void updateOffHeapCache( OperationContext opCtx )
+    {
+        try
+        {
+            if ( opCtx instanceof ModifyOperationContext )
+            {
+                // replace the entry
+                Entry entry = ( ( ModifyOperationContext ) opCtx ).getAlteredEntry();
+                putOffHeap( entry.get( SchemaConstants.ENTRY_UUID_AT ).getString(), entry );
+            }
+            else if ( ( opCtx instanceof MoveOperationContext )
+                || ( opCtx instanceof MoveAndRenameOperationContext )
+                || ( opCtx instanceof RenameOperationContext ) )
+            {
+                // Only the moved entry is changed : the children are given their new Dn when
+                // they are fetched from the cache
+                String id = getMovedEntryId( ( AbstractChangeOperationContext ) opCtx );
+
+                if ( id == null )
+                {
+                    offHeapEntryCache.clear();
+                }
+                else
+                {
+                    offHeapEntryCache.remove( id );
+                }
+            }
+            else if ( opCtx instanceof DeleteOperationContext )
+            {
+                // delete the entry
+                DeleteOperationContext delCtx = ( DeleteOperationContext ) opCtx;
+                offHeapEntryCache.remove( delCtx.getEntry().get( SchemaConstants.ENTRY_UUID_AT ).getString() );
+            }
+        }
+        catch ( LdapException e )
+        {
+            LOG.warn( "Failed to update entry cache", e );
+        }
+    }
+
+
+    /**
+     * @return The ID of the entry moved or renamed by an operation, null if the operation
+     * context has no entry carrying it
+     */
+    private String getMovedEntryId( AbstractChangeOperationContext opCtx )
+    {
+        Entry[] entries = new Entry[]
+            { opCtx.getModifiedEntry(), opCtx.getOriginalEntry(), opCtx.getEntry() };
+
+        for ( Entry entry : entries )
+        {
+            if ( ( entry != null ) && ( entry.get( SchemaConstants.ENTRY_UUID_AT ) != null ) )
+            {
+                return entry.get( SchemaConstants.ENTRY_UUID_AT ).getString();
+            }
+        }
+
+        return null;
+    }
+
+
+    /**
+     * Serializes an entry and stores it into the off-heap cache
+     */
+    private void putOffHeap( String id, Entry entry )
+    {
+        Entry addedEntry = entry;
+
+        if ( entry instanceof ClonedServerEntry )
+        {
+            addedEntry = ( ( ClonedServerEntry ) entry ).getOriginalEntry();
+        }
+
+        try
+        {
+            offHeapEntryCache.put( id, offHeapSerializer.serialize( addedEntry ) );
+        }
+        catch ( IOException | RuntimeException | OutOfMemoryError e )
+        {
+            // Not a problem, the entry will be read from the master table. The direct
+            // buffers of a new segment may not be allocated, too.
+            LOG.warn( "Failed to store the entry {} in the off-heap cache", id, e );
+            offHeapEntryCache.remove( id );
+        }
+    }
+
+
+    /**
+     * @return the off-heap entry cache, or null if the partition uses the heap entry cache
+     */
+    public OffHeapEntryCache getOffHeapEntryCache()
+    {
+        return offHeapEntryCache;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * 
+     * When the log synchronizations are grouped, the write transactions flush the log
+     * when they are committed, so there is nothing to do here.
+     */
+    @Override
+    protected void syncAfterWrite( PartitionTxn partitionTxn ) throws LdapException
+    {
+        if ( groupCommitter == null )
+        {
+            super.syncAfterWrite( partitionTxn );
+        }
+    }
+
+
+    /**
+     * @return <code>true</code> if the log synchronizations of concurrent write transactions are grouped
+     */
+    public boolean isGroupCommitEnabled()
+    {
+        return groupCommitEnabled;
+    }
+
+
+    /**
+     * Groups the log synchronizations of concurrent write transactions : a write transaction
+     * commits, releases the locks, and then waits for a single flusher to synchronize the log
+     * for all the transactions committed in the meantime. Only used when syncOnWrite is set.
+     * 
+     * @param groupCommitEnabled <code>true</code> to group the log synchronizations
+     */
+    public void setGroupCommitEnabled( boolean groupCommitEnabled )
+    {
+        checkInitialized( "groupCommitEnabled" );
+        this.groupCommitEnabled = groupCommitEnabled;
+    }
+
+
+    /**
+     * @return The maximum delay, in milliseconds, a write transaction waits for its log synchronization
+     */
+    public long getGroupCommitMaxDelay()
+    {
+        return groupCommitMaxDelay;
+    }
+
+
+    /**
+     * @param groupCommitMaxDelay The maximum delay, in milliseconds, before a batch of
+     * write transactions is flushed
+     */
+    public void setGroupCommitMaxDelay( long groupCommitMaxDelay )
+    {
+        checkInitialized( "groupCommitMaxDelay" );
+        this.groupCommitMaxDelay = groupCommitMaxDelay;
+    }
+
+
+    /**
+     * @return The maximum number of write transactions sharing a log synchronization
+     */
+    public int getGroupCommitMaxBatchSize()
+    {
+        return groupCommitMaxBatchSize;
+    }
+
+
+    /**
+     * @param groupCommitMaxBatchSize The maximum number of write transactions sharing a log synchronization
+     */
+    public void setGroupCommitMaxBatchSize( int groupCommitMaxBatchSize )
+    {
+        checkInitialized( "groupCommitMaxBatchSize" );
+        this.groupCommitMaxBatchSize = groupCommitMaxBatchSize;
+    }
+
+
+    /**
+     * @return The group committer, or null if the log synchronizations are not grouped
+     */
+    public GroupCommitter getGroupCommitter()
+    {
+        return groupCommitter;
+    }
+
+
+    /**
+     * @return The fragmentation ratio triggering a background compaction, 0 if disabled
+     */
+    public double getCompactionThreshold()
+    {
+        return compactionThreshold;
+    }
+
+
+    /**
+     * Sets the fragmentation ratio triggering a background compaction when the partition is
+     * synchronized. The fragmentation is the number of entries written or removed since the
+     * partition file has been opened or compacted, relatively to the number of entries : each
+     * write leaves the previous version of the entry as garbage in the file.
+     * 
+     * @param compactionThreshold The fragmentation ratio, 0 to disable the automatic compaction
+     */
+    public void setCompactionThreshold( double compactionThreshold )
+    {
+        if ( compactionThreshold < 0d )
+        {
+            throw new IllegalArgumentException( "The compaction threshold must not be negative : "
+                + compactionThreshold );
+        }
+
+        this.compactionThreshold = compactionThreshold;
+    }
+
+
+    /**
+     * Estimates the fragmentation of the partition file, as the number of entries written or
+     * removed since the file has been opened or compacted, divided by the number of entries.
+     * 
+     * @return The estimated fragmentation
+     */
+    public double getFragmentation()
+    {
+        MasterTable masterTable = master;
+
+        if ( !( masterTable instanceof JdbmMasterTable ) )
+        {
+            return 0d;
+        }
+
+        try
+        {
+            long count = masterTable.count( null );
+
+            return ( double ) ( ( JdbmMasterTable ) masterTable ).getChangeCount() / Math.max( count, 1L );
+        }
+        catch ( LdapException le )
+        {
+            return 0d;
+        }
+    }
+
+
+    /**
+     * @return <code>true</code> if the partition is being compacted
+     */
+    public boolean isCompacting()
+    {
+        return compacting.get();
+    }
+
+
+    /**
+     * Compacts the partition file : the live entries and index tuples are copied into a new
+     * file, which replaces the current one. The partition remains available during the copy,
+     * the write operations are only blocked while the files are swapped.
+     * 
+     * @throws LdapException If the compaction failed, or if the partition is already being compacted
+     */
+    public void compact() throws LdapException
+    {
+        if ( !initialized )
+        {
+            throw new LdapOtherException( "The " + id + " partition is not initialized" );
+        }
+
+        if ( !compacting.compareAndSet( false, true ) )
+        {
+            throw new LdapOtherException( "The " + id + " partition is already being compacted" );
+        }
+
+        try
+        {
+            ReadWriteLock lock = getReadWriteLock();
+
+            if ( lock == null )
+            {
+                lock = compactionLock;
+            }
+
+            compactor = new JdbmPartitionCompactor( this, lock );
+            compactor.compact();
+        }
+        finally
+        {
+            compactor = null;
+            compacting.set( false );
+        }
+    }
+
+
+    /**
+     * Compacts the partition file in a background thread.
+     * 
+     * @return <code>false</code> if the partition is already being compacted
+     * @see #compact()
+     */
+    public boolean compactInBackground()
+    {
+        if ( !initialized || compacting.get() )
+        {
+            return false;
+        }
+
+        Thread compactor = new Thread( new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    compact();
+                }
+                catch ( LdapException le )
+                {
+                    LOG.error( "Failed to compact the {} partition : {}", id, le.getMessage() );
+                }
+            }
+        }, "jdbm-compactor-" + id );
+
+        compactor.setDaemon( true );
+        compactor.start();
+
+        return true;
+    }
+
+
+    /**
+     * @return The master table, as a JdbmMasterTable
+     */
+    JdbmMasterTable getJdbmMasterTable()
+    {
+        return ( JdbmMasterTable ) master;
+    }
+
+
+    /**
+     * @return The compression policy of the master table, null if nothing is compressed
+     */
+    ValueCompression getMasterCompression()
+    {
+        return valueCompression;
+    }
+
+
+    /**
+     * @return All the system and user indexes of this partition
+     */
+    List<JdbmIndex<?>> getJdbmIndexes()
+    {
+        List<JdbmIndex<?>> indexes = new ArrayList<>();
+
+        for ( Index<?, String> index : systemIndices.values() )
+        {
+            indexes.add( ( JdbmIndex<?> ) index );
+        }
+
+        for ( Index<?, String> index : userIndices.values() )
+        {
+            indexes.add( ( JdbmIndex<?> ) index );
+        }
+
+        return indexes;
+    }
+
+
+    /**
+     * Replaces the partition file by a compacted copy, and reopens the master table and the
+     * indexes on it. Must be called while holding the write lock. The cursors opened on the
+     * current file are waited for, and invalidated if they are still open after a while.
+     * 
+     * @param compactedPath The path of the compacted file, without its extension
+     */
+    synchronized void swapRecordManager( String compactedPath ) throws IOException, LdapException
+    {
+        cursorTracker.close( CURSOR_DRAIN_TIMEOUT );
+        cursorTracker = new JdbmCursorTracker();
+
+        String path = getRecordManagerPath();
+        BaseRecordManager baseRecordManager = getBaseRecordManager( recMan );
+
+        // Keep the group committer away from the record manager while it is replaced
+        synchronized ( baseRecordManager )
+        {
+            recMan.commit();
+            recMan.close();
+
+            // The log has been applied to the file when closing the record manager
+            File log = new File( path + ".lg" );
+
+            if ( log.exists() && !log.delete() )
+            {
+                throw new IOException( "Cannot delete the log file " + log );
+            }
+
+            Files.move( Paths.get( compactedPath + JDBM_DB_FILE_EXTN ), Paths.get( path + JDBM_DB_FILE_EXTN ),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+
+            openRecordManager();
+        }
+
+        reopenTables();
+    }
+
+
+    /**
+     * Called once the record manager has been committed. The changes made since the previous
+     * commit are journaled by the compactor, if the partition is being compacted.
+     */
+    void changesCommitted()
+    {
+        JdbmPartitionCompactor currentCompactor = compactor;
+
+        if ( currentCompactor != null )
+        {
+            currentCompactor.changesCommitted();
+        }
+    }
+
+
+    /**
+     * Called once the record manager has been rolled back by a write transaction which has
+     * written something : the aborted transactions which have not are not rolled back. The master
+     * table and the indexes are reopened : the JDBM B-trees keep their root and their size in
+     * memory, and the master table keeps the AttributeType dictionary, with the ordinals
+     * created by the aborted changes. They are read again from the record manager, and the
+     * caches, which may hold the aborted changes, are emptied.
+     */
+    void changesRolledBack()
+    {
+        JdbmPartitionCompactor currentCompactor = compactor;
+
+        if ( currentCompactor != null )
+        {
+            currentCompactor.changesRolledBack();
+        }
+
+        try
+        {
+            reopenTables();
+        }
+        catch ( IOException | LdapException e )
+        {
+            LOG.error( "Failed to reopen the tables of the {} partition after a rollback", id, e );
+        }
+        finally
+        {
+            invalidateCaches();
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void invalidateCaches()
+    {
+        super.invalidateCaches();
+
+        if ( entryCache != null )
+        {
+            entryCache.removeAll();
+        }
+
+        if ( offHeapEntryCache != null )
+        {
+            offHeapEntryCache.clear();
+        }
+    }
+
+
+    /**
+     * Reopens the master table and the indexes on the current record manager.
+     */
+    private void reopenTables() throws IOException, LdapException
+    {
+        JdbmMasterTable oldMaster = getJdbmMasterTable();
+        JdbmMasterTable newMaster = new JdbmMasterTable( recMan, schemaManager, valueCompression );
+
+        if ( oldMaster != null )
+        {
+            newMaster.setCompactor( oldMaster.getCompactor() );
+        }
+
+        newMaster.setCursorTracker( cursorTracker );
+        master = newMaster;
+
+        for ( JdbmIndex<?> index : getJdbmIndexes() )
+        {
+            index.init( recMan, schemaManager, index.getAttribute() );
+            index.setCursorTracker( cursorTracker );
+        }
+    }
+
+
     @Override
     public PartitionReadTxn beginReadTransaction()
     {
@@ -1022,6 +1745,16 @@ public class JdbmPartition extends AbstractBTreePartition
     @Override
     public PartitionWriteTxn beginWriteTransaction()
     {
-        return new JdbmPartitionWriteTxn( recMan, isSyncOnWrite() );
+        return new JdbmPartitionWriteTxn( recMan, isSyncOnWrite(), groupCommitter, this );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isRollbackSupported()
+    {
+        return true;
     }
 }
@@ -0,0 +1,574 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.partition.impl.btree.jdbm;
+
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+
+import jdbm.recman.BaseRecordManager;
+
+import org.apache.directory.api.ldap.model.cursor.Cursor;
+import org.apache.directory.api.ldap.model.cursor.CursorException;
+import org.apache.directory.api.ldap.model.cursor.Tuple;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.exception.LdapOtherException;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.server.constants.ApacheSchemaConstants;
+import org.apache.directory.server.core.api.partition.PartitionTxn;
+import org.apache.directory.server.core.api.partition.PartitionWriteTxn;
+import org.apache.directory.server.xdbm.IndexEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Compacts the record manager of a {@link JdbmPartition} while the partition is in use. JDBM
+ * never gives back the space freed by the deleted and rewritten records, so the partition file
+ * only grows.
+ * <br>
+ * The compactor copies the live entries and index tuples into a fresh record manager, in small
+ * chunks so that the write operations are only delayed for the duration of one chunk. The changes
+ * made to the partition during the copy are reported by the master table and the indexes, kept
+ * aside until the record manager is committed, then journaled and replayed on the copy. The
+ * changes of a rolled back transaction are discarded. Once the journal is nearly empty, the write lock is taken, the remaining
+ * changes are replayed and the compacted file replaces the partition file.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class JdbmPartitionCompactor
+{
+    /** A logger for this class */
+    private static final Logger LOG = LoggerFactory.getLogger( JdbmPartitionCompactor.class );
+
+    /** The suffix added to the partition file name while it is being compacted */
+    static final String COMPACT_SUFFIX = "-compact";
+
+    /** The number of entries copied while holding the read lock */
+    private static final int CHUNK_SIZE = 1000;
+
+    /** The maximum number of catch-up passes done before taking the write lock */
+    private static final int MAX_CATCH_UP_PASSES = 10;
+
+    /** The journal size under which the write lock is taken to finish the compaction */
+    private static final int CATCH_UP_THRESHOLD = 100;
+
+    /** The compacted partition */
+    private final JdbmPartition partition;
+
+    /** The lock protecting the partition against concurrent modifications */
+    private final ReadWriteLock lock;
+
+    /** The record manager the data is copied into */
+    private BaseRecordManager newRecMan;
+
+    /** The copy of the master table */
+    private JdbmMasterTable newMaster;
+
+    /** The indexes being copied, and their copies */
+    private final List<JdbmIndex<?>> indexes = new ArrayList<>();
+    private final List<JdbmIndex<?>> newIndexes = new ArrayList<>();
+
+    /** The IDs of the entries modified and committed since the copy has started */
+    private Set<String> dirtyEntries = new LinkedHashSet<>();
+
+    /** The index changes committed since the copy has started, in order */
+    private List<IndexChange> indexChanges = new ArrayList<>();
+
+    /** The IDs of the entries modified since the last commit */
+    private Set<String> pendingEntries = new LinkedHashSet<>();
+
+    /** The index changes done since the last commit, in order */
+    private List<IndexChange> pendingIndexChanges = new ArrayList<>();
+
+
+    /**
+     * A change made to an index during the copy
+     */
+    private static final class IndexChange
+    {
+        /** The modified index */
+        private final JdbmIndex<?> index;
+
+        /** The key, or null when all the keys of the entry have been removed */
+        private final Object key;
+
+        /** The entry ID */
+        private final String id;
+
+        /** Tells if the tuple has been added or removed */
+        private final boolean added;
+
+
+        private IndexChange( JdbmIndex<?> index, Object key, String id, boolean added )
+        {
+            this.index = index;
+            this.key = key;
+            this.id = id;
+            this.added = added;
+        }
+    }
+
+
+    /**
+     * Creates a new instance of JdbmPartitionCompactor.
+     *
+     * @param partition The partition to compact
+     * @param lock The lock protecting the partition against concurrent modifications
+     */
+    public JdbmPartitionCompactor( JdbmPartition partition, ReadWriteLock lock )
+    {
+        this.partition = partition;
+        this.lock = lock;
+    }
+
+
+    /**
+     * Compacts the partition.
+     *
+     * @throws LdapException If the compaction failed. The partition is left untouched.
+     */
+    public void compact() throws LdapException
+    {
+        String path = partition.getRecordManagerPath() + COMPACT_SUFFIX;
+        boolean swapped = false;
+
+        try
+        {
+            LOG.info( "Compacting the {} partition", partition.getId() );
+
+            open( path );
+            copyMasterTable();
+            copyIndexes();
+
+            // Replay the changes done during the copy, until there are only a few left
+            for ( int pass = 0; ( pass < MAX_CATCH_UP_PASSES ) && ( journalSize() > CATCH_UP_THRESHOLD ); pass++ )
+            {
+                lock.readLock().lock();
+
+                try
+                {
+                    catchUp( false );
+                }
+                finally
+                {
+                    lock.readLock().unlock();
+                }
+            }
+
+            // Now, block the writes, replay the last changes and swap the files
+            lock.writeLock().lock();
+
+            try
+            {
+                synchronized ( partition )
+                {
+                    catchUp( true );
+                    unhook();
+
+                    newRecMan.commit();
+                    newRecMan.close();
+                    newRecMan = null;
+
+                    partition.swapRecordManager( path );
+                    swapped = true;
+                }
+            }
+            finally
+            {
+                lock.writeLock().unlock();
+            }
+
+            LOG.info( "The {} partition has been compacted", partition.getId() );
+        }
+        catch ( IOException | CursorException e )
+        {
+            LOG.error( "Failed to compact the {} partition", partition.getId(), e );
+            throw new LdapOtherException( e.getMessage(), e );
+        }
+        finally
+        {
+            if ( !swapped )
+            {
+                unhook();
+                abort( path );
+            }
+        }
+    }
+
+
+    /**
+     * Records an entry written or removed in the master table.
+     *
+     * @param id The entry ID
+     */
+    synchronized void entryChanged( String id )
+    {
+        pendingEntries.add( id );
+    }
+
+
+    /**
+     * Records a tuple added to or removed from an index.
+     *
+     * @param index The modified index
+     * @param key The key, or null if all the tuples of the entry have been removed
+     * @param id The entry ID
+     * @param added <code>true</code> if the tuple has been added
+     */
+    synchronized void indexChanged( JdbmIndex<?> index, Object key, String id, boolean added )
+    {
+        pendingIndexChanges.add( new IndexChange( index, key, id, added ) );
+    }
+
+
+    /**
+     * Journals the changes done since the last commit, once the record manager has been
+     * committed.
+     */
+    synchronized void changesCommitted()
+    {
+        dirtyEntries.addAll( pendingEntries );
+        indexChanges.addAll( pendingIndexChanges );
+        pendingEntries.clear();
+        pendingIndexChanges.clear();
+    }
+
+
+    /**
+     * Discards the changes done since the last commit, once the record manager has been
+     * rolled back : they must not be replayed on the copy.
+     */
+    synchronized void changesRolledBack()
+    {
+        pendingEntries.clear();
+        pendingIndexChanges.clear();
+    }
+
+
+    private synchronized int journalSize()
+    {
+        return dirtyEntries.size() + indexChanges.size();
+    }
+
+
+    /**
+     * Creates the new record manager, the copies of the master table and of the indexes, and
+     * starts journaling the changes.
+     */
+    private void open( String path ) throws IOException, LdapException
+    {
+        deleteFiles( path );
+
+        // The compacted file is only used once it is complete : no need for a transaction log
+        newRecMan = new BaseRecordManager( path );
+        newRecMan.disableTransactions();
+
+        SchemaManager schemaManager = partition.getSchemaManager();
+        newMaster = new JdbmMasterTable( newRecMan, schemaManager, partition.getMasterCompression() );
+
+        lock.readLock().lock();
+
+        try
+        {
+            for ( JdbmIndex<?> index : partition.getJdbmIndexes() )
+            {
+                JdbmIndex<?> newIndex = createIndex( index );
+                newIndex.setNumDupLimit( index.getNumDupLimit() );
+                newIndex.init( newRecMan, schemaManager, index.getAttribute() );
+
+                indexes.add( index );
+                newIndexes.add( newIndex );
+                index.setCompactor( this );
+            }
+
+            partition.getJdbmMasterTable().setCompactor( this );
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+
+    /**
+     * Creates an empty index of the same kind than the given one.
+     */
+    private JdbmIndex<?> createIndex( JdbmIndex<?> index )
+    {
+        if ( index instanceof JdbmRdnIndex )
+        {
+            JdbmIndex<?> rdnIndex = new JdbmRdnIndex();
+            rdnIndex.setAttributeId( ApacheSchemaConstants.APACHE_RDN_AT_OID );
+
+            return rdnIndex;
+        }
+        else if ( index instanceof JdbmDnIndex )
+        {
+            JdbmIndex<?> dnIndex = new JdbmDnIndex( index.getAttributeId() );
+            dnIndex.setAttributeId( index.getAttributeId() );
+
+            return dnIndex;
+        }
+        else
+        {
+            return new JdbmIndex<>( index.getAttributeId(), index.hasReverse() );
+        }
+    }
+
+
+    /**
+     * Copies the master table, holding the read lock for one chunk of entries at a time.
+     */
+    private void copyMasterTable() throws IOException, LdapException, CursorException
+    {
+        PartitionTxn transaction = new PartitionWriteTxn();
+        String lastKey = null;
+        boolean done = false;
+        long count = 0L;
+
+        while ( !done )
+        {
+            lock.readLock().lock();
+
+            try
+            {
+                Cursor<Tuple<String, Entry>> cursor = partition.getJdbmMasterTable().cursor();
+
+                try
+                {
+                    if ( lastKey != null )
+                    {
+                        cursor.after( new Tuple<String, Entry>( lastKey, null ) );
+                    }
+
+                    int copied = 0;
+                    done = true;
+
+                    while ( cursor.next() )
+                    {
+                        Tuple<String, Entry> tuple = cursor.get();
+                        newMaster.put( transaction, tuple.getKey(), tuple.getValue() );
+                        lastKey = tuple.getKey();
+                        count++;
+
+                        if ( ++copied == CHUNK_SIZE )
+                        {
+                            done = false;
+                            break;
+                        }
+                    }
+                }
+                finally
+                {
+                    cursor.close();
+                }
+            }
+            finally
+            {
+                lock.readLock().unlock();
+            }
+
+            newRecMan.commit();
+        }
+
+        LOG.debug( "Copied {} entries of the {} partition", count, partition.getId() );
+    }
+
+
+    /**
+     * Copies the indexes, holding the read lock for one index at a time.
+     */
+    @SuppressWarnings("unchecked")
+    private void copyIndexes() throws IOException, LdapException, CursorException
+    {
+        PartitionTxn transaction = new PartitionWriteTxn();
+
+        for ( int i = 0; i < indexes.size(); i++ )
+        {
+            JdbmIndex<Object> index = ( JdbmIndex<Object> ) indexes.get( i );
+            JdbmIndex<Object> newIndex = ( JdbmIndex<Object> ) newIndexes.get( i );
+
+            lock.readLock().lock();
+
+            try
+            {
+                Cursor<IndexEntry<Object, String>> cursor = index.forwardCursor( transaction );
+
+                try
+                {
+                    while ( cursor.next() )
+                    {
+                        IndexEntry<Object, String> indexEntry = cursor.get();
+                        newIndex.add( transaction, indexEntry.getKey(), indexEntry.getId() );
+                    }
+                }
+                finally
+                {
+                    cursor.close();
+                }
+            }
+            finally
+            {
+                lock.readLock().unlock();
+            }
+
+            newRecMan.commit();
+        }
+    }
+
+
+    /**
+     * Replays the journaled changes on the copy. Must be called while holding the read lock,
+     * so that the journal does not change while the entries are read. The changes which are
+     * not committed yet are left pending, unless <code>all</code> is set : the record manager
+     * is then committed before being swapped, so they must be copied too.
+     */
+    @SuppressWarnings("unchecked")
+    private void catchUp( boolean all ) throws IOException, LdapException
+    {
+        Set<String> entries;
+        List<IndexChange> changes;
+
+        synchronized ( this )
+        {
+            if ( all )
+            {
+                changesCommitted();
+            }
+
+            entries = dirtyEntries;
+            changes = indexChanges;
+            dirtyEntries = new LinkedHashSet<>();
+            indexChanges = new ArrayList<>();
+        }
+
+        PartitionTxn transaction = new PartitionWriteTxn();
+        JdbmMasterTable master = partition.getJdbmMasterTable();
+
+        // The entries are read back from the partition, only their last state matters
+        for ( String id : entries )
+        {
+            Entry entry = master.get( transaction, id );
+
+            if ( entry != null )
+            {
+                newMaster.put( transaction, id, entry );
+            }
+            else if ( newMaster.has( transaction, id ) )
+            {
+                newMaster.remove( transaction, id );
+            }
+        }
+
+        // The index changes are replayed in order
+        for ( IndexChange change : changes )
+        {
+            JdbmIndex<Object> newIndex = ( JdbmIndex<Object> ) newIndexes.get( indexes.indexOf( change.index ) );
+
+            if ( change.added )
+            {
+                newIndex.add( transaction, change.key, change.id );
+            }
+            else if ( change.key != null )
+            {
+                if ( newIndex.forward( transaction, change.key, change.id ) )
+                {
+                    newIndex.drop( transaction, change.key, change.id );
+                }
+            }
+            else if ( newIndex.reverse( transaction, change.id ) )
+            {
+                newIndex.drop( transaction, change.id );
+            }
+        }
+
+        newRecMan.commit();
+
+        LOG.debug( "Replayed {} entries and {} index changes on the compacted {} partition",
+            entries.size(), changes.size(), partition.getId() );
+    }
+
+
+    /**
+     * Stops journaling the changes.
+     */
+    private void unhook()
+    {
+        for ( JdbmIndex<?> index : indexes )
+        {
+            index.setCompactor( null );
+        }
+
+        JdbmMasterTable master = partition.getJdbmMasterTable();
+
+        if ( master != null )
+        {
+            master.setCompactor( null );
+        }
+    }
+
+
+    /**
+     * Closes and removes the compacted file after a failure.
+     */
+    private void abort( String path )
+    {
+        if ( newRecMan != null )
+        {
+            try
+            {
+                newRecMan.close();
+            }
+            catch ( IOException ioe )
+            {
+                LOG.warn( "Failed to close the compacted record manager {}", path, ioe );
+            }
+
+            newRecMan = null;
+        }
+
+        deleteFiles( path );
+    }
+
+
+    /**
+     * Deletes the files of a record manager.
+     */
+    static void deleteFiles( String path )
+    {
+        for ( String extension : new String[]
+            { ".db", ".lg" } )
+        {
+            File file = new File( path + extension );
+
+            if ( file.exists() && !file.delete() )
+            {
+                LOG.warn( "Failed to delete the file {}", file );
+            }
+        }
+    }
+}
@@ -2,6 +2,7 @@ package org.apache.directory.server.core.partition.impl.btree.jdbm;
 
 import java.io.IOException;
 
+import org.apache.directory.server.core.api.partition.PartitionTxn;
 import org.apache.directory.server.core.api.partition.PartitionWriteTxn;
 
 import jdbm.RecordManager;
@@ -15,6 +16,18 @@ public class JdbmPartitionWriteTxn extends PartitionWriteTxn
     
     /** A flag used to flush data immediately or not */
     private boolean syncOnWrite = false;
+
+    /** The group committer flushing the log, if any */
+    private GroupCommitter groupCommitter;
+
+    /** The batch this transaction has been committed in, until the log is flushed */
+    private GroupCommitter.Batch batch;
+
+    /** The partition to notify when the transaction is committed or rolled back, if any */
+    private JdbmPartition partition;
+
+    /** Set once something has been written in the record manager by this transaction */
+    private volatile boolean dirty;
     
     /**
      * 
@@ -26,6 +39,39 @@ public class JdbmPartitionWriteTxn extends PartitionWriteTxn
         this.recordManager = recordManager;
         this.syncOnWrite = syncOnWrite;
     }
+
+
+    /**
+     * Creates a write transaction which log synchronization is grouped with the other
+     * transactions' ones.
+     * 
+     * @param recordManager The associated record manager
+     * @param syncOnWrite A flag used to flush data immediately or not
+     * @param groupCommitter The group committer, or null to flush the log on each commit
+     */
+    public JdbmPartitionWriteTxn( RecordManager recordManager, boolean syncOnWrite, GroupCommitter groupCommitter )
+    {
+        this( recordManager, syncOnWrite );
+        this.groupCommitter = groupCommitter;
+    }
+
+
+    /**
+     * Creates a write transaction on a partition, which is notified when the record manager
+     * is committed or rolled back, so that it can drop the in-memory state derived from the
+     * aborted changes.
+     * 
+     * @param recordManager The associated record manager
+     * @param syncOnWrite A flag used to flush data immediately or not
+     * @param groupCommitter The group committer, or null to flush the log on each commit
+     * @param partition The partition the transaction is done on
+     */
+    public JdbmPartitionWriteTxn( RecordManager recordManager, boolean syncOnWrite, GroupCommitter groupCommitter,
+        JdbmPartition partition )
+    {
+        this( recordManager, syncOnWrite, groupCommitter );
+        this.partition = partition;
+    }
     
     
     /**
@@ -35,7 +81,25 @@ public class JdbmPartitionWriteTxn extends PartitionWriteTxn
     public void commit() throws IOException
     {
         recordManager.commit();
+
+        if ( partition != null )
+        {
+            partition.changesCommitted();
+        }
         
+        if ( !syncOnWrite )
+        {
+            return;
+        }
+
+        // The journal will be flushed along with the other pending transactions
+        if ( groupCommitter != null )
+        {
+            batch = groupCommitter.enqueue();
+
+            return;
+        }
+
         // And flush the journal
         BaseRecordManager baseRecordManager = null;
 
@@ -48,21 +112,86 @@ public class JdbmPartitionWriteTxn extends PartitionWriteTxn
             baseRecordManager = ( ( BaseRecordManager ) recordManager );
         }
 
+        baseRecordManager.getTransactionManager().synchronizeLog();
+    }
+
 
-        if ( syncOnWrite )
+    /**
+     * {@inheritDoc}
+     * 
+     * The record manager is committed, and its log is flushed if syncOnWrite is set.
+     */
+    @Override
+    public boolean isFlushedOnCommit()
+    {
+        return true;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void awaitDurability() throws IOException
+    {
+        if ( batch != null )
         {
-            baseRecordManager.getTransactionManager().synchronizeLog();
+            GroupCommitter.Batch committed = batch;
+            batch = null;
+            groupCommitter.await( committed );
         }
     }
 
 
+    /**
+     * Records that a table has been written in a transaction, so that it's rolled back if
+     * the transaction is aborted.
+     * 
+     * @param transaction The transaction the table is written in, if any
+     */
+    static void written( PartitionTxn transaction )
+    {
+        if ( transaction instanceof JdbmPartitionWriteTxn )
+        {
+            ( ( JdbmPartitionWriteTxn ) transaction ).dirty = true;
+        }
+    }
+
+
+    /**
+     * @return <code>true</code> if something has been written in this transaction
+     */
+    public boolean isDirty()
+    {
+        return dirty;
+    }
+
+
     /**
      * {@inheritDoc}
+     * 
+     * Nothing is done if the transaction has not written anything : the record manager, the
+     * tables and the caches are left untouched.
      */
     @Override
     public void abort() throws IOException
     {
-        recordManager.rollback();
+        if ( !dirty )
+        {
+            return;
+        }
+
+        try
+        {
+            recordManager.rollback();
+        }
+        finally
+        {
+            if ( partition != null )
+            {
+                partition.changesRolledBack();
+            }
+        }
     }
 
 
@@ -83,5 +212,6 @@ public class JdbmPartitionWriteTxn extends PartitionWriteTxn
     public void close() throws IOException
     {
         commit();
+        awaitDurability();
     }
 }
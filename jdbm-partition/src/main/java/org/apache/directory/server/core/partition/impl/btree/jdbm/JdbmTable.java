@@ -80,6 +80,9 @@ public class JdbmTable<K, V> extends AbstractTable<K, V>
     /** A marshaller used to serialize/deserialize values stored in the Table */
     Marshaller<ArrayTree<V>> marshaller;
 
+    /** The tracker of the cursors browsing the B-trees, if any */
+    private volatile JdbmCursorTracker cursorTracker;
+
 
     // ------------------------------------------------------------------------
     // C O N S T R U C T O R
@@ -117,7 +120,12 @@ public class JdbmTable<K, V> extends AbstractTable<K, V>
         // TODO make the size of the duplicate btree cache configurable via constructor
         duplicateBtrees = new SynchronizedLRUMap( 100 );
 
-        if ( valueSerializer != null )
+        if ( valueSerializer instanceof UuidSerializer )
+        {
+            // The entry IDs are packed
+            marshaller = ( Marshaller ) new PackedUuidMarshaller( ( Comparator<String> ) valueComparator );
+        }
+        else if ( valueSerializer != null )
         {
             marshaller = new ArrayMarshaller<V>( valueComparator,
                 new MarshallerSerializerBridge<V>( valueSerializer ) );
@@ -230,7 +238,14 @@ public class JdbmTable<K, V> extends AbstractTable<K, V>
                 }
             }
 
-            DupsContainer<V> values = getDupsContainer( ( byte[] ) bt.find( key ) );
+            byte[] serialized = ( byte[] ) bt.find( key );
+
+            if ( PackedUuidMarshaller.isPacked( serialized ) )
+            {
+                return PackedUuidMarshaller.size( serialized );
+            }
+
+            DupsContainer<V> values = getDupsContainer( serialized );
 
             if ( values.isArrayTree() )
             {
@@ -482,7 +497,15 @@ public class JdbmTable<K, V> extends AbstractTable<K, V>
                 return null != stored && stored.equals( value );
             }
 
-            DupsContainer<V> values = getDupsContainer( ( byte[] ) bt.find( key ) );
+            byte[] serialized = ( byte[] ) bt.find( key );
+
+            if ( PackedUuidMarshaller.isPacked( serialized ) )
+            {
+                // Only decode the block which may contain the value
+                return ( ( PackedUuidMarshaller ) ( Marshaller ) marshaller ).contains( serialized, ( String ) value );
+            }
+
+            DupsContainer<V> values = getDupsContainer( serialized );
 
             if ( values.isArrayTree() )
             {
@@ -522,6 +545,8 @@ public class JdbmTable<K, V> extends AbstractTable<K, V>
     @SuppressWarnings("unchecked")
     public synchronized void put( PartitionTxn transaction, K key, V value ) throws LdapException
     {
+        JdbmPartitionWriteTxn.written( transaction );
+
         try
         {
             if ( LOG.isDebugEnabled() )
@@ -619,6 +644,8 @@ public class JdbmTable<K, V> extends AbstractTable<K, V>
     @Override
     public synchronized void remove( PartitionTxn transaction, K key, V value ) throws LdapException
     {
+        JdbmPartitionWriteTxn.written( transaction );
+
         try
         {
             if ( LOG.isDebugEnabled() )
@@ -727,6 +754,8 @@ public class JdbmTable<K, V> extends AbstractTable<K, V>
     @Override
     public synchronized void remove( PartitionTxn transaction, K key ) throws LdapException
     {
+        JdbmPartitionWriteTxn.written( transaction );
+
         try
         {
             if ( LOG.isDebugEnabled() )
@@ -808,10 +837,34 @@ public class JdbmTable<K, V> extends AbstractTable<K, V>
     {
         if ( allowsDuplicates )
         {
-            return new DupsCursor<>( this );
+            return track( new DupsCursor<>( this ) );
+        }
+
+        return track( new NoDupsCursor<>( this ) );
+    }
+
+
+    /**
+     * Sets the tracker of the cursors browsing the B-trees of this table.
+     *
+     * @param cursorTracker The cursor tracker
+     */
+    void setCursorTracker( JdbmCursorTracker cursorTracker )
+    {
+        this.cursorTracker = cursorTracker;
+    }
+
+
+    private <E> Cursor<E> track( Cursor<E> cursor )
+    {
+        JdbmCursorTracker tracker = cursorTracker;
+
+        if ( tracker != null )
+        {
+            return tracker.track( cursor );
         }
 
-        return new NoDupsCursor<>( this );
+        return cursor;
     }
 
 
@@ -846,7 +899,7 @@ public class JdbmTable<K, V> extends AbstractTable<K, V>
             if ( BTreeRedirectMarshaller.isRedirect( serialized ) )
             {
                 BTree tree = getBTree( BTreeRedirectMarshaller.INSTANCE.deserialize( serialized ) );
-                return new KeyTupleBTreeCursor<>( tree, key, valueComparator );
+                return track( new KeyTupleBTreeCursor<>( tree, key, valueComparator ) );
             }
     
             ArrayTree<V> set = marshaller.deserialize( serialized );
@@ -891,7 +944,7 @@ public class JdbmTable<K, V> extends AbstractTable<K, V>
             if ( BTreeRedirectMarshaller.isRedirect( serialized ) )
             {
                 BTree tree = getBTree( BTreeRedirectMarshaller.INSTANCE.deserialize( serialized ) );
-                return new KeyBTreeCursor<>( tree, valueComparator );
+                return track( new KeyBTreeCursor<>( tree, valueComparator ) );
             }
     
             return new ArrayTreeCursor<>( marshaller.deserialize( serialized ) );
@@ -0,0 +1,422 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.partition.impl.btree.jdbm;
+
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Comparator;
+import java.util.UUID;
+
+import org.apache.directory.server.core.avltree.ArrayMarshaller;
+import org.apache.directory.server.core.avltree.ArrayTree;
+import org.apache.directory.server.core.avltree.Marshaller;
+
+
+/**
+ * A {@link Marshaller} for the duplicate entry IDs of an index key, storing them as packed
+ * 128 bits UUIDs instead of serialized Strings. The IDs are split in blocks of
+ * {@link #BLOCK_SIZE} values : the first ID of each block is stored in a skip table, the
+ * following ones are delta-encoded against their predecessor. The structure is the following :
+ * <ul>
+ *   <li><b>[byte]</b> : {@link #PACKED}</li>
+ *   <li><b>[int]</b> : the number of IDs</li>
+ *   <li><b>[int]</b> : the number of blocks</li>
+ *   <li>The skip table, for each block :
+ *     <ul>
+ *       <li><b>[long][long]</b> : the first ID of the block</li>
+ *       <li><b>[int]</b> : the offset of the block data, from the end of the skip table</li>
+ *     </ul>
+ *   </li>
+ *   <li>The blocks data. For each ID but the first of a block, the zigzag varlong delta of its
+ *   most significant bits, followed by the zigzag varlong delta of its least significant bits if
+ *   the most significant bits are equal, or by the raw least significant bits otherwise</li>
+ * </ul>
+ * The skip table allows {@link #contains(byte[], String)} to check for an ID by decoding a
+ * single block.
+ * <br>
+ * The containers holding a value which is not a lower case UUID, and the ones written before
+ * this format existed, are handled by an {@link ArrayMarshaller}.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class PackedUuidMarshaller implements Marshaller<ArrayTree<String>>
+{
+    /** The first byte of a packed container. 0 starts an ArrayMarshaller container, 1 a BTreeRedirect */
+    public static final byte PACKED = 2;
+
+    /** The number of IDs in a block */
+    public static final int BLOCK_SIZE = 128;
+
+    /** The size of the header */
+    private static final int HEADER_SIZE = 9;
+
+    /** The size of a skip table entry */
+    private static final int SKIP_ENTRY_SIZE = 20;
+
+    /** The length of a UUID String */
+    private static final int UUID_LENGTH = 36;
+
+    /** The IDs comparator */
+    private final Comparator<String> comparator;
+
+    /** The marshaller used for the non packed containers */
+    private final Marshaller<ArrayTree<String>> arrayMarshaller;
+
+
+    /**
+     * Creates a new instance of PackedUuidMarshaller.
+     *
+     * @param comparator The IDs comparator
+     */
+    public PackedUuidMarshaller( Comparator<String> comparator )
+    {
+        this.comparator = comparator;
+        arrayMarshaller = new ArrayMarshaller<>( comparator,
+            new MarshallerSerializerBridge<String>( UuidSerializer.INSTANCE ) );
+    }
+
+
+    /**
+     * Tells if some serialized duplicates are packed.
+     *
+     * @param data The serialized duplicates
+     * @return <code>true</code> if they have been written by this marshaller in the packed format
+     */
+    public static boolean isPacked( byte[] data )
+    {
+        return ( data != null ) && ( data.length >= HEADER_SIZE ) && ( data[0] == PACKED );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public byte[] serialize( ArrayTree<String> tree ) throws IOException
+    {
+        if ( ( tree == null ) || ( tree.size() == 0 ) )
+        {
+            return arrayMarshaller.serialize( tree );
+        }
+
+        int size = tree.size();
+        long[] msbs = new long[size];
+        long[] lsbs = new long[size];
+
+        for ( int i = 0; i < size; i++ )
+        {
+            String uuid = tree.get( i );
+
+            if ( !isUuid( uuid ) )
+            {
+                return arrayMarshaller.serialize( tree );
+            }
+
+            msbs[i] = getMostSignificantBits( uuid );
+            lsbs[i] = getLeastSignificantBits( uuid );
+        }
+
+        int nbBlocks = ( size + BLOCK_SIZE - 1 ) / BLOCK_SIZE;
+        ByteArrayOutputStream blocks = new ByteArrayOutputStream( size * 12 );
+        DataOutputStream blocksOut = new DataOutputStream( blocks );
+        int[] offsets = new int[nbBlocks];
+
+        for ( int i = 0; i < size; i++ )
+        {
+            if ( i % BLOCK_SIZE == 0 )
+            {
+                // The first ID of a block is in the skip table
+                offsets[i / BLOCK_SIZE] = blocksOut.size();
+                continue;
+            }
+
+            long msbDelta = msbs[i] - msbs[i - 1];
+            writeVarLong( blocksOut, ( msbDelta << 1 ) ^ ( msbDelta >> 63 ) );
+
+            if ( msbDelta == 0L )
+            {
+                long lsbDelta = lsbs[i] - lsbs[i - 1];
+                writeVarLong( blocksOut, ( lsbDelta << 1 ) ^ ( lsbDelta >> 63 ) );
+            }
+            else
+            {
+                blocksOut.writeLong( lsbs[i] );
+            }
+        }
+
+        blocksOut.flush();
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream( HEADER_SIZE + nbBlocks * SKIP_ENTRY_SIZE
+            + blocks.size() );
+        DataOutputStream out = new DataOutputStream( baos );
+
+        out.writeByte( PACKED );
+        out.writeInt( size );
+        out.writeInt( nbBlocks );
+
+        for ( int block = 0; block < nbBlocks; block++ )
+        {
+            out.writeLong( msbs[block * BLOCK_SIZE] );
+            out.writeLong( lsbs[block * BLOCK_SIZE] );
+            out.writeInt( offsets[block] );
+        }
+
+        blocks.writeTo( out );
+        out.flush();
+
+        return baos.toByteArray();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ArrayTree<String> deserialize( byte[] data ) throws IOException
+    {
+        if ( !isPacked( data ) )
+        {
+            return arrayMarshaller.deserialize( data );
+        }
+
+        try
+        {
+            ByteBuffer buffer = ByteBuffer.wrap( data );
+            int size = buffer.getInt( 1 );
+            int nbBlocks = buffer.getInt( 5 );
+            buffer.position( HEADER_SIZE + nbBlocks * SKIP_ENTRY_SIZE );
+
+            String[] uuids = new String[size];
+            long msb = 0L;
+            long lsb = 0L;
+
+            for ( int i = 0; i < size; i++ )
+            {
+                if ( i % BLOCK_SIZE == 0 )
+                {
+                    int skipEntry = HEADER_SIZE + ( i / BLOCK_SIZE ) * SKIP_ENTRY_SIZE;
+                    msb = buffer.getLong( skipEntry );
+                    lsb = buffer.getLong( skipEntry + 8 );
+                }
+                else
+                {
+                    long msbDelta = readZigZag( buffer );
+                    msb += msbDelta;
+                    lsb = ( msbDelta == 0L ) ? lsb + readZigZag( buffer ) : buffer.getLong();
+                }
+
+                uuids[i] = new UUID( msb, lsb ).toString();
+            }
+
+            return new ArrayTree<>( comparator, uuids );
+        }
+        catch ( BufferUnderflowException | IndexOutOfBoundsException e )
+        {
+            throw new IOException( "Corrupted packed duplicates container", e );
+        }
+    }
+
+
+    /**
+     * @param data Some packed duplicates
+     * @return The number of IDs
+     */
+    public static int size( byte[] data )
+    {
+        return ByteBuffer.wrap( data ).getInt( 1 );
+    }
+
+
+    /**
+     * Checks if some packed duplicates contain an ID. The block which may contain the ID is
+     * found using the skip table, and only this block is decoded.
+     *
+     * @param data Some packed duplicates
+     * @param uuid The ID to look for
+     * @return <code>true</code> if the ID is present
+     * @throws IOException If the data are corrupted
+     */
+    public boolean contains( byte[] data, String uuid ) throws IOException
+    {
+        if ( !isUuid( uuid ) )
+        {
+            // All the IDs of a packed container are UUIDs
+            return false;
+        }
+
+        try
+        {
+            ByteBuffer buffer = ByteBuffer.wrap( data );
+            int size = buffer.getInt( 1 );
+            int nbBlocks = buffer.getInt( 5 );
+
+            // Find the last block whose first ID is lower than or equal to the searched one
+            int low = 0;
+            int high = nbBlocks - 1;
+            int block = -1;
+
+            while ( low <= high )
+            {
+                int middle = ( low + high ) >>> 1;
+                int skipEntry = HEADER_SIZE + middle * SKIP_ENTRY_SIZE;
+                String first = new UUID( buffer.getLong( skipEntry ), buffer.getLong( skipEntry + 8 ) ).toString();
+                int cmp = comparator.compare( first, uuid );
+
+                if ( cmp == 0 )
+                {
+                    return true;
+                }
+                else if ( cmp < 0 )
+                {
+                    block = middle;
+                    low = middle + 1;
+                }
+                else
+                {
+                    high = middle - 1;
+                }
+            }
+
+            if ( block < 0 )
+            {
+                return false;
+            }
+
+            // Now, scan the block
+            long searchedMsb = getMostSignificantBits( uuid );
+            long searchedLsb = getLeastSignificantBits( uuid );
+            int skipEntry = HEADER_SIZE + block * SKIP_ENTRY_SIZE;
+            long msb = buffer.getLong( skipEntry );
+            long lsb = buffer.getLong( skipEntry + 8 );
+            buffer.position( HEADER_SIZE + nbBlocks * SKIP_ENTRY_SIZE + buffer.getInt( skipEntry + 16 ) );
+
+            int blockSize = Math.min( BLOCK_SIZE, size - block * BLOCK_SIZE );
+
+            for ( int i = 1; i < blockSize; i++ )
+            {
+                long msbDelta = readZigZag( buffer );
+                msb += msbDelta;
+                lsb = ( msbDelta == 0L ) ? lsb + readZigZag( buffer ) : buffer.getLong();
+
+                if ( ( msb == searchedMsb ) && ( lsb == searchedLsb ) )
+                {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+        catch ( BufferUnderflowException | IndexOutOfBoundsException e )
+        {
+            throw new IOException( "Corrupted packed duplicates container", e );
+        }
+    }
+
+
+    /**
+     * Tells if a value is a UUID in its canonical, lower case, form : it can then be packed
+     * and rebuilt as is.
+     */
+    private static boolean isUuid( String value )
+    {
+        if ( ( value == null ) || ( value.length() != UUID_LENGTH ) )
+        {
+            return false;
+        }
+
+        for ( int i = 0; i < UUID_LENGTH; i++ )
+        {
+            char c = value.charAt( i );
+
+            if ( ( i == 8 ) || ( i == 13 ) || ( i == 18 ) || ( i == 23 ) )
+            {
+                if ( c != '-' )
+                {
+                    return false;
+                }
+            }
+            else if ( !( ( ( c >= '0' ) && ( c <= '9' ) ) || ( ( c >= 'a' ) && ( c <= 'f' ) ) ) )
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+
+    private static long getMostSignificantBits( String uuid )
+    {
+        return parseHex( uuid, 0, 8 ) << 32 | parseHex( uuid, 9, 13 ) << 16 | parseHex( uuid, 14, 18 );
+    }
+
+
+    private static long getLeastSignificantBits( String uuid )
+    {
+        return parseHex( uuid, 19, 23 ) << 48 | parseHex( uuid, 24, 36 );
+    }
+
+
+    private static long parseHex( String value, int start, int end )
+    {
+        long result = 0L;
+
+        for ( int i = start; i < end; i++ )
+        {
+            result = ( result << 4 ) | Character.digit( value.charAt( i ), 16 );
+        }
+
+        return result;
+    }
+
+
+    private static void writeVarLong( DataOutputStream out, long value ) throws IOException
+    {
+        while ( ( value & ~0x7FL ) != 0L )
+        {
+            out.writeByte( ( int ) ( ( value & 0x7FL ) | 0x80L ) );
+            value >>>= 7;
+        }
+
+        out.writeByte( ( int ) value );
+    }
+
+
+    private static long readZigZag( ByteBuffer buffer )
+    {
+        long value = 0L;
+        int shift = 0;
+        byte b;
+
+        do
+        {
+            b = buffer.get();
+            value |= ( long ) ( b & 0x7F ) << shift;
+            shift += 7;
+        }
+        while ( ( b & 0x80 ) != 0 );
+
+        return ( value >>> 1 ) ^ -( value & 1L );
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.partition.impl.btree.jdbm;
+
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+
+import org.apache.commons.lang.RandomStringUtils;
+import org.junit.Test;
+
+
+/**
+ * Tests the {@link CompactStringSerializer} class.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class CompactStringSerializerTest
+{
+    @Test
+    public void testRandom() throws IOException
+    {
+        CompactStringSerializer serializer = CompactStringSerializer.INSTANCE;
+
+        for ( int i = 0; i < 100; i++ )
+        {
+            // Any char, including the unpaired surrogates
+            String str = RandomStringUtils.random( i );
+            byte[] serialized = serializer.serialize( str );
+            String deserialized = ( String ) serializer.deserialize( serialized );
+            assertEquals( str, deserialized );
+        }
+    }
+
+
+    @Test
+    public void testAsciiKeysUseOneBytePerChar() throws IOException
+    {
+        String key = "cn=johnny walker,ou=sales,o=good times co.";
+
+        byte[] serialized = CompactStringSerializer.INSTANCE.serialize( key );
+
+        assertEquals( key.length(), serialized.length );
+        assertEquals( key, CompactStringSerializer.INSTANCE.deserialize( serialized ) );
+    }
+
+
+    @Test
+    public void testNonAsciiKeys() throws IOException
+    {
+        String key = "élève 日本 \u0000";
+
+        byte[] serialized = CompactStringSerializer.INSTANCE.serialize( key );
+
+        // 6 ASCII chars, 2 chars on 2 bytes and 2 chars on 3 bytes
+        assertEquals( 6 + 2 * 2 + 2 * 3, serialized.length );
+        assertEquals( key, CompactStringSerializer.INSTANCE.deserialize( serialized ) );
+    }
+}
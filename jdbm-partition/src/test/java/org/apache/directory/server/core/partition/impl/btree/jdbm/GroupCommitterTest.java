@@ -0,0 +1,225 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.partition.impl.btree.jdbm;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+
+/**
+ * Tests the {@link GroupCommitter} class.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class GroupCommitterTest
+{
+    /**
+     * A log counting its flushes, each flush taking some time
+     */
+    private static class SlowLog implements Flushable
+    {
+        private final AtomicInteger flushes = new AtomicInteger();
+        private final long duration;
+        private volatile boolean failing;
+
+
+        SlowLog( long duration )
+        {
+            this.duration = duration;
+        }
+
+
+        @Override
+        public void flush() throws IOException
+        {
+            flushes.incrementAndGet();
+
+            try
+            {
+                Thread.sleep( duration );
+            }
+            catch ( InterruptedException ie )
+            {
+                Thread.currentThread().interrupt();
+            }
+
+            if ( failing )
+            {
+                throw new IOException( "Disk full" );
+            }
+        }
+    }
+
+
+    @Test
+    public void testSingleCommit() throws Exception
+    {
+        SlowLog log = new SlowLog( 0L );
+        GroupCommitter committer = new GroupCommitter( "test", log, 0L, 10 );
+
+        try
+        {
+            committer.commit();
+
+            assertEquals( 1, log.flushes.get() );
+            assertEquals( 1L, committer.getCommitCount() );
+        }
+        finally
+        {
+            committer.close();
+        }
+    }
+
+
+    @Test
+    public void testConcurrentCommitsAreGrouped() throws Exception
+    {
+        final int nbThreads = 20;
+        final int nbCommits = 10;
+        SlowLog log = new SlowLog( 5L );
+        final GroupCommitter committer = new GroupCommitter( "test", log, 2L, 64 );
+        final CountDownLatch start = new CountDownLatch( 1 );
+        final AtomicInteger errors = new AtomicInteger();
+        Thread[] threads = new Thread[nbThreads];
+
+        for ( int i = 0; i < nbThreads; i++ )
+        {
+            threads[i] = new Thread( new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        start.await();
+
+                        for ( int j = 0; j < nbCommits; j++ )
+                        {
+                            committer.commit();
+                        }
+                    }
+                    catch ( Exception e )
+                    {
+                        errors.incrementAndGet();
+                    }
+                }
+            } );
+
+            threads[i].start();
+        }
+
+        start.countDown();
+
+        for ( Thread thread : threads )
+        {
+            thread.join();
+        }
+
+        committer.close();
+
+        assertEquals( 0, errors.get() );
+        assertEquals( nbThreads * nbCommits, committer.getCommitCount() );
+
+        // The log has been flushed less often than once per commit
+        assertTrue( log.flushes.get() < nbThreads * nbCommits );
+        assertEquals( log.flushes.get(), committer.getFlushCount() );
+    }
+
+
+    @Test
+    public void testFullBatchIsFlushedBeforeTheDelay() throws Exception
+    {
+        SlowLog log = new SlowLog( 0L );
+        GroupCommitter committer = new GroupCommitter( "test", log, 60000L, 2 );
+
+        try
+        {
+            GroupCommitter.Batch first = committer.enqueue();
+            GroupCommitter.Batch second = committer.enqueue();
+
+            // Would wait for a minute if the batch size was ignored
+            committer.await( first );
+            committer.await( second );
+
+            assertEquals( 1, log.flushes.get() );
+        }
+        finally
+        {
+            committer.close();
+        }
+    }
+
+
+    @Test
+    public void testFlushErrorIsReported() throws Exception
+    {
+        SlowLog log = new SlowLog( 0L );
+        log.failing = true;
+        GroupCommitter committer = new GroupCommitter( "test", log, 0L, 10 );
+
+        try
+        {
+            committer.commit();
+            fail();
+        }
+        catch ( IOException ioe )
+        {
+            assertEquals( "Disk full", ioe.getMessage() );
+        }
+        finally
+        {
+            committer.close();
+        }
+    }
+
+
+    @Test
+    public void testCloseFlushesPendingCommits() throws Exception
+    {
+        SlowLog log = new SlowLog( 0L );
+        GroupCommitter committer = new GroupCommitter( "test", log, 60000L, 100 );
+
+        GroupCommitter.Batch batch = committer.enqueue();
+        committer.close();
+
+        // Already flushed, does not wait
+        committer.await( batch );
+        assertEquals( 1, log.flushes.get() );
+
+        try
+        {
+            committer.enqueue();
+            fail();
+        }
+        catch ( IOException ioe )
+        {
+            // Expected
+        }
+    }
+}
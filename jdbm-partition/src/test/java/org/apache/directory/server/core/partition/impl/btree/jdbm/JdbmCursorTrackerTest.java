@@ -0,0 +1,121 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.partition.impl.btree.jdbm;
+
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.apache.directory.api.ldap.model.cursor.Cursor;
+import org.apache.directory.api.ldap.model.cursor.ListCursor;
+import org.junit.Test;
+
+
+/**
+ * Tests the {@link JdbmCursorTracker} class.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class JdbmCursorTrackerTest
+{
+    @Test
+    public void testClosedCursorIsNotWaitedFor() throws Exception
+    {
+        JdbmCursorTracker tracker = new JdbmCursorTracker();
+        Cursor<String> cursor = tracker.track( new ListCursor<String>( Arrays.asList( "a", "b" ) ) );
+        cursor.close();
+
+        long start = System.currentTimeMillis();
+        tracker.close( 10000L );
+
+        assertTrue( System.currentTimeMillis() - start < 5000L );
+    }
+
+
+    @Test
+    public void testOpenCursorIsInvalidated() throws Exception
+    {
+        JdbmCursorTracker tracker = new JdbmCursorTracker();
+        Cursor<String> cursor = tracker.track( new ListCursor<String>( Arrays.asList( "a", "b" ) ) );
+        assertTrue( cursor.next() );
+
+        tracker.close( 10L );
+
+        assertTrue( cursor.isClosed() );
+    }
+
+
+    @Test
+    public void testCursorClosedDuringTheWait() throws Exception
+    {
+        JdbmCursorTracker tracker = new JdbmCursorTracker();
+        final Cursor<String> cursor = tracker.track( new ListCursor<String>( Arrays.asList( "a", "b" ) ) );
+
+        Thread closer = new Thread( new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    Thread.sleep( 100L );
+                    cursor.close();
+                }
+                catch ( Exception e )
+                {
+                    // Nothing to do
+                }
+            }
+        } );
+
+        closer.start();
+        long start = System.currentTimeMillis();
+        tracker.close( 10000L );
+        closer.join();
+
+        assertTrue( System.currentTimeMillis() - start < 5000L );
+    }
+
+
+    @Test
+    public void testCursorCreatedAfterTheCloseIsInvalidated() throws Exception
+    {
+        JdbmCursorTracker tracker = new JdbmCursorTracker();
+        tracker.close( 0L );
+
+        Cursor<String> cursor = tracker.track( new ListCursor<String>( Arrays.asList( "a", "b" ) ) );
+
+        assertTrue( cursor.isClosed() );
+    }
+
+
+    @Test
+    public void testUntrackedCursorStaysOpen() throws Exception
+    {
+        JdbmCursorTracker tracker = new JdbmCursorTracker();
+        Cursor<String> cursor = new ListCursor<String>( Arrays.asList( "a", "b" ) );
+
+        tracker.close( 0L );
+
+        assertFalse( cursor.isClosed() );
+    }
+}
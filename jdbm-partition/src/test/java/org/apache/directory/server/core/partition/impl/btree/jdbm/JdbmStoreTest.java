@@ -47,6 +47,7 @@ import org.apache.directory.api.ldap.model.entry.DefaultModification;
 import org.apache.directory.api.ldap.model.entry.Entry;
 import org.apache.directory.api.ldap.model.entry.Modification;
 import org.apache.directory.api.ldap.model.entry.ModificationOperation;
+import org.apache.directory.api.ldap.model.exception.LdapEntryAlreadyExistsException;
 import org.apache.directory.api.ldap.model.exception.LdapNoSuchObjectException;
 import org.apache.directory.api.ldap.model.exception.LdapSchemaViolationException;
 import org.apache.directory.api.ldap.model.name.Dn;
@@ -165,6 +166,25 @@ public class JdbmStoreTest
         StoreUtils.createdExtraAttributes( schemaManager );
         
         // initialize the store
+        openStore();
+
+        StoreUtils.loadExampleData( partition, schemaManager );
+
+        DirectoryService directoryService = new MockDirectoryService();
+        directoryService.setSchemaManager( schemaManager );
+        session = new MockCoreSession( new LdapPrincipal(), directoryService );
+        
+        partitionTxn = partition.beginReadTransaction();
+
+        LOG.debug( "Created new store" );
+    }
+
+
+    /**
+     * Opens the example partition, on the files of the previous one if any
+     */
+    private void openStore() throws Exception
+    {
         partition = new JdbmPartition( schemaManager, dnFactory );
         partition.setId( "example" );
         partition.setCacheSize( 10 );
@@ -184,16 +204,6 @@ public class JdbmStoreTest
 
         partition.setCacheService( cacheService );
         partition.initialize();
-
-        StoreUtils.loadExampleData( partition, schemaManager );
-
-        DirectoryService directoryService = new MockDirectoryService();
-        directoryService.setSchemaManager( schemaManager );
-        session = new MockCoreSession( new LdapPrincipal(), directoryService );
-        
-        partitionTxn = partition.beginReadTransaction();
-
-        LOG.debug( "Created new store" );
     }
 
 
@@ -920,4 +930,147 @@ public class JdbmStoreTest
         lookedup = partition.modify( partitionTxn, dn, add );
         assertEquals( attribVal, lookedup.get( "ou" ).get().getValue() );
     }
+
+
+    @Test
+    public void testCompact() throws Exception
+    {
+        Dn dn = new Dn( schemaManager, "cn=JOhnny WAlkeR,ou=Sales,o=Good Times Co." );
+        String id = partition.getEntryId( partitionTxn, dn );
+
+        // Rewrite the same entry several times, leaving garbage in the file
+        for ( int i = 0; i < 50; i++ )
+        {
+            Modification replace = new DefaultModification( ModificationOperation.REPLACE_ATTRIBUTE, SN_AT,
+                "Walker" + i );
+            partition.modify( partitionTxn, dn, replace );
+        }
+
+        assertTrue( partition.getFragmentation() > 1d );
+
+        partition.compact();
+
+        assertFalse( partition.isCompacting() );
+        assertEquals( 0d, partition.getFragmentation(), 0d );
+        assertFalse( new File( partition.getRecordManagerPath() + JdbmPartitionCompactor.COMPACT_SUFFIX + ".db" )
+            .exists() );
+
+        // The entries and the indexes are still there
+        assertEquals( 11, partition.count( partitionTxn ) );
+        assertEquals( id, partition.getEntryId( partitionTxn, dn ) );
+
+        Entry entry = partition.fetch( partitionTxn, id );
+        assertEquals( "Walker49", entry.get( SN_AT ).getString() );
+
+        Index<String, String> ouIndex = ( Index<String, String> ) partition.getUserIndex( OU_AT );
+        assertEquals( 3, ouIndex.count( partitionTxn, "sales" ) );
+
+        // And the partition can still be modified
+        Modification replace = new DefaultModification( ModificationOperation.REPLACE_ATTRIBUTE, SN_AT, "Walker" );
+        partition.modify( partitionTxn, dn, replace );
+        assertEquals( "Walker", partition.fetch( partitionTxn, id ).get( SN_AT ).getString() );
+    }
+
+
+    @Test
+    public void testAbortedNewAttributeType() throws Exception
+    {
+        // The description AttributeType is not used by the example data : the aborted
+        // transaction adds it to the dictionary
+        Dn abortedDn = new Dn( schemaManager, "cn=Aborted,o=Good Times Co." );
+        Entry aborted = new DefaultEntry( schemaManager, abortedDn,
+            "objectClass: top",
+            "objectClass: person",
+            "cn: Aborted",
+            "sn: Aborted",
+            "description: Never committed",
+            SchemaConstants.ENTRY_CSN_AT, new CsnFactory( 0 ).newInstance().toString(),
+            SchemaConstants.ENTRY_UUID_AT, Strings.getUUID( 20L ).toString() );
+
+        AddOperationContext addContext = new AddOperationContext( null, aborted );
+        addContext.setPartition( partition );
+        PartitionTxn writeTxn = partition.beginWriteTransaction();
+        addContext.setTransaction( writeTxn );
+        partition.add( addContext );
+        writeTxn.abort();
+
+        Dn committedDn = new Dn( schemaManager, "cn=Committed,o=Good Times Co." );
+        Entry committed = new DefaultEntry( schemaManager, committedDn,
+            "objectClass: top",
+            "objectClass: person",
+            "cn: Committed",
+            "sn: Committed",
+            "description: Committed",
+            SchemaConstants.ENTRY_CSN_AT, new CsnFactory( 0 ).newInstance().toString(),
+            SchemaConstants.ENTRY_UUID_AT, Strings.getUUID( 21L ).toString() );
+
+        addContext = new AddOperationContext( null, committed );
+        addContext.setPartition( partition );
+        writeTxn = partition.beginWriteTransaction();
+        addContext.setTransaction( writeTxn );
+        partition.add( addContext );
+        writeTxn.commit();
+
+        // Reopen the partition : the dictionary is read back from the disk
+        partition.destroy( partitionTxn );
+        openStore();
+        partitionTxn = partition.beginReadTransaction();
+
+        assertNull( partition.getEntryId( partitionTxn, abortedDn ) );
+
+        String id = partition.getEntryId( partitionTxn, committedDn );
+        assertNotNull( id );
+
+        Entry entry = partition.fetch( partitionTxn, id );
+        assertEquals( "Committed", entry.get( "description" ).getString() );
+        assertEquals( "Committed", entry.get( SchemaConstants.SN_AT ).getString() );
+    }
+
+
+    @Test
+    public void testOnlyDirtyAbortsAreRolledBack() throws Exception
+    {
+        Dn dn = new Dn( schemaManager, "cn=JOhnny WAlkeR,ou=Sales,o=Good Times Co." );
+        String id = partition.getEntryId( partitionTxn, dn );
+        partition.addToCache( id, partition.fetch( partitionTxn, id ) );
+        assertNotNull( partition.lookupCache( id ) );
+
+        // The add fails before anything is written : the abort leaves the caches untouched
+        Entry existing = new DefaultEntry( schemaManager, dn,
+            "objectClass: top",
+            "objectClass: person",
+            "cn: JOhnny WAlkeR",
+            "sn: WAlkeR",
+            SchemaConstants.ENTRY_CSN_AT, new CsnFactory( 0 ).newInstance().toString(),
+            SchemaConstants.ENTRY_UUID_AT, Strings.getUUID( 22L ).toString() );
+
+        AddOperationContext addContext = new AddOperationContext( null, existing );
+        addContext.setPartition( partition );
+        JdbmPartitionWriteTxn writeTxn = ( JdbmPartitionWriteTxn ) partition.beginWriteTransaction();
+        addContext.setTransaction( writeTxn );
+
+        try
+        {
+            partition.add( addContext );
+            fail();
+        }
+        catch ( LdapEntryAlreadyExistsException leaee )
+        {
+            // Expected
+        }
+
+        assertFalse( writeTxn.isDirty() );
+        writeTxn.abort();
+        assertNotNull( partition.lookupCache( id ) );
+
+        // A written transaction is rolled back, and the caches are emptied
+        writeTxn = ( JdbmPartitionWriteTxn ) partition.beginWriteTransaction();
+        partition.modify( writeTxn, dn, new DefaultModification( ModificationOperation.REPLACE_ATTRIBUTE, SN_AT,
+            "Aborted" ) );
+        assertTrue( writeTxn.isDirty() );
+        writeTxn.abort();
+
+        assertNull( partition.lookupCache( id ) );
+        assertEquals( "WAlkeR", partition.fetch( partitionTxn, id ).get( SN_AT ).getString() );
+    }
 }
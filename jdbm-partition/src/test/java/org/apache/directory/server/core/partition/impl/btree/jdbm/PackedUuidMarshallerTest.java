@@ -0,0 +1,134 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.partition.impl.btree.jdbm;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.UUID;
+
+import org.apache.directory.api.ldap.model.schema.comparators.UuidComparator;
+import org.apache.directory.server.core.avltree.ArrayMarshaller;
+import org.apache.directory.server.core.avltree.ArrayTree;
+import org.junit.Test;
+
+
+/**
+ * Tests the {@link PackedUuidMarshaller} class.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class PackedUuidMarshallerTest
+{
+    private ArrayTree<String> createTree( int size )
+    {
+        ArrayTree<String> tree = new ArrayTree<>( UuidComparator.INSTANCE );
+
+        for ( int i = 0; i < size; i++ )
+        {
+            tree.insert( UUID.randomUUID().toString() );
+        }
+
+        return tree;
+    }
+
+
+    @Test
+    public void testRoundTrip() throws Exception
+    {
+        PackedUuidMarshaller marshaller = new PackedUuidMarshaller( UuidComparator.INSTANCE );
+
+        // Several blocks, the last one being incomplete
+        ArrayTree<String> tree = createTree( PackedUuidMarshaller.BLOCK_SIZE * 3 + 17 );
+
+        byte[] data = marshaller.serialize( tree );
+
+        assertTrue( PackedUuidMarshaller.isPacked( data ) );
+        assertEquals( tree.size(), PackedUuidMarshaller.size( data ) );
+
+        ArrayTree<String> result = marshaller.deserialize( data );
+
+        assertEquals( tree.size(), result.size() );
+
+        for ( int i = 0; i < tree.size(); i++ )
+        {
+            assertEquals( tree.get( i ), result.get( i ) );
+        }
+
+        // Far smaller than the serialized Strings
+        ArrayMarshaller<String> arrayMarshaller = new ArrayMarshaller<>( UuidComparator.INSTANCE,
+            new MarshallerSerializerBridge<String>( UuidSerializer.INSTANCE ) );
+        assertTrue( data.length * 3 < arrayMarshaller.serialize( tree ).length );
+    }
+
+
+    @Test
+    public void testContains() throws Exception
+    {
+        PackedUuidMarshaller marshaller = new PackedUuidMarshaller( UuidComparator.INSTANCE );
+        ArrayTree<String> tree = createTree( PackedUuidMarshaller.BLOCK_SIZE * 2 + 5 );
+
+        byte[] data = marshaller.serialize( tree );
+
+        for ( int i = 0; i < tree.size(); i++ )
+        {
+            assertTrue( marshaller.contains( data, tree.get( i ) ) );
+        }
+
+        for ( int i = 0; i < 100; i++ )
+        {
+            assertFalse( marshaller.contains( data, UUID.randomUUID().toString() ) );
+        }
+
+        assertFalse( marshaller.contains( data, "not a uuid" ) );
+    }
+
+
+    @Test
+    public void testNonUuidValuesAreNotPacked() throws Exception
+    {
+        PackedUuidMarshaller marshaller = new PackedUuidMarshaller( UuidComparator.INSTANCE );
+        ArrayTree<String> tree = createTree( 10 );
+        tree.insert( UUID.randomUUID().toString().toUpperCase() );
+
+        byte[] data = marshaller.serialize( tree );
+
+        assertFalse( PackedUuidMarshaller.isPacked( data ) );
+        assertEquals( tree.size(), marshaller.deserialize( data ).size() );
+    }
+
+
+    @Test
+    public void testReadArrayMarshallerFormat() throws Exception
+    {
+        ArrayMarshaller<String> arrayMarshaller = new ArrayMarshaller<>( UuidComparator.INSTANCE,
+            new MarshallerSerializerBridge<String>( UuidSerializer.INSTANCE ) );
+        ArrayTree<String> tree = createTree( 20 );
+
+        ArrayTree<String> result = new PackedUuidMarshaller( UuidComparator.INSTANCE ).deserialize(
+            arrayMarshaller.serialize( tree ) );
+
+        assertEquals( tree.size(), result.size() );
+        assertEquals( tree.getFirst(), result.getFirst() );
+        assertEquals( tree.getLast(), result.getLast() );
+    }
+}
@@ -21,9 +21,13 @@ package org.apache.directory.server.core.partition.impl.btree.jdbm;
 
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.ObjectOutputStream;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -42,6 +46,9 @@ import org.apache.directory.api.ldap.schema.loader.LdifSchemaLoader;
 import org.apache.directory.api.ldap.schema.manager.impl.DefaultSchemaManager;
 import org.apache.directory.api.util.Strings;
 import org.apache.directory.api.util.exception.Exceptions;
+import org.apache.directory.server.core.api.entry.LazyEntry;
+import org.apache.directory.server.xdbm.AttributeTypeDictionary;
+import org.apache.directory.server.xdbm.ValueCompression;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -287,4 +294,155 @@ public class ServerEntrySerializerTest
 
         assertEquals( entry, result );
     }
+
+
+    @Test
+    public void testSerializeServerEntryWithDictionary() throws Exception
+    {
+        Entry entry = new DefaultEntry( schemaManager, "ou=test, ou=system",
+            "ObjectClass: top",
+            "ObjectClass: organizationalUnit",
+            "ou: test",
+            "description: a test entry" );
+
+        AttributeTypeDictionary dictionary = new AttributeTypeDictionary();
+        EntrySerializer ses = new EntrySerializer( schemaManager, dictionary );
+
+        byte[] data = ses.serialize( entry );
+
+        assertEquals( 3, dictionary.size() );
+        assertTrue( dictionary.isDirty() );
+
+        // The dictionary must survive a reload
+        AttributeTypeDictionary reloaded = new AttributeTypeDictionary( dictionary.toBytes() );
+        assertFalse( dictionary.isDirty() );
+
+        Entry result = ( Entry ) new EntrySerializer( schemaManager, reloaded ).deserialize( data );
+
+        assertEquals( entry.getDn().getRdn(), result.getDn().getRdn() );
+
+        // Only the Rdn is stored
+        result.setDn( entry.getDn() );
+        assertEquals( entry, result );
+    }
+
+
+    @Test
+    public void testDeserializeLegacyFormat() throws Exception
+    {
+        Entry entry = new DefaultEntry( schemaManager, "ou=test, ou=system",
+            "ObjectClass: top",
+            "ObjectClass: organizationalUnit",
+            "ou: test" );
+
+        // Write the entry the way it was stored before the compact format
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream( baos );
+        out.writeByte( 1 );
+        entry.getDn().getRdn().writeExternal( out );
+        out.writeInt( entry.getAttributes().size() );
+
+        for ( Attribute attribute : entry.getAttributes() )
+        {
+            out.writeUTF( attribute.getAttributeType().getOid() );
+            attribute.writeExternal( out );
+        }
+
+        out.flush();
+
+        Entry result = ( Entry ) new EntrySerializer( schemaManager ).deserialize( baos.toByteArray() );
+
+        assertEquals( entry.getDn().getRdn(), result.getDn().getRdn() );
+
+        // Only the Rdn is stored
+        result.setDn( entry.getDn() );
+        assertEquals( entry, result );
+    }
+
+
+    @Test
+    public void testLazyDeserialization() throws Exception
+    {
+        Entry entry = new DefaultEntry( schemaManager, "cn=test, ou=system",
+            "ObjectClass: top",
+            "ObjectClass: person",
+            "cn: test",
+            "sn: Test",
+            "description: a test entry" );
+
+        EntrySerializer ses = new EntrySerializer( schemaManager );
+
+        byte[] data = ses.serialize( entry );
+
+        Entry result = ( Entry ) ses.deserialize( data );
+
+        assertTrue( result instanceof LazyEntry );
+        LazyEntry lazyEntry = ( LazyEntry ) result;
+
+        // Nothing is decoded yet
+        assertEquals( 4, lazyEntry.getPendingCount() );
+        assertEquals( 4, lazyEntry.size() );
+        assertTrue( lazyEntry.containsAttribute( "description" ) );
+        assertEquals( 4, lazyEntry.getPendingCount() );
+
+        // Only the requested attribute is decoded
+        assertEquals( "test", lazyEntry.get( "cn" ).getString() );
+        assertEquals( 3, lazyEntry.getPendingCount() );
+
+        // A clone does not decode the original entry attributes
+        Entry clone = lazyEntry.clone();
+        assertEquals( 3, ( ( LazyEntry ) clone ).getPendingCount() );
+
+        // Removing an attribute does not decode it
+        clone.removeAttributes( "description" );
+        assertEquals( 2, ( ( LazyEntry ) clone ).getPendingCount() );
+        assertEquals( 3, ( ( LazyEntry ) clone ).size() );
+        assertFalse( clone.containsAttribute( "description" ) );
+        assertTrue( lazyEntry.containsAttribute( "description" ) );
+
+        // Only the Rdn is stored
+        result.setDn( entry.getDn() );
+        assertEquals( entry, result );
+        assertEquals( 0, lazyEntry.getPendingCount() );
+    }
+
+
+    @Test
+    public void testSerializeServerEntryWithCompression() throws Exception
+    {
+        StringBuilder sb = new StringBuilder();
+
+        for ( int i = 0; i < 200; i++ )
+        {
+            sb.append( "a long and repetitive description " ).append( i );
+        }
+
+        Entry entry = new DefaultEntry( schemaManager, "cn=test, ou=system",
+            "ObjectClass: top",
+            "ObjectClass: person",
+            "cn: test",
+            "sn: Test",
+            "description", sb.toString() );
+
+        EntrySerializer plain = new EntrySerializer( schemaManager );
+        EntrySerializer compressed = new EntrySerializer( schemaManager, null,
+            new ValueCompression( ValueCompression.DEFAULT_THRESHOLD, null ) );
+
+        byte[] plainData = plain.serialize( entry );
+        byte[] compressedData = compressed.serialize( entry );
+
+        assertTrue( compressedData.length < plainData.length / 4 );
+
+        // The description is only decompressed when it's read
+        LazyEntry result = ( LazyEntry ) compressed.deserialize( compressedData );
+        assertEquals( 4, result.getPendingCount() );
+        assertEquals( "test", result.get( "cn" ).getString() );
+        assertEquals( 3, result.getPendingCount() );
+        assertEquals( sb.toString(), result.get( "description" ).getString() );
+
+        // A serializer without compression can read the compressed entries
+        Entry other = ( Entry ) plain.deserialize( compressedData );
+        other.setDn( entry.getDn() );
+        assertEquals( entry, other );
+    }
 }
@@ -24,13 +24,24 @@ import java.io.File;
 import java.io.FileFilter;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
 import java.util.UUID;
 
 import org.apache.directory.api.ldap.model.constants.SchemaConstants;
 import org.apache.directory.api.ldap.model.csn.CsnFactory;
 import org.apache.directory.api.ldap.model.cursor.Cursor;
+import org.apache.directory.api.ldap.model.entry.Attribute;
 import org.apache.directory.api.ldap.model.entry.DefaultEntry;
 import org.apache.directory.api.ldap.model.entry.Entry;
 import org.apache.directory.api.ldap.model.entry.Modification;
@@ -39,6 +50,7 @@ import org.apache.directory.api.ldap.model.exception.LdapInvalidDnException;
 import org.apache.directory.api.ldap.model.exception.LdapOperationErrorException;
 import org.apache.directory.api.ldap.model.exception.LdapOperationException;
 import org.apache.directory.api.ldap.model.exception.LdapOtherException;
+import org.apache.directory.api.ldap.model.ldif.ChangeType;
 import org.apache.directory.api.ldap.model.ldif.LdifEntry;
 import org.apache.directory.api.ldap.model.ldif.LdifReader;
 import org.apache.directory.api.ldap.model.ldif.LdifUtils;
@@ -85,6 +97,11 @@ import org.slf4j.LoggerFactory;
  * <br><br>
  * In this exemple, the partition's suffix is <b>ou=example,ou=system</b>.
  * <br>
+ * When the write-behind mode is enabled, the operations only update the in-memory data and
+ * append the new state of the modified entries to a journal. A background writer then
+ * updates the LDIF files, writing only once an entry modified many times in a row. The
+ * journal is applied to the LDIF files when the partition is initialized after a crash.
+ * <br>
  *
  * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
  */
@@ -109,6 +126,53 @@ public class LdifPartition extends AbstractLdifPartition
         }
     };
 
+    /** The extension of the write-behind journal, appended to the suffix directory name */
+    private static final String JOURNAL_EXTN = ".journal";
+
+    /** The default delay between two writes of the pending changes, in milliseconds */
+    public static final long DEFAULT_WRITE_BEHIND_DELAY = 1000L;
+
+    /** Tells if the LDIF files are written in the background */
+    private boolean writeBehindEnabled = false;
+
+    /** The delay between two writes of the pending changes, in milliseconds */
+    private long writeBehindDelay = DEFAULT_WRITE_BEHIND_DELAY;
+
+    /** The lock protecting the pending writes and the journal */
+    private final Object writeBehindLock = new Object();
+
+    /** The last state of the files to write, in the order they have been modified */
+    private Map<File, PendingWrite> pendingWrites = new LinkedHashMap<>();
+
+    /** The journal containing the pending writes */
+    private RandomAccessFile journal;
+
+    /** The timer writing the pending changes */
+    private Timer writeBehindTimer;
+
+    /**
+     * The state to write in an LDIF file
+     */
+    private static final class PendingWrite
+    {
+        /** The entry file */
+        private final File file;
+
+        /** The entry content, or null if the file must be deleted */
+        private final String content;
+
+        /** The journal record */
+        private final String record;
+
+
+        private PendingWrite( File file, String content, String record )
+        {
+            this.file = file;
+            this.content = content;
+            this.record = record;
+        }
+    }
+
     /** A filter used to pick all the ldif entries */
     private FileFilter entryFilter = new FileFilter()
     {
@@ -161,8 +225,19 @@ public class LdifPartition extends AbstractLdifPartition
             String suffixDirName = getFileName( suffixDn );
             suffixDirectory = new File( partitionDir, suffixDirName );
 
+            if ( writeBehindEnabled )
+            {
+                // Apply the changes which were not written before the server stopped
+                recoverJournal();
+            }
+
             super.doInit();
 
+            if ( writeBehindEnabled )
+            {
+                startWriteBehind();
+            }
+
             // Create the context entry now, if it does not exists, or load the
             // existing entries
             if ( suffixDirectory.exists() )
@@ -308,7 +383,14 @@ public class LdifPartition extends AbstractLdifPartition
     {
         super.add( addContext );
 
-        addEntry( addContext.getEntry() );
+        if ( writeBehindEnabled )
+        {
+            schedule( pendingWrite( addContext.getEntry() ) );
+        }
+        else
+        {
+            addEntry( addContext.getEntry() );
+        }
     }
 
 
@@ -319,7 +401,11 @@ public class LdifPartition extends AbstractLdifPartition
     {
         Entry deletedEntry = super.delete( partitionTxn, id );
 
-        if ( deletedEntry != null )
+        if ( ( deletedEntry != null ) && writeBehindEnabled )
+        {
+            schedule( pendingDelete( deletedEntry.getDn() ) );
+        }
+        else if ( deletedEntry != null )
         {
             File ldifFile = getFile( deletedEntry.getDn(), DELETE );
 
@@ -367,6 +453,13 @@ public class LdifPartition extends AbstractLdifPartition
         // Remove the EntryDN
         modifiedEntry.removeAttributes( entryDnAT );
 
+        if ( writeBehindEnabled )
+        {
+            schedule( pendingWrite( modifiedEntry ) );
+
+            return;
+        }
+
         // just overwrite the existing file
         Dn dn = modifyContext.getDn();
 
@@ -478,6 +571,13 @@ public class LdifPartition extends AbstractLdifPartition
      */
     private void entryMoved( PartitionTxn partitionTxn, Dn oldEntryDn, Entry modifiedEntry, String entryIdOld ) throws LdapException
     {
+        if ( writeBehindEnabled )
+        {
+            subtreeMoved( partitionTxn, oldEntryDn, modifiedEntry );
+
+            return;
+        }
+
         // First, add the new entry
         addEntry( modifiedEntry );
 
@@ -528,6 +628,494 @@ public class LdifPartition extends AbstractLdifPartition
     }
 
 
+    /**
+     * Schedules the write of the moved entry and of its descendants at their new place, and
+     * the removal of their old files. All the changes are journaled at once.
+     */
+    private void subtreeMoved( PartitionTxn partitionTxn, Dn oldEntryDn, Entry modifiedEntry ) throws LdapException
+    {
+        Dn newEntryDn = modifiedEntry.getDn();
+        String baseId = getEntryId( partitionTxn, newEntryDn );
+
+        ParentIdAndRdn parentIdAndRdn = getRdnIndex().reverseLookup( partitionTxn, baseId );
+        IndexEntry indexEntry = new IndexEntry();
+
+        indexEntry.setId( baseId );
+        indexEntry.setKey( parentIdAndRdn );
+
+        Cursor<IndexEntry<ParentIdAndRdn, String>> cursor = new SingletonIndexCursor<>( partitionTxn, indexEntry );
+        String parentId = parentIdAndRdn.getParentId();
+
+        Cursor<IndexEntry<String, String>> scopeCursor = new DescendantCursor( partitionTxn, this, baseId, parentId, cursor );
+        List<PendingWrite> writes = new ArrayList<>();
+        List<Dn> oldDns = new ArrayList<>();
+
+        try
+        {
+            while ( scopeCursor.next() )
+            {
+                String id = scopeCursor.get().getId();
+                Entry entry = id.equals( baseId ) ? modifiedEntry : fetch( partitionTxn, id );
+                Dn newDn = entry.getDn();
+
+                entry.removeAttributes( entryDnAT );
+                writes.add( pendingWrite( entry ) );
+
+                oldDns.add( oldEntryDn.add( newDn.getDescendantOf( newEntryDn ) ) );
+            }
+
+            scopeCursor.close();
+        }
+        catch ( LdapException le )
+        {
+            throw le;
+        }
+        catch ( Exception e )
+        {
+            throw new LdapOperationException( e.getMessage(), e );
+        }
+
+        for ( Dn oldDn : oldDns )
+        {
+            writes.add( pendingDelete( oldDn ) );
+        }
+
+        schedule( writes );
+    }
+
+
+    /**
+     * Creates the pending write of an entry file, with its journal record.
+     */
+    private PendingWrite pendingWrite( Entry entry ) throws LdapException
+    {
+        Entry copy = entry.clone();
+        copy.removeAttributes( entryDnAT );
+
+        LdifEntry change = new LdifEntry();
+        change.setChangeType( ChangeType.Add );
+        change.setDn( copy.getDn() );
+
+        for ( Attribute attribute : copy )
+        {
+            change.addAttribute( attribute );
+        }
+
+        File file = getFile( copy.getDn(), DELETE );
+
+        return new PendingWrite( file, LdifUtils.convertToLdif( copy ), LdifUtils.convertToLdif( change ) );
+    }
+
+
+    /**
+     * Creates the pending removal of an entry file, with its journal record.
+     */
+    private PendingWrite pendingDelete( Dn dn ) throws LdapException
+    {
+        LdifEntry change = new LdifEntry();
+        change.setChangeType( ChangeType.Delete );
+        change.setDn( dn );
+
+        File file = getFile( dn, DELETE );
+
+        return new PendingWrite( file, null, LdifUtils.convertToLdif( change ) );
+    }
+
+
+    private void schedule( PendingWrite write ) throws LdapException
+    {
+        schedule( Collections.singletonList( write ) );
+    }
+
+
+    /**
+     * Schedules the writes done by an operation. Their records are appended to the journal
+     * with a single write, so that the journal is synchronized once per operation.
+     */
+    private void schedule( List<PendingWrite> writes ) throws LdapException
+    {
+        StringBuilder records = new StringBuilder();
+
+        for ( PendingWrite write : writes )
+        {
+            records.append( write.record ).append( '\n' );
+        }
+
+        byte[] bytes = Strings.getBytesUtf8( records.toString() );
+
+        synchronized ( writeBehindLock )
+        {
+            try
+            {
+                journal.write( bytes );
+            }
+            catch ( IOException ioe )
+            {
+                throw new LdapOtherException( ioe.getMessage(), ioe );
+            }
+
+            // Only the last state of a file is written
+            for ( PendingWrite write : writes )
+            {
+                pendingWrites.remove( write.file );
+                pendingWrites.put( write.file, write );
+            }
+        }
+    }
+
+
+    /**
+     * Writes the pending changes in the LDIF files, and removes them from the journal.
+     * 
+     * @throws LdapException If the files can't be written
+     */
+    public void flush() throws LdapException
+    {
+        if ( !writeBehindEnabled )
+        {
+            return;
+        }
+
+        Map<File, PendingWrite> writes;
+
+        synchronized ( writeBehindLock )
+        {
+            if ( pendingWrites.isEmpty() )
+            {
+                return;
+            }
+
+            writes = pendingWrites;
+            pendingWrites = new LinkedHashMap<>();
+        }
+
+        // The files are written without holding any lock, the journal still contains the changes
+        try
+        {
+            writeFiles( writes.values() );
+        }
+        catch ( IOException ioe )
+        {
+            synchronized ( writeBehindLock )
+            {
+                // Retry later, unless the files have been modified since
+                for ( PendingWrite write : writes.values() )
+                {
+                    if ( !pendingWrites.containsKey( write.file ) )
+                    {
+                        pendingWrites.put( write.file, write );
+                    }
+                }
+            }
+
+            throw new LdapOtherException( ioe.getMessage(), ioe );
+        }
+
+        synchronized ( writeBehindLock )
+        {
+            try
+            {
+                rewriteJournal();
+            }
+            catch ( IOException ioe )
+            {
+                throw new LdapOtherException( ioe.getMessage(), ioe );
+            }
+        }
+
+        LOG.debug( "Wrote {} LDIF files of the {} partition", writes.size(), getId() );
+    }
+
+
+    /**
+     * @return The number of LDIF files waiting to be written or deleted
+     */
+    public int getPendingWriteCount()
+    {
+        synchronized ( writeBehindLock )
+        {
+            return pendingWrites.size();
+        }
+    }
+
+
+    /**
+     * Writes and deletes some LDIF files. The files are written first, then deleted, the
+     * deepest ones first, along with the directories they leave empty.
+     */
+    private void writeFiles( Iterable<PendingWrite> writes ) throws IOException
+    {
+        List<File> deleted = new ArrayList<>();
+
+        for ( PendingWrite write : writes )
+        {
+            if ( write.content == null )
+            {
+                deleted.add( write.file );
+                continue;
+            }
+
+            File dir = write.file.getParentFile();
+
+            if ( !dir.exists() && !dir.mkdirs() )
+            {
+                throw new IOException( I18n.err( I18n.ERR_112_COULD_NOT_CREATE_DIRECTORY, dir ) );
+            }
+
+            try ( FileWriter fw = new FileWriter( write.file ) )
+            {
+                fw.write( write.content );
+            }
+        }
+
+        Collections.sort( deleted, new Comparator<File>()
+        {
+            @Override
+            public int compare( File file1, File file2 )
+            {
+                return file2.getPath().length() - file1.getPath().length();
+            }
+        } );
+
+        for ( File file : deleted )
+        {
+            if ( file.exists() && !file.delete() )
+            {
+                throw new IOException( "Cannot delete the file " + file );
+            }
+
+            // The entry directory, if its children have been moved, and the parent directory,
+            // if this entry was its last child
+            String path = file.getPath();
+            deleteIfEmpty( new File( path.substring( 0, path.length() - CONF_FILE_EXTN.length() ) ) );
+            deleteIfEmpty( file.getParentFile() );
+        }
+    }
+
+
+    private void deleteIfEmpty( File dir )
+    {
+        String[] content = dir.list();
+
+        if ( ( content != null ) && ( content.length == 0 ) && !dir.equals( suffixDirectory ) )
+        {
+            dir.delete();
+        }
+    }
+
+
+    /**
+     * @return The write-behind journal file, stored next to the suffix directory
+     */
+    private File getJournalFile()
+    {
+        return new File( suffixDirectory.getPath() + JOURNAL_EXTN );
+    }
+
+
+    /**
+     * Replaces the journal by a journal containing only the pending writes. Must be called
+     * while holding the write-behind lock.
+     */
+    private void rewriteJournal() throws IOException
+    {
+        File journalFile = getJournalFile();
+        File tmpFile = new File( journalFile.getPath() + ".tmp" );
+
+        try ( RandomAccessFile tmp = new RandomAccessFile( tmpFile, "rw" ) )
+        {
+            tmp.setLength( 0L );
+
+            for ( PendingWrite write : pendingWrites.values() )
+            {
+                tmp.write( Strings.getBytesUtf8( write.record + "\n" ) );
+            }
+
+            tmp.getFD().sync();
+        }
+
+        journal.close();
+        Files.move( tmpFile.toPath(), journalFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE );
+        journal = new RandomAccessFile( journalFile, "rws" );
+        journal.seek( journal.length() );
+    }
+
+
+    /**
+     * Applies the journal of a previous run to the LDIF files. Each record contains the state
+     * of a file, so applying them in order restores the last state of each file, whatever
+     * the files already written. An incomplete last record, not followed by an empty line,
+     * is ignored.
+     */
+    private void recoverJournal() throws LdapException
+    {
+        File journalFile = getJournalFile();
+
+        if ( !journalFile.exists() || ( journalFile.length() == 0L ) )
+        {
+            return;
+        }
+
+        Map<File, PendingWrite> writes = new LinkedHashMap<>();
+
+        try ( RandomAccessFile in = new RandomAccessFile( journalFile, "r" );
+            LdifReader reader = new LdifReader() )
+        {
+            StringBuilder record = new StringBuilder();
+            String line;
+
+            while ( ( line = in.readLine() ) != null )
+            {
+                if ( !line.isEmpty() )
+                {
+                    record.append( line ).append( '\n' );
+                    continue;
+                }
+
+                if ( record.length() == 0 )
+                {
+                    continue;
+                }
+
+                // RandomAccessFile.readLine() reads the bytes as ISO-8859-1
+                String ldif = Strings.utf8ToString( record.toString().getBytes( "ISO-8859-1" ) );
+                record.setLength( 0 );
+
+                for ( LdifEntry change : reader.parseLdif( ldif ) )
+                {
+                    Dn dn = new Dn( schemaManager, change.getDn().getName() );
+                    File file = getFile( dn, DELETE );
+                    String content = change.isChangeAdd() ? LdifUtils.convertToLdif( change.getEntry() ) : null;
+
+                    writes.remove( file );
+                    writes.put( file, new PendingWrite( file, content, null ) );
+                }
+            }
+
+            if ( record.length() > 0 )
+            {
+                LOG.warn( "Ignoring the incomplete last record of the journal of the {} partition", getId() );
+            }
+
+            writeFiles( writes.values() );
+        }
+        catch ( IOException ioe )
+        {
+            throw new LdapOtherException( ioe.getMessage(), ioe );
+        }
+
+        LOG.info( "Recovered {} LDIF files of the {} partition from its journal", writes.size(), getId() );
+
+        if ( !journalFile.delete() )
+        {
+            throw new LdapOtherException( "Cannot delete the journal " + journalFile );
+        }
+    }
+
+
+    /**
+     * Opens the journal and starts the background writer.
+     */
+    private void startWriteBehind() throws LdapException
+    {
+        try
+        {
+            journal = new RandomAccessFile( getJournalFile(), "rws" );
+            journal.seek( journal.length() );
+        }
+        catch ( IOException ioe )
+        {
+            throw new LdapOtherException( ioe.getMessage(), ioe );
+        }
+
+        writeBehindTimer = new Timer( "ldif-write-behind-" + getId(), true );
+        writeBehindTimer.schedule( new TimerTask()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    flush();
+                }
+                catch ( LdapException le )
+                {
+                    LOG.error( "Failed to write the LDIF files of the {} partition", getId(), le );
+                }
+            }
+        }, writeBehindDelay, writeBehindDelay );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void doDestroy( PartitionTxn partitionTxn ) throws LdapException
+    {
+        if ( writeBehindTimer != null )
+        {
+            writeBehindTimer.cancel();
+            writeBehindTimer = null;
+
+            flush();
+
+            try
+            {
+                journal.close();
+            }
+            catch ( IOException ioe )
+            {
+                throw new LdapOtherException( ioe.getMessage(), ioe );
+            }
+        }
+
+        super.doDestroy( partitionTxn );
+    }
+
+
+    /**
+     * @return <code>true</code> if the LDIF files are written in the background
+     */
+    public boolean isWriteBehindEnabled()
+    {
+        return writeBehindEnabled;
+    }
+
+
+    /**
+     * Writes the LDIF files in the background : the operations only update the in-memory
+     * data and the journal, and return without waiting for the files to be written.
+     * 
+     * @param writeBehindEnabled <code>true</code> to write the LDIF files in the background
+     */
+    public void setWriteBehindEnabled( boolean writeBehindEnabled )
+    {
+        checkInitialized( "writeBehindEnabled" );
+        this.writeBehindEnabled = writeBehindEnabled;
+    }
+
+
+    /**
+     * @return The delay between two writes of the pending changes, in milliseconds
+     */
+    public long getWriteBehindDelay()
+    {
+        return writeBehindDelay;
+    }
+
+
+    /**
+     * @param writeBehindDelay The delay between two writes of the pending changes, in milliseconds
+     */
+    public void setWriteBehindDelay( long writeBehindDelay )
+    {
+        checkInitialized( "writeBehindDelay" );
+        this.writeBehindDelay = writeBehindDelay;
+    }
+
+
     /**
      * loads the configuration into the DIT from the file system
      * Note that it assumes the presence of a directory with the partition suffix's upname
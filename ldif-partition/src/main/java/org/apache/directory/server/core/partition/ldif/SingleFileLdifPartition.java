@@ -21,11 +21,15 @@
 package org.apache.directory.server.core.partition.ldif;
 
 
+import java.io.DataOutput;
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.Iterator;
+import java.util.Timer;
+import java.util.TimerTask;
 import java.util.UUID;
 
 import org.apache.directory.api.ldap.model.constants.SchemaConstants;
@@ -37,6 +41,7 @@ import org.apache.directory.api.ldap.model.exception.LdapException;
 import org.apache.directory.api.ldap.model.exception.LdapInvalidDnException;
 import org.apache.directory.api.ldap.model.exception.LdapOperationException;
 import org.apache.directory.api.ldap.model.exception.LdapOtherException;
+import org.apache.directory.api.ldap.model.ldif.ChangeType;
 import org.apache.directory.api.ldap.model.ldif.LdifEntry;
 import org.apache.directory.api.ldap.model.ldif.LdifReader;
 import org.apache.directory.api.ldap.model.ldif.LdifUtils;
@@ -60,6 +65,11 @@ import org.slf4j.LoggerFactory;
 
 /**
  * A Partition implementation backed by a single LDIF file.
+ * <br>
+ * By default, the whole file is rewritten after each modification. When the append log is
+ * enabled, each modification is instead appended as an LDIF change record to a journal file
+ * stored next to the LDIF file, and the LDIF file is only rewritten by periodic checkpoints.
+ * The journal is replayed when the partition is initialized.
  *
  * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
  */
@@ -77,6 +87,36 @@ public class SingleFileLdifPartition extends AbstractLdifPartition
     /** lock for serializing the operations on the backing LDIF file */
     private Object lock = new Object();
 
+    /** The extension of the journal file, appended to the LDIF file name */
+    public static final String JOURNAL_EXTN = ".journal";
+
+    /** The extension of the temporary file a checkpoint is written into */
+    private static final String CHECKPOINT_EXTN = ".checkpoint";
+
+    /** The comment heading the LDIF file and the journal, identifying the last checkpoint */
+    private static final String CHECKPOINT_HEADER = "# checkpoint: ";
+
+    /** The default delay between two checkpoints, in milliseconds */
+    public static final long DEFAULT_CHECKPOINT_INTERVAL = 60000L;
+
+    /** Tells if the modifications are appended to the journal instead of rewriting the LDIF file */
+    private boolean appendLogEnabled = false;
+
+    /** The delay between two checkpoints, in milliseconds, 0 to disable the periodic checkpoints */
+    private long checkpointInterval = DEFAULT_CHECKPOINT_INTERVAL;
+
+    /** The journal holding the changes done since the last checkpoint */
+    private RandomAccessFile journalFile;
+
+    /** The number of the last checkpoint */
+    private long checkpointNumber;
+
+    /** The number of change records in the journal */
+    private long journalSize;
+
+    /** The timer running the checkpoints */
+    private Timer checkpointTimer;
+
     private static final Logger LOG = LoggerFactory.getLogger( SingleFileLdifPartition.class );
 
 
@@ -109,10 +149,11 @@ public class SingleFileLdifPartition extends AbstractLdifPartition
             try
             {
                 ldifFile = new RandomAccessFile( partitionFile, "rws" );
+                checkpointNumber = readCheckpointNumber( ldifFile );
             }
-            catch ( FileNotFoundException fnfe )
+            catch ( IOException ioe )
             {
-                throw new LdapOtherException( fnfe.getMessage(), fnfe );
+                throw new LdapOtherException( ioe.getMessage(), ioe );
             }
             
             LOG.debug( "id is : {}", getId() );
@@ -134,6 +175,197 @@ public class SingleFileLdifPartition extends AbstractLdifPartition
             super.doInit();
 
             loadEntries();
+
+            if ( appendLogEnabled )
+            {
+                openJournal();
+
+                if ( checkpointInterval > 0 )
+                {
+                    checkpointTimer = new Timer( "ldif-checkpoint-" + getId(), true );
+                    checkpointTimer.schedule( new TimerTask()
+                    {
+                        @Override
+                        public void run()
+                        {
+                            try
+                            {
+                                checkpoint();
+                            }
+                            catch ( LdapException le )
+                            {
+                                LOG.error( "Failed to checkpoint the {} partition", getId(), le );
+                            }
+                        }
+                    }, checkpointInterval, checkpointInterval );
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Reads the number of the checkpoint heading a file, and rewinds the file.
+     * 
+     * @return The checkpoint number, or 0 if the file has not been written by a checkpoint
+     */
+    private static long readCheckpointNumber( RandomAccessFile file ) throws IOException
+    {
+        file.seek( 0L );
+        String firstLine = file.readLine();
+        file.seek( 0L );
+
+        if ( ( firstLine != null ) && firstLine.startsWith( CHECKPOINT_HEADER ) )
+        {
+            try
+            {
+                return Long.parseLong( firstLine.substring( CHECKPOINT_HEADER.length() ).trim() );
+            }
+            catch ( NumberFormatException nfe )
+            {
+                LOG.warn( "Invalid checkpoint header : {}", firstLine );
+            }
+        }
+
+        return 0L;
+    }
+
+
+    /**
+     * @return The journal file, stored next to the LDIF file
+     */
+    private File getJournalFile()
+    {
+        return new File( new File( getPartitionPath() ).getPath() + JOURNAL_EXTN );
+    }
+
+
+    /**
+     * Opens the journal, and replays the changes it contains if they have been done after the
+     * last checkpoint. A journal written before the last checkpoint is discarded : the
+     * server has been stopped after the LDIF file has been rewritten, but before the journal
+     * has been truncated.
+     */
+    private void openJournal() throws LdapException
+    {
+        try
+        {
+            journalFile = new RandomAccessFile( getJournalFile(), "rws" );
+
+            if ( ( journalFile.length() > 0L ) && ( readCheckpointNumber( journalFile ) == checkpointNumber ) )
+            {
+                replayJournal();
+            }
+            else
+            {
+                resetJournal();
+            }
+        }
+        catch ( IOException ioe )
+        {
+            throw new LdapOtherException( ioe.getMessage(), ioe );
+        }
+    }
+
+
+    /**
+     * Empties the journal, and writes the current checkpoint number in it.
+     */
+    private void resetJournal() throws IOException
+    {
+        journalFile.setLength( 0L );
+        journalFile.write( Strings.getBytesUtf8( CHECKPOINT_HEADER + checkpointNumber + "\n\n" ) );
+        journalSize = 0L;
+    }
+
+
+    /**
+     * Applies the change records stored in the journal. Each record is written along with the
+     * empty line following it : if the server has crashed while a record was being written, the
+     * last record is not followed by an empty line. It is then ignored, and removed from the journal.
+     */
+    private void replayJournal() throws IOException, LdapException
+    {
+        long recordStart = 0L;
+        StringBuilder record = new StringBuilder();
+        PartitionTxn partitionTxn = beginWriteTransaction();
+
+        journalFile.seek( 0L );
+
+        while ( true )
+        {
+            String line = journalFile.readLine();
+
+            if ( line == null )
+            {
+                if ( record.length() > 0 )
+                {
+                    LOG.warn( "Ignoring the incomplete last record of the journal of the {} partition", getId() );
+                    journalFile.setLength( recordStart );
+                }
+
+                break;
+            }
+
+            if ( line.isEmpty() )
+            {
+                if ( record.length() > 0 )
+                {
+                    replayRecord( partitionTxn, record.toString() );
+                    record.setLength( 0 );
+                }
+
+                recordStart = journalFile.getFilePointer();
+            }
+            else if ( !line.startsWith( "#" ) )
+            {
+                record.append( line ).append( '\n' );
+            }
+        }
+
+        journalFile.seek( journalFile.length() );
+        dirty = journalSize > 0L;
+
+        LOG.info( "Replayed {} changes from the journal of the {} partition", journalSize, getId() );
+    }
+
+
+    /**
+     * Applies a change record read from the journal.
+     */
+    private void replayRecord( PartitionTxn partitionTxn, String ldif ) throws IOException, LdapException
+    {
+        // RandomAccessFile.readLine() reads the bytes as ISO-8859-1
+        String record = Strings.utf8ToString( ldif.getBytes( "ISO-8859-1" ) );
+
+        try ( LdifReader reader = new LdifReader() )
+        {
+            for ( LdifEntry change : reader.parseLdif( record ) )
+            {
+                applyChange( partitionTxn, change );
+                journalSize++;
+            }
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void applyChange( PartitionTxn partitionTxn, LdifEntry change ) throws LdapException
+    {
+        super.applyChange( partitionTxn, change );
+
+        if ( change.isChangeAdd() && ( contextEntry == null ) )
+        {
+            Dn dn = new Dn( schemaManager, change.getDn().getName() );
+
+            if ( dn.equals( suffixDn ) )
+            {
+                contextEntry = new DefaultEntry( schemaManager, change.getEntry() );
+                contextEntry.setDn( dn );
+            }
         }
     }
 
@@ -218,7 +450,15 @@ public class SingleFileLdifPartition extends AbstractLdifPartition
             }
 
             dirty = true;
-            rewritePartitionData( addContext.getTransaction() );
+
+            if ( isAppending() )
+            {
+                appendChanges( createAddChange( addContext.getEntry() ) );
+            }
+            else
+            {
+                rewritePartitionData( addContext.getTransaction() );
+            }
         }
     }
 
@@ -250,7 +490,24 @@ public class SingleFileLdifPartition extends AbstractLdifPartition
             }
 
             dirty = true;
-            rewritePartitionData( partitionTxn );
+
+            if ( isAppending() )
+            {
+                LdifEntry change = new LdifEntry();
+                change.setChangeType( ChangeType.Modify );
+                change.setDn( modifyContext.getDn() );
+
+                for ( Modification modification : modifyContext.getModItems() )
+                {
+                    change.addModification( modification );
+                }
+
+                appendChanges( change );
+            }
+            else
+            {
+                rewritePartitionData( partitionTxn );
+            }
         }
     }
 
@@ -263,9 +520,21 @@ public class SingleFileLdifPartition extends AbstractLdifPartition
     {
         synchronized ( lock )
         {
+            PartitionTxn partitionTxn = renameContext.getTransaction();
+            String id = isAppending() ? getEntryId( partitionTxn, renameContext.getDn() ) : null;
+
             super.rename( renameContext );
             dirty = true;
-            rewritePartitionData( renameContext.getTransaction() );
+
+            if ( isAppending() )
+            {
+                appendChanges( createModDnChanges( partitionTxn, id, renameContext.getDn(),
+                    renameContext.getNewRdn(), renameContext.getDeleteOldRdn(), null ) );
+            }
+            else
+            {
+                rewritePartitionData( partitionTxn );
+            }
         }
     }
 
@@ -278,9 +547,21 @@ public class SingleFileLdifPartition extends AbstractLdifPartition
     {
         synchronized ( lock )
         {
+            PartitionTxn partitionTxn = moveContext.getTransaction();
+            String id = isAppending() ? getEntryId( partitionTxn, moveContext.getDn() ) : null;
+
             super.move( moveContext );
             dirty = true;
-            rewritePartitionData( moveContext.getTransaction() );
+
+            if ( isAppending() )
+            {
+                appendChanges( createModDnChanges( partitionTxn, id, moveContext.getDn(),
+                    moveContext.getDn().getRdn(), false, moveContext.getNewSuperior() ) );
+            }
+            else
+            {
+                rewritePartitionData( partitionTxn );
+            }
         }
     }
 
@@ -293,9 +574,21 @@ public class SingleFileLdifPartition extends AbstractLdifPartition
     {
         synchronized ( lock )
         {
+            PartitionTxn partitionTxn = opContext.getTransaction();
+            String id = isAppending() ? getEntryId( partitionTxn, opContext.getDn() ) : null;
+
             super.moveAndRename( opContext );
             dirty = true;
-            rewritePartitionData( opContext.getTransaction() );
+
+            if ( isAppending() )
+            {
+                appendChanges( createModDnChanges( partitionTxn, id, opContext.getDn(), opContext.getNewRdn(),
+                    opContext.getDeleteOldRdn(), opContext.getNewSuperiorDn() ) );
+            }
+            else
+            {
+                rewritePartitionData( partitionTxn );
+            }
         }
     }
 
@@ -305,9 +598,23 @@ public class SingleFileLdifPartition extends AbstractLdifPartition
     {
         synchronized ( lock )
         {
+            Dn dn = isAppending() ? buildEntryDn( partitionTxn, id ) : null;
+
             Entry deletedEntry = super.delete( partitionTxn, id );
             dirty = true;
-            rewritePartitionData( partitionTxn );
+
+            if ( isAppending() )
+            {
+                LdifEntry change = new LdifEntry();
+                change.setChangeType( ChangeType.Delete );
+                change.setDn( dn );
+
+                appendChanges( change );
+            }
+            else
+            {
+                rewritePartitionData( partitionTxn );
+            }
 
             return deletedEntry;
         }
@@ -315,47 +622,111 @@ public class SingleFileLdifPartition extends AbstractLdifPartition
 
 
     /**
-     * writes the partition's data to the file if {@link #enableRewriting} is set to true
-     * and partition was modified since the last write or {@link #dirty} data. 
+     * @return <code>true</code> if the modifications are appended to the journal
+     */
+    private boolean isAppending()
+    {
+        return appendLogEnabled && enableRewriting && ( journalFile != null );
+    }
+
+
+    /**
+     * Appends some change records to the journal, in a single write.
+     */
+    private void appendChanges( LdifEntry... changes ) throws LdapException
+    {
+        StringBuilder sb = new StringBuilder();
+
+        for ( LdifEntry change : changes )
+        {
+            sb.append( LdifUtils.convertToLdif( change ) ).append( '\n' );
+        }
+
+        try
+        {
+            journalFile.write( Strings.getBytesUtf8( sb.toString() ) );
+            journalSize += changes.length;
+        }
+        catch ( IOException ioe )
+        {
+            throw new LdapOtherException( ioe.getMessage(), ioe );
+        }
+    }
+
+
+    /**
+     * Writes all the partition data in the LDIF file and empties the journal. The data is first
+     * written into a temporary file, which then replaces the LDIF file. Does nothing if the
+     * partition has not been modified since the last checkpoint.
      * 
-     * @throws LdapException
+     * @throws LdapException If the checkpoint failed
      */
-    private void rewritePartitionData( PartitionTxn partitionTxn ) throws LdapException
+    public void checkpoint() throws LdapException
     {
         synchronized ( lock )
         {
-            if ( !enableRewriting || !dirty )
+            if ( !isAppending() || !dirty )
             {
                 return;
             }
 
-            try
-            {
-                ldifFile.setLength( 0 ); // wipe the file clean
-
-                String suffixId = getEntryId( partitionTxn, suffixDn );
+            File partitionFile = new File( getPartitionPath() );
+            File checkpointFile = new File( partitionFile.getPath() + CHECKPOINT_EXTN );
+            long number = checkpointNumber + 1;
 
-                if ( suffixId == null )
+            try ( PartitionTxn partitionTxn = beginReadTransaction() )
+            {
+                try ( RandomAccessFile out = new RandomAccessFile( checkpointFile, "rw" ) )
                 {
-                    contextEntry = null;
-                    return;
+                    out.setLength( 0L );
+                    out.write( Strings.getBytesUtf8( CHECKPOINT_HEADER + number + "\n\n" ) );
+                    writePartitionData( partitionTxn, out );
+                    out.getFD().sync();
                 }
 
-                ParentIdAndRdn suffixEntry = rdnIdx.reverseLookup( partitionTxn, suffixId );
+                ldifFile.close();
+                Files.move( checkpointFile.toPath(), partitionFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE );
+                ldifFile = new RandomAccessFile( partitionFile, "rws" );
 
-                if ( suffixEntry != null )
-                {
-                    Entry entry = master.get( partitionTxn, suffixId );
+                // A crash here is harmless, the old journal is ignored as its number does not match anymore
+                checkpointNumber = number;
+                LOG.debug( "Checkpoint {} of the {} partition, {} changes written", number, getId(), journalSize );
+                resetJournal();
+                dirty = false;
+            }
+            catch ( LdapException le )
+            {
+                throw le;
+            }
+            catch ( Exception e )
+            {
+                throw new LdapOtherException( e.getMessage(), e );
+            }
+        }
+    }
 
-                    // Don't write the EntryDN attribute
-                    entry.removeAttributes( entryDnAT );
 
-                    entry.setDn( suffixDn );
+    /**
+     * writes the partition's data to the file if {@link #enableRewriting} is set to true
+     * and partition was modified since the last write or {@link #dirty} data. 
+     * 
+     * @throws LdapException
+     */
+    private void rewritePartitionData( PartitionTxn partitionTxn ) throws LdapException
+    {
+        synchronized ( lock )
+        {
+            if ( !enableRewriting || !dirty )
+            {
+                return;
+            }
 
-                    appendLdif( entry );
+            try
+            {
+                ldifFile.setLength( 0 ); // wipe the file clean
 
-                    appendRecursive( partitionTxn, suffixId, suffixEntry.getNbChildren() );
-                }
+                writePartitionData( partitionTxn, ldifFile );
 
                 dirty = false;
             }
@@ -371,7 +742,39 @@ public class SingleFileLdifPartition extends AbstractLdifPartition
     }
 
 
-    private void appendRecursive( PartitionTxn partitionTxn, String id, int nbSibbling ) throws Exception
+    /**
+     * Writes all the entries, starting with the context entry.
+     */
+    private void writePartitionData( PartitionTxn partitionTxn, DataOutput out ) throws Exception
+    {
+        String suffixId = getEntryId( partitionTxn, suffixDn );
+
+        if ( suffixId == null )
+        {
+            contextEntry = null;
+            return;
+        }
+
+        ParentIdAndRdn suffixEntry = rdnIdx.reverseLookup( partitionTxn, suffixId );
+
+        if ( suffixEntry != null )
+        {
+            Entry entry = master.get( partitionTxn, suffixId );
+
+            // Don't write the EntryDN attribute
+            entry.removeAttributes( entryDnAT );
+
+            entry.setDn( suffixDn );
+
+            appendLdif( out, entry );
+
+            appendRecursive( partitionTxn, out, suffixId, suffixEntry.getNbChildren() );
+        }
+    }
+
+
+    private void appendRecursive( PartitionTxn partitionTxn, DataOutput out, String id, int nbSibbling )
+        throws Exception
     {
         // Start with the root
         Cursor<IndexEntry<ParentIdAndRdn, String>> cursor = rdnIdx.forwardCursor( partitionTxn );
@@ -390,7 +793,7 @@ public class SingleFileLdifPartition extends AbstractLdifPartition
             // Remove the EntryDn
             entry.removeAttributes( SchemaConstants.ENTRY_DN_AT );
 
-            appendLdif( entry );
+            appendLdif( out, entry );
 
             countChildren++;
 
@@ -399,7 +802,7 @@ public class SingleFileLdifPartition extends AbstractLdifPartition
 
             if ( nbChildren > 0 )
             {
-                appendRecursive( partitionTxn, childId, nbChildren );
+                appendRecursive( partitionTxn, out, childId, nbChildren );
             }
         }
 
@@ -410,15 +813,16 @@ public class SingleFileLdifPartition extends AbstractLdifPartition
     /**
      * append data to the LDIF file
      *
+     * @param out the file to write into
      * @param entry the entry to be written
      * @throws LdapException
      */
-    private void appendLdif( Entry entry ) throws IOException, LdapException
+    private void appendLdif( DataOutput out, Entry entry ) throws IOException, LdapException
     {
         synchronized ( lock )
         {
             String ldif = LdifUtils.convertToLdif( entry );
-            ldifFile.write( Strings.getBytesUtf8( ldif + "\n" ) );
+            out.write( Strings.getBytesUtf8( ldif + "\n" ) );
         }
     }
 
@@ -502,11 +906,26 @@ public class SingleFileLdifPartition extends AbstractLdifPartition
     @Override
     protected void doDestroy( PartitionTxn partitionTxn ) throws LdapException
     {
+        if ( checkpointTimer != null )
+        {
+            checkpointTimer.cancel();
+            checkpointTimer = null;
+        }
+
+        // Write the journaled changes in the LDIF file, so that the next startup is fast
+        checkpoint();
+
         super.doDestroy( partitionTxn );
         
         try
         {
             ldifFile.close();
+
+            if ( journalFile != null )
+            {
+                journalFile.close();
+                journalFile = null;
+            }
         }
         catch ( IOException ioe )
         {
@@ -527,6 +946,69 @@ public class SingleFileLdifPartition extends AbstractLdifPartition
         this.enableRewriting = enableRewriting;
 
         // save data if found dirty 
-        rewritePartitionData( partitionTxn );
+        if ( appendLogEnabled )
+        {
+            checkpoint();
+        }
+        else
+        {
+            rewritePartitionData( partitionTxn );
+        }
+    }
+
+
+    /**
+     * @return <code>true</code> if the modifications are appended to a journal instead of
+     * rewriting the LDIF file
+     */
+    public boolean isAppendLogEnabled()
+    {
+        return appendLogEnabled;
+    }
+
+
+    /**
+     * Appends the modifications to a journal stored next to the LDIF file, instead of rewriting
+     * the whole LDIF file after each modification. The LDIF file is rewritten by periodic
+     * checkpoints, and when the partition is destroyed.
+     * 
+     * @param appendLogEnabled <code>true</code> to append the modifications to a journal
+     */
+    public void setAppendLogEnabled( boolean appendLogEnabled )
+    {
+        checkInitialized( "appendLogEnabled" );
+        this.appendLogEnabled = appendLogEnabled;
+    }
+
+
+    /**
+     * @return The delay between two checkpoints, in milliseconds
+     */
+    public long getCheckpointInterval()
+    {
+        return checkpointInterval;
+    }
+
+
+    /**
+     * @param checkpointInterval The delay between two checkpoints, in milliseconds, 0 to
+     * only write a checkpoint when the partition is destroyed
+     */
+    public void setCheckpointInterval( long checkpointInterval )
+    {
+        checkInitialized( "checkpointInterval" );
+        this.checkpointInterval = checkpointInterval;
+    }
+
+
+    /**
+     * @return The number of change records appended to the journal since the last checkpoint
+     */
+    public long getJournalSize()
+    {
+        synchronized ( lock )
+        {
+            return journalSize;
+        }
     }
 }
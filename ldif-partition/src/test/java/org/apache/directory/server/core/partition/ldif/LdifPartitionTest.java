@@ -777,6 +777,85 @@ public class LdifPartitionTest
     }
 
 
+    @Test
+    public void testWriteBehind() throws Exception
+    {
+        File dir = folder.newFolder( "write-behind" );
+        LdifPartition writeBehindPartition = createWriteBehindPartition( dir );
+
+        Entry contextEntry = createEntry( "ou=test, ou=system" );
+        contextEntry.put( "objectClass", "top", "organizationalUnit" );
+        contextEntry.put( "ou", "test" );
+
+        AddOperationContext addContext = new AddOperationContext( null, contextEntry );
+        addContext.setPartition( writeBehindPartition );
+        addContext.setTransaction( writeBehindPartition.beginWriteTransaction() );
+        writeBehindPartition.add( addContext );
+
+        for ( int i = 0; i < 3; i++ )
+        {
+            Entry child = createEntry( "dc=child" + i + ",ou=test,ou=system" );
+            child.put( "ObjectClass", "top", "domain" );
+            child.put( "dc", "child" + i );
+            addContext.setEntry( child );
+            writeBehindPartition.add( addContext );
+        }
+
+        Dn childDn1 = new Dn( schemaManager, "dc=child1,ou=test,ou=system" );
+        DeleteOperationContext deleteContext = new DeleteOperationContext( null, childDn1 );
+        deleteContext.setPartition( writeBehindPartition );
+        deleteContext.setTransaction( writeBehindPartition.beginWriteTransaction() );
+        writeBehindPartition.delete( deleteContext );
+
+        // Nothing has been written yet, but the entries are visible
+        assertFalse( new File( dir, "ou=test,ou=system/dc=child0.ldif" ).exists() );
+        assertNotNull( writeBehindPartition.getEntryId( writeBehindPartition.beginReadTransaction(),
+            new Dn( schemaManager, "dc=child0,ou=test,ou=system" ) ) );
+        assertEquals( 4, writeBehindPartition.getPendingWriteCount() );
+
+        // Simulate a crash : the entries are recovered from the journal by a new partition
+        LdifPartition recoveredPartition = createWriteBehindPartition( dir );
+
+        assertTrue( new File( dir, "ou=test,ou=system.ldif" ).exists() );
+        assertTrue( new File( dir, "ou=test,ou=system/dc=child0.ldif" ).exists() );
+        assertFalse( new File( dir, "ou=test,ou=system/dc=child1.ldif" ).exists() );
+        assertTrue( new File( dir, "ou=test,ou=system/dc=child2.ldif" ).exists() );
+        assertEquals( 3L, recoveredPartition.count( recoveredPartition.beginReadTransaction() ) );
+        assertEquals( 0, recoveredPartition.getPendingWriteCount() );
+
+        // And the files are written when flushing
+        Dn childDn2 = new Dn( schemaManager, "dc=child2,ou=test,ou=system" );
+        deleteContext = new DeleteOperationContext( null, childDn2 );
+        deleteContext.setPartition( recoveredPartition );
+        deleteContext.setTransaction( recoveredPartition.beginWriteTransaction() );
+        recoveredPartition.delete( deleteContext );
+
+        assertTrue( new File( dir, "ou=test,ou=system/dc=child2.ldif" ).exists() );
+
+        recoveredPartition.flush();
+
+        assertFalse( new File( dir, "ou=test,ou=system/dc=child2.ldif" ).exists() );
+        assertEquals( 0, recoveredPartition.getPendingWriteCount() );
+        assertEquals( 0L, new File( dir, "ou=test,ou=system.journal" ).length() );
+    }
+
+
+    private LdifPartition createWriteBehindPartition( File dir ) throws Exception
+    {
+        LdifPartition writeBehindPartition = new LdifPartition( schemaManager, dnFactory );
+        writeBehindPartition.setId( "test-ldif" );
+        writeBehindPartition.setSuffixDn( new Dn( schemaManager, "ou=test,ou=system" ) );
+        writeBehindPartition.setSchemaManager( schemaManager );
+        writeBehindPartition.setPartitionPath( dir.toURI() );
+        writeBehindPartition.setCacheService( cacheService );
+        writeBehindPartition.setWriteBehindEnabled( true );
+        writeBehindPartition.setWriteBehindDelay( 60000L );
+        writeBehindPartition.initialize();
+
+        return writeBehindPartition;
+    }
+
+
     private CoreSession injectEntries() throws Exception
     {
         Dn adminDn = new Dn( schemaManager, "uid=admin,ou=system" );
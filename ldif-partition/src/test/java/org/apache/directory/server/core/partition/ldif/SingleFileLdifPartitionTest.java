@@ -32,6 +32,7 @@ import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -1134,6 +1135,100 @@ public class SingleFileLdifPartitionTest
     }
 
 
+    private SingleFileLdifPartition createAppendLogPartition() throws Exception
+    {
+        SingleFileLdifPartition partition = new SingleFileLdifPartition( schemaManager, dnFactory );
+        partition.setId( "test-ldif" );
+        partition.setPartitionPath( ldifFileInUse.toURI() );
+        partition.setSuffixDn( new Dn( schemaManager, "ou=test,ou=system" ) );
+        partition.setSchemaManager( schemaManager );
+        partition.setCacheService( cacheService );
+        partition.setAppendLogEnabled( true );
+        partition.setCheckpointInterval( 0L );
+        partition.initialize();
+
+        return partition;
+    }
+
+
+    @Test
+    public void testAppendLog() throws Exception
+    {
+        RandomAccessFile rf = new RandomAccessFile( ldifFileInUse, "rws" );
+        rf.setLength( 0 );
+        rf.close();
+
+        SingleFileLdifPartition partition = injectEntries( createAppendLogPartition() );
+
+        // Modify an entry
+        Dn childDn2 = new Dn( schemaManager, "cn=child2,ou=test,ou=system" );
+        Attribute attribute = new DefaultAttribute( schemaManager.lookupAttributeTypeRegistry( "description" ) );
+        attribute.add( "appended" );
+
+        ModifyOperationContext modOpCtx = new ModifyOperationContext( mockSession );
+        modOpCtx.setDn( childDn2 );
+        modOpCtx.setModItems( Arrays.<Modification>asList(
+            new DefaultModification( ModificationOperation.ADD_ATTRIBUTE, attribute ) ) );
+        modOpCtx.setPartition( partition );
+        modOpCtx.setTransaction( partition.beginWriteTransaction() );
+        partition.modify( modOpCtx );
+
+        // Rename an entry with children
+        Dn childDn1 = new Dn( schemaManager, "cn=child1,ou=test,ou=system" );
+        RenameOperationContext renameOpCtx = new RenameOperationContext( mockSession, childDn1,
+            new Rdn( schemaManager, "cn=renamedChild1" ), true );
+        renameOpCtx.setPartition( partition );
+        renameOpCtx.setTransaction( partition.beginWriteTransaction() );
+        partition.rename( renameOpCtx );
+
+        // Move an entry
+        MoveOperationContext moveOpCtx = new MoveOperationContext( mockSession,
+            new Dn( schemaManager, "cn=grandChild12,cn=renamedChild1,ou=test,ou=system" ), childDn2 );
+        moveOpCtx.setPartition( partition );
+        moveOpCtx.setTransaction( partition.beginWriteTransaction() );
+        partition.move( moveOpCtx );
+
+        // Delete an entry
+        Dn greatGrandChildDn = new Dn( schemaManager,
+            "cn=greatGrandChild111,cn=grandChild11,cn=renamedChild1,ou=test,ou=system" );
+        PartitionTxn partitionTxn = partition.beginWriteTransaction();
+        partition.delete( partitionTxn, partition.getEntryId( partitionTxn, greatGrandChildDn ) );
+
+        // The LDIF file has not been written, the changes are in the journal
+        assertEquals( 0L, ldifFileInUse.length() );
+        assertEquals( 12L, partition.getJournalSize() );
+
+        // Restart, the journal is replayed
+        partition = createAppendLogPartition();
+        assertEquals( 12L, partition.getJournalSize() );
+
+        assertExists( partition, "cn=renamedChild1,ou=test,ou=system" );
+        assertExists( partition, "cn=grandChild11,cn=renamedChild1,ou=test,ou=system" );
+        assertExists( partition, "cn=grandChild12,cn=child2,ou=test,ou=system" );
+
+        partitionTxn = partition.beginReadTransaction();
+        assertNull( partition.getEntryId( partitionTxn, childDn1 ) );
+        assertNull( partition.getEntryId( partitionTxn, greatGrandChildDn ) );
+
+        Entry child2 = partition.fetch( partitionTxn, partition.getEntryId( partitionTxn, childDn2 ) );
+        assertTrue( child2.contains( "description", "appended" ) );
+
+        Entry renamed = partition.fetch( partitionTxn, partition.getEntryId( partitionTxn,
+            new Dn( schemaManager, "cn=renamedChild1,ou=test,ou=system" ) ) );
+        assertFalse( renamed.get( "cn" ).contains( "child1" ) );
+
+        // A checkpoint writes the LDIF file and empties the journal
+        partition.checkpoint();
+        assertEquals( 0L, partition.getJournalSize() );
+        assertTrue( ldifFileInUse.length() > 0L );
+
+        // The LDIF file can be read without the journal
+        partition = reloadPartition();
+        assertExists( partition, "cn=grandChild12,cn=child2,ou=test,ou=system" );
+        assertNull( partition.getEntryId( partition.beginReadTransaction(), greatGrandChildDn ) );
+    }
+
+
     /**
      * An important test to check the stability of the partition
      * under high concurrency
@@ -1405,7 +1500,12 @@ public class SingleFileLdifPartitionTest
 
     private SingleFileLdifPartition injectEntries() throws Exception
     {
-        SingleFileLdifPartition partition = createPartition( null, true );
+        return injectEntries( createPartition( null, true ) );
+    }
+
+
+    private SingleFileLdifPartition injectEntries( SingleFileLdifPartition partition ) throws Exception
+    {
         AddOperationContext addCtx = new AddOperationContext( mockSession );
         addCtx.setEntry( contextEntry );
         addCtx.setPartition( partition );
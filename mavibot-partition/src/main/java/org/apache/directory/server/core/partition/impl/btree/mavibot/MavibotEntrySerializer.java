@@ -21,12 +21,10 @@ package org.apache.directory.server.core.partition.impl.btree.mavibot;
 
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutput;
-import java.io.ObjectOutputStream;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.Comparator;
 
 import org.apache.directory.api.ldap.model.entry.Attribute;
@@ -42,6 +40,8 @@ import org.apache.directory.api.ldap.model.schema.SchemaManager;
 import org.apache.directory.mavibot.btree.serializer.AbstractElementSerializer;
 import org.apache.directory.mavibot.btree.serializer.BufferHandler;
 import org.apache.directory.server.i18n.I18n;
+import org.apache.directory.server.xdbm.CompactEntryCodec;
+import org.apache.directory.server.xdbm.ValueCompression;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -50,6 +50,10 @@ import org.slf4j.LoggerFactory;
  * Serialize and deserialize a ServerEntry. There is a big difference with the standard
  * Entry serialization : we don't serialize the entry's Dn, we just serialize it's Rdn.
  * </br></br>
+ * The entries are written using the {@link CompactEntryCodec} format, shared with the JDBM
+ * partition. Entries written with the previous, ObjectOutputStream based, format are still
+ * readable.
+ * </br></br>
  * <b>This class must *not* be used outside of the server.</b>
  *  
  * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
@@ -70,6 +74,18 @@ public class MavibotEntrySerializer extends AbstractElementSerializer<Entry>
     /** The schemaManager reference */
     private static SchemaManager schemaManager;
 
+    /** The codec used to read and write the uncompressed entries */
+    private static CompactEntryCodec codec;
+
+    /** The compression policy of the entries, null if nothing is compressed */
+    private final ValueCompression compression;
+
+    /** The codec used to write the entries with the compression policy */
+    private transient CompactEntryCodec compressingCodec;
+
+    /** The schemaManager the compressing codec has been created with */
+    private transient SchemaManager codecSchemaManager;
+
     private static class EntryComparator implements Comparator<Entry>
     {
 
@@ -89,8 +105,21 @@ public class MavibotEntrySerializer extends AbstractElementSerializer<Entry>
      * The schemaManager MUST be set explicitly using the static {@link #setSchemaManager(SchemaManager)}
      */
     public MavibotEntrySerializer()
+    {
+        this( null );
+    }
+
+
+    /**
+     * Creates a new instance of ServerEntrySerializer, compressing the written entries.
+     * The compressed entries can be read whatever the compression policy.
+     *
+     * @param compression The compression policy, null to leave the entries uncompressed
+     */
+    public MavibotEntrySerializer( ValueCompression compression )
     {
         super( comparator );
+        this.compression = compression;
     }
 
 
@@ -102,75 +131,14 @@ public class MavibotEntrySerializer extends AbstractElementSerializer<Entry>
 
 
     /**
-     * <p>
-     * 
-     * This is the place where we serialize entries, and all theirs
-     * elements. the reason why we don't call the underlying methods
-     * (<code>ServerAttribute.write(), Value.write()</code>) is that we need
-     * access to the registries to read back the values.
-     * <p>
-     * The structure used to store the entry is the following :
-     * <ul>
-     *   <li><b>[a byte]</b> : if the Dn is empty 0 will be written else 1</li>
-     *   <li><b>[Rdn]</b> : The entry's Rdn.</li>
-     *   <li><b>[numberAttr]</b> : the bumber of attributes. Can be 0</li>
-     *   <li>For each Attribute :
-     *     <ul>
-     *       <li><b>[attribute's oid]</b> : The attribute's OID to get back
-     *       the attributeType on deserialization</li>
-     *       <li><b>[Attribute]</b> The attribute</li>
-     *     </ul>
-     *   </li>
-     * </ul>
+     * Serializes an entry using the {@link CompactEntryCodec} format. The AttributeType OIDs
+     * are stored in the entry.
      */
     public byte[] serialize( Entry entry )
     {
         try
         {
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-
-            ObjectOutput out = new ObjectOutputStream( baos );
-
-            // First, the Dn
-            Dn dn = entry.getDn();
-
-            // Write the Rdn of the Dn
-            if ( dn.isEmpty() )
-            {
-                out.writeByte( 0 );
-            }
-            else
-            {
-                out.writeByte( 1 );
-                Rdn rdn = dn.getRdn();
-                rdn.writeExternal( out );
-            }
-
-            // Then the attributes.
-            out.writeInt( entry.getAttributes().size() );
-
-            // Iterate through the keys. We store the Attribute
-            // here, to be able to restore it in the readExternal :
-            // we need access to the registries, which are not available
-            // in the ServerAttribute class.
-            for ( Attribute attribute : entry.getAttributes() )
-            {
-                AttributeType attributeType = attribute.getAttributeType();
-
-                // Write the oid to be able to restore the AttributeType when deserializing
-                // the attribute
-                String oid = attributeType.getOid();
-
-                out.writeUTF( oid );
-
-                // Write the attribute
-                attribute.writeExternal( out );
-            }
-
-            out.flush();
-
-            // Note : we don't store the ObjectClassAttribute. It has already
-            // been stored as an attribute.
+            byte[] bytes = getCodec().encode( entry );
 
             if ( IS_DEBUG )
             {
@@ -178,8 +146,6 @@ public class MavibotEntrySerializer extends AbstractElementSerializer<Entry>
                 LOG.debug( "Serialize " + entry );
             }
 
-            byte[] bytes = baos.toByteArray();
-
             return bytes;
         }
         catch ( Exception e )
@@ -201,73 +167,11 @@ public class MavibotEntrySerializer extends AbstractElementSerializer<Entry>
         // read the length
         int len = buffer.limit();
 
-        ObjectInputStream in = new ObjectInputStream( new ByteArrayInputStream( buffer.array(), buffer.position(), len ) );
-
-        try
-        {
-            Entry entry = new DefaultEntry( schemaManager );
-
-            // Read the Dn, if any
-            byte hasDn = in.readByte();
-
-            if ( hasDn == 1 )
-            {
-                Rdn rdn = new Rdn( schemaManager );
-                rdn.readExternal( in );
-
-                try
-                {
-                    entry.setDn( new Dn( schemaManager, rdn ) );
-                }
-                catch ( LdapInvalidDnException lide )
-                {
-                    IOException ioe = new IOException( lide.getMessage() );
-                    ioe.initCause( lide );
-                    throw ioe;
-                }
-            }
-            else
-            {
-                entry.setDn( Dn.EMPTY_DN );
-            }
+        Entry entry = read( buffer.array(), buffer.position(), len );
 
-            // Read the number of attributes
-            int nbAttributes = in.readInt();
+        buffer.position( buffer.position() + len ); // previous position + length
 
-            // Read the attributes
-            for ( int i = 0; i < nbAttributes; i++ )
-            {
-                // Read the attribute's OID
-                String oid = in.readUTF();
-
-                try
-                {
-                    AttributeType attributeType = schemaManager.lookupAttributeTypeRegistry( oid );
-
-                    // Create the attribute we will read
-                    Attribute attribute = new DefaultAttribute( attributeType );
-
-                    // Read the attribute
-                    attribute.readExternal( in );
-
-                    entry.add( attribute );
-                }
-                catch ( LdapException ne )
-                {
-                    // We weren't able to find the OID. The attribute will not be added
-                    throw new ClassNotFoundException( ne.getMessage(), ne );
-                }
-            }
-
-            buffer.position( buffer.position() + len ); // previous position + length
-
-            return entry;
-        }
-        catch ( ClassNotFoundException cnfe )
-        {
-            LOG.error( I18n.err( I18n.ERR_134, cnfe.getLocalizedMessage() ) );
-            throw new IOException( cnfe.getLocalizedMessage() );
-        }
+        return entry;
     }
 
 
@@ -281,6 +185,28 @@ public class MavibotEntrySerializer extends AbstractElementSerializer<Entry>
     public static void setSchemaManager( SchemaManager schemaManager )
     {
         MavibotEntrySerializer.schemaManager = schemaManager;
+        MavibotEntrySerializer.codec = new CompactEntryCodec( schemaManager, null, null );
+    }
+
+
+    /**
+     * @return The codec writing the entries with the compression policy of this serializer
+     */
+    private CompactEntryCodec getCodec()
+    {
+        if ( compression == null )
+        {
+            return codec;
+        }
+
+        // The schemaManager may have been replaced since the codec has been created
+        if ( ( compressingCodec == null ) || ( codecSchemaManager != schemaManager ) )
+        {
+            codecSchemaManager = schemaManager;
+            compressingCodec = new CompactEntryCodec( schemaManager, null, compression );
+        }
+
+        return compressingCodec;
     }
 
 
@@ -300,9 +226,44 @@ public class MavibotEntrySerializer extends AbstractElementSerializer<Entry>
     @Override
     public Entry fromBytes( byte[] buffer, int pos ) throws IOException
     {
-        // read the length
-        int len = buffer.length - pos;
+        return read( buffer, pos, buffer.length - pos );
+    }
+
 
+    /**
+     * Reads an entry, using the legacy format if needed
+     */
+    private Entry read( byte[] buffer, int pos, int len ) throws IOException
+    {
+        if ( CompactEntryCodec.isLegacy( buffer, pos ) )
+        {
+            return readLegacy( buffer, pos, len );
+        }
+
+        // The attributes will be decoded when accessed, so we can't keep a reference on a buffer
+        // which may be reused
+        return codec.decodeLazily( Arrays.copyOfRange( buffer, pos, pos + len ), 0, len );
+    }
+
+
+    /**
+     * Reads an entry written with the previous format :
+     * <ul>
+     *   <li><b>[a byte]</b> : if the Dn is empty 0 will be written else 1</li>
+     *   <li><b>[Rdn]</b> : The entry's Rdn.</li>
+     *   <li><b>[numberAttr]</b> : the bumber of attributes. Can be 0</li>
+     *   <li>For each Attribute :
+     *     <ul>
+     *       <li><b>[attribute's oid]</b> : The attribute's OID to get back
+     *       the attributeType on deserialization</li>
+     *       <li><b>[Attribute]</b> The attribute</li>
+     *     </ul>
+     *   </li>
+     * </ul>
+     * all of it being written by an ObjectOutputStream.
+     */
+    private Entry readLegacy( byte[] buffer, int pos, int len ) throws IOException
+    {
         ObjectInputStream in = new ObjectInputStream( new ByteArrayInputStream( buffer, pos, len ) );
 
         try
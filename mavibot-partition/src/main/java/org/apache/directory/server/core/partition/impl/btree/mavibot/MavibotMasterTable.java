@@ -28,6 +28,7 @@ import org.apache.directory.api.ldap.model.schema.SchemaManager;
 import org.apache.directory.mavibot.btree.RecordManager;
 import org.apache.directory.mavibot.btree.serializer.StringSerializer;
 import org.apache.directory.server.xdbm.MasterTable;
+import org.apache.directory.server.xdbm.ValueCompression;
 
 
 /**
@@ -40,7 +41,25 @@ public class MavibotMasterTable extends MavibotTable<String, Entry> implements M
     public MavibotMasterTable( RecordManager recordMan, SchemaManager schemaManager, String name, int cacheSize )
         throws IOException
     {
-        super( recordMan, schemaManager, name, StringSerializer.INSTANCE, new MavibotEntrySerializer(), false, cacheSize );
+        this( recordMan, schemaManager, name, cacheSize, null );
+    }
+
+
+    /**
+     * Creates a master table compressing the stored entries.
+     *
+     * @param recordMan The record manager
+     * @param schemaManager The server schemaManager
+     * @param name The table name
+     * @param cacheSize The table cache size
+     * @param compression The compression policy of the entries, null if nothing is compressed
+     * @throws IOException If the table can't be created
+     */
+    public MavibotMasterTable( RecordManager recordMan, SchemaManager schemaManager, String name, int cacheSize,
+        ValueCompression compression ) throws IOException
+    {
+        super( recordMan, schemaManager, name, StringSerializer.INSTANCE, new MavibotEntrySerializer( compression ),
+            false, cacheSize );
     }
 
     public MavibotMasterTable( RecordManager recordMan, SchemaManager schemaManager, String name )
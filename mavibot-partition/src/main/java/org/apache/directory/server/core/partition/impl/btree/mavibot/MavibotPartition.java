@@ -59,8 +59,10 @@ import org.apache.directory.server.core.api.partition.PartitionReadTxn;
 import org.apache.directory.server.core.api.partition.PartitionTxn;
 import org.apache.directory.server.core.api.partition.PartitionWriteTxn;
 import org.apache.directory.server.core.partition.impl.btree.AbstractBTreePartition;
+import org.apache.directory.server.core.partition.impl.btree.OffHeapEntryCache;
 import org.apache.directory.server.i18n.I18n;
 import org.apache.directory.server.xdbm.Index;
+import org.apache.directory.server.xdbm.ValueCompression;
 import org.apache.directory.server.xdbm.search.impl.CursorBuilder;
 import org.apache.directory.server.xdbm.search.impl.DefaultOptimizer;
 import org.apache.directory.server.xdbm.search.impl.DefaultSearchEngine;
@@ -98,6 +100,12 @@ public class MavibotPartition extends AbstractBTreePartition
     /** the entry cache */
     private Cache entryCache;
 
+    /** the off-heap entry cache, used instead of the entry cache when configured */
+    private OffHeapEntryCache offHeapEntryCache;
+
+    /** the serializer used to store the entries into the off-heap cache */
+    private MavibotEntrySerializer offHeapSerializer;
+
 
     public MavibotPartition( SchemaManager schemaManager, DnFactory dnFactory )
     {
@@ -169,6 +177,9 @@ public class MavibotPartition extends AbstractBTreePartition
                 LOG.debug( "Using the custom configured cache size of {} for {} partition", cacheSize, id );
             }
 
+            // Each partition has its own compression policy
+            ValueCompression valueCompression = getValueCompression();
+
             recordMan = new RecordManager( partitionDir.getPath() );
 
             // Initialize the indexes
@@ -181,7 +192,8 @@ public class MavibotPartition extends AbstractBTreePartition
             
             try
             {
-                master = new MavibotMasterTable( recordMan, schemaManager, "master", masterTableCache.getCacheConfiguration().getMaxElementsInMemory() );
+                master = new MavibotMasterTable( recordMan, schemaManager, "master",
+                    masterTableCache.getCacheConfiguration().getMaxElementsInMemory(), valueCompression );
             }
             catch ( IOException ioe )
             {
@@ -233,7 +245,13 @@ public class MavibotPartition extends AbstractBTreePartition
                         deleteUnusedIndexFiles( allIndices, allIndexDbFiles );
             */
 
-            if ( cacheService != null )
+            if ( offHeapCacheSize > 0 )
+            {
+                LOG.debug( "Using an off-heap entry cache of {} bytes for {} partition", offHeapCacheSize, id );
+                offHeapEntryCache = new OffHeapEntryCache( offHeapCacheSize );
+                offHeapSerializer = new MavibotEntrySerializer( valueCompression );
+            }
+            else if ( cacheService != null )
             {
                 entryCache = cacheService.getCache( getId() );
                 
@@ -335,6 +353,11 @@ public class MavibotPartition extends AbstractBTreePartition
             {
                 entryCache.removeAll();
             }
+
+            if ( offHeapEntryCache != null )
+            {
+                offHeapEntryCache.clear();
+            }
         }
 
         if ( errors.size() > 0 )
@@ -453,6 +476,28 @@ public class MavibotPartition extends AbstractBTreePartition
 
     public Entry lookupCache( String id )
     {
+        if ( offHeapEntryCache != null )
+        {
+            byte[] bytes = offHeapEntryCache.get( id );
+
+            if ( bytes == null )
+            {
+                return null;
+            }
+
+            try
+            {
+                return offHeapSerializer.fromBytes( bytes );
+            }
+            catch ( IOException ioe )
+            {
+                LOG.warn( "Failed to deserialize the cached entry {}", id, ioe );
+                offHeapEntryCache.remove( id );
+
+                return null;
+            }
+        }
+
         if ( entryCache == null )
         {
             return null;
@@ -472,6 +517,13 @@ public class MavibotPartition extends AbstractBTreePartition
     @Override
     public void addToCache( String id, Entry entry )
     {
+        if ( offHeapEntryCache != null )
+        {
+            putOffHeap( id, entry );
+
+            return;
+        }
+
         if ( entryCache == null )
         {
             return;
@@ -489,6 +541,13 @@ public class MavibotPartition extends AbstractBTreePartition
     @Override
     public void updateCache( OperationContext opCtx )
     {
+        if ( offHeapEntryCache != null )
+        {
+            updateOffHeapCache( opCtx );
+
+            return;
+        }
+
         if ( entryCache == null )
         {
             return;
@@ -529,7 +588,65 @@ public class MavibotPartition extends AbstractBTreePartition
         }
     }
 
-    
+
+    /**
+     * Updates the off-heap cache based on the type of OperationContext
+     */
+    private void updateOffHeapCache( OperationContext opCtx )
+    {
+        try
+        {
+            if ( opCtx instanceof ModifyOperationContext )
+            {
+                // replace the entry
+                Entry entry = ( ( ModifyOperationContext ) opCtx ).getAlteredEntry();
+                putOffHeap( entry.get( SchemaConstants.ENTRY_UUID_AT ).getString(), entry );
+            }
+            else if ( ( opCtx instanceof MoveOperationContext ) || ( opCtx instanceof MoveAndRenameOperationContext )
+                || ( opCtx instanceof RenameOperationContext ) )
+            {
+                // clear the cache it is not worth updating all the children
+                offHeapEntryCache.clear();
+            }
+            else if ( opCtx instanceof DeleteOperationContext )
+            {
+                // delete the entry
+                DeleteOperationContext delCtx = ( DeleteOperationContext ) opCtx;
+                offHeapEntryCache.remove( delCtx.getEntry().get( SchemaConstants.ENTRY_UUID_AT ).getString() );
+            }
+        }
+        catch ( LdapException e )
+        {
+            LOG.warn( "Failed to update entry cache", e );
+        }
+    }
+
+
+    /**
+     * Serializes an entry and stores it into the off-heap cache
+     */
+    private void putOffHeap( String id, Entry entry )
+    {
+        Entry addedEntry = entry;
+
+        if ( entry instanceof ClonedServerEntry )
+        {
+            addedEntry = ( ( ClonedServerEntry ) entry ).getOriginalEntry();
+        }
+
+        try
+        {
+            offHeapEntryCache.put( id, offHeapSerializer.serialize( addedEntry ) );
+        }
+        catch ( RuntimeException | OutOfMemoryError e )
+        {
+            // Not a problem, the entry will be read from the master table
+            LOG.warn( "Failed to store the entry {} in the off-heap cache", id, e );
+            offHeapEntryCache.remove( id );
+        }
+    }
+
+
     /**
      * @return The set of system and user indexes
      */
@@ -35,6 +35,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Executor;
 
 import javax.net.ssl.KeyManagerFactory;
 
@@ -100,6 +101,7 @@ import org.apache.directory.server.ldap.replication.consumer.ReplicationConsumer
 import org.apache.directory.server.ldap.replication.consumer.ReplicationStatusEnum;
 import org.apache.directory.server.ldap.replication.provider.ReplicationRequestHandler;
 import org.apache.directory.server.protocol.shared.DirectoryBackedService;
+import org.apache.directory.server.protocol.shared.VirtualThreads;
 import org.apache.directory.server.protocol.shared.transport.TcpTransport;
 import org.apache.directory.server.protocol.shared.transport.Transport;
 import org.apache.directory.server.protocol.shared.transport.UdpTransport;
@@ -144,12 +146,21 @@ public class LdapServer extends DirectoryBackedService
     /** the constant service name of this ldap protocol provider **/
     public static final String SERVICE_NAME = "ldap";
 
+    /** The system property enabling the virtual threads mode */
+    public static final String VIRTUAL_THREADS_PROPERTY = "apacheds.ldap.virtualThreads";
+
     /** The default maximum size limit. */
     private static final long MAX_SIZE_LIMIT_DEFAULT = 100;
 
     /** The default maximum time limit. */
     private static final int MAX_TIME_LIMIT_DEFAULT = 10000;
 
+    /** The default maximum number of transactions started and not yet ended on a session. */
+    private static final int MAX_TRANSACTIONS_DEFAULT = 10;
+
+    /** The default maximum number of updates buffered in a transaction. */
+    private static final int MAX_TRANSACTION_UPDATES_DEFAULT = 1000;
+
     /** The default service pid. */
     private static final String SERVICE_PID_DEFAULT = "org.apache.directory.server.ldap";
 
@@ -177,6 +188,15 @@ public class LdapServer extends DirectoryBackedService
     /** The maximum size for an incoming PDU */
     private int maxPDUSize = Integer.MAX_VALUE;
 
+    /** The maximum number of transactions started and not yet ended on a session */
+    private int maxTransactions = MAX_TRANSACTIONS_DEFAULT;
+
+    /** The maximum number of updates buffered in a transaction */
+    private int maxTransactionUpdates = MAX_TRANSACTION_UPDATES_DEFAULT;
+
+    /** Tells if the requests are processed by virtual threads, when the JDK supports them */
+    private boolean virtualThreadsEnabled = Boolean.getBoolean( VIRTUAL_THREADS_PROPERTY );
+
     /** If LDAPS is activated : the external Keystore file, if defined */
     private String keystoreFile;
 
@@ -523,10 +543,8 @@ public class LdapServer extends DirectoryBackedService
                 .getProtocolCodecFactory() ) );
 
             // Now inject an ExecutorFilter for the write operations
-            // We use the same number of thread than the number of IoProcessor
-            // (NOTE : this has to be double checked)
             ( ( DefaultIoFilterChainBuilder ) chain ).addLast( "executor", new ExecutorFilter(
-                new UnorderedThreadPoolExecutor( transport.getNbThreads() ), IoEventType.MESSAGE_RECEIVED ) );
+                createRequestExecutor( transport ), IoEventType.MESSAGE_RECEIVED ) );
 
             /*
             // Trace all the incoming and outgoing message to the console
@@ -1716,6 +1734,111 @@ public class LdapServer extends DirectoryBackedService
     }
 
 
+    /**
+     * @return The maximum number of transactions a session can have started and not yet ended
+     */
+    public int getMaxTransactions()
+    {
+        return maxTransactions;
+    }
+
+
+    /**
+     * Set the maximum number of transactions a session can have started and not yet ended. A
+     * Start Transaction request exceeding it is rejected with an adminLimitExceeded error.
+     * @param maxTransactions A positive number of transactions. A negative or null value will
+     * be transformed to {@link Integer#MAX_VALUE}
+     */
+    public void setMaxTransactions( int maxTransactions )
+    {
+        if ( maxTransactions <= 0 )
+        {
+            maxTransactions = Integer.MAX_VALUE;
+        }
+
+        this.maxTransactions = maxTransactions;
+    }
+
+
+    /**
+     * @return The maximum number of updates buffered in a transaction
+     */
+    public int getMaxTransactionUpdates()
+    {
+        return maxTransactionUpdates;
+    }
+
+
+    /**
+     * Set the maximum number of updates buffered in a transaction. An update exceeding it is
+     * rejected with an adminLimitExceeded error, and the transaction is abandoned.
+     * @param maxTransactionUpdates A positive number of updates. A negative or null value will
+     * be transformed to {@link Integer#MAX_VALUE}
+     */
+    public void setMaxTransactionUpdates( int maxTransactionUpdates )
+    {
+        if ( maxTransactionUpdates <= 0 )
+        {
+            maxTransactionUpdates = Integer.MAX_VALUE;
+        }
+
+        this.maxTransactionUpdates = maxTransactionUpdates;
+    }
+
+
+    /**
+     * @return true if the requests are processed by virtual threads, when the JDK supports them
+     */
+    public boolean isVirtualThreadsEnabled()
+    {
+        return virtualThreadsEnabled;
+    }
+
+
+    /**
+     * Enables or disables the virtual threads mode. When enabled, each request is processed
+     * by a new virtual thread instead of a thread of a fixed size pool, so the long searches and
+     * the requests waiting for the disk don't delay the other ones. It's ignored if the JDK
+     * does not support the virtual threads. Must be set before the server is started. It can
+     * also be enabled with the {@link #VIRTUAL_THREADS_PROPERTY} system property.
+     * <br>
+     * The virtual threads are not reused, so they don't use the per-thread pool of operation
+     * contexts : each lookup done by a request allocates its context.
+     *
+     * @param virtualThreadsEnabled true to process the requests with virtual threads
+     */
+    public void setVirtualThreadsEnabled( boolean virtualThreadsEnabled )
+    {
+        this.virtualThreadsEnabled = virtualThreadsEnabled;
+    }
+
+
+    /**
+     * Creates the executor processing the requests received on a transport : a virtual thread
+     * executor if enabled and supported, otherwise a pool with the same number of threads
+     * than the number of IoProcessor (NOTE : this has to be double checked)
+     */
+    private Executor createRequestExecutor( Transport transport )
+    {
+        if ( virtualThreadsEnabled )
+        {
+            Executor executor = VirtualThreads.newExecutor( "ApacheDS LDAP request-" );
+
+            if ( executor != null )
+            {
+                LOG.info( "The requests received on {} are processed by virtual threads", transport );
+
+                return executor;
+            }
+
+            LOG.warn( "The virtual threads are not supported by this JDK, using a pool of {} threads",
+                transport.getNbThreads() );
+        }
+
+        return new UnorderedThreadPoolExecutor( transport.getNbThreads() );
+    }
+
+
     /**
      * @return the number of seconds pinger thread sleeps between subsequent pings
      */
@@ -39,6 +39,7 @@ import org.apache.directory.server.core.api.LdapPrincipal;
 import org.apache.directory.server.core.api.SearchRequestContainer;
 import org.apache.directory.server.i18n.I18n;
 import org.apache.directory.server.ldap.handlers.controls.PagedSearchContext;
+import org.apache.directory.server.ldap.handlers.extended.TransactionContext;
 import org.apache.mina.core.session.IoSession;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -96,6 +97,9 @@ public class LdapSession
     /** A map containing all the paged search context */
     private Map<Integer, PagedSearchContext> pagedSearchContexts;
 
+    /** The transactions started on this session, and not yet ended */
+    private Map<String, TransactionContext> transactions;
+
 
     /**
      * Creates a new instance of LdapSession associated with the underlying
@@ -112,6 +116,7 @@ public class LdapSession
         bindStatus = BindStatus.ANONYMOUS;
         saslProperties = new HashMap<>();
         pagedSearchContexts = new ConcurrentHashMap<>();
+        transactions = new ConcurrentHashMap<>();
     }
 
 
@@ -578,6 +583,85 @@ public class LdapSession
     }
 
 
+    /**
+     * Add a transaction started on this session.
+     *
+     * @param transaction The started transaction
+     */
+    public void addTransaction( TransactionContext transaction )
+    {
+        transactions.put( transaction.getIdentifier(), transaction );
+    }
+
+
+    /**
+     * Add a transaction started on this session, unless the session already has too many
+     * transactions started and not yet ended.
+     *
+     * @param transaction The started transaction
+     * @param maxTransactions The maximum number of transactions of the session
+     * @return <code>true</code> if the transaction has been added
+     */
+    public boolean addTransaction( TransactionContext transaction, int maxTransactions )
+    {
+        synchronized ( transactions )
+        {
+            if ( transactions.size() >= maxTransactions )
+            {
+                return false;
+            }
+
+            transactions.put( transaction.getIdentifier(), transaction );
+
+            return true;
+        }
+    }
+
+
+    /**
+     * Get a transaction started on this session
+     *
+     * @param identifier The transaction identifier
+     * @return The associated transaction, if any
+     */
+    public TransactionContext getTransaction( String identifier )
+    {
+        if ( identifier == null )
+        {
+            return null;
+        }
+
+        return transactions.get( identifier );
+    }
+
+
+    /**
+     * Remove a transaction from this session, once it has been ended.
+     *
+     * @param identifier The transaction identifier
+     * @return The removed transaction, if any
+     */
+    public TransactionContext removeTransaction( String identifier )
+    {
+        if ( identifier == null )
+        {
+            return null;
+        }
+
+        return transactions.remove( identifier );
+    }
+
+
+    /**
+     * Remove all the transactions of this session, and the updates buffered in them : they
+     * are abandoned when the session is closed.
+     */
+    public void removeAllTransactions()
+    {
+        transactions.clear();
+    }
+
+
     /**
      * The principal and remote address associated with this session.
      * @see Object#toString()
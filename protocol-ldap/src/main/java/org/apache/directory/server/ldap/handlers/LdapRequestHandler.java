@@ -21,26 +21,35 @@ package org.apache.directory.server.ldap.handlers;
 
 
 import org.apache.commons.lang.exception.ExceptionUtils;
+import org.apache.directory.api.ldap.model.exception.LdapException;
 import org.apache.directory.api.ldap.model.exception.LdapOperationException;
 import org.apache.directory.api.ldap.model.exception.LdapReferralException;
 import org.apache.directory.api.ldap.model.message.AbandonRequest;
+import org.apache.directory.api.ldap.model.message.AddRequest;
 import org.apache.directory.api.ldap.model.message.BindRequest;
 import org.apache.directory.api.ldap.model.message.BindResponse;
 import org.apache.directory.api.ldap.model.message.BindResponseImpl;
+import org.apache.directory.api.ldap.model.message.Control;
+import org.apache.directory.api.ldap.model.message.DeleteRequest;
 import org.apache.directory.api.ldap.model.message.ExtendedRequest;
 import org.apache.directory.api.ldap.model.message.LdapResult;
+import org.apache.directory.api.ldap.model.message.ModifyDnRequest;
+import org.apache.directory.api.ldap.model.message.ModifyRequest;
 import org.apache.directory.api.ldap.model.message.Referral;
 import org.apache.directory.api.ldap.model.message.ReferralImpl;
 import org.apache.directory.api.ldap.model.message.Request;
 import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
 import org.apache.directory.api.ldap.model.message.ResultResponse;
 import org.apache.directory.api.ldap.model.message.ResultResponseRequest;
+import org.apache.directory.api.ldap.model.name.Dn;
 import org.apache.directory.server.core.api.CoreSession;
+import org.apache.directory.server.core.api.DirectoryService;
 import org.apache.directory.server.core.shared.DefaultCoreSession;
 import org.apache.directory.server.i18n.I18n;
 import org.apache.directory.server.ldap.LdapServer;
 import org.apache.directory.server.ldap.LdapSession;
 import org.apache.directory.server.ldap.handlers.extended.StartTlsHandler;
+import org.apache.directory.server.ldap.handlers.extended.TransactionContext;
 import org.apache.mina.core.filterchain.IoFilterChain;
 import org.apache.mina.core.session.IoSession;
 import org.apache.mina.handler.demux.MessageHandler;
@@ -305,4 +314,101 @@ public abstract class LdapRequestHandler<T extends Request> implements MessageHa
 
         session.getIoSession().write( req.getResultResponse() );
     }
+
+
+    /**
+     * Buffers an update request in the transaction it belongs to, if it carries a Transaction
+     * Specification control. The request is only accepted here and will be applied when the
+     * transaction is committed, so a success is returned to the client. An update belonging
+     * to an unknown transaction, or done in a partition which can't roll back its changes, is
+     * rejected. An update exceeding the maximum number of updates of a transaction is rejected
+     * too, and the transaction is abandoned : committing it without the update would break
+     * its atomicity.
+     *
+     * @param session The associated session
+     * @param req The Add, Modify, Delete or ModifyDn request
+     * @return <code>true</code> if the request has been handled, and must not be applied now
+     */
+    protected boolean addToTransaction( LdapSession session, ResultResponseRequest req )
+    {
+        Control control = req.getControl( TransactionContext.TRANSACTION_SPECIFICATION_OID );
+
+        if ( control == null )
+        {
+            return false;
+        }
+
+        LdapResult result = req.getResultResponse().getLdapResult();
+        TransactionContext transaction = session.getTransaction( TransactionContext.getIdentifier( control ) );
+
+        if ( transaction == null )
+        {
+            result.setResultCode( ResultCodeEnum.UNWILLING_TO_PERFORM );
+            result.setDiagnosticMessage( "Unknown transaction identifier" );
+        }
+        else if ( !isRollbackSupported( session, req ) )
+        {
+            result.setResultCode( ResultCodeEnum.UNWILLING_TO_PERFORM );
+            result.setDiagnosticMessage( "The target partition can't roll back a transaction" );
+        }
+        else if ( !transaction.addUpdate( req ) )
+        {
+            session.removeTransaction( transaction.getIdentifier() );
+            result.setResultCode( ResultCodeEnum.ADMIN_LIMIT_EXCEEDED );
+            result.setDiagnosticMessage( "Too many updates in the transaction, it has been abandoned" );
+        }
+        else
+        {
+            LOG.debug( "Adding {} to {}", req, transaction );
+            result.setResultCode( ResultCodeEnum.SUCCESS );
+        }
+
+        session.getIoSession().write( req.getResultResponse() );
+
+        return true;
+    }
+
+
+    /**
+     * Tells if the partition an update is done in can roll back the write transaction the
+     * update will be applied in. An update which target can't be resolved is accepted : it
+     * will fail when the transaction is committed.
+     */
+    private boolean isRollbackSupported( LdapSession session, ResultResponseRequest req )
+    {
+        Dn dn;
+
+        if ( req instanceof AddRequest )
+        {
+            dn = ( ( AddRequest ) req ).getEntryDn();
+        }
+        else if ( req instanceof ModifyRequest )
+        {
+            dn = ( ( ModifyRequest ) req ).getName();
+        }
+        else if ( req instanceof DeleteRequest )
+        {
+            dn = ( ( DeleteRequest ) req ).getName();
+        }
+        else
+        {
+            dn = ( ( ModifyDnRequest ) req ).getName();
+        }
+
+        DirectoryService directoryService = session.getCoreSession().getDirectoryService();
+
+        try
+        {
+            if ( !dn.isSchemaAware() )
+            {
+                dn = new Dn( directoryService.getSchemaManager(), dn );
+            }
+
+            return directoryService.getPartitionNexus().getPartition( dn ).isRollbackSupported();
+        }
+        catch ( LdapException le )
+        {
+            return true;
+        }
+    }
 }
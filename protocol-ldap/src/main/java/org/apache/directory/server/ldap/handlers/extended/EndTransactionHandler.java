@@ -0,0 +1,410 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.ldap.handlers.extended;
+
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.directory.api.asn1.ber.tlv.BerValue;
+import org.apache.directory.api.asn1.ber.tlv.UniversalTag;
+import org.apache.directory.api.ldap.codec.api.LdapApiServiceFactory;
+import org.apache.directory.api.ldap.codec.decorators.ExtendedRequestDecorator;
+import org.apache.directory.api.ldap.codec.decorators.ExtendedResponseDecorator;
+import org.apache.directory.api.ldap.model.exception.LdapEntryAlreadyExistsException;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.exception.LdapOperationException;
+import org.apache.directory.api.ldap.model.exception.LdapProtocolErrorException;
+import org.apache.directory.api.ldap.model.message.AddRequest;
+import org.apache.directory.api.ldap.model.message.DeleteRequest;
+import org.apache.directory.api.ldap.model.message.ExtendedRequest;
+import org.apache.directory.api.ldap.model.message.ExtendedResponse;
+import org.apache.directory.api.ldap.model.message.ExtendedResponseImpl;
+import org.apache.directory.api.ldap.model.message.LdapResult;
+import org.apache.directory.api.ldap.model.message.ModifyDnRequest;
+import org.apache.directory.api.ldap.model.message.ModifyRequest;
+import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
+import org.apache.directory.api.ldap.model.message.ResultResponseRequest;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.api.util.Strings;
+import org.apache.directory.server.core.api.BatchMode;
+import org.apache.directory.server.core.api.CoreSession;
+import org.apache.directory.server.core.api.interceptor.context.AddOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.DeleteOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.ModifyOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.MoveAndRenameOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.MoveOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.OperationContext;
+import org.apache.directory.server.core.api.interceptor.context.RenameOperationContext;
+import org.apache.directory.server.ldap.ExtendedOperationHandler;
+import org.apache.directory.server.ldap.LdapServer;
+import org.apache.directory.server.ldap.LdapSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Handler for the End Transaction extended operation. When the client commits the
+ * transaction, all the updates buffered in it are applied in a single batch : either all
+ * of them are stored, or none is, and the response tells which update has failed. When the
+ * client aborts the transaction, the buffered updates are just dropped.
+ * <br>
+ * All the updates of a transaction must be done in the same partition.
+ *
+ * @see <a href="http://www.ietf.org/rfc/rfc5805.txt">RFC 5805</a>
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class EndTransactionHandler implements ExtendedOperationHandler<ExtendedRequest, ExtendedResponse>
+{
+    /** The End Transaction extended operation OID */
+    public static final String EXTENSION_OID = "1.3.6.1.1.21.3";
+
+    private static final Set<String> EXTENSION_OIDS;
+    private static final Logger LOG = LoggerFactory.getLogger( EndTransactionHandler.class );
+
+    static
+    {
+        Set<String> set = new HashSet<String>( 2 );
+        set.add( EXTENSION_OID );
+        EXTENSION_OIDS = Collections.unmodifiableSet( set );
+    }
+
+    /** The value of the request, once decoded */
+    static final class TxnEndRequest
+    {
+        /** Tells if the transaction is committed or aborted */
+        boolean commit = true;
+
+        /** The transaction identifier */
+        String identifier;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public void handleExtendedOperation( LdapSession session, ExtendedRequest req ) throws Exception
+    {
+        ExtendedResponseDecorator<ExtendedResponse> res = new ExtendedResponseDecorator<ExtendedResponse>(
+            LdapApiServiceFactory.getSingleton(), new ExtendedResponseImpl( req.getMessageId() ) );
+        LdapResult result = res.getLdapResult();
+        res.setResponseName( EXTENSION_OID );
+
+        TxnEndRequest txnEndRequest = null;
+
+        if ( req instanceof ExtendedRequestDecorator<?> )
+        {
+            txnEndRequest = decode( ( ( ExtendedRequestDecorator<?> ) req ).getRequestValue() );
+        }
+
+        if ( txnEndRequest == null )
+        {
+            result.setResultCode( ResultCodeEnum.PROTOCOL_ERROR );
+            result.setDiagnosticMessage( "Invalid End Transaction request value" );
+            session.getIoSession().write( res );
+
+            return;
+        }
+
+        TransactionContext transaction = session.removeTransaction( txnEndRequest.identifier );
+
+        if ( transaction == null )
+        {
+            result.setResultCode( ResultCodeEnum.UNWILLING_TO_PERFORM );
+            result.setDiagnosticMessage( "Unknown transaction identifier" );
+            session.getIoSession().write( res );
+
+            return;
+        }
+
+        if ( !txnEndRequest.commit )
+        {
+            LOG.debug( "Aborting {}", transaction );
+            result.setResultCode( ResultCodeEnum.SUCCESS );
+            session.getIoSession().write( res );
+
+            return;
+        }
+
+        LOG.debug( "Committing {}", transaction );
+
+        List<ResultResponseRequest> updates = transaction.getUpdates();
+        List<OperationContext> contexts = new ArrayList<>( updates.size() );
+
+        for ( ResultResponseRequest update : updates )
+        {
+            try
+            {
+                contexts.add( createContext( session.getCoreSession(), update ) );
+            }
+            catch ( LdapException le )
+            {
+                setFailure( res, update, le );
+                session.getIoSession().write( res );
+
+                return;
+            }
+        }
+
+        try
+        {
+            List<LdapException> errors = session.getCoreSession().getDirectoryService().getOperationManager()
+                .batch( contexts, BatchMode.ALL_OR_NOTHING );
+            int last = errors.size() - 1;
+
+            if ( ( last >= 0 ) && ( errors.get( last ) != null ) )
+            {
+                setFailure( res, updates.get( last ), errors.get( last ) );
+            }
+            else
+            {
+                result.setResultCode( ResultCodeEnum.SUCCESS );
+            }
+        }
+        catch ( LdapException le )
+        {
+            // The whole transaction has been rejected, no update is responsible for it
+            setFailure( res, null, le );
+        }
+
+        session.getIoSession().write( res );
+    }
+
+
+    /**
+     * Creates the operation context of a buffered update, the way the request handlers do
+     */
+    private OperationContext createContext( CoreSession session, ResultResponseRequest update ) throws LdapException
+    {
+        if ( update instanceof AddRequest )
+        {
+            return new AddOperationContext( session, ( AddRequest ) update );
+        }
+        else if ( update instanceof ModifyRequest )
+        {
+            return new ModifyOperationContext( session, ( ModifyRequest ) update );
+        }
+        else if ( update instanceof DeleteRequest )
+        {
+            return new DeleteOperationContext( session, ( DeleteRequest ) update );
+        }
+
+        ModifyDnRequest modifyDnRequest = ( ModifyDnRequest ) update;
+
+        if ( modifyDnRequest.getName().isEmpty() )
+        {
+            throw new LdapProtocolErrorException( "Modify Dn is not allowed on Root DSE." );
+        }
+
+        SchemaManager schemaManager = session.getDirectoryService().getSchemaManager();
+        Dn newRdn = new Dn( schemaManager, modifyDnRequest.getNewRdn().getName() );
+        Dn oldRdn = new Dn( schemaManager, modifyDnRequest.getName().getRdn().getName() );
+
+        if ( !newRdn.equals( oldRdn ) )
+        {
+            if ( modifyDnRequest.getNewSuperior() != null )
+            {
+                return new MoveAndRenameOperationContext( session, modifyDnRequest );
+            }
+
+            return new RenameOperationContext( session, modifyDnRequest );
+        }
+        else if ( modifyDnRequest.getNewSuperior() != null )
+        {
+            modifyDnRequest.setNewRdn( null );
+
+            return new MoveOperationContext( session, modifyDnRequest );
+        }
+
+        throw new LdapEntryAlreadyExistsException( "Attempt to move entry onto itself." );
+    }
+
+
+    /**
+     * Sets the result of a failed transaction. The response value contains the message ID
+     * of the update which has failed, if any.
+     */
+    void setFailure( ExtendedResponseDecorator<ExtendedResponse> res, ResultResponseRequest update,
+        LdapException le )
+    {
+        ResultCodeEnum code;
+
+        if ( le instanceof LdapOperationException )
+        {
+            code = ( ( LdapOperationException ) le ).getResultCode();
+        }
+        else if ( update != null )
+        {
+            code = ResultCodeEnum.getBestEstimate( le, update.getType() );
+        }
+        else
+        {
+            code = ResultCodeEnum.OTHER;
+        }
+
+        LOG.debug( "The transaction has failed", le );
+
+        LdapResult result = res.getLdapResult();
+        result.setResultCode( code );
+        result.setDiagnosticMessage( code.toString() + ": " + le.getLocalizedMessage() );
+
+        if ( update != null )
+        {
+            // txnEndRes ::= SEQUENCE { messageID MessageID OPTIONAL, ... }
+            byte[] messageId = BerValue.getBytes( update.getMessageId() );
+            byte[] value = new byte[messageId.length + 4];
+            value[0] = UniversalTag.SEQUENCE.getValue();
+            value[1] = ( byte ) ( messageId.length + 2 );
+            value[2] = UniversalTag.INTEGER.getValue();
+            value[3] = ( byte ) messageId.length;
+            System.arraycopy( messageId, 0, value, 4, messageId.length );
+            res.setResponseValue( value );
+        }
+    }
+
+
+    /**
+     * Decodes the request value :
+     * <pre>
+     * txnEndReq ::= SEQUENCE {
+     *     commit         BOOLEAN DEFAULT TRUE,
+     *     identifier     OCTET STRING }
+     * </pre>
+     *
+     * @return The decoded value, or null if it's not valid
+     */
+    static TxnEndRequest decode( byte[] value )
+    {
+        if ( Strings.isEmpty( value ) || ( value[0] != UniversalTag.SEQUENCE.getValue() ) )
+        {
+            return null;
+        }
+
+        int[] pos = new int[]
+            { 1 };
+        int length = readLength( value, pos );
+
+        if ( ( length < 0 ) || ( pos[0] + length != value.length ) )
+        {
+            return null;
+        }
+
+        TxnEndRequest txnEndRequest = new TxnEndRequest();
+
+        if ( ( pos[0] < value.length ) && ( value[pos[0]] == UniversalTag.BOOLEAN.getValue() ) )
+        {
+            pos[0]++;
+
+            if ( ( readLength( value, pos ) != 1 ) || ( pos[0] >= value.length ) )
+            {
+                return null;
+            }
+
+            txnEndRequest.commit = value[pos[0]] != 0;
+            pos[0]++;
+        }
+
+        if ( ( pos[0] >= value.length ) || ( value[pos[0]] != UniversalTag.OCTET_STRING.getValue() ) )
+        {
+            return null;
+        }
+
+        pos[0]++;
+        length = readLength( value, pos );
+
+        if ( ( length < 0 ) || ( pos[0] + length != value.length ) )
+        {
+            return null;
+        }
+
+        byte[] identifier = new byte[length];
+        System.arraycopy( value, pos[0], identifier, 0, length );
+        txnEndRequest.identifier = Strings.utf8ToString( identifier );
+
+        return txnEndRequest;
+    }
+
+
+    /**
+     * Reads a BER length at the given position, and moves the position after it
+     *
+     * @return The length, or -1 if it's not valid
+     */
+    static int readLength( byte[] value, int[] pos )
+    {
+        if ( pos[0] >= value.length )
+        {
+            return -1;
+        }
+
+        int length = value[pos[0]++] & 0xFF;
+
+        if ( length < 0x80 )
+        {
+            return length;
+        }
+
+        int nbBytes = length & 0x7F;
+
+        if ( ( nbBytes == 0 ) || ( nbBytes > 3 ) || ( pos[0] + nbBytes > value.length ) )
+        {
+            return -1;
+        }
+
+        length = 0;
+
+        for ( int i = 0; i < nbBytes; i++ )
+        {
+            length = ( length << 8 ) | ( value[pos[0]++] & 0xFF );
+        }
+
+        return length;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public final Set<String> getExtensionOids()
+    {
+        return EXTENSION_OIDS;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public final String getOid()
+    {
+        return EXTENSION_OID;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setLdapServer( LdapServer ldapServer )
+    {
+    }
+}
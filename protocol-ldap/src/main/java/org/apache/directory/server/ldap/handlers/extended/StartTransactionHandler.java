@@ -0,0 +1,167 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.ldap.handlers.extended;
+
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.directory.api.ldap.codec.api.LdapApiServiceFactory;
+import org.apache.directory.api.ldap.codec.decorators.ExtendedResponseDecorator;
+import org.apache.directory.api.ldap.model.message.ExtendedRequest;
+import org.apache.directory.api.ldap.model.message.ExtendedResponse;
+import org.apache.directory.api.ldap.model.message.ExtendedResponseImpl;
+import org.apache.directory.api.ldap.model.message.LdapResult;
+import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
+import org.apache.directory.api.util.Strings;
+import org.apache.directory.server.core.api.DirectoryService;
+import org.apache.directory.server.core.api.partition.Partition;
+import org.apache.directory.server.ldap.ExtendedOperationHandler;
+import org.apache.directory.server.ldap.LdapServer;
+import org.apache.directory.server.ldap.LdapSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Handler for the Start Transaction extended operation. It creates a new transaction on
+ * the session, and returns its identifier, which the client has to put in a Transaction
+ * Specification control on each update belonging to the transaction.
+ *
+ * @see <a href="http://www.ietf.org/rfc/rfc5805.txt">RFC 5805</a>
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class StartTransactionHandler implements ExtendedOperationHandler<ExtendedRequest, ExtendedResponse>
+{
+    /** The Start Transaction extended operation OID */
+    public static final String EXTENSION_OID = "1.3.6.1.1.21.1";
+
+    private static final Set<String> EXTENSION_OIDS;
+    private static final Logger LOG = LoggerFactory.getLogger( StartTransactionHandler.class );
+
+    /** The generator of the transaction identifiers */
+    private static final AtomicLong IDENTIFIERS = new AtomicLong();
+
+    static
+    {
+        Set<String> set = new HashSet<String>( 2 );
+        set.add( EXTENSION_OID );
+        EXTENSION_OIDS = Collections.unmodifiableSet( set );
+    }
+
+    /** The LdapServer instance, giving the limits of the transactions */
+    private LdapServer ldapServer;
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public void handleExtendedOperation( LdapSession session, ExtendedRequest req ) throws Exception
+    {
+        if ( !isRollbackSupported( session.getCoreSession().getDirectoryService() ) )
+        {
+            ExtendedResponseDecorator<ExtendedResponse> res = new ExtendedResponseDecorator<ExtendedResponse>(
+                LdapApiServiceFactory.getSingleton(), new ExtendedResponseImpl( req.getMessageId() ) );
+            res.setResponseName( EXTENSION_OID );
+            res.getLdapResult().setResultCode( ResultCodeEnum.UNWILLING_TO_PERFORM );
+            res.getLdapResult().setDiagnosticMessage( "None of the partitions can roll back a transaction" );
+            session.getIoSession().write( res );
+
+            return;
+        }
+
+        TransactionContext transaction = new TransactionContext( Long.toString( IDENTIFIERS.incrementAndGet() ),
+            ldapServer.getMaxTransactionUpdates() );
+
+        if ( !session.addTransaction( transaction, ldapServer.getMaxTransactions() ) )
+        {
+            ExtendedResponseDecorator<ExtendedResponse> res = new ExtendedResponseDecorator<ExtendedResponse>(
+                LdapApiServiceFactory.getSingleton(), new ExtendedResponseImpl( req.getMessageId() ) );
+            res.setResponseName( EXTENSION_OID );
+            res.getLdapResult().setResultCode( ResultCodeEnum.ADMIN_LIMIT_EXCEEDED );
+            res.getLdapResult().setDiagnosticMessage( "The session has too many transactions not yet ended" );
+            session.getIoSession().write( res );
+
+            return;
+        }
+
+        LOG.debug( "Starting the transaction {}", transaction.getIdentifier() );
+
+        ExtendedResponseDecorator<ExtendedResponse> res = new ExtendedResponseDecorator<ExtendedResponse>(
+            LdapApiServiceFactory.getSingleton(), new ExtendedResponseImpl( req.getMessageId() ) );
+        LdapResult result = res.getLdapResult();
+        result.setResultCode( ResultCodeEnum.SUCCESS );
+        res.setResponseName( EXTENSION_OID );
+        res.setResponseValue( Strings.getBytesUtf8( transaction.getIdentifier() ) );
+
+        session.getIoSession().write( res );
+    }
+
+
+    /**
+     * Tells if a transaction can be committed in at least one of the partitions : the
+     * updates of a transaction are applied in a single partition write transaction, aborted
+     * if one of them fails, so the partition must be able to roll it back.
+     */
+    private boolean isRollbackSupported( DirectoryService directoryService )
+    {
+        for ( Partition partition : directoryService.getPartitions() )
+        {
+            if ( partition.isRollbackSupported() )
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public final Set<String> getExtensionOids()
+    {
+        return EXTENSION_OIDS;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public final String getOid()
+    {
+        return EXTENSION_OID;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setLdapServer( LdapServer ldapServer )
+    {
+        this.ldapServer = ldapServer;
+
+        // The updates carry a critical Transaction Specification control
+        ldapServer.getSupportedControls().add( TransactionContext.TRANSACTION_SPECIFICATION_OID );
+    }
+}
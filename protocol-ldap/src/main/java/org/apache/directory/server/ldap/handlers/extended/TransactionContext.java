@@ -0,0 +1,155 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.ldap.handlers.extended;
+
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.directory.api.ldap.codec.api.CodecControl;
+import org.apache.directory.api.ldap.model.message.Control;
+import org.apache.directory.api.ldap.model.message.ResultResponseRequest;
+import org.apache.directory.api.ldap.model.message.controls.OpaqueControl;
+import org.apache.directory.api.util.Strings;
+
+
+/**
+ * A transaction started by a client with the Start Transaction extended operation, as
+ * defined by RFC 5805. The update requests carrying the Transaction Specification control
+ * are buffered in it, and applied all at once when the client commits the transaction
+ * with the End Transaction extended operation.
+ *
+ * @see <a href="http://www.ietf.org/rfc/rfc5805.txt">RFC 5805</a>
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class TransactionContext
+{
+    /** The Transaction Specification control OID */
+    public static final String TRANSACTION_SPECIFICATION_OID = "1.3.6.1.1.21.2";
+
+    /** The transaction identifier */
+    private final String identifier;
+
+    /** The buffered update requests, in the order they have been received */
+    private final List<ResultResponseRequest> updates = new ArrayList<>();
+
+    /** The maximum number of buffered updates */
+    private final int maxUpdates;
+
+
+    /**
+     * Creates a new transaction, buffering any number of updates.
+     *
+     * @param identifier The transaction identifier
+     */
+    public TransactionContext( String identifier )
+    {
+        this( identifier, Integer.MAX_VALUE );
+    }
+
+
+    /**
+     * Creates a new transaction.
+     *
+     * @param identifier The transaction identifier
+     * @param maxUpdates The maximum number of buffered updates
+     */
+    public TransactionContext( String identifier, int maxUpdates )
+    {
+        this.identifier = identifier;
+        this.maxUpdates = maxUpdates;
+    }
+
+
+    /**
+     * Gets the transaction identifier carried by a Transaction Specification control, which
+     * value is the identifier itself.
+     *
+     * @param control The Transaction Specification control
+     * @return The transaction identifier, or null if the control has no value
+     */
+    public static String getIdentifier( Control control )
+    {
+        byte[] value = null;
+
+        if ( control instanceof CodecControl<?> )
+        {
+            value = ( ( CodecControl<?> ) control ).getValue();
+        }
+        else if ( control instanceof OpaqueControl )
+        {
+            value = ( ( OpaqueControl ) control ).getEncodedValue();
+        }
+
+        if ( value == null )
+        {
+            return null;
+        }
+
+        return Strings.utf8ToString( value );
+    }
+
+
+    /**
+     * @return The transaction identifier
+     */
+    public String getIdentifier()
+    {
+        return identifier;
+    }
+
+
+    /**
+     * Buffers an update request, unless the transaction already holds the maximum number of
+     * updates.
+     *
+     * @param update The Add, Modify, Delete or ModifyDn request
+     * @return <code>true</code> if the update has been buffered
+     */
+    public synchronized boolean addUpdate( ResultResponseRequest update )
+    {
+        if ( updates.size() >= maxUpdates )
+        {
+            return false;
+        }
+
+        updates.add( update );
+
+        return true;
+    }
+
+
+    /**
+     * @return The buffered update requests, in the order they have been received
+     */
+    public synchronized List<ResultResponseRequest> getUpdates()
+    {
+        return new ArrayList<>( updates );
+    }
+
+
+    /**
+     * @see Object#toString()
+     */
+    public String toString()
+    {
+        return "Transaction " + identifier + " : " + updates.size() + " updates";
+    }
+}
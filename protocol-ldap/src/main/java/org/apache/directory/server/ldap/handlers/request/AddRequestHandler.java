@@ -48,6 +48,12 @@ public class AddRequestHandler extends LdapRequestHandler<AddRequest>
     public void handle( LdapSession session, AddRequest req )
     {
         LOG.debug( "Handling request: {}", req );
+
+        if ( addToTransaction( session, req ) )
+        {
+            return;
+        }
+
         LdapResult result = req.getResultResponse().getLdapResult();
 
         try
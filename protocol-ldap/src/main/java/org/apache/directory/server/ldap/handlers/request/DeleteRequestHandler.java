@@ -46,6 +46,12 @@ public class DeleteRequestHandler extends LdapRequestHandler<DeleteRequest>
     public void handle( LdapSession session, DeleteRequest req )
     {
         LOG.debug( "Handling request: {}", req );
+
+        if ( addToTransaction( session, req ) )
+        {
+            return;
+        }
+
         LdapResult result = req.getResultResponse().getLdapResult();
 
         try
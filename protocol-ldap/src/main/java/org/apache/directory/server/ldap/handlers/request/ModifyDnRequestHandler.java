@@ -63,6 +63,11 @@ public class ModifyDnRequestHandler extends LdapRequestHandler<ModifyDnRequest>
         LdapResult result = req.getResultResponse().getLdapResult();
         LOG.debug( "Handling modify dn request while ignoring referrals: {}", req );
 
+        if ( addToTransaction( session, req ) )
+        {
+            return;
+        }
+
         if ( req.getName().isEmpty() )
         {
             // it is not allowed to modify the name of the Root DSE
@@ -47,6 +47,12 @@ public class ModifyRequestHandler extends LdapRequestHandler<ModifyRequest>
     public void handle( LdapSession session, ModifyRequest req )
     {
         LOG.debug( "Handling request : {}", req );
+
+        if ( addToTransaction( session, req ) )
+        {
+            return;
+        }
+
         LdapResult result = req.getResultResponse().getLdapResult();
 
         try
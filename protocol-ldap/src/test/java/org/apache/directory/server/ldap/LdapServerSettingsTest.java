@@ -21,6 +21,8 @@ package org.apache.directory.server.ldap;
 
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
@@ -28,6 +30,8 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
 
 import org.apache.directory.api.ldap.model.constants.SupportedSaslMechanisms;
 import org.apache.directory.api.ldap.model.message.ExtendedRequest;
@@ -35,6 +39,7 @@ import org.apache.directory.api.ldap.model.message.ExtendedResponse;
 import org.apache.directory.server.ldap.handlers.extended.StartTlsHandler;
 import org.apache.directory.server.ldap.handlers.sasl.MechanismHandler;
 import org.apache.directory.server.ldap.handlers.sasl.plain.PlainMechanismHandler;
+import org.apache.directory.server.protocol.shared.VirtualThreads;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
@@ -91,4 +96,42 @@ public class LdapServerSettingsTest
         server.removeSaslMechanismHandler( SupportedSaslMechanisms.PLAIN );
         assertNull( server.getMechanismHandler( SupportedSaslMechanisms.PLAIN ) );
     }
+
+
+    @Test
+    public void testVirtualThreads() throws Exception
+    {
+        LdapServer server = new LdapServer();
+        assertFalse( server.isVirtualThreadsEnabled() );
+        server.setVirtualThreadsEnabled( true );
+        assertTrue( server.isVirtualThreadsEnabled() );
+
+        ExecutorService executor = VirtualThreads.newExecutor( "test-" );
+
+        if ( !VirtualThreads.isSupported() )
+        {
+            assertNull( executor );
+            return;
+        }
+
+        assertNotNull( executor );
+
+        try
+        {
+            Thread thread = executor.submit( new Callable<Thread>()
+            {
+                public Thread call()
+                {
+                    return Thread.currentThread();
+                }
+            } ).get();
+
+            assertEquals( Boolean.TRUE, Thread.class.getMethod( "isVirtual" ).invoke( thread ) );
+            assertTrue( thread.getName().startsWith( "test-" ) );
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
 }
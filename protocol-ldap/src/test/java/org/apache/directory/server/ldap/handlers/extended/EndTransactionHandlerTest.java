@@ -0,0 +1,224 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.directory.server.ldap.handlers.extended;
+
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.apache.directory.api.ldap.codec.api.LdapApiServiceFactory;
+import org.apache.directory.api.ldap.codec.decorators.ExtendedResponseDecorator;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.exception.LdapUnwillingToPerformException;
+import org.apache.directory.api.ldap.model.message.AddRequest;
+import org.apache.directory.api.ldap.model.message.AddRequestImpl;
+import org.apache.directory.api.ldap.model.message.ExtendedResponse;
+import org.apache.directory.api.ldap.model.message.ExtendedResponseImpl;
+import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
+import org.apache.directory.server.ldap.handlers.extended.EndTransactionHandler.TxnEndRequest;
+import org.junit.Test;
+
+
+/**
+ * Tests the decoding of the End Transaction request value, and the encoding of the response
+ * value of a failed transaction.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class EndTransactionHandlerTest
+{
+    @Test
+    public void testReadShortLength()
+    {
+        int[] pos = new int[]
+            { 0 };
+
+        assertEquals( 5, EndTransactionHandler.readLength( new byte[]
+            { 0x05 }, pos ) );
+        assertEquals( 1, pos[0] );
+    }
+
+
+    @Test
+    public void testReadLongLength()
+    {
+        int[] pos = new int[]
+            { 0 };
+
+        assertEquals( 0x0105, EndTransactionHandler.readLength( new byte[]
+            { ( byte ) 0x82, 0x01, 0x05 }, pos ) );
+        assertEquals( 3, pos[0] );
+    }
+
+
+    @Test
+    public void testReadInvalidLength()
+    {
+        // Indefinite length
+        assertEquals( -1, EndTransactionHandler.readLength( new byte[]
+            { ( byte ) 0x80 }, new int[]
+            { 0 } ) );
+
+        // Too many length bytes
+        assertEquals( -1, EndTransactionHandler.readLength( new byte[]
+            { ( byte ) 0x84, 0x00, 0x00, 0x00, 0x01 }, new int[]
+            { 0 } ) );
+
+        // Truncated long form
+        assertEquals( -1, EndTransactionHandler.readLength( new byte[]
+            { ( byte ) 0x82, 0x01 }, new int[]
+            { 0 } ) );
+
+        // No more bytes
+        assertEquals( -1, EndTransactionHandler.readLength( new byte[]
+            { 0x30 }, new int[]
+            { 1 } ) );
+    }
+
+
+    @Test
+    public void testDecodeCommit()
+    {
+        TxnEndRequest request = EndTransactionHandler.decode( new byte[]
+            { 0x30, 0x03, 0x04, 0x01, '1' } );
+
+        assertTrue( request.commit );
+        assertEquals( "1", request.identifier );
+    }
+
+
+    @Test
+    public void testDecodeAbort()
+    {
+        TxnEndRequest request = EndTransactionHandler.decode( new byte[]
+            { 0x30, 0x06, 0x01, 0x01, 0x00, 0x04, 0x01, '1' } );
+
+        assertFalse( request.commit );
+        assertEquals( "1", request.identifier );
+    }
+
+
+    @Test
+    public void testDecodeLongFormLengths()
+    {
+        // A 200 bytes identifier, which length is encoded on two bytes, as the sequence length
+        byte[] value = new byte[206];
+        value[0] = 0x30;
+        value[1] = ( byte ) 0x81;
+        value[2] = ( byte ) 203;
+        value[3] = 0x04;
+        value[4] = ( byte ) 0x81;
+        value[5] = ( byte ) 200;
+        Arrays.fill( value, 6, value.length, ( byte ) 'a' );
+
+        TxnEndRequest request = EndTransactionHandler.decode( value );
+
+        assertTrue( request.commit );
+        assertEquals( 200, request.identifier.length() );
+    }
+
+
+    @Test
+    public void testDecodeMalformed()
+    {
+        // No value
+        assertNull( EndTransactionHandler.decode( null ) );
+        assertNull( EndTransactionHandler.decode( new byte[0] ) );
+
+        // Not a sequence
+        assertNull( EndTransactionHandler.decode( new byte[]
+            { 0x04, 0x01, '1' } ) );
+
+        // Wrong sequence length
+        assertNull( EndTransactionHandler.decode( new byte[]
+            { 0x30, 0x04, 0x04, 0x01, '1' } ) );
+
+        // Indefinite sequence length
+        assertNull( EndTransactionHandler.decode( new byte[]
+            { 0x30, ( byte ) 0x80, 0x04, 0x01, '1', 0x00, 0x00 } ) );
+
+        // Invalid commit length
+        assertNull( EndTransactionHandler.decode( new byte[]
+            { 0x30, 0x07, 0x01, 0x02, 0x00, 0x00, 0x04, 0x01, '1' } ) );
+
+        // Missing identifier
+        assertNull( EndTransactionHandler.decode( new byte[]
+            { 0x30, 0x03, 0x01, 0x01, 0x00 } ) );
+
+        // Truncated identifier
+        assertNull( EndTransactionHandler.decode( new byte[]
+            { 0x30, 0x03, 0x04, 0x02, '1' } ) );
+    }
+
+
+    private ExtendedResponseDecorator<ExtendedResponse> newResponse()
+    {
+        return new ExtendedResponseDecorator<ExtendedResponse>( LdapApiServiceFactory.getSingleton(),
+            new ExtendedResponseImpl( 1 ) );
+    }
+
+
+    @Test
+    public void testSetFailure()
+    {
+        AddRequest update = new AddRequestImpl();
+        update.setMessageId( 5 );
+        ExtendedResponseDecorator<ExtendedResponse> res = newResponse();
+
+        new EndTransactionHandler().setFailure( res, update,
+            new LdapUnwillingToPerformException( ResultCodeEnum.UNWILLING_TO_PERFORM, "rejected" ) );
+
+        assertEquals( ResultCodeEnum.UNWILLING_TO_PERFORM, res.getLdapResult().getResultCode() );
+        assertArrayEquals( new byte[]
+            { 0x30, 0x03, 0x02, 0x01, 0x05 }, res.getResponseValue() );
+    }
+
+
+    @Test
+    public void testSetFailureLongMessageId()
+    {
+        AddRequest update = new AddRequestImpl();
+        update.setMessageId( 300 );
+        ExtendedResponseDecorator<ExtendedResponse> res = newResponse();
+
+        new EndTransactionHandler().setFailure( res, update,
+            new LdapUnwillingToPerformException( ResultCodeEnum.UNWILLING_TO_PERFORM, "rejected" ) );
+
+        assertArrayEquals( new byte[]
+            { 0x30, 0x04, 0x02, 0x02, 0x01, 0x2C }, res.getResponseValue() );
+    }
+
+
+    @Test
+    public void testSetFailureWithoutUpdate()
+    {
+        ExtendedResponseDecorator<ExtendedResponse> res = newResponse();
+
+        new EndTransactionHandler().setFailure( res, null, new LdapException( "failed" ) );
+
+        assertEquals( ResultCodeEnum.OTHER, res.getLdapResult().getResultCode() );
+        assertNull( res.getResponseValue() );
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.directory.server.ldap.handlers.extended;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.directory.api.ldap.model.message.DeleteRequestImpl;
+import org.apache.directory.api.ldap.model.message.controls.OpaqueControl;
+import org.apache.directory.api.util.Strings;
+import org.junit.Test;
+
+
+/**
+ * Tests the transaction identifiers carried by the Transaction Specification control, and the
+ * buffering of the updates.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class TransactionContextTest
+{
+    @Test
+    public void testGetIdentifier()
+    {
+        OpaqueControl control = new OpaqueControl( TransactionContext.TRANSACTION_SPECIFICATION_OID, true );
+        control.setEncodedValue( Strings.getBytesUtf8( "42" ) );
+
+        assertEquals( "42", TransactionContext.getIdentifier( control ) );
+    }
+
+
+    @Test
+    public void testGetIdentifierWithoutValue()
+    {
+        OpaqueControl control = new OpaqueControl( TransactionContext.TRANSACTION_SPECIFICATION_OID, true );
+
+        assertNull( TransactionContext.getIdentifier( control ) );
+    }
+
+
+    @Test
+    public void testUpdatesOrder()
+    {
+        TransactionContext transaction = new TransactionContext( "1" );
+        DeleteRequestImpl first = new DeleteRequestImpl();
+        DeleteRequestImpl second = new DeleteRequestImpl();
+        transaction.addUpdate( first );
+        transaction.addUpdate( second );
+
+        assertEquals( 2, transaction.getUpdates().size() );
+        assertSame( first, transaction.getUpdates().get( 0 ) );
+        assertSame( second, transaction.getUpdates().get( 1 ) );
+
+        // The returned list is a copy
+        transaction.getUpdates().clear();
+        assertEquals( 2, transaction.getUpdates().size() );
+    }
+
+
+    @Test
+    public void testMaxUpdates()
+    {
+        TransactionContext transaction = new TransactionContext( "1", 1 );
+
+        assertTrue( transaction.addUpdate( new DeleteRequestImpl() ) );
+        assertFalse( transaction.addUpdate( new DeleteRequestImpl() ) );
+        assertEquals( 1, transaction.getUpdates().size() );
+    }
+}
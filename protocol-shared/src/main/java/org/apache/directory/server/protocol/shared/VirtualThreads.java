@@ -0,0 +1,125 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.protocol.shared;
+
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Creates executors starting a virtual thread for each task, on the JDKs supporting them
+ * (Java 21 and later). The server is compiled for older JDKs, so the virtual threads are
+ * created through reflection.
+ * <br>
+ * A virtual thread blocked on I/O or on a lock does not hold a carrier thread, so a blocked
+ * request does not prevent the other ones from being processed, whatever the number of
+ * pending requests. Note that up to Java 23 a virtual thread blocked inside a synchronized
+ * block still holds its carrier thread.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public final class VirtualThreads
+{
+    /** A logger for this class */
+    private static final Logger LOG = LoggerFactory.getLogger( VirtualThreads.class );
+
+    /** The Thread.Builder interface, null if the virtual threads are not supported */
+    private static final Class<?> BUILDER_CLASS;
+
+    /** The Thread.ofVirtual() method */
+    private static final Method OF_VIRTUAL;
+
+    /** The Executors.newThreadPerTaskExecutor( ThreadFactory ) method */
+    private static final Method NEW_THREAD_PER_TASK_EXECUTOR;
+
+    static
+    {
+        Class<?> builderClass = null;
+        Method ofVirtual = null;
+        Method newThreadPerTaskExecutor = null;
+
+        try
+        {
+            builderClass = Class.forName( "java.lang.Thread$Builder" );
+            ofVirtual = Thread.class.getMethod( "ofVirtual" );
+            newThreadPerTaskExecutor = Executors.class.getMethod( "newThreadPerTaskExecutor", ThreadFactory.class );
+        }
+        catch ( ClassNotFoundException | NoSuchMethodException e )
+        {
+            builderClass = null;
+            ofVirtual = null;
+            newThreadPerTaskExecutor = null;
+        }
+
+        BUILDER_CLASS = builderClass;
+        OF_VIRTUAL = ofVirtual;
+        NEW_THREAD_PER_TASK_EXECUTOR = newThreadPerTaskExecutor;
+    }
+
+
+    private VirtualThreads()
+    {
+    }
+
+
+    /**
+     * @return true if the JDK supports the virtual threads
+     */
+    public static boolean isSupported()
+    {
+        return NEW_THREAD_PER_TASK_EXECUTOR != null;
+    }
+
+
+    /**
+     * Creates an executor running each task in a new virtual thread.
+     *
+     * @param name The prefix of the threads names, followed by a counter
+     * @return The executor, or null if the JDK does not support the virtual threads
+     */
+    public static ExecutorService newExecutor( String name )
+    {
+        if ( !isSupported() )
+        {
+            return null;
+        }
+
+        try
+        {
+            Object builder = OF_VIRTUAL.invoke( null );
+            builder = BUILDER_CLASS.getMethod( "name", String.class, long.class ).invoke( builder, name, 0L );
+            ThreadFactory threadFactory = ( ThreadFactory ) BUILDER_CLASS.getMethod( "factory" ).invoke( builder );
+
+            return ( ExecutorService ) NEW_THREAD_PER_TASK_EXECUTOR.invoke( null, threadFactory );
+        }
+        catch ( ReflectiveOperationException | RuntimeException e )
+        {
+            LOG.warn( "Cannot create a virtual thread executor", e );
+
+            return null;
+        }
+    }
+}
@@ -0,0 +1,375 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ * 
+ */
+package org.apache.directory.server.operations.extended;
+
+
+import static org.apache.directory.server.integ.ServerIntegrationUtils.getWiredContext;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import javax.naming.LimitExceededException;
+import javax.naming.NameNotFoundException;
+import javax.naming.NamingException;
+import javax.naming.OperationNotSupportedException;
+import javax.naming.directory.Attribute;
+import javax.naming.directory.Attributes;
+import javax.naming.directory.BasicAttribute;
+import javax.naming.directory.BasicAttributes;
+import javax.naming.directory.DirContext;
+import javax.naming.directory.ModificationItem;
+import javax.naming.ldap.BasicControl;
+import javax.naming.ldap.Control;
+import javax.naming.ldap.ExtendedRequest;
+import javax.naming.ldap.ExtendedResponse;
+import javax.naming.ldap.LdapContext;
+
+import org.apache.directory.api.util.Strings;
+import org.apache.directory.server.annotations.CreateLdapServer;
+import org.apache.directory.server.annotations.CreateTransport;
+import org.apache.directory.server.core.annotations.ApplyLdifs;
+import org.apache.directory.server.core.annotations.CreateDS;
+import org.apache.directory.server.core.integ.AbstractLdapTestUnit;
+import org.apache.directory.server.core.integ.FrameworkRunner;
+import org.apache.directory.server.ldap.handlers.extended.EndTransactionHandler;
+import org.apache.directory.server.ldap.handlers.extended.StartTransactionHandler;
+import org.apache.directory.server.ldap.handlers.extended.TransactionContext;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+
+/**
+ * Test the Start Transaction and End Transaction extended operations, with the updates
+ * buffered in the transaction, over the wire.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@RunWith(FrameworkRunner.class)
+@CreateLdapServer(
+    transports =
+        { @CreateTransport(protocol = "LDAP") },
+    extendedOpHandlers =
+        { StartTransactionHandler.class, EndTransactionHandler.class })
+@CreateDS(enableChangeLog = false, name = "TransactionIT")
+@ApplyLdifs(
+    {
+        "dn: cn=test,ou=system",
+        "objectClass: person",
+        "cn: test",
+        "sn: sn_test"
+    })
+public class TransactionIT extends AbstractLdapTestUnit
+{
+    /**
+     * A Start or End Transaction request, and its response
+     */
+    private static class TxnRequest implements ExtendedRequest, ExtendedResponse
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final String oid;
+        private final byte[] value;
+
+
+        private TxnRequest( String oid, byte[] value )
+        {
+            this.oid = oid;
+            this.value = value;
+        }
+
+
+        public String getID()
+        {
+            return oid;
+        }
+
+
+        public byte[] getEncodedValue()
+        {
+            return value;
+        }
+
+
+        public ExtendedResponse createExtendedResponse( String id, byte[] berValue, int offset, int length )
+            throws NamingException
+        {
+            byte[] responseValue = null;
+
+            if ( berValue != null )
+            {
+                responseValue = new byte[length];
+                System.arraycopy( berValue, offset, responseValue, 0, length );
+            }
+
+            return new TxnRequest( id, responseValue );
+        }
+    }
+
+
+    /**
+     * Starts a transaction, and returns its identifier
+     */
+    private String startTransaction( LdapContext ctx ) throws Exception
+    {
+        ExtendedResponse response = ctx.extendedOperation( new TxnRequest( StartTransactionHandler.EXTENSION_OID,
+            null ) );
+
+        assertNotNull( response.getEncodedValue() );
+
+        return Strings.utf8ToString( response.getEncodedValue() );
+    }
+
+
+    /**
+     * Commits or aborts a transaction
+     */
+    private void endTransaction( LdapContext ctx, String identifier, boolean commit ) throws Exception
+    {
+        // txnEndReq ::= SEQUENCE { commit BOOLEAN DEFAULT TRUE, identifier OCTET STRING }
+        byte[] id = Strings.getBytesUtf8( identifier );
+        int commitLength = commit ? 0 : 3;
+        byte[] value = new byte[id.length + commitLength + 4];
+        value[0] = 0x30;
+        value[1] = ( byte ) ( id.length + commitLength + 2 );
+
+        if ( !commit )
+        {
+            value[2] = 0x01;
+            value[3] = 0x01;
+            value[4] = 0x00;
+        }
+
+        value[commitLength + 2] = 0x04;
+        value[commitLength + 3] = ( byte ) id.length;
+        System.arraycopy( id, 0, value, commitLength + 4, id.length );
+
+        ctx.extendedOperation( new TxnRequest( EndTransactionHandler.EXTENSION_OID, value ) );
+    }
+
+
+    /**
+     * Sets the Transaction Specification control on the following updates, or removes it
+     */
+    private void setTransaction( LdapContext ctx, String identifier ) throws Exception
+    {
+        if ( identifier == null )
+        {
+            ctx.setRequestControls( null );
+        }
+        else
+        {
+            ctx.setRequestControls( new Control[]
+                { new BasicControl( TransactionContext.TRANSACTION_SPECIFICATION_OID, true,
+                    Strings.getBytesUtf8( identifier ) ) } );
+        }
+    }
+
+
+    private Attributes person( String cn )
+    {
+        Attributes attributes = new BasicAttributes( true );
+        Attribute objectClass = new BasicAttribute( "objectClass" );
+        objectClass.add( "top" );
+        objectClass.add( "person" );
+        attributes.put( objectClass );
+        attributes.put( "cn", cn );
+        attributes.put( "sn", "sn_" + cn );
+
+        return attributes;
+    }
+
+
+    private boolean exists( String dn ) throws Exception
+    {
+        try
+        {
+            getWiredContext( getLdapServer() ).getAttributes( dn );
+
+            return true;
+        }
+        catch ( NameNotFoundException nnfe )
+        {
+            return false;
+        }
+    }
+
+
+    private String getSn( String dn ) throws Exception
+    {
+        return ( String ) getWiredContext( getLdapServer() ).getAttributes( dn, new String[]
+            { "sn" } ).get( "sn" ).get();
+    }
+
+
+    /**
+     * Test that the buffered updates are applied when the transaction is committed
+     */
+    @Test
+    public void testCommit() throws Exception
+    {
+        LdapContext ctx = getWiredContext( getLdapServer() );
+        String identifier = startTransaction( ctx );
+
+        setTransaction( ctx, identifier );
+        ctx.createSubcontext( "cn=txn1,ou=system", person( "txn1" ) );
+        ctx.modifyAttributes( "cn=test,ou=system", new ModificationItem[]
+            { new ModificationItem( DirContext.REPLACE_ATTRIBUTE, new BasicAttribute( "sn", "txn" ) ) } );
+        setTransaction( ctx, null );
+
+        // Nothing is applied before the commit
+        assertFalse( exists( "cn=txn1,ou=system" ) );
+        assertEquals( "sn_test", getSn( "cn=test,ou=system" ) );
+
+        endTransaction( ctx, identifier, true );
+
+        assertTrue( exists( "cn=txn1,ou=system" ) );
+        assertEquals( "txn", getSn( "cn=test,ou=system" ) );
+        ctx.close();
+    }
+
+
+    /**
+     * Test that the buffered updates are dropped when the transaction is aborted
+     */
+    @Test
+    public void testAbort() throws Exception
+    {
+        LdapContext ctx = getWiredContext( getLdapServer() );
+        String identifier = startTransaction( ctx );
+
+        setTransaction( ctx, identifier );
+        ctx.createSubcontext( "cn=txn2,ou=system", person( "txn2" ) );
+        setTransaction( ctx, null );
+
+        endTransaction( ctx, identifier, false );
+
+        assertFalse( exists( "cn=txn2,ou=system" ) );
+
+        // The transaction is over
+        try
+        {
+            endTransaction( ctx, identifier, true );
+            fail( "The transaction should be unknown" );
+        }
+        catch ( OperationNotSupportedException onse )
+        {
+            // expected
+        }
+
+        ctx.close();
+    }
+
+
+    /**
+     * Test that a failing update rolls back the updates applied before it
+     */
+    @Test
+    public void testFailedCommit() throws Exception
+    {
+        LdapContext ctx = getWiredContext( getLdapServer() );
+        String identifier = startTransaction( ctx );
+
+        setTransaction( ctx, identifier );
+        ctx.createSubcontext( "cn=txn3,ou=system", person( "txn3" ) );
+        ctx.modifyAttributes( "cn=missing,ou=system", new ModificationItem[]
+            { new ModificationItem( DirContext.REPLACE_ATTRIBUTE, new BasicAttribute( "sn", "txn" ) ) } );
+        setTransaction( ctx, null );
+
+        try
+        {
+            endTransaction( ctx, identifier, true );
+            fail( "The transaction should have failed" );
+        }
+        catch ( NameNotFoundException nnfe )
+        {
+            // expected
+        }
+
+        assertFalse( exists( "cn=txn3,ou=system" ) );
+        ctx.close();
+    }
+
+
+    /**
+     * Test that an update belonging to an unknown transaction is rejected
+     */
+    @Test(expected = OperationNotSupportedException.class)
+    public void testUnknownTransaction() throws Exception
+    {
+        LdapContext ctx = getWiredContext( getLdapServer() );
+
+        setTransaction( ctx, "unknown" );
+        ctx.createSubcontext( "cn=txn4,ou=system", person( "txn4" ) );
+    }
+
+
+    /**
+     * Test that an update exceeding the maximum number of updates of a transaction is
+     * rejected, and that the transaction is abandoned
+     */
+    @Test
+    public void testTooManyUpdates() throws Exception
+    {
+        LdapContext ctx = getWiredContext( getLdapServer() );
+        int maxTransactionUpdates = getLdapServer().getMaxTransactionUpdates();
+        getLdapServer().setMaxTransactionUpdates( 1 );
+
+        try
+        {
+            String identifier = startTransaction( ctx );
+
+            setTransaction( ctx, identifier );
+            ctx.createSubcontext( "cn=txn5,ou=system", person( "txn5" ) );
+
+            try
+            {
+                ctx.createSubcontext( "cn=txn6,ou=system", person( "txn6" ) );
+                fail( "The update should have been rejected" );
+            }
+            catch ( LimitExceededException lee )
+            {
+                // expected
+            }
+
+            setTransaction( ctx, null );
+
+            // The transaction is over
+            try
+            {
+                endTransaction( ctx, identifier, true );
+                fail( "The transaction should be unknown" );
+            }
+            catch ( OperationNotSupportedException onse )
+            {
+                // expected
+            }
+
+            assertFalse( exists( "cn=txn5,ou=system" ) );
+            assertFalse( exists( "cn=txn6,ou=system" ) );
+        }
+        finally
+        {
+            getLdapServer().setMaxTransactionUpdates( maxTransactionUpdates );
+            ctx.close();
+        }
+    }
+}
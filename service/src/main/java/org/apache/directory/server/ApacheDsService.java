@@ -181,7 +181,8 @@ public class ApacheDsService
         cacheService.initialize( instanceLayout );
 
         initSchemaManager( instanceLayout );
-        DnFactory dnFactory = new DefaultDnFactory( schemaManager, cacheService.getCache( "dnCache" ) );
+        DnFactory dnFactory = new DefaultDnFactory( schemaManager,
+            DefaultDnFactory.getConfiguredCapacity( cacheService ) );
         initSchemaLdifPartition( instanceLayout, dnFactory );
         initConfigPartition( instanceLayout, dnFactory, cacheService );
 
@@ -20,15 +20,45 @@
 package org.apache.directory.server.core.partition.impl.avl;
 
 
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.TreeMap;
 
+import org.apache.directory.api.ldap.model.entry.Attribute;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.DefaultModification;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.entry.Modification;
+import org.apache.directory.api.ldap.model.entry.ModificationOperation;
 import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.exception.LdapOtherException;
+import org.apache.directory.api.ldap.model.ldif.ChangeType;
+import org.apache.directory.api.ldap.model.ldif.LdifEntry;
+import org.apache.directory.api.ldap.model.ldif.LdifReader;
+import org.apache.directory.api.ldap.model.ldif.LdifUtils;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.name.Rdn;
 import org.apache.directory.api.ldap.model.schema.SchemaManager;
 import org.apache.directory.api.ldap.model.schema.comparators.UuidComparator;
+import org.apache.directory.api.util.Strings;
 import org.apache.directory.server.constants.ApacheSchemaConstants;
 import org.apache.directory.server.core.api.DnFactory;
+import org.apache.directory.server.core.api.interceptor.context.AddOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.ModifyOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.MoveAndRenameOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.MoveOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.RenameOperationContext;
 import org.apache.directory.server.core.api.partition.Partition;
 import org.apache.directory.server.core.api.partition.PartitionReadTxn;
+import org.apache.directory.server.core.api.partition.PartitionTxn;
 import org.apache.directory.server.core.api.partition.PartitionWriteTxn;
 import org.apache.directory.server.core.partition.impl.btree.AbstractBTreePartition;
 import org.apache.directory.server.xdbm.Index;
@@ -46,6 +76,12 @@ import org.slf4j.LoggerFactory;
 
 /**
  * An XDBM Partition backed by in memory AVL Trees.
+ * <br>
+ * When a snapshot file is configured, the master table and the indexes are periodically
+ * written into it with a compact binary format, and loaded back when the partition is
+ * initialized, without parsing nor normalizing the entries again. When the change log is
+ * also enabled, the modifications done after the last snapshot are appended as LDIF change
+ * records to a log stored next to the snapshot, and replayed after the snapshot is loaded.
  *
  * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
  */
@@ -54,6 +90,48 @@ public class AvlPartition extends AbstractBTreePartition
     /** static logger */
     private static final Logger LOG = LoggerFactory.getLogger( AvlPartition.class );
 
+    /** The extension of the change log, appended to the snapshot file name */
+    public static final String CHANGE_LOG_EXTN = ".log";
+
+    /** The extension of the snapshot being written */
+    private static final String SNAPSHOT_TMP_EXTN = ".tmp";
+
+    /** The header of the change log, containing the generation of the snapshot it follows */
+    private static final String GENERATION_HEADER = "# snapshot: ";
+
+    /** The default delay between two snapshots, in milliseconds */
+    public static final long DEFAULT_SNAPSHOT_INTERVAL = 300000L;
+
+    /** The snapshot file. Snapshots are disabled if null */
+    private File snapshotFile;
+
+    /** The delay between two snapshots, in milliseconds. 0 to only take a snapshot when destroyed */
+    private long snapshotInterval = DEFAULT_SNAPSHOT_INTERVAL;
+
+    /** Tells if the modifications done after the last snapshot are logged */
+    private boolean changeLogEnabled = false;
+
+    /** The lock serializing the modifications and the snapshots */
+    private final Object snapshotLock = new Object();
+
+    /** The generation of the last snapshot */
+    private long snapshotGeneration;
+
+    /** Tells if the partition has been modified since the last snapshot */
+    private boolean modifiedSinceSnapshot;
+
+    /** Tells if the partition content has been loaded from a snapshot */
+    private boolean snapshotLoaded;
+
+    /** The change log */
+    private RandomAccessFile changeLog;
+
+    /** The number of changes in the change log */
+    private long changeLogSize;
+
+    /** The timer taking the snapshots */
+    private Timer snapshotTimer;
+
 
     /**
      * Creates a store based on AVL Trees.
@@ -120,6 +198,756 @@ public class AvlPartition extends AbstractBTreePartition
             master = new AvlMasterTable( id, UuidComparator.INSTANCE, null, false );
 
             super.doInit();
+
+            if ( snapshotFile != null )
+            {
+                loadSnapshot();
+            }
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void doDestroy( PartitionTxn partitionTxn ) throws LdapException
+    {
+        if ( snapshotFile != null )
+        {
+            if ( snapshotTimer != null )
+            {
+                snapshotTimer.cancel();
+                snapshotTimer = null;
+            }
+
+            // Take a last snapshot, so that the next startup does not have to replay the log
+            if ( initialized )
+            {
+                snapshot();
+            }
+
+            if ( changeLog != null )
+            {
+                try
+                {
+                    changeLog.close();
+                    changeLog = null;
+                }
+                catch ( IOException ioe )
+                {
+                    throw new LdapOtherException( ioe.getMessage(), ioe );
+                }
+            }
+        }
+
+        super.doDestroy( partitionTxn );
+    }
+
+
+    //---------------------------------------------------------------------------------------------
+    // Snapshots
+    //---------------------------------------------------------------------------------------------
+    /**
+     * @return The snapshot helper, working on the partition master table and indexes
+     */
+    private AvlPartitionSnapshot createSnapshot()
+    {
+        Map<String, Index<?, String>> indexes = new TreeMap<>( systemIndices );
+        indexes.putAll( userIndices );
+
+        return new AvlPartitionSnapshot( schemaManager, master, indexes );
+    }
+
+
+    /**
+     * Loads the last snapshot if any, replays the change log, and starts the snapshot timer.
+     * A snapshot written with other indexes than the configured ones is ignored, along with
+     * its change log.
+     */
+    private void loadSnapshot() throws LdapException
+    {
+        PartitionTxn partitionTxn = beginWriteTransaction();
+
+        try
+        {
+            if ( snapshotFile.exists() )
+            {
+                AvlPartitionSnapshot snapshot = createSnapshot();
+                snapshotGeneration = AvlPartitionSnapshot.readGeneration( snapshotFile );
+
+                if ( snapshot.hasSameIndexes( snapshotFile ) )
+                {
+                    long nbEntries = snapshot.read( partitionTxn, snapshotFile );
+                    snapshotLoaded = true;
+
+                    LOG.info( "Loaded {} entries from the snapshot of the {} partition", nbEntries, getId() );
+                }
+                else
+                {
+                    LOG.warn( "The indexes of the {} partition have changed, ignoring its snapshot {}", getId(),
+                        snapshotFile );
+
+                    // The change log of the ignored snapshot must not be replayed either
+                    snapshotGeneration++;
+                }
+            }
+
+            modifiedSinceSnapshot = !snapshotLoaded;
+
+            if ( changeLogEnabled )
+            {
+                openChangeLog( partitionTxn );
+            }
+        }
+        catch ( IOException ioe )
+        {
+            throw new LdapOtherException( ioe.getMessage(), ioe );
+        }
+
+        if ( snapshotLoaded || ( changeLogSize > 0L ) )
+        {
+            loadContextCsn( partitionTxn );
+        }
+
+        if ( snapshotInterval > 0L )
+        {
+            snapshotTimer = new Timer( "avl-snapshot-" + getId(), true );
+            snapshotTimer.schedule( new TimerTask()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        snapshot();
+                    }
+                    catch ( LdapException le )
+                    {
+                        LOG.error( "Failed to take a snapshot of the {} partition", getId(), le );
+                    }
+                }
+            }, snapshotInterval, snapshotInterval );
+        }
+    }
+
+
+    /**
+     * Writes the partition content into the snapshot file, and empties the change log. The
+     * snapshot is first written into a temporary file, which then replaces the previous
+     * snapshot. Does nothing if the partition has not been modified since the last snapshot.
+     * 
+     * @throws LdapException If the snapshot cannot be written
+     */
+    public void snapshot() throws LdapException
+    {
+        if ( snapshotFile == null )
+        {
+            return;
+        }
+
+        synchronized ( snapshotLock )
+        {
+            if ( !modifiedSinceSnapshot )
+            {
+                return;
+            }
+
+            File tmpFile = new File( snapshotFile.getPath() + SNAPSHOT_TMP_EXTN );
+
+            try
+            {
+                long nbEntries = createSnapshot().write( beginReadTransaction(), tmpFile, snapshotGeneration + 1 );
+
+                Files.move( tmpFile.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE );
+                snapshotGeneration++;
+                modifiedSinceSnapshot = false;
+
+                // A crash before this point leaves a log older than the snapshot, which is ignored
+                if ( changeLog != null )
+                {
+                    resetChangeLog();
+                }
+
+                LOG.debug( "Wrote {} entries in the snapshot of the {} partition", nbEntries, getId() );
+            }
+            catch ( IOException ioe )
+            {
+                throw new LdapOtherException( ioe.getMessage(), ioe );
+            }
+        }
+    }
+
+
+    /**
+     * Opens the change log, and replays the changes it contains if they have been done after
+     * the loaded snapshot.
+     */
+    private void openChangeLog( PartitionTxn partitionTxn ) throws IOException, LdapException
+    {
+        changeLog = new RandomAccessFile( getChangeLogFile(), "rws" );
+
+        if ( ( changeLog.length() > 0L ) && ( readGeneration( changeLog ) == snapshotGeneration ) )
+        {
+            replayChangeLog( partitionTxn );
+        }
+        else
+        {
+            resetChangeLog();
+        }
+    }
+
+
+    /**
+     * @return The change log file, stored next to the snapshot file
+     */
+    private File getChangeLogFile()
+    {
+        return new File( snapshotFile.getPath() + CHANGE_LOG_EXTN );
+    }
+
+
+    /**
+     * Reads the snapshot generation heading the change log, and rewinds it.
+     * 
+     * @return The generation, or -1 if the log has no header
+     */
+    private static long readGeneration( RandomAccessFile log ) throws IOException
+    {
+        log.seek( 0L );
+        String firstLine = log.readLine();
+        log.seek( 0L );
+
+        if ( ( firstLine != null ) && firstLine.startsWith( GENERATION_HEADER ) )
+        {
+            try
+            {
+                return Long.parseLong( firstLine.substring( GENERATION_HEADER.length() ).trim() );
+            }
+            catch ( NumberFormatException nfe )
+            {
+                LOG.warn( "Invalid change log header : {}", firstLine );
+            }
+        }
+
+        return -1L;
+    }
+
+
+    /**
+     * Empties the change log, and writes the current snapshot generation in it.
+     */
+    private void resetChangeLog() throws IOException
+    {
+        changeLog.setLength( 0L );
+        changeLog.write( Strings.getBytesUtf8( GENERATION_HEADER + snapshotGeneration + "\n\n" ) );
+        changeLogSize = 0L;
+    }
+
+
+    /**
+     * Applies the change records stored in the change log. Each record is followed by an empty
+     * line : an incomplete last record, written while the server crashed, is ignored and
+     * removed from the log.
+     */
+    private void replayChangeLog( PartitionTxn partitionTxn ) throws IOException, LdapException
+    {
+        long recordStart = 0L;
+        StringBuilder record = new StringBuilder();
+
+        while ( true )
+        {
+            String line = changeLog.readLine();
+
+            if ( line == null )
+            {
+                if ( record.length() > 0 )
+                {
+                    LOG.warn( "Ignoring the incomplete last record of the change log of the {} partition", getId() );
+                    changeLog.setLength( recordStart );
+                }
+
+                break;
+            }
+
+            if ( line.isEmpty() )
+            {
+                if ( record.length() > 0 )
+                {
+                    // RandomAccessFile.readLine() reads the bytes as ISO-8859-1
+                    String ldif = Strings.utf8ToString( record.toString().getBytes( "ISO-8859-1" ) );
+                    record.setLength( 0 );
+
+                    try ( LdifReader reader = new LdifReader() )
+                    {
+                        for ( LdifEntry change : reader.parseLdif( ldif ) )
+                        {
+                            applyChange( partitionTxn, change );
+                            changeLogSize++;
+                        }
+                    }
+                }
+
+                recordStart = changeLog.getFilePointer();
+            }
+            else if ( !line.startsWith( "#" ) )
+            {
+                record.append( line ).append( '\n' );
+            }
+        }
+
+        changeLog.seek( changeLog.length() );
+        modifiedSinceSnapshot = modifiedSinceSnapshot || ( changeLogSize > 0L );
+
+        LOG.info( "Replayed {} changes from the change log of the {} partition", changeLogSize, getId() );
+    }
+
+
+    /**
+     * Applies a change record to the in-memory data, without logging it.
+     * 
+     * @param partitionTxn The transaction to use
+     * @param change The change to apply
+     * @throws LdapException If the change cannot be applied
+     */
+    protected void applyChange( PartitionTxn partitionTxn, LdifEntry change ) throws LdapException
+    {
+        Dn dn = new Dn( schemaManager, change.getDn().getName() );
+
+        switch ( change.getChangeType() )
+        {
+            case Add:
+                Entry entry = new DefaultEntry( schemaManager, change.getEntry() );
+                entry.setDn( dn );
+
+                AddOperationContext addContext = new AddOperationContext( null, entry );
+                addContext.setPartition( this );
+                addContext.setTransaction( partitionTxn );
+
+                super.add( addContext );
+
+                break;
+
+            case Delete:
+                String id = getEntryId( partitionTxn, dn );
+
+                if ( id != null )
+                {
+                    super.delete( partitionTxn, id );
+                }
+
+                break;
+
+            case Modify:
+                List<Modification> modifications = change.getModifications();
+                Modification[] mods = new Modification[modifications.size()];
+
+                for ( int i = 0; i < mods.length; i++ )
+                {
+                    mods[i] = new DefaultModification( schemaManager, modifications.get( i ) );
+                }
+
+                super.modify( partitionTxn, dn, mods );
+
+                break;
+
+            case ModDn:
+            case ModRdn:
+                // The entry attributes are restored by the modify record following this one
+                Rdn newRdn = new Rdn( schemaManager, change.getNewRdn() );
+
+                if ( !newRdn.equals( dn.getRdn() ) )
+                {
+                    super.rename( partitionTxn, dn, newRdn, change.isDeleteOldRdn(), null );
+                    dn = dn.getParent().add( newRdn );
+                }
+
+                if ( change.getNewSuperior() != null )
+                {
+                    Dn newSuperior = new Dn( schemaManager, change.getNewSuperior() );
+
+                    if ( !newSuperior.equals( dn.getParent() ) )
+                    {
+                        super.move( partitionTxn, dn, newSuperior, newSuperior.add( newRdn ), null );
+                    }
+                }
+
+                break;
+
+            default:
+                throw new LdapOtherException( "Unexpected change record : " + change );
+        }
+    }
+
+
+    /**
+     * Creates the change record describing the addition of an entry.
+     * 
+     * @param entry The added entry
+     * @return The change record
+     * @throws LdapException If the record cannot be created
+     */
+    protected LdifEntry createAddChange( Entry entry ) throws LdapException
+    {
+        LdifEntry change = new LdifEntry();
+        change.setChangeType( ChangeType.Add );
+        change.setDn( entry.getDn() );
+
+        for ( Attribute attribute : entry )
+        {
+            if ( !attribute.isInstanceOf( entryDnAT ) )
+            {
+                change.addAttribute( attribute );
+            }
+        }
+
+        return change;
+    }
+
+
+    /**
+     * Creates the change records describing a move or a rename : a ModDN record, followed by a
+     * modify record restoring the state of the entry, as the operation also updates its
+     * attributes.
+     * 
+     * @param partitionTxn The transaction to use
+     * @param id The moved entry ID
+     * @param dn The entry Dn before the operation
+     * @param newRdn The new entry Rdn
+     * @param deleteOldRdn Tells if the old Rdn value has been removed
+     * @param newSuperior The new parent Dn, or null for a rename
+     * @return The change records
+     * @throws LdapException If the records cannot be created
+     */
+    protected LdifEntry[] createModDnChanges( PartitionTxn partitionTxn, String id, Dn dn, Rdn newRdn,
+        boolean deleteOldRdn, Dn newSuperior ) throws LdapException
+    {
+        LdifEntry modDn = new LdifEntry();
+        modDn.setDn( dn );
+        modDn.setNewRdn( newRdn.getName() );
+        modDn.setDeleteOldRdn( deleteOldRdn );
+
+        if ( newSuperior != null )
+        {
+            modDn.setChangeType( ChangeType.ModDn );
+            modDn.setNewSuperior( newSuperior.getName() );
+        }
+        else
+        {
+            modDn.setChangeType( ChangeType.ModRdn );
+        }
+
+        Entry entry = fetch( partitionTxn, id );
+
+        LdifEntry state = new LdifEntry();
+        state.setChangeType( ChangeType.Modify );
+        state.setDn( buildEntryDn( partitionTxn, id ) );
+
+        for ( Attribute attribute : entry )
+        {
+            if ( !attribute.isInstanceOf( entryDnAT ) )
+            {
+                state.addModification( new DefaultModification( ModificationOperation.REPLACE_ATTRIBUTE, attribute ) );
+            }
+        }
+
+        return new LdifEntry[]
+            { modDn, state };
+    }
+
+
+    /**
+     * Appends some change records to the change log, in a single write.
+     */
+    private void logChanges( LdifEntry... changes ) throws LdapException
+    {
+        StringBuilder sb = new StringBuilder();
+
+        for ( LdifEntry change : changes )
+        {
+            sb.append( LdifUtils.convertToLdif( change ) ).append( '\n' );
+        }
+
+        try
+        {
+            changeLog.write( Strings.getBytesUtf8( sb.toString() ) );
+            changeLogSize += changes.length;
+        }
+        catch ( IOException ioe )
+        {
+            throw new LdapOtherException( ioe.getMessage(), ioe );
+        }
+    }
+
+
+    //---------------------------------------------------------------------------------------------
+    // Operations
+    //---------------------------------------------------------------------------------------------
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void add( AddOperationContext addContext ) throws LdapException
+    {
+        if ( snapshotFile == null )
+        {
+            super.add( addContext );
+
+            return;
+        }
+
+        synchronized ( snapshotLock )
+        {
+            super.add( addContext );
+            modifiedSinceSnapshot = true;
+
+            if ( changeLog != null )
+            {
+                logChanges( createAddChange( addContext.getEntry() ) );
+            }
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void modify( ModifyOperationContext modifyContext ) throws LdapException
+    {
+        if ( snapshotFile == null )
+        {
+            super.modify( modifyContext );
+
+            return;
+        }
+
+        synchronized ( snapshotLock )
+        {
+            super.modify( modifyContext );
+            modifiedSinceSnapshot = true;
+
+            if ( changeLog != null )
+            {
+                LdifEntry change = new LdifEntry();
+                change.setChangeType( ChangeType.Modify );
+                change.setDn( modifyContext.getDn() );
+
+                for ( Modification modification : modifyContext.getModItems() )
+                {
+                    change.addModification( modification );
+                }
+
+                logChanges( change );
+            }
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void rename( RenameOperationContext renameContext ) throws LdapException
+    {
+        if ( snapshotFile == null )
+        {
+            super.rename( renameContext );
+
+            return;
+        }
+
+        synchronized ( snapshotLock )
+        {
+            PartitionTxn partitionTxn = renameContext.getTransaction();
+            String id = getEntryId( partitionTxn, renameContext.getDn() );
+
+            super.rename( renameContext );
+            modifiedSinceSnapshot = true;
+
+            if ( changeLog != null )
+            {
+                logChanges( createModDnChanges( partitionTxn, id, renameContext.getDn(), renameContext.getNewRdn(),
+                    renameContext.getDeleteOldRdn(), null ) );
+            }
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void move( MoveOperationContext moveContext ) throws LdapException
+    {
+        if ( snapshotFile == null )
+        {
+            super.move( moveContext );
+
+            return;
+        }
+
+        synchronized ( snapshotLock )
+        {
+            PartitionTxn partitionTxn = moveContext.getTransaction();
+            String id = getEntryId( partitionTxn, moveContext.getDn() );
+
+            super.move( moveContext );
+            modifiedSinceSnapshot = true;
+
+            if ( changeLog != null )
+            {
+                logChanges( createModDnChanges( partitionTxn, id, moveContext.getDn(), moveContext.getDn().getRdn(),
+                    false, moveContext.getNewSuperior() ) );
+            }
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void moveAndRename( MoveAndRenameOperationContext opContext ) throws LdapException
+    {
+        if ( snapshotFile == null )
+        {
+            super.moveAndRename( opContext );
+
+            return;
+        }
+
+        synchronized ( snapshotLock )
+        {
+            PartitionTxn partitionTxn = opContext.getTransaction();
+            String id = getEntryId( partitionTxn, opContext.getDn() );
+
+            super.moveAndRename( opContext );
+            modifiedSinceSnapshot = true;
+
+            if ( changeLog != null )
+            {
+                logChanges( createModDnChanges( partitionTxn, id, opContext.getDn(), opContext.getNewRdn(),
+                    opContext.getDeleteOldRdn(), opContext.getNewSuperiorDn() ) );
+            }
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Entry delete( PartitionTxn partitionTxn, String id ) throws LdapException
+    {
+        if ( snapshotFile == null )
+        {
+            return super.delete( partitionTxn, id );
+        }
+
+        synchronized ( snapshotLock )
+        {
+            Dn dn = buildEntryDn( partitionTxn, id );
+
+            Entry deletedEntry = super.delete( partitionTxn, id );
+            modifiedSinceSnapshot = true;
+
+            if ( changeLog != null )
+            {
+                LdifEntry change = new LdifEntry();
+                change.setChangeType( ChangeType.Delete );
+                change.setDn( dn );
+
+                logChanges( change );
+            }
+
+            return deletedEntry;
+        }
+    }
+
+
+    /**
+     * @return The snapshot file, or null if snapshots are disabled
+     */
+    public File getSnapshotFile()
+    {
+        return snapshotFile;
+    }
+
+
+    /**
+     * Enables the snapshots of the partition content, which is then restored from the last
+     * snapshot when the partition is initialized.
+     * 
+     * @param snapshotFile The snapshot file, or null to disable snapshots
+     */
+    public void setSnapshotFile( File snapshotFile )
+    {
+        checkInitialized( "snapshotFile" );
+        this.snapshotFile = snapshotFile;
+    }
+
+
+    /**
+     * @return The delay between two snapshots, in milliseconds
+     */
+    public long getSnapshotInterval()
+    {
+        return snapshotInterval;
+    }
+
+
+    /**
+     * @param snapshotInterval The delay between two snapshots, in milliseconds. 0 to only take
+     * a snapshot when the partition is destroyed, or when {@link #snapshot()} is called
+     */
+    public void setSnapshotInterval( long snapshotInterval )
+    {
+        checkInitialized( "snapshotInterval" );
+        this.snapshotInterval = snapshotInterval;
+    }
+
+
+    /**
+     * @return <code>true</code> if the modifications done after the last snapshot are logged
+     */
+    public boolean isChangeLogEnabled()
+    {
+        return changeLogEnabled;
+    }
+
+
+    /**
+     * Logs the modifications done after the last snapshot, so that they are not lost if the
+     * server stops before the next snapshot. Only used when a snapshot file is configured.
+     * 
+     * @param changeLogEnabled <code>true</code> to log the modifications
+     */
+    public void setChangeLogEnabled( boolean changeLogEnabled )
+    {
+        checkInitialized( "changeLogEnabled" );
+        this.changeLogEnabled = changeLogEnabled;
+    }
+
+
+    /**
+     * @return <code>true</code> if the partition content has been loaded from a snapshot
+     */
+    public boolean isSnapshotLoaded()
+    {
+        return snapshotLoaded;
+    }
+
+
+    /**
+     * @return The number of changes logged since the last snapshot
+     */
+    public long getChangeLogSize()
+    {
+        synchronized ( snapshotLock )
+        {
+            return changeLogSize;
         }
     }
 
@@ -0,0 +1,521 @@
+/*
+ *   Licensed to the Apache Software Foundation (ASF) under one
+ *   or more contributor license agreements.  See the NOTICE file
+ *   distributed with this work for additional information
+ *   regarding copyright ownership.  The ASF licenses this file
+ *   to you under the Apache License, Version 2.0 (the
+ *   "License"); you may not use this file except in compliance
+ *   with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ *
+ */
+package org.apache.directory.server.core.partition.impl.avl;
+
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+import org.apache.directory.api.ldap.model.cursor.Cursor;
+import org.apache.directory.api.ldap.model.cursor.CursorException;
+import org.apache.directory.api.ldap.model.cursor.Tuple;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.name.Rdn;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.api.util.Strings;
+import org.apache.directory.server.core.api.partition.PartitionTxn;
+import org.apache.directory.server.core.avltree.DefaultMarshaller;
+import org.apache.directory.server.core.avltree.Marshaller;
+import org.apache.directory.server.xdbm.AttributeTypeDictionary;
+import org.apache.directory.server.xdbm.CompactEntryCodec;
+import org.apache.directory.server.xdbm.DataObjectInput;
+import org.apache.directory.server.xdbm.DataObjectOutput;
+import org.apache.directory.server.xdbm.Index;
+import org.apache.directory.server.xdbm.IndexEntry;
+import org.apache.directory.server.xdbm.MasterTable;
+import org.apache.directory.server.xdbm.ParentIdAndRdn;
+
+
+/**
+ * Writes and reads the binary snapshots of an {@link AvlPartition}. A snapshot contains the
+ * master table and the content of every index, so that loading it does not require the
+ * entries to be parsed nor their values to be normalized again.
+ * <br>
+ * The snapshot is written as a stream, with the following structure :
+ * <ul>
+ *   <li><b>[int]</b> : the magic number, {@link #MAGIC}</li>
+ *   <li><b>[byte]</b> : the format version, {@link #VERSION_1}</li>
+ *   <li><b>[long]</b> : the snapshot generation, used to match the change log</li>
+ *   <li><b>[int][bytes]</b> : the AttributeType dictionary used to encode the entries</li>
+ *   <li><b>[int][UTF]*</b> : the OIDs of the indexes, in the order they are stored</li>
+ *   <li>The entries : <b>[1][UTF id][int length][entry]</b>, ended by a <b>[0]</b></li>
+ *   <li>For each index, its forward tuples : <b>[1][key][UTF id]</b>, ended by a <b>[0]</b></li>
+ *   <li><b>[long]</b> : the CRC32 of all the previous bytes</li>
+ * </ul>
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+final class AvlPartitionSnapshot
+{
+    /** The snapshot magic number, 'AVLS' */
+    static final int MAGIC = 0x41564C53;
+
+    /** The first version of the format */
+    static final byte VERSION_1 = 0x01;
+
+    /** The tags used to store the index keys */
+    private static final byte STRING_KEY = 0;
+    private static final byte BYTES_KEY = 1;
+    private static final byte PARENT_ID_AND_RDN_KEY = 2;
+    private static final byte DN_KEY = 3;
+    private static final byte SERIALIZED_KEY = 4;
+
+    /** The schemaManager reference */
+    private final SchemaManager schemaManager;
+
+    /** The partition master table */
+    private final MasterTable master;
+
+    /** The partition indexes, by OID */
+    private final Map<String, Index<?, String>> indexes;
+
+
+    /**
+     * A Marshaller storing the entries with the compact entry format
+     */
+    private static final class EntryMarshaller implements Marshaller<Entry>
+    {
+        private final CompactEntryCodec codec;
+
+
+        EntryMarshaller( SchemaManager schemaManager, AttributeTypeDictionary dictionary )
+        {
+            codec = new CompactEntryCodec( schemaManager, dictionary );
+        }
+
+
+        @Override
+        public byte[] serialize( Entry entry ) throws IOException
+        {
+            return codec.encode( entry );
+        }
+
+
+        @Override
+        public Entry deserialize( byte[] bytes ) throws IOException
+        {
+            return codec.decode( bytes, 0, bytes.length );
+        }
+    }
+
+
+    /**
+     * Creates a new instance of AvlPartitionSnapshot.
+     *
+     * @param schemaManager The reference to the global schemaManager
+     * @param master The partition master table
+     * @param indexes The partition indexes, by OID
+     */
+    AvlPartitionSnapshot( SchemaManager schemaManager, MasterTable master, Map<String, Index<?, String>> indexes )
+    {
+        this.schemaManager = schemaManager;
+        this.master = master;
+        this.indexes = indexes;
+    }
+
+
+    /**
+     * Writes the partition content into a file. The caller must prevent any modification
+     * while the snapshot is written.
+     *
+     * @param partitionTxn The transaction to use
+     * @param file The file to write
+     * @param generation The snapshot generation
+     * @return The number of entries written
+     * @throws IOException If the file cannot be written
+     */
+    long write( PartitionTxn partitionTxn, File file, long generation ) throws IOException
+    {
+        // The dictionary must be written before the entries using it
+        AttributeTypeDictionary dictionary = new AttributeTypeDictionary();
+
+        try ( Cursor<Tuple<String, Entry>> cursor = master.cursor() )
+        {
+            while ( cursor.next() )
+            {
+                dictionary.register( cursor.get().getValue() );
+            }
+        }
+        catch ( CursorException | LdapException e )
+        {
+            throw new IOException( e.getMessage(), e );
+        }
+
+        Marshaller<Entry> entryMarshaller = new EntryMarshaller( schemaManager, dictionary );
+        FileOutputStream fileOut = new FileOutputStream( file );
+        CheckedOutputStream checked = new CheckedOutputStream( new BufferedOutputStream( fileOut ), new CRC32() );
+        long nbEntries = 0L;
+
+        try ( DataObjectOutput out = new DataObjectOutput( checked ) )
+        {
+            out.writeInt( MAGIC );
+            out.writeByte( VERSION_1 );
+            out.writeLong( generation );
+
+            byte[] dictionaryBytes = dictionary.toBytes();
+            out.writeInt( dictionaryBytes.length );
+            out.write( dictionaryBytes );
+
+            out.writeInt( indexes.size() );
+
+            for ( String oid : indexes.keySet() )
+            {
+                out.writeUTF( oid );
+            }
+
+            // The entries
+            try ( Cursor<Tuple<String, Entry>> cursor = master.cursor() )
+            {
+                while ( cursor.next() )
+                {
+                    Tuple<String, Entry> tuple = cursor.get();
+                    byte[] bytes = entryMarshaller.serialize( tuple.getValue() );
+
+                    out.writeByte( 1 );
+                    out.writeUTF( tuple.getKey() );
+                    out.writeInt( bytes.length );
+                    out.write( bytes );
+                    nbEntries++;
+                }
+            }
+
+            out.writeByte( 0 );
+
+            // The indexes
+            for ( Index<?, String> index : indexes.values() )
+            {
+                writeIndex( partitionTxn, out, index );
+            }
+
+            out.flush();
+            out.writeLong( checked.getChecksum().getValue() );
+            out.flush();
+
+            // The snapshot must be on disk before it replaces the previous one
+            fileOut.getFD().sync();
+        }
+        catch ( CursorException | LdapException e )
+        {
+            throw new IOException( e.getMessage(), e );
+        }
+
+        return nbEntries;
+    }
+
+
+    /**
+     * Writes the forward tuples of an index
+     */
+    private <K> void writeIndex( PartitionTxn partitionTxn, DataObjectOutput out, Index<K, String> index )
+        throws IOException, LdapException, CursorException
+    {
+        try ( Cursor<IndexEntry<K, String>> cursor = index.forwardCursor( partitionTxn ) )
+        {
+            while ( cursor.next() )
+            {
+                IndexEntry<K, String> indexEntry = cursor.get();
+
+                out.writeByte( 1 );
+                writeKey( out, indexEntry.getKey() );
+                out.writeUTF( indexEntry.getId() );
+            }
+        }
+
+        out.writeByte( 0 );
+    }
+
+
+    /**
+     * Reads the generation of a snapshot, without reading its content.
+     *
+     * @param file The snapshot file
+     * @return The snapshot generation
+     * @throws IOException If the file is not a snapshot
+     */
+    static long readGeneration( File file ) throws IOException
+    {
+        try ( DataObjectInput in = new DataObjectInput( new BufferedInputStream( new FileInputStream( file ) ) ) )
+        {
+            readHeader( in );
+
+            return in.readLong();
+        }
+    }
+
+
+    private static void readHeader( DataObjectInput in ) throws IOException
+    {
+        if ( in.readInt() != MAGIC )
+        {
+            throw new IOException( "Not a partition snapshot" );
+        }
+
+        byte version = in.readByte();
+
+        if ( version != VERSION_1 )
+        {
+            throw new IOException( "Unsupported snapshot format version " + version );
+        }
+    }
+
+
+    /**
+     * Tells if a snapshot has been written with the same indexes as the partition ones.
+     *
+     * @param file The snapshot file
+     * @return <code>true</code> if the snapshot can be loaded
+     * @throws IOException If the file is not a snapshot
+     */
+    boolean hasSameIndexes( File file ) throws IOException
+    {
+        try ( DataObjectInput in = new DataObjectInput( new BufferedInputStream( new FileInputStream( file ) ) ) )
+        {
+            readHeader( in );
+            in.readLong();
+            in.skipBytes( in.readInt() );
+
+            int nbIndexes = in.readInt();
+            List<String> oids = new ArrayList<>( nbIndexes );
+
+            for ( int i = 0; i < nbIndexes; i++ )
+            {
+                oids.add( in.readUTF() );
+            }
+
+            return oids.size() == indexes.size() && indexes.keySet().containsAll( oids );
+        }
+    }
+
+
+    /**
+     * Loads a snapshot into the partition master table and indexes, which are expected to be
+     * empty. The indexes must be the ones the snapshot has been written with.
+     *
+     * @param partitionTxn The transaction to use
+     * @param file The snapshot file
+     * @return The number of entries read
+     * @throws IOException If the file cannot be read, or is corrupted
+     */
+    long read( PartitionTxn partitionTxn, File file ) throws IOException
+    {
+        CheckedInputStream checked = new CheckedInputStream(
+            new BufferedInputStream( new FileInputStream( file ) ), new CRC32() );
+        long nbEntries = 0L;
+
+        try ( DataObjectInput in = new DataObjectInput( checked ) )
+        {
+            readHeader( in );
+            in.readLong();
+
+            byte[] dictionaryBytes = new byte[in.readInt()];
+            in.readFully( dictionaryBytes );
+            Marshaller<Entry> entryMarshaller = new EntryMarshaller( schemaManager,
+                new AttributeTypeDictionary( dictionaryBytes ) );
+
+            int nbIndexes = in.readInt();
+            List<Index<?, String>> storedIndexes = new ArrayList<>( nbIndexes );
+
+            for ( int i = 0; i < nbIndexes; i++ )
+            {
+                String oid = in.readUTF();
+                Index<?, String> index = indexes.get( oid );
+
+                if ( index == null )
+                {
+                    throw new IOException( "The snapshot contains the unknown index " + oid );
+                }
+
+                storedIndexes.add( index );
+            }
+
+            // The entries
+            while ( in.readByte() == 1 )
+            {
+                String id = in.readUTF();
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully( bytes );
+
+                master.put( partitionTxn, id, entryMarshaller.deserialize( bytes ) );
+                nbEntries++;
+            }
+
+            // The indexes
+            for ( Index<?, String> index : storedIndexes )
+            {
+                readIndex( partitionTxn, in, index );
+            }
+
+            long checksum = checked.getChecksum().getValue();
+
+            if ( in.readLong() != checksum )
+            {
+                throw new IOException( "The snapshot " + file + " is corrupted" );
+            }
+        }
+        catch ( LdapException le )
+        {
+            throw new IOException( le.getMessage(), le );
+        }
+
+        return nbEntries;
+    }
+
+
+    /**
+     * Reads the forward tuples of an index, and adds them to the index
+     */
+    @SuppressWarnings("unchecked")
+    private <K> void readIndex( PartitionTxn partitionTxn, DataObjectInput in, Index<K, String> index )
+        throws IOException, LdapException
+    {
+        while ( in.readByte() == 1 )
+        {
+            K key = ( K ) readKey( in );
+            String id = in.readUTF();
+
+            index.add( partitionTxn, key, id );
+        }
+    }
+
+
+    /**
+     * Writes an index key. The keys are normalized values, so they are stored as is
+     */
+    private void writeKey( DataObjectOutput out, Object key ) throws IOException
+    {
+        if ( key instanceof String )
+        {
+            out.writeByte( STRING_KEY );
+            writeBytes( out, Strings.getBytesUtf8( ( String ) key ) );
+        }
+        else if ( key instanceof byte[] )
+        {
+            out.writeByte( BYTES_KEY );
+            writeBytes( out, ( byte[] ) key );
+        }
+        else if ( key instanceof ParentIdAndRdn )
+        {
+            ParentIdAndRdn parentIdAndRdn = ( ParentIdAndRdn ) key;
+            Rdn[] rdns = parentIdAndRdn.getRdns();
+
+            out.writeByte( PARENT_ID_AND_RDN_KEY );
+            out.writeUTF( parentIdAndRdn.getParentId() );
+            out.writeInt( parentIdAndRdn.getNbChildren() );
+            out.writeInt( parentIdAndRdn.getNbDescendants() );
+            out.writeInt( rdns.length );
+
+            for ( Rdn rdn : rdns )
+            {
+                rdn.writeExternal( out );
+            }
+        }
+        else if ( key instanceof Dn )
+        {
+            out.writeByte( DN_KEY );
+            writeBytes( out, Strings.getBytesUtf8( ( ( Dn ) key ).getName() ) );
+        }
+        else
+        {
+            out.writeByte( SERIALIZED_KEY );
+            writeBytes( out, DefaultMarshaller.INSTANCE.serialize( key ) );
+        }
+    }
+
+
+    /**
+     * Reads an index key
+     */
+    private Object readKey( DataObjectInput in ) throws IOException, LdapException
+    {
+        byte type = in.readByte();
+
+        switch ( type )
+        {
+            case STRING_KEY:
+                return Strings.utf8ToString( readBytes( in ) );
+
+            case BYTES_KEY:
+                return readBytes( in );
+
+            case PARENT_ID_AND_RDN_KEY:
+                ParentIdAndRdn parentIdAndRdn = new ParentIdAndRdn();
+                parentIdAndRdn.setParentId( in.readUTF() );
+                parentIdAndRdn.setNbChildren( in.readInt() );
+                parentIdAndRdn.setNbDescendants( in.readInt() );
+
+                Rdn[] rdns = new Rdn[in.readInt()];
+
+                for ( int i = 0; i < rdns.length; i++ )
+                {
+                    rdns[i] = new Rdn( schemaManager );
+
+                    try
+                    {
+                        rdns[i].readExternal( in );
+                    }
+                    catch ( ClassNotFoundException cnfe )
+                    {
+                        throw new IOException( cnfe.getMessage(), cnfe );
+                    }
+                }
+
+                parentIdAndRdn.setRdns( rdns );
+
+                return parentIdAndRdn;
+
+            case DN_KEY:
+                return new Dn( schemaManager, Strings.utf8ToString( readBytes( in ) ) );
+
+            case SERIALIZED_KEY:
+                return DefaultMarshaller.INSTANCE.deserialize( readBytes( in ) );
+
+            default:
+                throw new IOException( "Unexpected index key type " + type );
+        }
+    }
+
+
+    private static void writeBytes( DataObjectOutput out, byte[] bytes ) throws IOException
+    {
+        out.writeInt( bytes.length );
+        out.write( bytes );
+    }
+
+
+    private static byte[] readBytes( DataObjectInput in ) throws IOException
+    {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully( bytes );
+
+        return bytes;
+    }
+}
@@ -32,6 +32,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
@@ -71,6 +72,8 @@ import org.apache.directory.api.util.Strings;
 import org.apache.directory.api.util.exception.MultiException;
 import org.apache.directory.server.constants.ApacheSchemaConstants;
 import org.apache.directory.server.core.api.DnFactory;
+import org.apache.directory.server.core.api.DnLockManager;
+import org.apache.directory.server.core.api.DnLockManager.DnLock;
 import org.apache.directory.server.core.api.entry.ClonedServerEntry;
 import org.apache.directory.server.core.api.filtering.EntryFilteringCursor;
 import org.apache.directory.server.core.api.filtering.EntryFilteringCursorImpl;
@@ -86,6 +89,7 @@ import org.apache.directory.server.core.api.interceptor.context.OperationContext
 import org.apache.directory.server.core.api.interceptor.context.RenameOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.SearchOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.UnbindOperationContext;
+import org.apache.directory.server.core.api.normalization.NormalizationCache;
 import org.apache.directory.server.core.api.partition.AbstractPartition;
 import org.apache.directory.server.core.api.partition.Partition;
 import org.apache.directory.server.core.api.partition.PartitionTxn;
@@ -98,6 +102,7 @@ import org.apache.directory.server.xdbm.IndexNotFoundException;
 import org.apache.directory.server.xdbm.MasterTable;
 import org.apache.directory.server.xdbm.ParentIdAndRdn;
 import org.apache.directory.server.xdbm.Store;
+import org.apache.directory.server.xdbm.ValueCompression;
 import org.apache.directory.server.xdbm.search.Optimizer;
 import org.apache.directory.server.xdbm.search.PartitionSearchResult;
 import org.apache.directory.server.xdbm.search.SearchEngine;
@@ -130,6 +135,15 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
     /** The Entry cache size for this partition */
     protected int cacheSize = DEFAULT_CACHE_SIZE;
 
+    /** The number of bytes used by the off-heap entry cache. 0 means no off-heap cache */
+    protected long offHeapCacheSize = 0L;
+
+    /** The size from which the attribute values are compressed in the master table. 0 means no threshold */
+    protected int compressionThreshold = 0;
+
+    /** The attributes whose values are always compressed in the master table */
+    protected Set<String> compressedAttributes = new HashSet<>();
+
     /** The alias cache */
     protected Cache aliasCache;
 
@@ -205,8 +219,40 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
     /** A lock to protect the backend from concurrent reads/writes */
     private ReadWriteLock rwLock;
 
-    /** a cache to hold <entryUUID, Dn> pairs, this is used for speeding up the buildEntryDn() method */
+    /** The entry and subtree locks serializing the concurrent writes on the same entries */
+    private final DnLockManager dnLockManager = new DnLockManager();
+
+    /** A lock serializing the updates of the children and descendants counters of the Rdn index */
+    private final Object rdnCountersLock = new Object();
+
+    /** a cache to hold <entryUUID, CachedDn> pairs, this is used for speeding up the buildEntryDn() method */
     private Cache entryDnCache;
+
+    /** Incremented each time an entry is renamed or moved, so that the cached Dns get checked */
+    private final AtomicLong dnEpoch = new AtomicLong();
+
+    /**
+     * A Dn stored in the entryDn cache, with the parent Dn it has been composed from
+     */
+    private static final class CachedDn
+    {
+        /** The entry Dn */
+        private final Dn dn;
+
+        /** The parent Dn used to compose the entry Dn */
+        private final Dn parentDn;
+
+        /** The Dn epoch at which this Dn was last known to be valid */
+        private volatile long epoch;
+
+
+        private CachedDn( Dn dn, Dn parentDn, long epoch )
+        {
+            this.dn = dn;
+            this.parentDn = parentDn;
+            this.epoch = epoch;
+        }
+    }
     
     /** a semaphore to serialize the writes on context entry while updating contextCSN attribute */
     private Semaphore ctxCsnSemaphore = new Semaphore( 1 );
@@ -306,6 +352,106 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
     }
 
 
+    /**
+     * Gets the number of bytes the off-heap entry cache can use for this BTreePartition.
+     *
+     * @return the off-heap cache size in bytes, 0 if the entries are cached on the heap
+     */
+    public long getOffHeapCacheSize()
+    {
+        return offHeapCacheSize;
+    }
+
+
+    /**
+     * Sets the number of bytes the off-heap entry cache can use. When set, the partition
+     * keeps the serialized entries in direct memory instead of in the heap based entry cache,
+     * and they are deserialized on a cache hit.
+     *
+     * @param offHeapCacheSize the off-heap cache size in bytes, 0 to disable it
+     */
+    public void setOffHeapCacheSize( long offHeapCacheSize )
+    {
+        checkInitialized( "offHeapCacheSize" );
+        this.offHeapCacheSize = offHeapCacheSize;
+    }
+
+
+    /**
+     * Gets the size from which the values of an attribute are compressed in the master table.
+     *
+     * @return the compression threshold in bytes, 0 if the values are not compressed by size
+     */
+    public int getCompressionThreshold()
+    {
+        return compressionThreshold;
+    }
+
+
+    /**
+     * Sets the size from which the serialized values of an attribute are compressed in the
+     * master table. The compressed values are only decompressed when the attribute is read.
+     *
+     * @param compressionThreshold the compression threshold in bytes, 0 to disable it
+     */
+    public void setCompressionThreshold( int compressionThreshold )
+    {
+        checkInitialized( "compressionThreshold" );
+        this.compressionThreshold = compressionThreshold;
+    }
+
+
+    /**
+     * @return the IDs of the attributes whose values are always compressed in the master table
+     */
+    public Set<String> getCompressedAttributes()
+    {
+        return compressedAttributes;
+    }
+
+
+    /**
+     * Sets the attributes whose values are always compressed in the master table, whatever
+     * their size.
+     *
+     * @param compressedAttributes the names or OIDs of the attributes to compress
+     */
+    public void setCompressedAttributes( Set<String> compressedAttributes )
+    {
+        checkInitialized( "compressedAttributes" );
+        this.compressedAttributes = compressedAttributes;
+    }
+
+
+    /**
+     * Builds the compression policy of the master table from the configuration.
+     *
+     * @return The compression policy, or null if nothing is compressed
+     * @throws LdapException If one of the compressed attributes is unknown
+     */
+    protected ValueCompression getValueCompression() throws LdapException
+    {
+        boolean noAttributes = ( compressedAttributes == null ) || compressedAttributes.isEmpty();
+
+        if ( ( compressionThreshold <= 0 ) && noAttributes )
+        {
+            return null;
+        }
+
+        Set<String> oids = new HashSet<>();
+
+        if ( !noAttributes )
+        {
+            for ( String attributeId : compressedAttributes )
+            {
+                oids.add( schemaManager.lookupAttributeTypeRegistry( attributeId ).getOid() );
+            }
+        }
+
+        return new ValueCompression( Math.max( compressionThreshold, 0 ), oids );
+    }
+
+
     /**
      * Tells if the Optimizer is enabled or not
      * @return true if the optimizer is enabled
@@ -361,6 +507,29 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
     }
 
 
+    /**
+     * Flushes the partition after a write operation, if syncOnWrite is set. Nothing is done
+     * for the operations done in a write transaction which commit stores the changes : it may
+     * group several operations which must not be committed one by one.
+     *
+     * @param partitionTxn The transaction the operation has been done in
+     * @throws LdapException If the flush failed
+     */
+    protected void syncAfterWrite( PartitionTxn partitionTxn ) throws LdapException
+    {
+        if ( !isSyncOnWrite.get() )
+        {
+            return;
+        }
+
+        if ( !( partitionTxn instanceof PartitionWriteTxn )
+            || !( ( PartitionWriteTxn ) partitionTxn ).isFlushedOnCommit() )
+        {
+            sync();
+        }
+    }
+
+
     /**
      * Sets up the system indices.
      */
@@ -723,6 +892,25 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
      */
     @Override
     public void add( AddOperationContext addContext ) throws LdapException
+    {
+        // Nothing can be added below the entry until it's added
+        DnLock dnLock = dnLockManager.lockSubtrees( addContext.getDn() );
+
+        try
+        {
+            addEntry( addContext );
+        }
+        finally
+        {
+            dnLock.unlock();
+        }
+    }
+
+
+    /**
+     * Adds an entry, holding its lock.
+     */
+    private void addEntry( AddOperationContext addContext ) throws LdapException
     {
         PartitionTxn partitionTxn = addContext.getTransaction();
         
@@ -828,7 +1016,7 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
                     continue;
                 }
                 
-                String normalizedOc = objectClassNormalizer.normalize( value.getValue() );
+                String normalizedOc = NormalizationCache.normalize( objectClassNormalizer, value.getValue() );
 
                 objectClassIdx.add( partitionTxn, normalizedOc, id );
             }
@@ -939,6 +1127,25 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
      */
     @Override
     public Entry delete( DeleteOperationContext deleteContext ) throws LdapException
+    {
+        // Nothing can be added below the entry while it's deleted
+        DnLock dnLock = dnLockManager.lockSubtrees( deleteContext.getDn() );
+
+        try
+        {
+            return deleteEntry( deleteContext );
+        }
+        finally
+        {
+            dnLock.unlock();
+        }
+    }
+
+
+    /**
+     * Deletes an entry, holding its lock.
+     */
+    private Entry deleteEntry( DeleteOperationContext deleteContext ) throws LdapException
     {
         PartitionTxn partitionTxn = deleteContext.getTransaction();
         
@@ -983,6 +1190,20 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
 
 
     protected void updateRdnIdx( PartitionTxn partitionTxn, String parentId, boolean addRemove, int nbDescendant ) throws LdapException
+    {
+        // The ancestors are shared by the concurrent writers below them
+        synchronized ( rdnCountersLock )
+        {
+            updateRdnCounters( partitionTxn, parentId, addRemove, nbDescendant );
+        }
+    }
+
+
+    /**
+     * Updates the children and descendants counters of an entry and of its ancestors.
+     */
+    private void updateRdnCounters( PartitionTxn partitionTxn, String parentId, boolean addRemove, int nbDescendant )
+        throws LdapException
     {
         boolean isFirst = true;
         ////dumpRdnIdx();
@@ -998,7 +1219,7 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
         {
             rdnIdx.drop( partitionTxn, parentId );
             ////dumpRdnIdx();
-            
+        
             if ( isFirst )
             {
                 if ( addRemove == ADD_CHILD )
@@ -1079,7 +1300,7 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
                     continue;
                 }
                 
-                String normalizedOc = objectClassNormalizer.normalize( value.getValue() );
+                String normalizedOc = NormalizationCache.normalize( objectClassNormalizer, value.getValue() );
 
                 objectClassIdx.drop( partitionTxn, normalizedOc, id );
             }
@@ -1136,6 +1357,12 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
 
                 ////dumpRdnIdx();
 
+                // A deleted entry has no descendant
+                if ( piarCache != null )
+                {
+                    piarCache.remove( id );
+                }
+
                 entryDnCache.remove( id );
                 
                 Attribute csn = entry.get( entryCsnAT );
@@ -1152,10 +1379,7 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
                 unlockWrite();
             }
 
-            if ( isSyncOnWrite.get() )
-            {
-                sync();
-            }
+            syncAfterWrite( partitionTxn );
 
             return entry;
         }
@@ -1314,21 +1538,12 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
             {
                 entry.setDn( dn );
 
-                entry = new ClonedServerEntry( entry );
+                // The cached entry attributes are shared, and only copied when modified
+                entry = new ClonedServerEntry( entry, true );
 
                 // Replace the entry's DN with the provided one
-                Attribute entryDnAt = entry.get( entryDnAT );
                 Value dnValue = new Value( entryDnAT, dn.getName(), dn.getNormName() );
-
-                if ( entryDnAt == null )
-                {
-                    entry.add( entryDnAT, dnValue );
-                }
-                else
-                {
-                    entryDnAt.clear();
-                    entryDnAt.add( dnValue );
-                }
+                entry.put( entryDnAT, dnValue );
 
                 return entry;
             }
@@ -1351,7 +1566,7 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
                 // always store original entry in the cache
                 addToCache( id, entry );
 
-                entry = new ClonedServerEntry( entry );
+                entry = new ClonedServerEntry( entry, true );
 
                 if ( !entry.containsAttribute( entryDnAT ) )
                 {
@@ -1407,7 +1622,25 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
      * {@inheritDoc}
      */
     @Override
-    public final synchronized Entry modify( PartitionTxn partitionTxn, Dn dn, Modification... mods ) throws LdapException
+    public final Entry modify( PartitionTxn partitionTxn, Dn dn, Modification... mods ) throws LdapException
+    {
+        DnLock dnLock = dnLockManager.lockEntries( dn );
+
+        try
+        {
+            return modifyEntry( partitionTxn, dn, mods );
+        }
+        finally
+        {
+            dnLock.unlock();
+        }
+    }
+
+
+    /**
+     * Modifies an entry, holding its lock.
+     */
+    private Entry modifyEntry( PartitionTxn partitionTxn, Dn dn, Modification... mods ) throws LdapException
     {
         String id = getEntryId( partitionTxn, dn );
         Entry entry = master.get( partitionTxn, id );
@@ -1423,15 +1656,15 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
                     case ADD_ATTRIBUTE:
                         modifyAdd( partitionTxn, id, entry, attrMods );
                         break;
-    
+
                     case REMOVE_ATTRIBUTE:
                         modifyRemove( partitionTxn, id, entry, attrMods );
                         break;
-    
+
                     case REPLACE_ATTRIBUTE:
                         modifyReplace( partitionTxn, id, entry, attrMods );
                         break;
-    
+
                     default:
                         throw new LdapException( I18n.err( I18n.ERR_221 ) );
                 }
@@ -1448,7 +1681,7 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
         entry.removeAttributes( entryDnAT );
 
         setContextCsn( entry.get( entryCsnAT ).getString() );
-        
+    
         master.put( partitionTxn, id, entry );
 
         return entry;
@@ -1475,7 +1708,7 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
         }
 
         String modsOid = schemaManager.getAttributeTypeRegistry().getOidByName( mods.getId() );
-        String normalizedModsOid = presenceNormalizer.normalize( modsOid );
+        String normalizedModsOid = NormalizationCache.normalize( presenceNormalizer, modsOid );
 
         AttributeType attributeType = mods.getAttributeType();
 
@@ -1489,7 +1722,7 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
                     continue;
                 }
                 
-                String normalizedOc = objectClassNormalizer.normalize( value.getValue() );
+                String normalizedOc = NormalizationCache.normalize( objectClassNormalizer, value.getValue() );
 
                 objectClassIdx.add( partitionTxn, normalizedOc, id );
             }
@@ -1599,7 +1832,7 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
                     continue;
                 }
                 
-                String normalizedOc = objectClassNormalizer.normalize( value.getValue() );
+                String normalizedOc = NormalizationCache.normalize( objectClassNormalizer, value.getValue() );
 
                 objectClassIdx.drop( partitionTxn, normalizedOc, id );
             }
@@ -1611,7 +1844,7 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
                     continue;
                 }
                 
-                String normalizedOc = objectClassNormalizer.normalize( value.getValue() );
+                String normalizedOc = NormalizationCache.normalize( objectClassNormalizer, value.getValue() );
 
                 objectClassIdx.add( partitionTxn, normalizedOc, id );
             }
@@ -1658,7 +1891,7 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
                     continue;
                 }
                 
-                String normalizedOc = objectClassNormalizer.normalize( value.getValue() );
+                String normalizedOc = NormalizationCache.normalize( objectClassNormalizer, value.getValue() );
 
                 objectClassIdx.drop( partitionTxn, normalizedOc, id );
             }
@@ -1746,7 +1979,7 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
                         continue;
                     }
                     
-                    String normalizedOc = objectClassNormalizer.normalize( value.getValue() );
+                    String normalizedOc = NormalizationCache.normalize( objectClassNormalizer, value.getValue() );
 
                     objectClassIdx.drop( partitionTxn, normalizedOc, id );
                 }
@@ -1760,7 +1993,7 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
                         continue;
                     }
                     
-                    String normalizedOc = objectClassNormalizer.normalize( value.getValue() );
+                    String normalizedOc = NormalizationCache.normalize( objectClassNormalizer, value.getValue() );
 
                     objectClassIdx.drop( partitionTxn, normalizedOc, id );
                 }
@@ -1907,7 +2140,26 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
      * {@inheritDoc}
      */
     @Override
-    public final synchronized void move( PartitionTxn partitionTxn, Dn oldDn, Dn newSuperiorDn, Dn newDn, Entry modifiedEntry )
+    public final void move( PartitionTxn partitionTxn, Dn oldDn, Dn newSuperiorDn, Dn newDn, Entry modifiedEntry )
+        throws LdapException
+    {
+        DnLock dnLock = dnLockManager.lockSubtrees( oldDn, newDn );
+
+        try
+        {
+            moveEntry( partitionTxn, oldDn, newSuperiorDn, newDn, modifiedEntry );
+        }
+        finally
+        {
+            dnLock.unlock();
+        }
+    }
+
+
+    /**
+     * Moves an entry, holding the locks of its old and new subtrees.
+     */
+    private void moveEntry( PartitionTxn partitionTxn, Dn oldDn, Dn newSuperiorDn, Dn newDn, Entry modifiedEntry )
         throws LdapException
     {
         // Check that the parent Dn exists
@@ -1957,6 +2209,9 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
         movedEntry.setParentId( newParentId );
         rdnIdx.add( partitionTxn, movedEntry, entryId );
 
+        // Only the moved entry's Dn is invalidated, its descendants' Dns depend on it
+        invalidateEntryDn( entryId );
+
         updateRdnIdx( partitionTxn, newParentId, ADD_CHILD, movedEntry.getNbDescendants() );
 
         /*
@@ -1977,7 +2232,7 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
             {
                 aliasTarget = new Dn( schemaManager, aliasTarget );
             }
-            
+        
 
             addAliasIndices( partitionTxn, entryId, buildEntryDn( partitionTxn, entryId ), aliasTarget );
         }
@@ -1996,16 +2251,11 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
         // Remove the EntryDN
         modifiedEntry.removeAttributes( entryDnAT );
 
-        entryDnCache.removeAll();
-        
         setContextCsn( modifiedEntry.get( entryCsnAT ).getString() );
 
         master.put( partitionTxn, entryId, modifiedEntry );
 
-        if ( isSyncOnWrite.get() )
-        {
-            sync();
-        }
+        syncAfterWrite( partitionTxn );
     }
 
 
@@ -2132,11 +2382,30 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
     @Override
     public void moveAndRename( PartitionTxn partitionTxn, Dn oldDn, Dn newSuperiorDn, Rdn newRdn, Map<String, List<ModDnAva>> modAvas, 
         Entry modifiedEntry ) throws LdapException
+    {
+        DnLock dnLock = dnLockManager.lockSubtrees( oldDn, newSuperiorDn.add( newRdn ) );
+
+        try
+        {
+            moveAndRenameEntry( partitionTxn, oldDn, newSuperiorDn, newRdn, modAvas, modifiedEntry );
+        }
+        finally
+        {
+            dnLock.unlock();
+        }
+    }
+
+
+    /**
+     * Moves and renames an entry, holding the locks of its old and new subtrees.
+     */
+    private void moveAndRenameEntry( PartitionTxn partitionTxn, Dn oldDn, Dn newSuperiorDn, Rdn newRdn,
+        Map<String, List<ModDnAva>> modAvas, Entry modifiedEntry ) throws LdapException
     {
         // Get the child and the new parent to be entries and Ids
         Attribute entryIdAt = modifiedEntry.get( SchemaConstants.ENTRY_UUID_AT );
         String entryId;
-        
+    
         if ( entryIdAt == null )
         {
             entryId = getEntryId( partitionTxn, modifiedEntry.getDn() );
@@ -2148,7 +2417,7 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
 
         Attribute oldParentIdAt = modifiedEntry.get( ApacheSchemaConstants.ENTRY_PARENT_ID_AT );
         String oldParentId;
-        
+    
         if ( oldParentIdAt == null )
         {
             oldParentId = getEntryId( partitionTxn, oldDn.getParent() );
@@ -2162,7 +2431,7 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
 
         //Get the info about the moved entry
         ParentIdAndRdn movedEntry = rdnIdx.reverseLookup( partitionTxn, entryId );
-        
+    
         // First drop the moved entry from the rdn index
         rdnIdx.drop( partitionTxn, entryId );
 
@@ -2191,6 +2460,9 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
             { newRdn } );
         rdnIdx.add( partitionTxn, movedEntry, entryId );
 
+        // Only the moved entry's Dn is invalidated, its descendants' Dns depend on it
+        invalidateEntryDn( entryId );
+
         updateRdnIdx( partitionTxn, newParentId, ADD_CHILD, movedEntry.getNbDescendants() );
 
         // Process the modified indexes now
@@ -2221,19 +2493,16 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
             {
                 aliasTarget = new Dn( schemaManager, aliasTarget );
             }
-            
+        
             addAliasIndices( partitionTxn, entryId, buildEntryDn( partitionTxn, entryId ), aliasTarget );
         }
 
         // Remove the EntryDN
         modifiedEntry.removeAttributes( entryDnAT );
-        
+    
         // Update the entryParentId attribute
         modifiedEntry.removeAttributes( ApacheSchemaConstants.ENTRY_PARENT_ID_OID );
         modifiedEntry.add( ApacheSchemaConstants.ENTRY_PARENT_ID_OID, newParentId );
-        
-        // Doom the DN cache now
-        entryDnCache.removeAll();
 
         setContextCsn( modifiedEntry.get( entryCsnAT ).getString() );
 
@@ -2394,7 +2663,8 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
                 {
                     Index<?, String> userIndex = getUserIndex( newRdnAttrType );
 
-                    String normalized = oldAttributeType.getEquality().getNormalizer().normalize( oldAttribute.get().getValue() );
+                    String normalized = NormalizationCache.normalize( oldAttributeType.getEquality().getNormalizer(),
+                        oldAttribute.get().getValue() );
                     ( ( Index ) userIndex ).drop( partitionTxn, normalized, id );
 
                     /*
@@ -2431,14 +2701,15 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
                 }
                 */
                 
-                String normalized = newRdnAttrType.getEquality().getNormalizer().normalize( ( String ) newNormValue );
+                String normalized = NormalizationCache.normalize( newRdnAttrType.getEquality().getNormalizer(),
+                    ( String ) newNormValue );
                 ( ( Index ) userIndex ).add( partitionTxn, normalized, oldId );
                 
                 
                 //( ( Index ) index ).add( newNormValue, oldId );
 
                 // Make sure the altered entry shows the existence of the new attrib
-                String normTypeOid = presenceNormalizer.normalize( newNormType );
+                String normTypeOid = NormalizationCache.normalize( presenceNormalizer, newNormType );
                 
                 if ( !presenceIdx.forward( partitionTxn, normTypeOid, oldId ) )
                 {
@@ -2494,7 +2765,8 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
                     {
                         Index<?, String> userIndex = getUserIndex( oldRdnAttrType );
                         
-                        String normalized = oldRdnAttrType.getEquality().getNormalizer().normalize( oldNormValue );
+                        String normalized = NormalizationCache.normalize( oldRdnAttrType.getEquality().getNormalizer(),
+                            oldNormValue );
                         ( ( Index ) userIndex ).drop( partitionTxn, normalized, id );
 
                         /*
@@ -2503,7 +2775,7 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
                          */
                         if ( null == userIndex.reverseLookup( partitionTxn, oldId ) )
                         {
-                            String oldNormTypeOid = presenceNormalizer.normalize( oldNormType );
+                            String oldNormTypeOid = NormalizationCache.normalize( presenceNormalizer, oldNormType );
                             presenceIdx.drop( partitionTxn, oldNormTypeOid, oldId );
                         }
                     }
@@ -2524,9 +2796,28 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
     /**
      * {@inheritDoc}
      */
-    @SuppressWarnings("unchecked")
     @Override
-    public final synchronized void rename( PartitionTxn partitionTxn, Dn dn, Rdn newRdn, boolean deleteOldRdn, Entry entry ) 
+    public final void rename( PartitionTxn partitionTxn, Dn dn, Rdn newRdn, boolean deleteOldRdn, Entry entry ) 
+        throws LdapException
+    {
+        DnLock dnLock = dnLockManager.lockSubtrees( dn, dn.getParent().add( newRdn ) );
+
+        try
+        {
+            renameEntry( partitionTxn, dn, newRdn, deleteOldRdn, entry );
+        }
+        finally
+        {
+            dnLock.unlock();
+        }
+    }
+
+
+    /**
+     * Renames an entry, holding the locks of its old and new subtrees.
+     */
+    @SuppressWarnings("unchecked")
+    private void renameEntry( PartitionTxn partitionTxn, Dn dn, Rdn newRdn, boolean deleteOldRdn, Entry entry ) 
         throws LdapException
     {
         String oldId = getEntryId( partitionTxn, dn );
@@ -2560,12 +2851,10 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
 
         rdnIdx.add( partitionTxn, parentIdAndRdn, oldId );
 
-        entryDnCache.removeAll();
-        
-        if ( isSyncOnWrite.get() )
-        {
-            sync();
-        }
+        // Only the renamed entry's Dn is invalidated, its descendants' Dns depend on it
+        invalidateEntryDn( oldId );
+    
+        syncAfterWrite( partitionTxn );
     }
 
 
@@ -2641,91 +2930,185 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
      */
     protected Dn buildEntryDn( PartitionTxn partitionTxn, String id ) throws LdapException
     {
-        String parentId = id;
-        String rootId = Partition.ROOT_ID;
-
-        // Create an array of 10 rdns, just in case. We will extend it if needed
-        Rdn[] rdnArray = new Rdn[10];
-        int pos = 0;
-
-        Dn dn = null;
-        
         try
         {
             rwLock.readLock().lock();
 
-            if ( entryDnCache != null )
+            CachedDn cachedDn = getCachedDn( partitionTxn, id, dnEpoch.get() );
+
+            if ( cachedDn == null )
             {
-                Element el = entryDnCache.get( id );
-                
-                if ( el != null )
-                {
-                    return ( Dn ) el.getObjectValue();
-                }
+                return null;
             }
-            
-            do
+
+            return cachedDn.dn;
+        }
+        finally
+        {
+            rwLock.readLock().unlock();
+        }
+    }
+
+
+    /**
+     * Gets the Dn of an entry from the entryDn cache, composing it from its parent's Dn if
+     * needed. A cached Dn stamped with the current epoch is used as is. Otherwise, its parent's
+     * Dn is checked : if it is still the one it was composed from, the entry has not been
+     * renamed or moved, and the cached Dn is still valid.
+     *
+     * @param id The entry ID
+     * @param epoch The current Dn epoch
+     * @return The cached Dn, or null if the entry does not exist
+     */
+    private CachedDn getCachedDn( PartitionTxn partitionTxn, String id, long epoch ) throws LdapException
+    {
+        CachedDn cachedDn = null;
+
+        if ( entryDnCache != null )
+        {
+            Element element = entryDnCache.get( id );
+
+            if ( element != null )
             {
-                ParentIdAndRdn cur;
-            
-                if ( piarCache != null )
-                {
-                    Element piar = piarCache.get( parentId );
-                    
-                    if ( piar != null )
-                    {
-                        cur = ( ParentIdAndRdn ) piar.getObjectValue();
-                    }
-                    else
-                    {
-                        cur = rdnIdx.reverseLookup( partitionTxn, parentId );
-                        
-                        if ( cur == null )
-                        {
-                            return null;
-                        }
-                        
-                        piarCache.put( new Element( parentId, cur ) );
-                    }
-                }
-                else
+                cachedDn = ( CachedDn ) element.getObjectValue();
+
+                if ( cachedDn.epoch == epoch )
                 {
-                    cur = rdnIdx.reverseLookup( partitionTxn, parentId );
-                    
-                    if ( cur == null )
-                    {
-                        return null;
-                    }
+                    return cachedDn;
                 }
+            }
+        }
 
-                Rdn[] rdns = cur.getRdns();
+        ParentIdAndRdn parentIdAndRdn = getParentIdAndRdn( partitionTxn, id );
 
-                for ( Rdn rdn : rdns )
-                {
-                    if ( ( pos > 0 ) && ( pos % 10 == 0 ) )
-                    {
-                        // extend the array
-                        Rdn[] newRdnArray = new Rdn[pos + 10];
-                        System.arraycopy( rdnArray, 0, newRdnArray, 0, pos );
-                        rdnArray = newRdnArray;
-                    }
+        if ( parentIdAndRdn == null )
+        {
+            return null;
+        }
 
-                    rdnArray[pos++] = rdn;
-                }
+        String parentId = parentIdAndRdn.getParentId();
+        Dn parentDn;
 
-                parentId = cur.getParentId();
+        if ( parentId.equals( Partition.ROOT_ID ) )
+        {
+            parentDn = Dn.ROOT_DSE;
+        }
+        else
+        {
+            CachedDn parentCachedDn = getCachedDn( partitionTxn, parentId, epoch );
+
+            if ( parentCachedDn == null )
+            {
+                return null;
             }
-            while ( !parentId.equals( rootId ) );
-            
-            dn = new Dn( schemaManager, Arrays.copyOf( rdnArray, pos ) );
-            
-            entryDnCache.put( new Element( id, dn ) );
-            return dn;
+
+            parentDn = parentCachedDn.dn;
         }
-        finally
+
+        if ( ( cachedDn != null ) && ( cachedDn.parentDn == parentDn ) )
         {
-            rwLock.readLock().unlock();
+            // The parent has not been renamed nor moved
+            cachedDn.epoch = epoch;
+
+            return cachedDn;
+        }
+
+        // Compose the Dn from the entry's Rdns and its parent's Dn
+        Rdn[] rdns = parentIdAndRdn.getRdns();
+        Rdn[] dnRdns = new Rdn[rdns.length + parentDn.size()];
+        System.arraycopy( rdns, 0, dnRdns, 0, rdns.length );
+        int pos = rdns.length;
+
+        for ( Rdn rdn : parentDn.getRdns() )
+        {
+            dnRdns[pos++] = rdn;
         }
+
+        cachedDn = new CachedDn( new Dn( schemaManager, dnRdns ), parentDn, epoch );
+
+        if ( entryDnCache != null )
+        {
+            entryDnCache.put( new Element( id, cachedDn ) );
+        }
+
+        return cachedDn;
+    }
+
+
+    /**
+     * Gets the ParentIdAndRdn of an entry, from the piar cache or from the Rdn index.
+     *
+     * @param id The entry ID
+     * @return The entry's ParentIdAndRdn, or null if the entry does not exist
+     */
+    private ParentIdAndRdn getParentIdAndRdn( PartitionTxn partitionTxn, String id ) throws LdapException
+    {
+        if ( piarCache != null )
+        {
+            Element piar = piarCache.get( id );
+
+            if ( piar != null )
+            {
+                return ( ParentIdAndRdn ) piar.getObjectValue();
+            }
+        }
+
+        ParentIdAndRdn parentIdAndRdn = rdnIdx.reverseLookup( partitionTxn, id );
+
+        if ( ( parentIdAndRdn != null ) && ( piarCache != null ) )
+        {
+            piarCache.put( new Element( id, parentIdAndRdn ) );
+        }
+
+        return parentIdAndRdn;
+    }
+
+
+    /**
+     * Invalidates the cached Dn of a renamed or moved entry. Its descendants' Dns are
+     * not removed from the cache : they will be composed again from the entry's new Dn when
+     * they are read.
+     *
+     * @param id The entry ID
+     */
+    private void invalidateEntryDn( String id )
+    {
+        if ( piarCache != null )
+        {
+            piarCache.remove( id );
+        }
+
+        if ( entryDnCache != null )
+        {
+            entryDnCache.remove( id );
+        }
+
+        dnEpoch.incrementAndGet();
+    }
+
+
+    /**
+     * Empties the caches filled from the stored entries, once the changes of an aborted write
+     * transaction have been rolled back : they may contain what these changes had written.
+     */
+    protected void invalidateCaches()
+    {
+        if ( aliasCache != null )
+        {
+            aliasCache.removeAll();
+        }
+
+        if ( piarCache != null )
+        {
+            piarCache.removeAll();
+        }
+
+        if ( entryDnCache != null )
+        {
+            entryDnCache.removeAll();
+        }
+
+        dnEpoch.incrementAndGet();
     }
 
 
@@ -3570,7 +3953,8 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
 
 
     /**
-     * Set and return the ReadWrite lock we use to protect the backend against concurrent modifications
+     * Set and return the ReadWrite lock we use to protect the backend against concurrent modifications.
+     * This is the partition lock of the OperationManager, held by the writers of this partition.
      * 
      * @param operationContext The OperationContext which contain the reference to the OperationManager
      */
@@ -3578,7 +3962,7 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
     {
         if ( operationContext.getSession() != null )
         {
-            rwLock = operationContext.getSession().getDirectoryService().getOperationManager().getRWLock();
+            rwLock = operationContext.getSession().getDirectoryService().getOperationManager().getRWLock( this );
         }
         else
         {
@@ -3688,6 +4072,9 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
             return;
         }
         
+        // The context entry may be modified concurrently
+        DnLock dnLock = dnLockManager.lockEntries( getSuffixDn() );
+
         try
         {
             // we don't need to use the ctxCsnSemaphore here cause
@@ -3719,6 +4106,10 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
         {
             throw new LdapOperationErrorException( e.getMessage(), e );
         }
+        finally
+        {
+            dnLock.unlock();
+        }
     }
     
     
@@ -0,0 +1,756 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.partition.impl.btree;
+
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.apache.directory.api.util.Strings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * An entry cache storing serialized entries outside of the Java heap. The entries are
+ * kept as opaque byte[] produced by the partition's own serializer, so they are only
+ * deserialized when they are hit.
+ * <br>
+ * The memory is split in fixed size direct memory segments, used as a circular log :
+ * records are appended at the end of the current segment, and when it is full, the next
+ * segment is reclaimed. Reclaiming a segment implements a CLOCK policy : the records that
+ * have been hit since the last pass are given a second chance and compacted at the beginning
+ * of the segment, the others are evicted.
+ * <br>
+ * The index is an open addressing hash table using two primitive arrays (the key hash and
+ * the record address), so it costs 12 bytes per slot on the heap. The keys themselves are
+ * only stored in the records.
+ * <br>
+ * The segments are split in stripes, each one with its own index and its own lock, and a
+ * key always goes to the same stripe : the readers and the writers of different stripes
+ * don't wait for each other.
+ * <br>
+ * A record has the following layout :
+ * <pre>
+ *   [byte]  flags (bit 0 is the CLOCK reference bit)
+ *   [int]   key length
+ *   [int]   value length
+ *   [bytes] key (UTF-8)
+ *   [bytes] value
+ * </pre>
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class OffHeapEntryCache
+{
+    /** The logger for this class */
+    private static final Logger LOG = LoggerFactory.getLogger( OffHeapEntryCache.class );
+
+    /** The default segment size : 16Mb */
+    public static final int DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+
+    /** The maximum number of stripes */
+    private static final int MAX_STRIPES = 16;
+
+    /** The record header size */
+    private static final int HEADER_SIZE = 1 + 4 + 4;
+
+    /** The reference bit */
+    private static final byte REFERENCED = 0x01;
+
+    /** An empty slot in the index */
+    private static final long EMPTY = -1L;
+
+    /** The index initial size */
+    private static final int INITIAL_INDEX_SIZE = 1024;
+
+    /** The stripes. Their number is a power of 2 */
+    private final Stripe[] stripes;
+
+    /** The shift selecting a stripe from the high bits of a mixed key hash */
+    private final int stripeShift;
+
+    /** The size of a segment */
+    private final int segmentSize;
+
+    /** The number of segments */
+    private final int nbSegments;
+
+
+    /**
+     * A stripe of the cache : some segments, and the index of the records they contain.
+     */
+    private final class Stripe
+    {
+        /** The memory segments. They are allocated lazily */
+        private final ByteBuffer[] segments;
+
+        /** The number of bytes used in each segment */
+        private final int[] segmentLimits;
+
+        /** The segment we are currently appending records into */
+        private int currentSegment;
+
+        /** The index : the key hashes */
+        private int[] hashes;
+
+        /** The index : the record addresses (segment << 32 | offset) */
+        private long[] addresses;
+
+        /** The number of entries in the stripe */
+        private int size;
+
+        /** The number of bytes used by live records */
+        private long usedBytes;
+
+        /** Some statistics */
+        private long hitCount;
+        private long missCount;
+        private long evictionCount;
+
+
+        /**
+         * Creates a new stripe.
+         *
+         * @param nbSegments The number of segments of the stripe
+         */
+        private Stripe( int nbSegments )
+        {
+            segments = new ByteBuffer[nbSegments];
+            segmentLimits = new int[nbSegments];
+
+            hashes = new int[INITIAL_INDEX_SIZE];
+            addresses = new long[INITIAL_INDEX_SIZE];
+            Arrays.fill( addresses, EMPTY );
+        }
+
+
+        /**
+         * Gets the serialized form of an entry from the stripe.
+         */
+        synchronized byte[] get( byte[] key, int hash )
+        {
+            int slot = findSlot( key, hash );
+
+            if ( addresses[slot] == EMPTY )
+            {
+                missCount++;
+
+                return null;
+            }
+
+            hitCount++;
+            long address = addresses[slot];
+            ByteBuffer segment = segments[segmentOf( address )];
+            int offset = offsetOf( address );
+
+            // Set the reference bit, so that the record survives the next CLOCK pass
+            segment.put( offset, ( byte ) ( segment.get( offset ) | REFERENCED ) );
+
+            int keyLength = segment.getInt( offset + 1 );
+            int valueLength = segment.getInt( offset + 5 );
+            byte[] value = new byte[valueLength];
+            ByteBuffer view = segment.duplicate();
+            view.position( offset + HEADER_SIZE + keyLength );
+            view.get( value );
+
+            return value;
+        }
+
+
+        /**
+         * Stores the serialized form of an entry in the stripe, replacing any previous value.
+         * Values too big to fit in a segment are only removed.
+         */
+        synchronized void put( byte[] key, int hash, byte[] value )
+        {
+            int recordSize = HEADER_SIZE + key.length + value.length;
+
+            // First remove the previous version, if any
+            remove( key, hash );
+
+            if ( recordSize > segmentSize )
+            {
+                return;
+            }
+
+            long address = allocate( recordSize );
+            ByteBuffer segment = segments[segmentOf( address )];
+            int offset = offsetOf( address );
+
+            ByteBuffer view = segment.duplicate();
+            view.position( offset );
+            view.put( ( byte ) 0 );
+            view.putInt( key.length );
+            view.putInt( value.length );
+            view.put( key );
+            view.put( value );
+
+            insert( key, hash, address );
+            usedBytes += recordSize;
+        }
+
+
+        /**
+         * Removes all the entries from the stripe. The memory is kept.
+         */
+        synchronized void clear()
+        {
+            Arrays.fill( segmentLimits, 0 );
+            hashes = new int[INITIAL_INDEX_SIZE];
+            addresses = new long[INITIAL_INDEX_SIZE];
+            Arrays.fill( addresses, EMPTY );
+            currentSegment = 0;
+            size = 0;
+            usedBytes = 0L;
+        }
+
+
+        /**
+         * @return The number of entries in the stripe
+         */
+        synchronized int size()
+        {
+            return size;
+        }
+
+
+        /**
+         * @return The number of bytes used by the cached entries
+         */
+        synchronized long getUsedBytes()
+        {
+            return usedBytes;
+        }
+
+
+        /**
+         * @return The number of cache hits
+         */
+        synchronized long getHitCount()
+        {
+            return hitCount;
+        }
+
+
+        /**
+         * @return The number of cache misses
+         */
+        synchronized long getMissCount()
+        {
+            return missCount;
+        }
+
+
+        /**
+         * @return The number of evicted entries
+         */
+        synchronized long getEvictionCount()
+        {
+            return evictionCount;
+        }
+
+
+        /**
+         * Removes a key from the stripe, if present
+         */
+        synchronized void remove( byte[] key, int hash )
+        {
+            int slot = findSlot( key, hash );
+
+            if ( addresses[slot] != EMPTY )
+            {
+                usedBytes -= recordSize( addresses[slot] );
+                deleteSlot( slot );
+            }
+        }
+
+
+        /**
+         * Finds some room for a record of the given size, reclaiming segments if needed.
+         */
+        private long allocate( int recordSize )
+        {
+            // We may have to go twice around the segments : the first pass clears the reference bits
+            for ( int i = 0; i <= 2 * segments.length; i++ )
+            {
+                if ( segments[currentSegment] == null )
+                {
+                    segments[currentSegment] = ByteBuffer.allocateDirect( segmentSize );
+                }
+
+                int limit = segmentLimits[currentSegment];
+
+                if ( limit + recordSize <= segmentSize )
+                {
+                    segmentLimits[currentSegment] = limit + recordSize;
+
+                    return address( currentSegment, limit );
+                }
+
+                currentSegment = ( currentSegment + 1 ) % segments.length;
+
+                if ( segments[currentSegment] != null )
+                {
+                    reclaim( currentSegment );
+                }
+            }
+
+            // Can't happen, as a record always fits in an empty segment
+            throw new IllegalStateException( "Cannot allocate " + recordSize
+                + " bytes in the off-heap cache" );
+        }
+
+
+        /**
+         * Runs the CLOCK hand over a segment : the referenced records are kept and compacted at the
+         * beginning of the segment with their reference bit cleared, the other ones are evicted.
+         */
+        private void reclaim( int segmentNumber )
+        {
+            ByteBuffer segment = segments[segmentNumber];
+            int limit = segmentLimits[segmentNumber];
+            int readPos = 0;
+            int writePos = 0;
+
+            while ( readPos < limit )
+            {
+                int keyLength = segment.getInt( readPos + 1 );
+                int valueLength = segment.getInt( readPos + 5 );
+                int recordSize = HEADER_SIZE + keyLength + valueLength;
+                byte[] key = new byte[keyLength];
+                ByteBuffer view = segment.duplicate();
+                view.position( readPos + HEADER_SIZE );
+                view.get( key );
+
+                int slot = findSlot( key, hash( key ) );
+                long address = address( segmentNumber, readPos );
+
+                // The record may have been removed or replaced already
+                if ( addresses[slot] == address )
+                {
+                    if ( ( segment.get( readPos ) & REFERENCED ) != 0 )
+                    {
+                        // Second chance : move the record down and clear its reference bit
+                        if ( writePos != readPos )
+                        {
+                            byte[] record = new byte[recordSize];
+                            view.position( readPos );
+                            view.get( record );
+                            view.position( writePos );
+                            view.put( record );
+                        }
+
+                        segment.put( writePos, ( byte ) 0 );
+                        addresses[slot] = address( segmentNumber, writePos );
+                        writePos += recordSize;
+                    }
+                    else
+                    {
+                        usedBytes -= recordSize;
+                        evictionCount++;
+                        deleteSlot( slot );
+                    }
+                }
+
+                readPos += recordSize;
+            }
+
+            segmentLimits[segmentNumber] = writePos;
+        }
+
+
+        /**
+         * Finds the slot containing the given key, or the empty slot where it should be inserted.
+         */
+        private int findSlot( byte[] key, int hash )
+        {
+            int mask = addresses.length - 1;
+            int slot = hash & mask;
+
+            while ( addresses[slot] != EMPTY )
+            {
+                if ( ( hashes[slot] == hash ) && keyEquals( addresses[slot], key ) )
+                {
+                    return slot;
+                }
+
+                slot = ( slot + 1 ) & mask;
+            }
+
+            return slot;
+        }
+
+
+        /**
+         * Inserts a new key in the index, growing it if the load factor reaches 0.75.
+         */
+        private void insert( byte[] key, int hash, long address )
+        {
+            if ( ( size + 1 ) * 4 > addresses.length * 3 )
+            {
+                resize( addresses.length * 2 );
+            }
+
+            int slot = findSlot( key, hash );
+            hashes[slot] = hash;
+            addresses[slot] = address;
+            size++;
+        }
+
+
+        /**
+         * Deletes a slot, shifting back the following colliding slots so that no tombstone is needed.
+         */
+        private void deleteSlot( int slot )
+        {
+            int mask = addresses.length - 1;
+            int hole = slot;
+            int next = ( slot + 1 ) & mask;
+
+            while ( addresses[next] != EMPTY )
+            {
+                int home = hashes[next] & mask;
+
+                // Move the slot into the hole if its home position is not between the hole and itself
+                if ( ( ( next > hole ) && ( ( home <= hole ) || ( home > next ) ) )
+                    || ( ( next < hole ) && ( ( home <= hole ) && ( home > next ) ) ) )
+                {
+                    hashes[hole] = hashes[next];
+                    addresses[hole] = addresses[next];
+                    hole = next;
+                }
+
+                next = ( next + 1 ) & mask;
+            }
+
+            addresses[hole] = EMPTY;
+            size--;
+        }
+
+
+        /**
+         * Rehashes the index into a bigger table
+         */
+        private void resize( int newSize )
+        {
+            int[] oldHashes = hashes;
+            long[] oldAddresses = addresses;
+
+            hashes = new int[newSize];
+            addresses = new long[newSize];
+            Arrays.fill( addresses, EMPTY );
+            int mask = newSize - 1;
+
+            for ( int i = 0; i < oldAddresses.length; i++ )
+            {
+                if ( oldAddresses[i] != EMPTY )
+                {
+                    int slot = oldHashes[i] & mask;
+
+                    while ( addresses[slot] != EMPTY )
+                    {
+                        slot = ( slot + 1 ) & mask;
+                    }
+
+                    hashes[slot] = oldHashes[i];
+                    addresses[slot] = oldAddresses[i];
+                }
+            }
+        }
+
+
+        /**
+         * Compares the key stored in a record with the given key
+         */
+        private boolean keyEquals( long address, byte[] key )
+        {
+            ByteBuffer segment = segments[segmentOf( address )];
+            int offset = offsetOf( address );
+
+            if ( segment.getInt( offset + 1 ) != key.length )
+            {
+                return false;
+            }
+
+            int keyStart = offset + HEADER_SIZE;
+
+            for ( int i = 0; i < key.length; i++ )
+            {
+                if ( segment.get( keyStart + i ) != key[i] )
+                {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+
+        private int recordSize( long address )
+        {
+            ByteBuffer segment = segments[segmentOf( address )];
+            int offset = offsetOf( address );
+
+            return HEADER_SIZE + segment.getInt( offset + 1 ) + segment.getInt( offset + 5 );
+        }
+    }
+
+
+    /**
+     * Creates a new instance of OffHeapEntryCache, with the default segment size.
+     *
+     * @param capacity The number of bytes this cache can use
+     */
+    public OffHeapEntryCache( long capacity )
+    {
+        this( capacity, DEFAULT_SEGMENT_SIZE );
+    }
+
+
+    /**
+     * Creates a new instance of OffHeapEntryCache. The segments are split in up to 16
+     * stripes, each stripe having at least one segment.
+     *
+     * @param capacity The number of bytes this cache can use
+     * @param segmentSize The size of each memory segment
+     */
+    public OffHeapEntryCache( long capacity, int segmentSize )
+    {
+        if ( capacity <= 0 )
+        {
+            throw new IllegalArgumentException( "The off-heap cache capacity must be positive" );
+        }
+
+        if ( segmentSize <= HEADER_SIZE )
+        {
+            throw new IllegalArgumentException( "The off-heap cache segment size is too small" );
+        }
+
+        this.segmentSize = ( int ) Math.min( capacity, segmentSize );
+        nbSegments = ( int ) Math.max( 1L, capacity / this.segmentSize );
+
+        int nbStripes = Integer.highestOneBit( Math.min( MAX_STRIPES, nbSegments ) );
+        stripes = new Stripe[nbStripes];
+        stripeShift = 32 - Integer.numberOfTrailingZeros( nbStripes );
+
+        for ( int i = 0; i < nbStripes; i++ )
+        {
+            // The remaining segments go to the first stripes
+            stripes[i] = new Stripe( nbSegments / nbStripes + ( ( i < nbSegments % nbStripes ) ? 1 : 0 ) );
+        }
+
+        LOG.debug( "Creating an off-heap entry cache of {} segments of {} bytes, in {} stripes", nbSegments,
+            this.segmentSize, nbStripes );
+    }
+
+
+    /**
+     * Gets the serialized form of an entry from the cache.
+     *
+     * @param id The entry ID
+     * @return A copy of the serialized entry, or null if it's not present in the cache
+     */
+    public byte[] get( String id )
+    {
+        byte[] key = Strings.getBytesUtf8( id );
+        int hash = hash( key );
+
+        return stripe( hash ).get( key, hash );
+    }
+
+
+    /**
+     * Stores the serialized form of an entry in the cache, replacing any previous value.
+     * Values too big to fit in a segment are not cached.
+     *
+     * @param id The entry ID
+     * @param value The serialized entry
+     */
+    public void put( String id, byte[] value )
+    {
+        byte[] key = Strings.getBytesUtf8( id );
+        int hash = hash( key );
+
+        if ( HEADER_SIZE + key.length + value.length > segmentSize )
+        {
+            LOG.debug( "The entry {} is too big to be stored in the off-heap cache", id );
+        }
+
+        stripe( hash ).put( key, hash, value );
+    }
+
+
+    /**
+     * Removes an entry from the cache.
+     *
+     * @param id The entry ID
+     */
+    public void remove( String id )
+    {
+        byte[] key = Strings.getBytesUtf8( id );
+        int hash = hash( key );
+
+        stripe( hash ).remove( key, hash );
+    }
+
+
+    /**
+     * Removes all the entries from the cache. The memory is kept.
+     */
+    public void clear()
+    {
+        for ( Stripe stripe : stripes )
+        {
+            stripe.clear();
+        }
+    }
+
+
+    /**
+     * @return The number of entries in the cache
+     */
+    public int size()
+    {
+        int size = 0;
+
+        for ( Stripe stripe : stripes )
+        {
+            size += stripe.size();
+        }
+
+        return size;
+    }
+
+
+    /**
+     * @return The number of bytes used by the cached entries
+     */
+    public long getUsedBytes()
+    {
+        long usedBytes = 0L;
+
+        for ( Stripe stripe : stripes )
+        {
+            usedBytes += stripe.getUsedBytes();
+        }
+
+        return usedBytes;
+    }
+
+
+    /**
+     * @return The number of bytes this cache can use
+     */
+    public long getCapacity()
+    {
+        return ( long ) segmentSize * nbSegments;
+    }
+
+
+    /**
+     * @return The number of cache hits
+     */
+    public long getHitCount()
+    {
+        long hitCount = 0L;
+
+        for ( Stripe stripe : stripes )
+        {
+            hitCount += stripe.getHitCount();
+        }
+
+        return hitCount;
+    }
+
+
+    /**
+     * @return The number of cache misses
+     */
+    public long getMissCount()
+    {
+        long missCount = 0L;
+
+        for ( Stripe stripe : stripes )
+        {
+            missCount += stripe.getMissCount();
+        }
+
+        return missCount;
+    }
+
+
+    /**
+     * @return The number of evicted entries
+     */
+    public long getEvictionCount()
+    {
+        long evictionCount = 0L;
+
+        for ( Stripe stripe : stripes )
+        {
+            evictionCount += stripe.getEvictionCount();
+        }
+
+        return evictionCount;
+    }
+
+
+    /**
+     * Selects the stripe of a key. The index of a stripe uses the low bits of the hashes, so
+     * the stripe is selected with the high bits of the hash multiplied by the golden ratio.
+     */
+    private Stripe stripe( int hash )
+    {
+        if ( stripes.length == 1 )
+        {
+            return stripes[0];
+        }
+
+        return stripes[( hash * 0x9E3779B9 ) >>> stripeShift];
+    }
+
+
+    private static int hash( byte[] key )
+    {
+        int h = Arrays.hashCode( key );
+
+        // Spread the bits, as we use the lower bits as the slot number
+        return h ^ ( h >>> 16 );
+    }
+
+
+    private static long address( int segment, int offset )
+    {
+        return ( ( long ) segment << 32 ) | ( offset & 0xFFFFFFFFL );
+    }
+
+
+    private static int segmentOf( long address )
+    {
+        return ( int ) ( address >>> 32 );
+    }
+
+
+    private static int offsetOf( long address )
+    {
+        return ( int ) address;
+    }
+}
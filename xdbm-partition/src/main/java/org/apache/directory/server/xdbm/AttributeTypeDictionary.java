@@ -0,0 +1,223 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.xdbm;
+
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.directory.api.ldap.model.entry.Attribute;
+import org.apache.directory.api.ldap.model.entry.Entry;
+
+
+/**
+ * A per partition dictionary associating a small integer (the ordinal) to each AttributeType
+ * OID stored in the partition. It is used by the {@link CompactEntryCodec} to avoid storing
+ * the OID strings in every entry.
+ * <br>
+ * Ordinals are never reused nor reassigned, so the dictionary can only grow. It must be
+ * persisted by the partition before any entry using a new ordinal is committed.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class AttributeTypeDictionary
+{
+    /** The OIDs, indexed by their ordinal. Replaced on each addition */
+    private volatile String[] oids = new String[0];
+
+    /** The ordinals, indexed by OID */
+    private final Map<String, Integer> ordinals = new ConcurrentHashMap<>();
+
+    /** Tells if the dictionary has been modified since it was last saved */
+    private volatile boolean dirty;
+
+
+    /**
+     * Creates a new, empty, instance of AttributeTypeDictionary.
+     */
+    public AttributeTypeDictionary()
+    {
+    }
+
+
+    /**
+     * Creates a new instance of AttributeTypeDictionary from its serialized form.
+     *
+     * @param bytes The serialized dictionary, as produced by {@link #toBytes()}
+     * @throws IOException If the dictionary cannot be read
+     */
+    public AttributeTypeDictionary( byte[] bytes ) throws IOException
+    {
+        DataInputStream in = new DataInputStream( new ByteArrayInputStream( bytes ) );
+        int size = in.readInt();
+        String[] readOids = new String[size];
+
+        for ( int i = 0; i < size; i++ )
+        {
+            readOids[i] = in.readUTF();
+            ordinals.put( readOids[i], i );
+        }
+
+        oids = readOids;
+    }
+
+
+    /**
+     * Gets the ordinal associated with an OID, creating it if needed.
+     *
+     * @param oid The AttributeType OID
+     * @return The ordinal
+     */
+    public int getOrdinal( String oid )
+    {
+        Integer ordinal = ordinals.get( oid );
+
+        if ( ordinal != null )
+        {
+            return ordinal;
+        }
+
+        return addOrdinal( oid );
+    }
+
+
+    /**
+     * Gets the OID associated with an ordinal.
+     *
+     * @param ordinal The ordinal
+     * @return The AttributeType OID
+     * @throws IOException If the ordinal is unknown
+     */
+    public String getOid( int ordinal ) throws IOException
+    {
+        String[] current = oids;
+
+        if ( ( ordinal < 0 ) || ( ordinal >= current.length ) )
+        {
+            throw new IOException( "Unknown AttributeType ordinal " + ordinal );
+        }
+
+        return current[ordinal];
+    }
+
+
+    /**
+     * Makes sure all the AttributeTypes used by an entry have an ordinal.
+     *
+     * @param entry The entry
+     * @return <code>true</code> if some new ordinals have been created
+     */
+    public boolean register( Entry entry )
+    {
+        boolean added = false;
+
+        for ( Attribute attribute : entry )
+        {
+            String oid = attribute.getAttributeType().getOid();
+
+            if ( !ordinals.containsKey( oid ) )
+            {
+                addOrdinal( oid );
+                added = true;
+            }
+        }
+
+        return added;
+    }
+
+
+    /**
+     * @return <code>true</code> if the dictionary has been modified since the last call to {@link #toBytes()}
+     */
+    public boolean isDirty()
+    {
+        return dirty;
+    }
+
+
+    /**
+     * @return The number of OIDs in this dictionary
+     */
+    public int size()
+    {
+        return oids.length;
+    }
+
+
+    /**
+     * Serializes the dictionary, and reset its dirty flag.
+     *
+     * @return The serialized dictionary
+     */
+    public synchronized byte[] toBytes()
+    {
+        try
+        {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream( baos );
+            String[] current = oids;
+
+            out.writeInt( current.length );
+
+            for ( String oid : current )
+            {
+                out.writeUTF( oid );
+            }
+
+            out.flush();
+            dirty = false;
+
+            return baos.toByteArray();
+        }
+        catch ( IOException ioe )
+        {
+            // Can't happen with a ByteArrayOutputStream
+            throw new IllegalStateException( ioe.getMessage(), ioe );
+        }
+    }
+
+
+    private synchronized int addOrdinal( String oid )
+    {
+        Integer ordinal = ordinals.get( oid );
+
+        if ( ordinal != null )
+        {
+            return ordinal;
+        }
+
+        String[] current = oids;
+        String[] newOids = Arrays.copyOf( current, current.length + 1 );
+        newOids[current.length] = oid;
+
+        // Publish the OID before the ordinal, so that a reader never sees an unknown ordinal
+        oids = newOids;
+        ordinals.put( oid, current.length );
+        dirty = true;
+
+        return current.length;
+    }
+}
@@ -0,0 +1,560 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.xdbm;
+
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import org.apache.directory.api.ldap.model.entry.Attribute;
+import org.apache.directory.api.ldap.model.entry.DefaultAttribute;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.name.Rdn;
+import org.apache.directory.api.ldap.model.schema.AttributeType;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.server.core.api.entry.LazyEntry;
+
+
+/**
+ * The compact, versioned, binary format used to store entries in the master tables. As for
+ * the previous format, we only store the entry's Rdn, not its full Dn. It does not use the Java
+ * serialization framing : the Rdn and the attributes are written through a plain
+ * {@link DataOutputStream}.
+ * <br>
+ * The structure is the following :
+ * <ul>
+ *   <li><b>[byte]</b> : the format version, {@link #VERSION_1} or {@link #VERSION_2}</li>
+ *   <li><b>[byte]</b> : the flags ({@link #FLAG_ORDINALS} if the AttributeTypes are stored as ordinals)</li>
+ *   <li><b>[byte]</b> : 0 if the Dn is empty, 1 otherwise</li>
+ *   <li><b>[Rdn]</b> : the entry's Rdn, if the Dn is not empty</li>
+ *   <li><b>[varint]</b> : the number of attributes</li>
+ *   <li>The attribute directory. For each attribute :
+ *     <ul>
+ *       <li><b>[varint]</b> or <b>[UTF]</b> : the AttributeType ordinal, or its OID</li>
+ *       <li><b>[varint]</b> : the length of the attribute data</li>
+ *       <li><b>[varint]</b> : with {@link #VERSION_2} only, the length of the attribute data before
+ *       compression, or 0 if they are not compressed</li>
+ *     </ul>
+ *   </li>
+ *   <li>The attributes data, in the directory order</li>
+ * </ul>
+ * The directory allows a reader to locate an attribute without decoding the previous ones.
+ * <br>
+ * {@link #VERSION_2} is written when a {@link ValueCompression} is configured : the data of
+ * the attributes it accepts are compressed, and only decompressed when a lazily decoded entry
+ * accesses them.
+ * <br>
+ * The previous format was written by an {@link java.io.ObjectOutputStream}, so it always starts
+ * with the 0xAC byte, which is never a valid version : {@link #isLegacy(byte[], int)} can be used
+ * to detect it.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class CompactEntryCodec
+{
+    /** The first version of the format */
+    public static final byte VERSION_1 = 0x01;
+
+    /** The version adding the compressed attributes */
+    public static final byte VERSION_2 = 0x02;
+
+    /** The flag set when the AttributeTypes are stored as ordinals */
+    public static final byte FLAG_ORDINALS = 0x01;
+
+    /** The first byte of a stream written by an ObjectOutputStream */
+    private static final byte LEGACY_MAGIC = ( byte ) 0xAC;
+
+    /** The schemaManager reference */
+    private final SchemaManager schemaManager;
+
+    /** The dictionary used to store the AttributeTypes as ordinals. May be null */
+    private final AttributeTypeDictionary dictionary;
+
+    /** The compression policy of the attribute data. May be null */
+    private final ValueCompression compression;
+
+
+    /**
+     * Creates a new instance of CompactEntryCodec.
+     *
+     * @param schemaManager The reference to the global schemaManager
+     * @param dictionary The AttributeType dictionary. If null, the OIDs are stored in each entry
+     */
+    public CompactEntryCodec( SchemaManager schemaManager, AttributeTypeDictionary dictionary )
+    {
+        this( schemaManager, dictionary, null );
+    }
+
+
+    /**
+     * Creates a new instance of CompactEntryCodec compressing some attributes.
+     *
+     * @param schemaManager The reference to the global schemaManager
+     * @param dictionary The AttributeType dictionary. If null, the OIDs are stored in each entry
+     * @param compression The compression policy. If null, nothing is compressed
+     */
+    public CompactEntryCodec( SchemaManager schemaManager, AttributeTypeDictionary dictionary,
+        ValueCompression compression )
+    {
+        this.schemaManager = schemaManager;
+        this.dictionary = dictionary;
+        this.compression = compression;
+    }
+
+
+    /**
+     * Tells if a serialized entry uses the legacy, ObjectOutputStream based, format.
+     *
+     * @param bytes The serialized entry
+     * @param offset The position of the entry in the buffer
+     * @return <code>true</code> if the entry has to be read with the legacy format
+     */
+    public static boolean isLegacy( byte[] bytes, int offset )
+    {
+        return ( bytes.length > offset ) && ( bytes[offset] == LEGACY_MAGIC );
+    }
+
+
+    /**
+     * Serializes an entry.
+     *
+     * @param entry The entry to serialize
+     * @return The serialized entry
+     * @throws IOException If the entry cannot be serialized
+     */
+    public byte[] encode( Entry entry ) throws IOException
+    {
+        int nbAttributes = entry.size();
+        Attribute[] attributes = new Attribute[nbAttributes];
+        int[] lengths = new int[nbAttributes];
+        int[] rawLengths = new int[nbAttributes];
+
+        // First serialize the attributes, we need their length for the directory
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        DataObjectOutput dataOut = new DataObjectOutput( data );
+        int pos = 0;
+
+        if ( compression == null )
+        {
+            for ( Attribute attribute : entry )
+            {
+                int start = dataOut.size();
+                attribute.writeExternal( dataOut );
+                attributes[pos] = attribute;
+                lengths[pos] = dataOut.size() - start;
+                pos++;
+            }
+        }
+        else
+        {
+            ByteArrayOutputStream attributeData = new ByteArrayOutputStream();
+            DataObjectOutput attributeOut = new DataObjectOutput( attributeData );
+
+            for ( Attribute attribute : entry )
+            {
+                attributeData.reset();
+                attribute.writeExternal( attributeOut );
+                attributeOut.flush();
+
+                byte[] raw = attributeData.toByteArray();
+                byte[] compressed = null;
+
+                if ( compression.accept( attribute.getAttributeType(), raw.length ) )
+                {
+                    compressed = compression.compress( raw, 0, raw.length );
+                }
+
+                if ( compressed != null )
+                {
+                    dataOut.write( compressed );
+                    lengths[pos] = compressed.length;
+                    rawLengths[pos] = raw.length;
+                }
+                else
+                {
+                    dataOut.write( raw );
+                    lengths[pos] = raw.length;
+                }
+
+                attributes[pos] = attribute;
+                pos++;
+            }
+        }
+
+        dataOut.flush();
+
+        // Now, the header
+        ByteArrayOutputStream baos = new ByteArrayOutputStream( data.size() + 64 + nbAttributes * 8 );
+        DataObjectOutput out = new DataObjectOutput( baos );
+
+        out.writeByte( compression != null ? VERSION_2 : VERSION_1 );
+        out.writeByte( dictionary != null ? FLAG_ORDINALS : 0 );
+
+        Dn dn = entry.getDn();
+
+        if ( ( dn == null ) || dn.isEmpty() )
+        {
+            out.writeByte( 0 );
+        }
+        else
+        {
+            out.writeByte( 1 );
+            dn.getRdn().writeExternal( out );
+        }
+
+        writeVarInt( out, nbAttributes );
+
+        for ( int i = 0; i < nbAttributes; i++ )
+        {
+            String oid = attributes[i].getAttributeType().getOid();
+
+            if ( dictionary != null )
+            {
+                writeVarInt( out, dictionary.getOrdinal( oid ) );
+            }
+            else
+            {
+                out.writeUTF( oid );
+            }
+
+            writeVarInt( out, lengths[i] );
+
+            if ( compression != null )
+            {
+                writeVarInt( out, rawLengths[i] );
+            }
+        }
+
+        // And the attributes
+        data.writeTo( out );
+        out.flush();
+
+        return baos.toByteArray();
+    }
+
+
+    /**
+     * Deserializes an entry stored with the compact format.
+     *
+     * @param bytes The buffer containing the serialized entry
+     * @param offset The position of the entry in the buffer
+     * @param length The length of the serialized entry
+     * @return The deserialized entry
+     * @throws IOException If the entry cannot be deserialized
+     */
+    public Entry decode( byte[] bytes, int offset, int length ) throws IOException
+    {
+        DataObjectInput in = new DataObjectInput( new ByteArrayInputStream( bytes, offset, length ) );
+        byte version = readVersion( in );
+        boolean useOrdinals = readFlags( in );
+
+        try
+        {
+            Entry entry = new DefaultEntry( schemaManager, readDn( in ) );
+
+            int nbAttributes = readVarInt( in );
+            AttributeType[] attributeTypes = new AttributeType[nbAttributes];
+            int[] lengths = new int[nbAttributes];
+            int[] rawLengths = new int[nbAttributes];
+
+            // Read the directory
+            for ( int i = 0; i < nbAttributes; i++ )
+            {
+                attributeTypes[i] = readAttributeType( in, useOrdinals );
+                lengths[i] = readVarInt( in );
+
+                if ( version == VERSION_2 )
+                {
+                    rawLengths[i] = readVarInt( in );
+                }
+            }
+
+            // Read the attributes
+            for ( int i = 0; i < nbAttributes; i++ )
+            {
+                Attribute attribute = new DefaultAttribute( attributeTypes[i] );
+
+                if ( rawLengths[i] == 0 )
+                {
+                    attribute.readExternal( in );
+                }
+                else
+                {
+                    byte[] compressed = new byte[lengths[i]];
+                    in.readFully( compressed );
+                    byte[] raw = ValueCompression.decompress( compressed, 0, compressed.length, rawLengths[i] );
+                    attribute.readExternal( new DataObjectInput( new ByteArrayInputStream( raw ) ) );
+                }
+
+                entry.add( attribute );
+            }
+
+            return entry;
+        }
+        catch ( LdapException | ClassNotFoundException e )
+        {
+            throw new IOException( e.getMessage(), e );
+        }
+    }
+
+
+    /**
+     * Deserializes an entry stored with the compact format, without decoding its attributes.
+     * Only the Rdn and the attribute directory are read : the returned entry keeps a reference
+     * on the buffer, and decodes an attribute the first time it is accessed. The buffer must
+     * not be modified afterward.
+     *
+     * @param bytes The buffer containing the serialized entry
+     * @param offset The position of the entry in the buffer
+     * @param length The length of the serialized entry
+     * @return The deserialized entry, a {@link LazyEntry}
+     * @throws IOException If the entry header cannot be deserialized
+     */
+    public Entry decodeLazily( byte[] bytes, int offset, int length ) throws IOException
+    {
+        ByteArrayInputStream bais = new ByteArrayInputStream( bytes, offset, length );
+        DataObjectInput in = new DataObjectInput( bais );
+        byte version = readVersion( in );
+        boolean useOrdinals = readFlags( in );
+
+        try
+        {
+            Dn dn = readDn( in );
+
+            int nbAttributes = readVarInt( in );
+            AttributeType[] attributeTypes = new AttributeType[nbAttributes];
+            int[] lengths = new int[nbAttributes];
+            int[] rawLengths = new int[nbAttributes];
+
+            for ( int i = 0; i < nbAttributes; i++ )
+            {
+                attributeTypes[i] = readAttributeType( in, useOrdinals );
+                lengths[i] = readVarInt( in );
+
+                if ( version == VERSION_2 )
+                {
+                    rawLengths[i] = readVarInt( in );
+                }
+            }
+
+            // The attributes data start right after the directory
+            int[] offsets = new int[nbAttributes];
+            int dataOffset = offset + length - bais.available();
+
+            for ( int i = 0; i < nbAttributes; i++ )
+            {
+                offsets[i] = dataOffset;
+                dataOffset += lengths[i];
+            }
+
+            if ( dataOffset > offset + length )
+            {
+                throw new IOException( "Truncated entry : the attributes data exceed the entry length" );
+            }
+
+            return new CompactLazyEntry( schemaManager, dn, attributeTypes, bytes, offsets, lengths, rawLengths );
+        }
+        catch ( LdapException e )
+        {
+            throw new IOException( e.getMessage(), e );
+        }
+    }
+
+
+    /**
+     * Reads the format version.
+     *
+     * @return The format version
+     */
+    private static byte readVersion( DataInputStream in ) throws IOException
+    {
+        byte version = in.readByte();
+
+        if ( ( version != VERSION_1 ) && ( version != VERSION_2 ) )
+        {
+            throw new IOException( "Unsupported entry format version " + version );
+        }
+
+        return version;
+    }
+
+
+    /**
+     * Reads the flags.
+     *
+     * @return <code>true</code> if the AttributeTypes are stored as ordinals
+     */
+    private boolean readFlags( DataInputStream in ) throws IOException
+    {
+        boolean useOrdinals = ( in.readByte() & FLAG_ORDINALS ) != 0;
+
+        if ( useOrdinals && ( dictionary == null ) )
+        {
+            throw new IOException( "Cannot read an entry stored with AttributeType ordinals without a dictionary" );
+        }
+
+        return useOrdinals;
+    }
+
+
+    /**
+     * Reads the entry's Dn, which only contains its Rdn
+     */
+    private Dn readDn( DataObjectInput in ) throws IOException, LdapException
+    {
+        if ( in.readByte() == 1 )
+        {
+            Rdn rdn = new Rdn( schemaManager );
+
+            try
+            {
+                rdn.readExternal( in );
+            }
+            catch ( ClassNotFoundException cnfe )
+            {
+                throw new IOException( cnfe.getMessage(), cnfe );
+            }
+
+            return new Dn( schemaManager, rdn );
+        }
+
+        return Dn.EMPTY_DN;
+    }
+
+
+    /**
+     * Reads an AttributeType from the attribute directory
+     */
+    private AttributeType readAttributeType( DataInputStream in, boolean useOrdinals ) throws IOException,
+        LdapException
+    {
+        String oid = useOrdinals ? dictionary.getOid( readVarInt( in ) ) : in.readUTF();
+
+        return schemaManager.lookupAttributeTypeRegistry( oid );
+    }
+
+
+    /**
+     * Writes an unsigned integer using 7 bits per byte
+     */
+    private static void writeVarInt( DataOutputStream out, int value ) throws IOException
+    {
+        int v = value;
+
+        while ( ( v & ~0x7F ) != 0 )
+        {
+            out.writeByte( ( v & 0x7F ) | 0x80 );
+            v >>>= 7;
+        }
+
+        out.writeByte( v );
+    }
+
+
+    /**
+     * Reads an unsigned integer written by {@link #writeVarInt(DataOutputStream, int)}
+     */
+    private static int readVarInt( DataInputStream in ) throws IOException
+    {
+        int value = 0;
+        int shift = 0;
+        int b;
+
+        do
+        {
+            if ( shift > 28 )
+            {
+                throw new IOException( "Malformed variable length integer" );
+            }
+
+            b = in.readUnsignedByte();
+            value |= ( b & 0x7F ) << shift;
+            shift += 7;
+        }
+        while ( ( b & 0x80 ) != 0 );
+
+        return value;
+    }
+
+
+    /**
+     * A LazyEntry decoding its attributes from the stored bytes
+     */
+    private static final class CompactLazyEntry extends LazyEntry
+    {
+        /** The buffer containing the serialized entry */
+        private final byte[] bytes;
+
+        /** The position of each attribute data in the buffer */
+        private final int[] offsets;
+
+        /** The length of each attribute data */
+        private final int[] lengths;
+
+        /** The length of each attribute data before compression, 0 if not compressed */
+        private final int[] rawLengths;
+
+
+        CompactLazyEntry( SchemaManager schemaManager, Dn dn, AttributeType[] attributeTypes, byte[] bytes,
+            int[] offsets, int[] lengths, int[] rawLengths )
+        {
+            super( schemaManager, dn, attributeTypes );
+            this.bytes = bytes;
+            this.offsets = offsets;
+            this.lengths = lengths;
+            this.rawLengths = rawLengths;
+        }
+
+
+        @Override
+        protected Attribute decode( int index, AttributeType attributeType ) throws LdapException
+        {
+            Attribute attribute = new DefaultAttribute( attributeType );
+
+            try
+            {
+                if ( rawLengths[index] == 0 )
+                {
+                    attribute.readExternal( new DataObjectInput(
+                        new ByteArrayInputStream( bytes, offsets[index], lengths[index] ) ) );
+                }
+                else
+                {
+                    // Only decompressed when the attribute is accessed
+                    byte[] raw = ValueCompression.decompress( bytes, offsets[index], lengths[index],
+                        rawLengths[index] );
+                    attribute.readExternal( new DataObjectInput( new ByteArrayInputStream( raw ) ) );
+                }
+            }
+            catch ( IOException | ClassNotFoundException e )
+            {
+                throw new LdapException( e.getMessage(), e );
+            }
+
+            return attribute;
+        }
+    }
+}
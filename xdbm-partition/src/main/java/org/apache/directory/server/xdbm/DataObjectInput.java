@@ -0,0 +1,56 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.xdbm;
+
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.NotSerializableException;
+import java.io.ObjectInput;
+
+
+/**
+ * An ObjectInput reading primitives written by a {@link DataObjectOutput}.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class DataObjectInput extends DataInputStream implements ObjectInput
+{
+    /**
+     * Creates a new instance of DataObjectInput.
+     *
+     * @param in The underlying stream
+     */
+    public DataObjectInput( InputStream in )
+    {
+        super( in );
+    }
+
+
+    /**
+     * Objects are not supported
+     */
+    @Override
+    public Object readObject() throws IOException
+    {
+        throw new NotSerializableException( "Objects are not supported in the compact formats" );
+    }
+}
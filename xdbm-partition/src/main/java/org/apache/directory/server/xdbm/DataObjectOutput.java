@@ -0,0 +1,58 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.xdbm;
+
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectOutput;
+import java.io.OutputStream;
+
+
+/**
+ * An ObjectOutput writing primitives without the Java serialization framing. It can be
+ * used to write the elements implementing Externalizable without calling writeObject(),
+ * such as the Rdns and the Attributes.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class DataObjectOutput extends DataOutputStream implements ObjectOutput
+{
+    /**
+     * Creates a new instance of DataObjectOutput.
+     *
+     * @param out The underlying stream
+     */
+    public DataObjectOutput( OutputStream out )
+    {
+        super( out );
+    }
+
+
+    /**
+     * Objects are not supported
+     */
+    @Override
+    public void writeObject( Object obj ) throws IOException
+    {
+        throw new NotSerializableException( obj == null ? "null" : obj.getClass().getName() );
+    }
+}
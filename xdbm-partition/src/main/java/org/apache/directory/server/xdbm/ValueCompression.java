@@ -0,0 +1,202 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.xdbm;
+
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.apache.directory.api.ldap.model.schema.AttributeType;
+
+
+/**
+ * The compression policy of the attribute values stored by the {@link CompactEntryCodec}. The
+ * serialized values of an attribute are compressed when the attribute is one of the configured
+ * ones, or when they are at least as large as the threshold. They are kept uncompressed when
+ * the compression does not make them smaller.
+ * <br>
+ * The data are compressed with a raw Deflate stream, using the fastest level : the large values
+ * this is aimed at (photos, certificates, long descriptions) are written rarely and read often.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class ValueCompression
+{
+    /** The default size from which the values are compressed, in bytes */
+    public static final int DEFAULT_THRESHOLD = 1024;
+
+    /** The size from which the values are compressed, 0 to only compress the configured attributes */
+    private final int threshold;
+
+    /** The OIDs of the attributes to compress whatever their size */
+    private final Set<String> attributeOids;
+
+
+    /**
+     * Creates a new instance of ValueCompression.
+     *
+     * @param threshold The size from which the serialized values of an attribute are compressed,
+     * in bytes. 0 to only compress the given attributes
+     * @param attributeOids The OIDs of the attributes to compress whatever their size. May be null
+     */
+    public ValueCompression( int threshold, Collection<String> attributeOids )
+    {
+        if ( threshold < 0 )
+        {
+            throw new IllegalArgumentException( "The compression threshold must not be negative : " + threshold );
+        }
+
+        this.threshold = threshold;
+
+        if ( attributeOids == null )
+        {
+            this.attributeOids = Collections.emptySet();
+        }
+        else
+        {
+            this.attributeOids = Collections.unmodifiableSet( new HashSet<>( attributeOids ) );
+        }
+    }
+
+
+    /**
+     * Tells if the serialized values of an attribute should be compressed.
+     *
+     * @param attributeType The attribute type
+     * @param length The size of the serialized values
+     * @return <code>true</code> if the values should be compressed
+     */
+    public boolean accept( AttributeType attributeType, int length )
+    {
+        return ( ( threshold > 0 ) && ( length >= threshold ) ) || attributeOids.contains( attributeType.getOid() );
+    }
+
+
+    /**
+     * Compresses some data.
+     *
+     * @param data The buffer containing the data
+     * @param offset The position of the data in the buffer
+     * @param length The data length
+     * @return The compressed data, or null if they are not smaller than the original ones
+     */
+    public byte[] compress( byte[] data, int offset, int length )
+    {
+        Deflater deflater = new Deflater( Deflater.BEST_SPEED, true );
+
+        try
+        {
+            deflater.setInput( data, offset, length );
+            deflater.finish();
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream( length / 2 + 16 );
+            byte[] buffer = new byte[Math.min( length + 16, 8192 )];
+
+            while ( !deflater.finished() )
+            {
+                int nb = deflater.deflate( buffer );
+                out.write( buffer, 0, nb );
+
+                if ( out.size() >= length )
+                {
+                    // Not worth it
+                    return null;
+                }
+            }
+
+            return out.toByteArray();
+        }
+        finally
+        {
+            deflater.end();
+        }
+    }
+
+
+    /**
+     * Decompresses some data.
+     *
+     * @param data The buffer containing the compressed data
+     * @param offset The position of the compressed data in the buffer
+     * @param length The compressed data length
+     * @param originalLength The length of the data before they were compressed
+     * @return The decompressed data
+     * @throws IOException If the data are corrupted
+     */
+    public static byte[] decompress( byte[] data, int offset, int length, int originalLength ) throws IOException
+    {
+        Inflater inflater = new Inflater( true );
+
+        try
+        {
+            inflater.setInput( data, offset, length );
+            byte[] result = new byte[originalLength];
+            int pos = 0;
+
+            while ( pos < originalLength )
+            {
+                int nb = inflater.inflate( result, pos, originalLength - pos );
+
+                if ( ( nb == 0 ) && ( inflater.finished() || inflater.needsInput() ) )
+                {
+                    throw new IOException( "Truncated compressed value : " + pos + " bytes read instead of "
+                        + originalLength );
+                }
+
+                pos += nb;
+            }
+
+            return result;
+        }
+        catch ( DataFormatException dfe )
+        {
+            throw new IOException( dfe.getMessage(), dfe );
+        }
+        finally
+        {
+            inflater.end();
+        }
+    }
+
+
+    /**
+     * @return The size from which the values are compressed, in bytes
+     */
+    public int getThreshold()
+    {
+        return threshold;
+    }
+
+
+    /**
+     * @return The OIDs of the attributes compressed whatever their size
+     */
+    public Set<String> getAttributeOids()
+    {
+        return attributeOids;
+    }
+}
@@ -29,6 +29,7 @@ import org.apache.directory.api.ldap.model.cursor.InvalidCursorPositionException
 import org.apache.directory.api.ldap.model.entry.Value;
 import org.apache.directory.api.ldap.model.exception.LdapException;
 import org.apache.directory.api.ldap.model.schema.AttributeType;
+import org.apache.directory.server.core.api.normalization.NormalizationCache;
 import org.apache.directory.server.core.api.partition.PartitionTxn;
 import org.apache.directory.server.i18n.I18n;
 import org.apache.directory.server.xdbm.AbstractIndexCursor;
@@ -95,7 +96,8 @@ public class EqualityCursor<V> extends AbstractIndexCursor<V>
         if ( store.hasIndexOn( attributeType ) )
         {
             Index<V, String> userIndex = ( Index<V, String> ) store.getIndex( attributeType );
-            String normalizedValue = attributeType.getEquality().getNormalizer().normalize( value.getValue() );
+            String normalizedValue = NormalizationCache.normalize( attributeType.getEquality().getNormalizer(),
+                value.getValue() );
             userIdxCursor = userIndex.forwardCursor( partitionTxn, ( V ) normalizedValue );
             uuidIdxCursor = null;
         }
@@ -28,6 +28,7 @@ import org.apache.directory.api.ldap.model.cursor.CursorException;
 import org.apache.directory.api.ldap.model.cursor.InvalidCursorPositionException;
 import org.apache.directory.api.ldap.model.exception.LdapException;
 import org.apache.directory.api.ldap.model.schema.AttributeType;
+import org.apache.directory.server.core.api.normalization.NormalizationCache;
 import org.apache.directory.server.core.api.partition.PartitionTxn;
 import org.apache.directory.server.i18n.I18n;
 import org.apache.directory.server.xdbm.AbstractIndexCursor;
@@ -211,7 +212,8 @@ public class GreaterEqCursor<V> extends AbstractIndexCursor<V>
         if ( userIdxCursor != null )
         {
             IndexEntry<V, String> advanceTo = new IndexEntry<>();
-            String normalizedNode = greaterEqEvaluator.getNormalizer().normalize( greaterEqEvaluator.getExpression().getValue().getValue() );
+            String normalizedNode = NormalizationCache.normalize( greaterEqEvaluator.getNormalizer(),
+                greaterEqEvaluator.getExpression().getValue().getValue() );
             advanceTo.setKey( ( V ) normalizedNode );
             userIdxCursor.before( advanceTo );
         }
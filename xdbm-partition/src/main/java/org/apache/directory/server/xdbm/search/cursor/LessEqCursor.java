@@ -28,6 +28,7 @@ import org.apache.directory.api.ldap.model.cursor.CursorException;
 import org.apache.directory.api.ldap.model.cursor.InvalidCursorPositionException;
 import org.apache.directory.api.ldap.model.exception.LdapException;
 import org.apache.directory.api.ldap.model.schema.AttributeType;
+import org.apache.directory.server.core.api.normalization.NormalizationCache;
 import org.apache.directory.server.core.api.partition.PartitionTxn;
 import org.apache.directory.server.i18n.I18n;
 import org.apache.directory.server.xdbm.AbstractIndexCursor;
@@ -234,7 +235,8 @@ public class LessEqCursor<V> extends AbstractIndexCursor<V>
         {
             IndexEntry<V, String> advanceTo = new IndexEntry<>();
             //noinspection unchecked
-            String normalizedKey = lessEqEvaluator.getAttributeType().getEquality().getNormalizer().normalize( 
+            String normalizedKey = NormalizationCache.normalize(
+                lessEqEvaluator.getAttributeType().getEquality().getNormalizer(),
                 lessEqEvaluator.getExpression().getValue().getValue() );
             
             advanceTo.setKey( ( V ) normalizedKey );
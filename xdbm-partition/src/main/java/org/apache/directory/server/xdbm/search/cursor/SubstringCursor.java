@@ -28,6 +28,7 @@ import org.apache.directory.api.ldap.model.cursor.CursorException;
 import org.apache.directory.api.ldap.model.cursor.InvalidCursorPositionException;
 import org.apache.directory.api.ldap.model.exception.LdapException;
 import org.apache.directory.api.ldap.model.schema.PrepareString;
+import org.apache.directory.server.core.api.normalization.NormalizationCache;
 import org.apache.directory.server.core.api.partition.PartitionTxn;
 import org.apache.directory.server.i18n.I18n;
 import org.apache.directory.server.xdbm.AbstractIndexCursor;
@@ -115,7 +116,8 @@ public class SubstringCursor extends AbstractIndexCursor<String>
         if ( evaluator.getExpression().getInitial() != null && hasIndex )
         {
             IndexEntry<String, String> beforeFirstIndexEntry = new IndexEntry<>();
-            String normalizedKey = evaluator.getExpression().getAttributeType().getEquality().getNormalizer().normalize( 
+            String normalizedKey = NormalizationCache.normalize(
+                evaluator.getExpression().getAttributeType().getEquality().getNormalizer(),
                 evaluator.getExpression().getInitial(), PrepareString.AssertionType.SUBSTRING_INITIAL );
             beforeFirstIndexEntry.setKey( normalizedKey );
             wrapped.before( beforeFirstIndexEntry );
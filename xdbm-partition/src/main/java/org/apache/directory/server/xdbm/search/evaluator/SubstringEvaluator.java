@@ -33,6 +33,7 @@ import org.apache.directory.api.ldap.model.schema.MatchingRule;
 import org.apache.directory.api.ldap.model.schema.Normalizer;
 import org.apache.directory.api.ldap.model.schema.SchemaManager;
 import org.apache.directory.api.ldap.model.schema.normalizers.NoOpNormalizer;
+import org.apache.directory.server.core.api.normalization.NormalizationCache;
 import org.apache.directory.server.core.api.partition.PartitionTxn;
 import org.apache.directory.server.xdbm.IndexEntry;
 import org.apache.directory.server.xdbm.Store;
@@ -157,7 +158,8 @@ public class SubstringEvaluator implements Evaluator<SubstringNode>
                 for ( Value value : attr )
                 {
                     String strValue = value.getValue();
-                    String normalizedValue = attr.getAttributeType().getEquality().getNormalizer().normalize( strValue );
+                    String normalizedValue = NormalizationCache.normalize(
+                        attr.getAttributeType().getEquality().getNormalizer(), strValue );
 
                     // Once match is found cleanup and return true
                     if ( regex.matcher( normalizedValue ).matches() )
@@ -220,7 +222,8 @@ public class SubstringEvaluator implements Evaluator<SubstringNode>
                     for ( Value value : attr )
                     {
                         String strValue = value.getValue();
-                        String normalizedValue = attr.getAttributeType().getEquality().getNormalizer().normalize( strValue );
+                        String normalizedValue = NormalizationCache.normalize(
+                            attr.getAttributeType().getEquality().getNormalizer(), strValue );
 
                         // Once match is found cleanup and return true
                         if ( regex.matcher( normalizedValue ).matches() )
@@ -50,6 +50,7 @@ import org.apache.directory.api.ldap.model.schema.Normalizer;
 import org.apache.directory.api.ldap.model.schema.PrepareString;
 import org.apache.directory.api.ldap.model.schema.normalizers.NoOpNormalizer;
 import org.apache.directory.api.util.exception.NotImplementedException;
+import org.apache.directory.server.core.api.normalization.NormalizationCache;
 import org.apache.directory.server.core.api.partition.Partition;
 import org.apache.directory.server.core.api.partition.PartitionTxn;
 import org.apache.directory.server.i18n.I18n;
@@ -633,7 +634,8 @@ public class CursorBuilder
             }
             else
             {
-                indexEntry.setKey( attributeType.getEquality().getNormalizer().normalize( initial, PrepareString.AssertionType.SUBSTRING_INITIAL ) );
+                indexEntry.setKey( NormalizationCache.normalize( attributeType.getEquality().getNormalizer(), initial,
+                    PrepareString.AssertionType.SUBSTRING_INITIAL ) );
                 
                 cursor.before( indexEntry );
             }
@@ -46,6 +46,7 @@ import org.apache.directory.api.ldap.model.filter.ScopeNode;
 import org.apache.directory.api.ldap.model.filter.SimpleNode;
 import org.apache.directory.api.ldap.model.filter.SubstringNode;
 import org.apache.directory.api.util.Strings;
+import org.apache.directory.server.core.api.normalization.NormalizationCache;
 import org.apache.directory.server.core.api.partition.Partition;
 import org.apache.directory.server.core.api.partition.PartitionTxn;
 import org.apache.directory.server.i18n.I18n;
@@ -325,7 +326,8 @@ public class DefaultOptimizer implements Optimizer
             }
             else
             {
-                normalizedKey = node.getAttributeType().getEquality().getNormalizer().normalize( node.getValue().getValue() );
+                normalizedKey = NormalizationCache.normalize( node.getAttributeType().getEquality().getNormalizer(),
+                    node.getValue().getValue() );
             }
             
             Cursor<String> result = idx.forwardValueCursor( partitionTxn, ( V ) normalizedKey );
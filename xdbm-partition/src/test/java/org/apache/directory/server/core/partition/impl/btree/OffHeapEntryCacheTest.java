@@ -0,0 +1,207 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.partition.impl.btree;
+
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+
+/**
+ * Tests the {@link OffHeapEntryCache} class.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class OffHeapEntryCacheTest
+{
+    private static byte[] value( int size, int fill )
+    {
+        byte[] value = new byte[size];
+        Arrays.fill( value, ( byte ) fill );
+
+        return value;
+    }
+
+
+    @Test
+    public void testPutGet()
+    {
+        OffHeapEntryCache cache = new OffHeapEntryCache( 1024 * 1024 );
+
+        assertNull( cache.get( "1" ) );
+
+        cache.put( "1", value( 100, 1 ) );
+        cache.put( "2", value( 200, 2 ) );
+
+        assertEquals( 2, cache.size() );
+        assertArrayEquals( value( 100, 1 ), cache.get( "1" ) );
+        assertArrayEquals( value( 200, 2 ), cache.get( "2" ) );
+        assertEquals( 2, cache.getHitCount() );
+        assertEquals( 1, cache.getMissCount() );
+    }
+
+
+    @Test
+    public void testReplaceAndRemove()
+    {
+        OffHeapEntryCache cache = new OffHeapEntryCache( 1024 * 1024 );
+
+        cache.put( "1", value( 100, 1 ) );
+        cache.put( "1", value( 50, 3 ) );
+
+        assertEquals( 1, cache.size() );
+        assertArrayEquals( value( 50, 3 ), cache.get( "1" ) );
+
+        cache.remove( "1" );
+
+        assertEquals( 0, cache.size() );
+        assertEquals( 0L, cache.getUsedBytes() );
+        assertNull( cache.get( "1" ) );
+    }
+
+
+    @Test
+    public void testManyKeys()
+    {
+        OffHeapEntryCache cache = new OffHeapEntryCache( 16 * 1024 * 1024 );
+
+        for ( int i = 0; i < 10000; i++ )
+        {
+            cache.put( Integer.toString( i ), value( 10, i ) );
+        }
+
+        assertEquals( 10000, cache.size() );
+
+        for ( int i = 0; i < 10000; i += 2 )
+        {
+            cache.remove( Integer.toString( i ) );
+        }
+
+        assertEquals( 5000, cache.size() );
+
+        for ( int i = 0; i < 10000; i++ )
+        {
+            if ( ( i % 2 ) == 0 )
+            {
+                assertNull( cache.get( Integer.toString( i ) ) );
+            }
+            else
+            {
+                assertArrayEquals( value( 10, i ), cache.get( Integer.toString( i ) ) );
+            }
+        }
+    }
+
+
+    @Test
+    public void testEviction()
+    {
+        // 4 segments of 256 bytes
+        OffHeapEntryCache cache = new OffHeapEntryCache( 1024, 256 );
+
+        for ( int i = 0; i < 100; i++ )
+        {
+            cache.put( Integer.toString( i ), value( 50, i ) );
+        }
+
+        assertTrue( cache.getUsedBytes() <= cache.getCapacity() );
+        assertTrue( cache.getEvictionCount() > 0 );
+        assertArrayEquals( value( 50, 99 ), cache.get( "99" ) );
+        assertNull( cache.get( "0" ) );
+    }
+
+
+    @Test
+    public void testSecondChance()
+    {
+        OffHeapEntryCache cache = new OffHeapEntryCache( 1024, 256 );
+
+        cache.put( "hot", value( 50, 7 ) );
+
+        for ( int i = 0; i < 100; i++ )
+        {
+            cache.put( Integer.toString( i ), value( 50, i ) );
+
+            // Keep the entry referenced
+            assertNotNull( cache.get( "hot" ) );
+        }
+
+        assertArrayEquals( value( 50, 7 ), cache.get( "hot" ) );
+    }
+
+
+    @Test
+    public void testTooBigValue()
+    {
+        OffHeapEntryCache cache = new OffHeapEntryCache( 1024, 256 );
+
+        cache.put( "big", value( 512, 1 ) );
+
+        assertNull( cache.get( "big" ) );
+        assertEquals( 0, cache.size() );
+    }
+
+
+    @Test
+    public void testConcurrentAccess() throws Exception
+    {
+        final OffHeapEntryCache cache = new OffHeapEntryCache( 16 * 1024 * 1024, 1024 * 1024 );
+        Thread[] threads = new Thread[4];
+
+        for ( int t = 0; t < threads.length; t++ )
+        {
+            final int first = t * 1000;
+
+            threads[t] = new Thread()
+            {
+                public void run()
+                {
+                    for ( int i = first; i < first + 1000; i++ )
+                    {
+                        cache.put( Integer.toString( i ), value( 10, i ) );
+                        cache.get( Integer.toString( i ) );
+                    }
+                }
+            };
+
+            threads[t].start();
+        }
+
+        for ( Thread thread : threads )
+        {
+            thread.join();
+        }
+
+        assertEquals( 4000, cache.size() );
+        assertEquals( 4000, cache.getHitCount() );
+
+        for ( int i = 0; i < 4000; i++ )
+        {
+            assertArrayEquals( value( 10, i ), cache.get( Integer.toString( i ) ) );
+        }
+    }
+}
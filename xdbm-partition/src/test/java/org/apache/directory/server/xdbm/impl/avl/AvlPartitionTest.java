@@ -24,6 +24,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -66,13 +67,16 @@ import org.apache.directory.server.core.api.partition.Partition;
 import org.apache.directory.server.core.api.partition.PartitionTxn;
 import org.apache.directory.server.core.partition.impl.avl.AvlPartition;
 import org.apache.directory.server.core.shared.DefaultDnFactory;
+import org.apache.directory.server.xdbm.Index;
 import org.apache.directory.server.xdbm.IndexNotFoundException;
 import org.apache.directory.server.xdbm.MockPartitionReadTxn;
 import org.apache.directory.server.xdbm.StoreUtils;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.BeforeClass;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -106,6 +110,9 @@ public class AvlPartitionTest
     private static CacheService cacheService;
     private PartitionTxn txn;
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
 
     @BeforeClass
     public static void setup() throws Exception
@@ -497,6 +504,32 @@ public class AvlPartitionTest
     }
 
 
+    @Test
+    public void testRenameUpdatesDescendantsDn() throws Exception
+    {
+        Dn salesDn = new Dn( schemaManager, "ou=Sales,o=Good Times Co." );
+        Dn johnnyDn = new Dn( schemaManager, "cn=JOhnny WAlkeR,ou=Sales,o=Good Times Co." );
+        Dn jackDn = new Dn( schemaManager, "cn=Jack Daniels,ou=Engineering,o=Good Times Co." );
+
+        String johnnyId = partition.getEntryId( txn, johnnyDn );
+        String jackId = partition.getEntryId( txn, jackDn );
+
+        // Fill the Dn cache
+        assertEquals( johnnyDn, partition.getEntryDn( txn, johnnyId ) );
+        Dn cachedJackDn = partition.getEntryDn( txn, jackId );
+        assertEquals( jackDn, cachedJackDn );
+
+        partition.rename( txn, salesDn, new Rdn( schemaManager, "ou=Marketing" ), false, null );
+
+        // The descendant's Dn is composed again from its parent's new Dn
+        assertEquals( new Dn( schemaManager, "cn=JOhnny WAlkeR,ou=Marketing,o=Good Times Co." ),
+            partition.getEntryDn( txn, johnnyId ) );
+
+        // The unrelated entries are still cached
+        assertSame( cachedJackDn, partition.getEntryDn( txn, jackId ) );
+    }
+
+
     @Test
     public void testMove() throws Exception
     {
@@ -652,4 +685,89 @@ public class AvlPartitionTest
         lookedup = partition.modify( txn, dn, add );
         assertEquals( attribVal, lookedup.get( "ou" ).get().getValue() );
     }
+
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testSnapshot() throws Exception
+    {
+        File snapshotFile = new File( folder.getRoot(), "example.snapshot" );
+        AvlPartition source = createSnapshotPartition( snapshotFile );
+        StoreUtils.loadExampleData( source, schemaManager );
+
+        source.snapshot();
+        assertTrue( snapshotFile.exists() );
+
+        // Modified after the snapshot : only in the change log
+        Dn dn = new Dn( schemaManager, "cn=Tim B,ou=Sales,o=Good Times Co." );
+        DefaultEntry entry = new DefaultEntry( schemaManager, dn );
+        entry.add( "objectClass", "top", "person", "organizationalPerson" );
+        entry.add( "ou", "Sales" );
+        entry.add( "cn", "Tim B" );
+        entry.add( "entryCSN", new CsnFactory( 1 ).newInstance().toString() );
+        entry.add( "entryUUID", UUID.randomUUID().toString() );
+
+        AddOperationContext addContext = new AddOperationContext( null, entry );
+        addContext.setPartition( source );
+        addContext.setTransaction( source.beginWriteTransaction() );
+        source.add( addContext );
+
+        assertEquals( 1L, source.getChangeLogSize() );
+
+        // Simulate a restart without a last snapshot
+        PartitionTxn sourceTxn = source.beginReadTransaction();
+        AvlPartition restored = createSnapshotPartition( snapshotFile );
+        PartitionTxn restoredTxn = restored.beginReadTransaction();
+
+        assertTrue( restored.isSnapshotLoaded() );
+        assertEquals( 1L, restored.getChangeLogSize() );
+        assertEquals( 12, restored.count( restoredTxn ) );
+        assertEquals( source.getEntryId( sourceTxn, dn ), restored.getEntryId( restoredTxn, dn ) );
+
+        Dn salesDn = new Dn( schemaManager, "ou=Sales,o=Good Times Co." );
+        String salesId = restored.getEntryId( restoredTxn, salesDn );
+        assertEquals( Strings.getUUID( 2L ), salesId );
+        assertEquals( source.getChildCount( sourceTxn, salesId ), restored.getChildCount( restoredTxn, salesId ) );
+
+        // The index content has been restored without normalizing the values again
+        Index<String, String> ouIndex = ( Index<String, String> ) restored.getUserIndex( OU_AT );
+        assertTrue( ouIndex.forward( restoredTxn, "sales", restored.getEntryId( restoredTxn, dn ) ) );
+
+        Entry lookedup = restored.fetch( restoredTxn, salesId );
+        assertEquals( salesDn, lookedup.getDn() );
+        assertEquals( "Sales", lookedup.get( "ou" ).getString() );
+
+        // Destroying the partition takes a snapshot and empties the change log
+        restored.destroy( restoredTxn );
+        source.destroy( sourceTxn );
+
+        restored = createSnapshotPartition( snapshotFile );
+        restoredTxn = restored.beginReadTransaction();
+
+        assertTrue( restored.isSnapshotLoaded() );
+        assertEquals( 0L, restored.getChangeLogSize() );
+        assertEquals( 12, restored.count( restoredTxn ) );
+
+        restored.destroy( restoredTxn );
+    }
+
+
+    private AvlPartition createSnapshotPartition( File snapshotFile ) throws Exception
+    {
+        AvlPartition snapshotPartition = new AvlPartition( schemaManager, dnFactory );
+        snapshotPartition.setId( "snapshot" );
+        snapshotPartition.setSyncOnWrite( false );
+
+        snapshotPartition.addIndex( new AvlIndex<String>( SchemaConstants.OU_AT_OID ) );
+        snapshotPartition.addIndex( new AvlIndex<String>( SchemaConstants.UID_AT_OID ) );
+        snapshotPartition.setSuffixDn( new Dn( schemaManager, "o=Good Times Co." ) );
+        snapshotPartition.setSnapshotFile( snapshotFile );
+        snapshotPartition.setSnapshotInterval( 0L );
+        snapshotPartition.setChangeLogEnabled( true );
+
+        snapshotPartition.setCacheService( cacheService );
+        snapshotPartition.initialize();
+
+        return snapshotPartition;
+    }
 }